@@ -86,6 +86,25 @@ public class MorphaAnnotatorITest extends TestCase {
     checkResult(words);
   }
 
+  public void testThreadedSentences() throws Exception {
+    List<CoreLabel> words = getTestWords();
+
+    // one sentence per token, spread over several threads
+    List<CoreMap> sentences = new ArrayList<CoreMap>();
+    for (CoreLabel word : words) {
+      CoreMap sentence = new ArrayCoreMap();
+      List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+      tokens.add(word);
+      sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+      sentences.add(sentence);
+    }
+    Annotation document = new Annotation(text);
+    document.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+
+    new MorphaAnnotator(false, 4, 0).annotate(document);
+    checkResult(words);
+  }
+
   private static final String text = "I saw him ordering them to saw. Jack 's father has n't played\ngolf since 20 years ago . I 'm going to the\nbookstore to return a book Jack and his friends bought me .";
 
   private static final String[] answer =
@@ -42,10 +42,13 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.Sentence;
+import edu.stanford.nlp.ling.TaggedWord;
 import edu.stanford.nlp.ling.Word;
 
 import edu.stanford.nlp.process.TokenizerFactory;
@@ -268,4 +271,51 @@ public class MaxentTaggerITest extends TestCase {
     assertEquals(expectedResult, result);
   }
 
+  public void testTagSentences() {
+    String[] queries = { "This is a test .",
+                         "What is the result of two sentences ?",
+                         "I think you 'll like the Stanford tagger .",
+                         "This is a test ." };
+    List<List<HasWord>> sentences = new ArrayList<List<HasWord>>();
+    for (String query : queries) {
+      sentences.add(new ArrayList<HasWord>(Sentence.toWordList(query.split(" "))));
+    }
+
+    // one TestSentence reused for all of them gives the same as a new one each
+    List<List<TaggedWord>> batch = tagger.tagSentences(sentences);
+    assertEquals(sentences.size(), batch.size());
+    for (int i = 0; i < sentences.size(); ++i) {
+      assertEquals(tagger.tagSentence(sentences.get(i)).toString(), batch.get(i).toString());
+    }
+    assertEquals(batch.get(0).toString(), batch.get(3).toString());
+
+    TestSentence context = new TestSentence(tagger);
+    for (List<HasWord> sentence : sentences) {
+      context.tagSentence(sentence, false);
+    }
+    assertEquals(27, context.tokensTagged());
+    assertTrue(context.allocatedBytesPerToken() != 0.0);
+  }
+
+  public void testForcedTagsNotCached() {
+    String[] words = "This is a test .".split(" ");
+    List<HasWord> plain = new ArrayList<HasWord>(Sentence.toWordList(words));
+    TestSentence fresh = new TestSentence(tagger);
+    fresh.tagSentence(plain, true);
+
+    // the scores of words given a tag must not be reused once they are untagged
+    for (String tag : new String[] { "NN", "VB", "." }) {
+      List<HasWord> forced = new ArrayList<HasWord>();
+      for (String word : words) {
+        forced.add(new TaggedWord(word, tag));
+      }
+      TestSentence context = new TestSentence(tagger);
+      context.tagSentence(forced, true);
+      assertEquals(fresh.tagSentence(plain, true).toString(), context.tagSentence(plain, true).toString());
+      for (String word : words) {
+        assertTrue(word + " after " + tag, Arrays.equals(fresh.localScores.get(word), context.localScores.get(word)));
+      }
+    }
+  }
+
 }
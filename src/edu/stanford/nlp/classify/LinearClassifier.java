@@ -32,6 +32,7 @@ import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.ling.BasicDatum;
 import edu.stanford.nlp.ling.Datum;
 import edu.stanford.nlp.ling.RVFDatum;
+import edu.stanford.nlp.math.ArrayMath;
 import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
@@ -72,6 +73,8 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
   private Index<F> featureIndex;
   public boolean intern = false;   // variable should be deleted when breaking serialization anyway....
   private double[] thresholds = null;
+  /** A copy of the weights stored label by label, built on first use by {@link #labelMajorWeights()} */
+  private transient double[] labelMajorWeights;
 
   private static final long serialVersionUID = 8499574525453275255L;
 
@@ -326,6 +329,145 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
     return scores;
   }
 
+  /**
+   * Returns the indices of those of the features which this classifier
+   * has weights for, as used by the batch
+   * {@link #scoresOf(int[][], double[][], double[], boolean)}.
+   */
+  public int[] indexFeatures(Collection<F> features) {
+    int[] indices = new int[features.size()];
+    int size = 0;
+    for (F feature : features) {
+      int index = featureIndex.indexOf(feature);
+      if (index >= 0) {
+        indices[size++] = index;
+      }
+    }
+    return size == indices.length ? indices : Arrays.copyOf(indices, size);
+  }
+
+  /**
+   * Scores a batch of examples given as the indices of their features,
+   * without building a Counter for each.  The score of example i for
+   * the label with index j is put in
+   * {@code scores[i * labelIndex().size() + j]}, and is the same as
+   * {@link #scoresOf(int[])} gives.
+   * <br>
+   * The weights can be read in either of two layouts.  Feature major
+   * reads the {@code double[][]} weights, one row of all the labels'
+   * weights per feature, and is the faster with more than a few labels.
+   * Label major adds up each label's score in turn from a copy of the
+   * weights stored label by label, which is faster with two or three
+   * labels.  The copy is made on first use and takes as much memory as
+   * the weights; if the weights are changed in place afterwards, call
+   * {@link #setWeights} to have it made again.
+   *
+   * @param features The indices of each example's features.  Negative
+   *                 indices, such as those of unknown features, are skipped.
+   * @param values The values of each example's features, or null
+   *               if they are all 1.
+   * @param scores Where to put the scores, of length at least
+   *               {@code features.length * labelIndex().size()}
+   * @param labelMajor Whether to use the label major weights
+   */
+  public void scoresOf(int[][] features, double[][] values, double[] scores, boolean labelMajor) {
+    int numLabels = labelIndex.size();
+    double[] labelMajorWeights = labelMajor ? labelMajorWeights() : null;
+    for (int i = 0; i < features.length; i++) {
+      scoreInto(features[i], values == null ? null : values[i], labelMajorWeights, scores, i * numLabels);
+    }
+  }
+
+  /**
+   * As {@link #scoresOf(int[][], double[][], double[], boolean)}, with
+   * the scores rounded to floats.
+   */
+  public void scoresOf(int[][] features, double[][] values, float[] scores, boolean labelMajor) {
+    int numLabels = labelIndex.size();
+    double[] labelMajorWeights = labelMajor ? labelMajorWeights() : null;
+    double[] exampleScores = new double[numLabels];
+    for (int i = 0; i < features.length; i++) {
+      scoreInto(features[i], values == null ? null : values[i], labelMajorWeights, exampleScores, 0);
+      for (int j = 0; j < numLabels; j++) {
+        scores[i * numLabels + j] = (float) exampleScores[j];
+      }
+    }
+  }
+
+  /**
+   * As {@link #scoresOf(int[][], double[][], double[], boolean)}, but
+   * puts the probability of each label, as {@link #probabilityOf(int[])}
+   * gives, in place of its score.
+   */
+  public void probabilitiesOf(int[][] features, double[][] values, double[] probabilities, boolean labelMajor) {
+    scoresOf(features, values, probabilities, labelMajor);
+    int numLabels = labelIndex.size();
+    for (int start = 0, end = features.length * numLabels; start < end; start += numLabels) {
+      double logSum = ArrayMath.logSum(probabilities, start, start + numLabels);
+      for (int j = start; j < start + numLabels; j++) {
+        probabilities[j] = Math.exp(probabilities[j] - logSum);
+      }
+    }
+  }
+
+  /** Puts the scores of one example in scores[offset] on */
+  private void scoreInto(int[] features, double[] values, double[] labelMajorWeights, double[] scores, int offset) {
+    int numLabels = labelIndex.size();
+    if (labelMajorWeights != null) {
+      int numFeatures = labelMajorWeights.length / numLabels;
+      for (int j = 0; j < numLabels; j++) {
+        int start = j * numFeatures;
+        double score = 0.0;
+        for (int k = 0; k < features.length; k++) {
+          int feature = features[k];
+          if (feature >= 0) {
+            score += (values == null) ? labelMajorWeights[start + feature] : labelMajorWeights[start + feature] * values[k];
+          }
+        }
+        scores[offset + j] = score + thresholds[j];
+      }
+    } else {
+      Arrays.fill(scores, offset, offset + numLabels, 0.0);
+      for (int k = 0; k < features.length; k++) {
+        int feature = features[k];
+        if (feature < 0) {
+          continue;
+        }
+        double[] row = weights[feature];
+        if (values == null) {
+          for (int j = 0; j < numLabels; j++) {
+            scores[offset + j] += row[j];
+          }
+        } else {
+          double value = values[k];
+          for (int j = 0; j < numLabels; j++) {
+            scores[offset + j] += row[j] * value;
+          }
+        }
+      }
+      for (int j = 0; j < numLabels; j++) {
+        scores[offset + j] += thresholds[j];
+      }
+    }
+  }
+
+  private synchronized double[] labelMajorWeights() {
+    if (labelMajorWeights == null) {
+      int numLabels = labelIndex.size();
+      if ((long) weights.length * numLabels > Integer.MAX_VALUE) {
+        throw new IllegalStateException("Too many weights for a label major array: " + weights.length + " features * " + numLabels + " labels");
+      }
+      double[] transposed = new double[weights.length * numLabels];
+      for (int f = 0; f < weights.length; f++) {
+        for (int j = 0; j < numLabels; j++) {
+          transposed[j * weights.length + f] = weights[f][j];
+        }
+      }
+      labelMajorWeights = transposed;
+    }
+    return labelMajorWeights;
+  }
+
   /**
    * Returns a counter for the log probability of each of the classes
    * looking at the the sum of e^v for each count v, should be 1
@@ -1375,6 +1517,7 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
   public void adaptWeights(Dataset<L, F> adapt,LinearClassifierFactory<L, F> lcf) {
     System.err.println("before adapting, weights size="+weights.length);
     weights = lcf.adaptWeights(weights,adapt);
+    clearLabelMajorWeights();
     System.err.println("after adapting, weights size="+weights.length);
   }
 
@@ -1384,6 +1527,11 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
 
   public void setWeights(double[][] newWeights) {
     weights = newWeights;
+    clearLabelMajorWeights();
+  }
+
+  private synchronized void clearLabelMajorWeights() {
+    labelMajorWeights = null;
   }
 
   /**
@@ -93,6 +93,10 @@ public abstract class AbstractSequenceClassifier<IN extends CoreMap> implements
   // so we need a concurrent data structure.  created in reinit()
   protected Set<String> knownLCWords = null;
 
+  public Set<String> knownLCWords() {
+    return knownLCWords;
+  }
+
   private DocumentReaderAndWriter<IN> defaultReaderAndWriter;
   public DocumentReaderAndWriter<IN> defaultReaderAndWriter() {
     return defaultReaderAndWriter;
@@ -391,6 +391,23 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
   @Override
   public Collection<String> getCliqueFeatures(PaddedList<IN> cInfo, int loc, Clique clique) {
     Collection<String> features = Generics.newHashSet();
+    addCliqueFeatures(cInfo, loc, clique, (c, suffix) -> addAllInterningAndSuffixing(features, c, suffix));
+
+    // System.err.println(StringUtils.join(features,"\n")+"\n");
+    return features;
+  }
+
+  /**
+   * Passes the same features as {@link #getCliqueFeatures(PaddedList, int, Clique)}
+   * to {@code sink} without building the suffixed feature Strings.
+   */
+  @Override
+  public boolean getCliqueFeatures(PaddedList<IN> cInfo, int loc, Clique clique, SuffixedFeatureSink sink) {
+    addCliqueFeatures(cInfo, loc, clique, sink);
+    return true;
+  }
+
+  private void addCliqueFeatures(PaddedList<IN> cInfo, int loc, Clique clique, SuffixedFeatureSink sink) {
     String domain = cInfo.get(0).get(CoreAnnotations.DomainAnnotation.class);
     final boolean doFE = domain != null;
 
@@ -406,9 +423,9 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     } else if (clique == cliqueCpC) {
       c = featuresCpC(cInfo, loc);
       suffix = "CpC";
-      addAllInterningAndSuffixing(features, c, suffix);
+      sink.add(c, suffix);
       if (doFE) {
-        addAllInterningAndSuffixing(features, c, domain + '-' + suffix);
+        sink.add(c, domain + '-' + suffix);
       }
       c = featuresCnC(cInfo, loc-1);
       suffix = "CnC";
@@ -427,9 +444,9 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     } else if (clique == cliqueCpCp2C) {
       c = featuresCpCp2C(cInfo, loc);
       suffix = "CpCp2C";
-      addAllInterningAndSuffixing(features, c, suffix);
+      sink.add(c, suffix);
       if (doFE) {
-        addAllInterningAndSuffixing(features, c, domain+ '-' + suffix);
+        sink.add(c, domain+ '-' + suffix);
       }
       c = featuresCpCnC(cInfo, loc-1);
       suffix = "CpCnC";
@@ -443,13 +460,10 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
       throw new IllegalArgumentException("Unknown clique: " + clique);
     }
 
-    addAllInterningAndSuffixing(features, c, suffix);
+    sink.add(c, suffix);
     if (doFE) {
-      addAllInterningAndSuffixing(features, c, domain + '-' + suffix);
+      sink.add(c, domain + '-' + suffix);
     }
-
-    // System.err.println(StringUtils.join(features,"\n")+"\n");
-    return features;
   }
 
 
@@ -43,7 +43,8 @@ import java.util.*;
 public class CRFBiasedClassifier<IN extends CoreMap> extends CRFClassifier<IN> {
 
   private static final String BIAS = "@@@DECODING_CLASS_BIAS@@@";
-  private boolean testTime = false;
+  /** Whether the current thread is inside {@link #classify}; per thread so that sentences can be classified in parallel */
+  private final ThreadLocal<Boolean> testTime = ThreadLocal.withInitial(() -> Boolean.FALSE);
 
 
   public CRFBiasedClassifier(Properties props) {
@@ -52,11 +53,18 @@ public class CRFBiasedClassifier<IN extends CoreMap> extends CRFClassifier<IN> {
 
   public CRFBiasedClassifier(SeqClassifierFlags flags) {super(flags); }
 
+  /** Bias features are added in {@link #makeDatum}, so feature ids must come from the Strings. */
+  @Override
+  protected boolean useFeatureIds() {
+    return false;
+  }
+
   @Override
   public CRFDatum<List<String>, CRFLabel> makeDatum(List<IN> info, int loc, List<FeatureFactory<IN>> featureFactories) {
 
-    pad.set(CoreAnnotations.AnswerAnnotation.class, flags.backgroundSymbol);
+    // pad's answer is already the background symbol (see AbstractSequenceClassifier.reinit), and setting it here is not threadsafe
     PaddedList<IN> pInfo = new PaddedList<IN>(info, pad);
+    boolean testTime = this.testTime.get();
 
     List<List<String>> features = new ArrayList<List<String>>();
     Collection<Clique> done = Generics.newHashSet();
@@ -87,7 +95,13 @@ public class CRFBiasedClassifier<IN extends CoreMap> extends CRFClassifier<IN> {
   }
 
   void addBiasFeature() {
+    if (weights == null) {
+      throw new IllegalStateException("Class biases are added to the double weights, which were dropped when the weights were compacted; load the classifier with weightPrecision=double to set them");
+    }
     if(!featureIndex.contains(BIAS)) {
+      if (featureIndex.isLocked()) {
+        throw new IllegalStateException("Class biases need a new feature, but the feature index is locked, as it is when packed; load the classifier with packedFeatureIndex=false to set them");
+      }
       featureIndex.add(BIAS);
       double[][] newWeights = new double[weights.length+1][];
       System.arraycopy (weights,0,newWeights,0,weights.length);
@@ -109,10 +123,12 @@ public class CRFBiasedClassifier<IN extends CoreMap> extends CRFClassifier<IN> {
 
   @Override
   public List<IN> classify(List<IN> document) {
-    testTime = true;
-    List<IN> l = super.classify(document);
-    testTime = false;
-    return l;
+    testTime.set(Boolean.TRUE);
+    try {
+      return super.classify(document);
+    } finally {
+      testTime.set(Boolean.FALSE);
+    }
   }
 
   class CRFBiasedClassifierOptimizer implements Function<Double,Double>  {
@@ -165,6 +165,11 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   // Label dictionary for fast decoding
   LabelDictionary labelDictionary;
 
+  /** Built on first use by {@link #featureIdLookup()} when {@link SeqClassifierFlags#featureIdInference} is set */
+  private volatile FeatureIdLookup featureIdLookup;
+  private final ThreadLocal<FeatureIdLookup.Collector> featureIdCollector =
+      ThreadLocal.withInitial(FeatureIdLookup.Collector::new);
+
   // List selftraindatums = new ArrayList();
 
   protected CRFClassifier() {
@@ -207,7 +212,12 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @return number of weights
    */
   public int getNumWeights() {
-    if (weights == null) return 0;
+    if (weights == null) {
+      if (cliquePotentialFunction instanceof PackedLinearCliquePotentialFunction) {
+        return ((PackedLinearCliquePotentialFunction) cliquePotentialFunction).numWeights();
+      }
+      return 0;
+    }
     int numWeights = 0;
     for (double[] wts : weights) {
       numWeights += wts.length;
@@ -443,6 +453,20 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       Collections.reverse(document);
     }
 
+    if (useFeatureIds()) {
+      FeatureIdLookup lookup = featureIdLookup();
+      FeatureIdLookup.Collector collector = featureIdCollector.get();
+      for (int j = 0; j < docSize; j++) {
+        data[j] = makeFeatureIds(document, j, lookup, collector);
+        IN wi = document.get(j);
+        labels[j] = classIndex.indexOf(wi.get(CoreAnnotations.AnswerAnnotation.class));
+      }
+      if (flags.useReverse) {
+        Collections.reverse(document);
+      }
+      return new Triple<int[][][], int[], double[][][]>(data, labels, featureVals);
+    }
+
     // System.err.println("docSize:"+docSize);
     for (int j = 0; j < docSize; j++) {
       CRFDatum<List<String>, CRFLabel> d = makeDatum(document, j, featureFactories);
@@ -489,6 +513,68 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     return new Triple<int[][][], int[], double[][][]>(data, labels, featureVals);
   }
 
+  /**
+   * Whether {@link #documentToDataAndLabels} should look up feature ids
+   * directly from the feature factories' base features and suffixes
+   * (see {@link SeqClassifierFlags#featureIdInference}) rather than
+   * from the feature Strings.  Subclasses which change how datums are
+   * made must return false.
+   */
+  protected boolean useFeatureIds() {
+    return flags.featureIdInference && !flags.useEmbedding && flags.printFeatures == null;
+  }
+
+  private FeatureIdLookup featureIdLookup() {
+    FeatureIdLookup lookup = featureIdLookup;
+    if (lookup == null || !lookup.isCurrent(featureIndex)) {
+      synchronized (this) {
+        lookup = featureIdLookup;
+        if (lookup == null || !lookup.isCurrent(featureIndex)) {
+          lookup = new FeatureIdLookup(featureIndex);
+          featureIdLookup = lookup;
+        }
+      }
+    }
+    return lookup;
+  }
+
+  /**
+   * Computes the same feature ids as {@link #makeDatum} followed by
+   * looking each feature String up in the feature index, in the same
+   * order, but without building the suffixed feature Strings for
+   * factories which support
+   * {@link FeatureFactory#getCliqueFeatures(PaddedList, int, Clique, FeatureFactory.SuffixedFeatureSink)}.
+   */
+  private int[][] makeFeatureIds(List<IN> info, int loc, FeatureIdLookup lookup, FeatureIdLookup.Collector collector) {
+    PaddedList<IN> pInfo = new PaddedList<IN>(info, pad);
+
+    int[][] ids = new int[windowSize][];
+    Collection<Clique> done = Generics.newHashSet();
+    for (int i = 0; i < windowSize; i++) {
+      List<Clique> windowCliques = FeatureFactory.getCliques(i, 0);
+      windowCliques.removeAll(done);
+      done.addAll(windowCliques);
+      collector.clearIds();
+      for (Clique c : windowCliques) {
+        for (FeatureFactory<IN> featureFactory : featureFactories) {
+          collector.reset();
+          if (featureFactory.getCliqueFeatures(pInfo, loc, c, collector)) {
+            collector.appendIds(lookup);
+          } else {
+            for (String feature : featureFactory.getCliqueFeatures(pInfo, loc, c)) {
+              int index = featureIndex.indexOf(feature);
+              if (index >= 0) {
+                collector.appendId(index);
+              }
+            }
+          }
+        }
+      }
+      ids[i] = collector.idsToArray();
+    }
+    return ids;
+  }
+
   private int[][][] transformDocData(int[][][] docData) {
     int[][][] transData = new int[docData.length][][];
     for (int i = 0; i < docData.length; i++) {
@@ -1196,6 +1282,23 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     return cliquePotentialFunction;
   }
 
+  /**
+   * Replaces the weights with a copy packed at the given precision,
+   * "float" or "byte" (see {@link SeqClassifierFlags#weightPrecision}),
+   * and drops the {@code double[][]} weights.  This is only for tagging:
+   * afterwards the classifier can no longer be trained, combined with
+   * another classifier, serialized or given class biases.  Both copies
+   * of the weights are held while packing, so this lowers the heap
+   * used after it returns, not the peak.
+   */
+  public void compactWeights(String precision) {
+    if (weights == null) {
+      throw new IllegalStateException("The weights have already been compacted");
+    }
+    cliquePotentialFunction = PackedLinearCliquePotentialFunction.pack(weights, precision);
+    weights = null;
+  }
+
   public void updateWeightsForTest(double[] x) {
     cliquePotentialFunction = cliquePotentialFunctionHelper.getCliquePotentialFunction(x);
   }
@@ -2536,6 +2639,9 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * whole classifier but just the data that represents a classifier model.)
    */
   public void serializeClassifier(ObjectOutputStream oos) {
+    if (weights == null) {
+      throw new IllegalStateException("Cannot serialize a classifier whose weights were compacted for tagging");
+    }
     try {
       oos.writeObject(labelIndices);
       oos.writeObject(classIndex);
@@ -2617,10 +2723,24 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       flags.setProperties(props, false);
     }
 
+    if (flags.packedFeatureIndex) {
+      // Java serialization gives a HashIndex, which can't be avoided
+      // without changing the model format; packing it before the feature
+      // factories are initialized and the weights are read at least lets
+      // it be collected before those are in memory too
+      featureIndex = new PackedStringIndex(featureIndex);
+    }
+
     reinit();
 
     windowSize = ois.readInt();
     weights = (double[][]) ois.readObject();
+    if (flags.weightPrecision != null && ! flags.weightPrecision.equalsIgnoreCase("double")) {
+      // the double weights have been read in full by now, so this only
+      // lowers the heap used once loaded; compacting before the rest of
+      // the model is read keeps that from adding to the peak
+      compactWeights(flags.weightPrecision);
+    }
 
     // WordShapeClassifier.setKnownLowerCaseWords((Set) ois.readObject());
     knownLCWords = (Set<String>) ois.readObject();
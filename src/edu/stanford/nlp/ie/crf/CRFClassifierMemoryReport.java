@@ -0,0 +1,257 @@
+package edu.stanford.nlp.ie.crf;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.PackedStringIndex;
+import edu.stanford.nlp.util.StringUtils;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Reports how much memory the parts of a trained {@link CRFClassifier}
+ * take up, how much packing its weights as floats or bytes would save
+ * (see {@link edu.stanford.nlp.sequences.SeqClassifierFlags#weightPrecision}),
+ * and, given a held-out file, how the packed weights change its F1.
+ * <br>
+ * Usage: {@code java edu.stanford.nlp.ie.crf.CRFClassifierMemoryReport
+ * -loadClassifier model.ser.gz [-testFile heldout.tsv]
+ * [-weightPrecision float|byte]}.  Other flags are passed on to the
+ * classifier as when tagging.  Without -weightPrecision both packings
+ * are reported.
+ * <br>
+ * Heap sizes are estimates from the sizes of the arrays and objects
+ * involved, for a 64 bit JVM with compressed references and Strings
+ * backed by char arrays.  The feature factories and flags hold objects
+ * of many kinds, so they are given by their serialized size instead,
+ * which is a rough guide to their size on the heap.
+ */
+public class CRFClassifierMemoryReport {
+
+  private CRFClassifierMemoryReport() {} // static methods
+
+  private static final int HEADER = 12;
+  private static final int REFERENCE = 4;
+  /** A HashMap entry, plus its share of a table which is at most 3/4 full */
+  private static final int HASH_ENTRY = 32 + 2 * REFERENCE;
+
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+  private static long arrayBytes(long length, int elementSize) {
+    return align(HEADER + 4 + length * elementSize);
+  }
+
+  private static long stringBytes(String s) {
+    return align(HEADER + REFERENCE + 4) + arrayBytes(s.length(), 2);
+  }
+
+  /** A HashIndex or another index of Strings */
+  static long featureIndexBytes(Index<String> index) {
+    if (index instanceof PackedStringIndex) {
+      return ((PackedStringIndex) index).sizeInBytes();
+    }
+    long bytes = arrayBytes(index.size(), REFERENCE);
+    for (String feature : index) {
+      // the String, its entry in the map and the boxed index
+      bytes += stringBytes(feature) + HASH_ENTRY + align(HEADER + 4);
+    }
+    return bytes;
+  }
+
+  static long weightBytes(double[][] weights) {
+    long bytes = arrayBytes(weights.length, REFERENCE);
+    for (double[] row : weights) {
+      bytes += arrayBytes(row.length, 8);
+    }
+    return bytes;
+  }
+
+  static long labelIndexBytes(List<Index<CRFLabel>> labelIndices) {
+    long bytes = 0;
+    for (Index<CRFLabel> index : labelIndices) {
+      bytes += arrayBytes(index.size(), REFERENCE);
+      for (CRFLabel label : index) {
+        bytes += align(HEADER + REFERENCE + 4) + arrayBytes(label.getLabel().length, 4) + HASH_ENTRY + align(HEADER + 4);
+      }
+    }
+    return bytes;
+  }
+
+  static long stringSetBytes(Collection<String> strings) {
+    long bytes = 0;
+    for (String s : strings) {
+      bytes += stringBytes(s) + HASH_ENTRY;
+    }
+    return bytes;
+  }
+
+  static long serializedBytes(Object o) {
+    final long[] count = new long[1];
+    OutputStream counter = new OutputStream() {
+      @Override
+      public void write(int b) {
+        count[0]++;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        count[0] += len;
+      }
+    };
+    try (ObjectOutputStream oos = new ObjectOutputStream(counter)) {
+      oos.writeObject(o);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+    return count[0];
+  }
+
+  private static void printSize(PrintStream out, String component, String count, long bytes) {
+    out.printf("%-24s %12s %12.2f MB%n", component, count, bytes / (1024.0 * 1024.0));
+  }
+
+  /** Prints the size of each part of the classifier, which must still have its double weights */
+  public static void printMemoryReport(CRFClassifier<?> crf, List<String> precisions, PrintStream out) {
+    out.printf("%-24s %12s %15s%n", "Component", "Count", "Size");
+    String indexName = (crf.featureIndex instanceof PackedStringIndex) ? "features (off heap)" : "features";
+    printSize(out, indexName, Integer.toString(crf.featureIndex.size()), featureIndexBytes(crf.featureIndex));
+    printSize(out, "weights (double)", Integer.toString(crf.getNumWeights()), weightBytes(crf.weights));
+    for (String precision : precisions) {
+      PackedLinearCliquePotentialFunction packed = PackedLinearCliquePotentialFunction.pack(crf.weights, precision);
+      printSize(out, "weights (" + precision + ')', Integer.toString(packed.numWeights()), packed.sizeInBytes());
+    }
+    int numLabels = 0;
+    for (Index<CRFLabel> index : crf.labelIndices) {
+      numLabels += index.size();
+    }
+    printSize(out, "label indices", Integer.toString(numLabels), labelIndexBytes(crf.labelIndices));
+    printSize(out, "class index", Integer.toString(crf.classIndex.size()), featureIndexBytes(crf.classIndex));
+    if (crf.knownLCWords() != null) {
+      printSize(out, "known lowercase words", Integer.toString(crf.knownLCWords().size()), stringSetBytes(crf.knownLCWords()));
+    }
+    if (crf.labelDictionary != null) {
+      printSize(out, "label dictionary *", "", serializedBytes(crf.labelDictionary));
+    }
+    printSize(out, "feature factories *", Integer.toString(crf.featureFactories.size()), serializedBytes(new ArrayList<>(crf.featureFactories)));
+    printSize(out, "flags *", "", serializedBytes(crf.flags));
+    out.println("* serialized size");
+  }
+
+  /** Entity true positives, false positives and false negatives, and how many answers differ from reference, if any */
+  private static class Score {
+    final Counter<String> tp = new ClassicCounter<>();
+    final Counter<String> fp = new ClassicCounter<>();
+    final Counter<String> fn = new ClassicCounter<>();
+    int changed = 0;
+
+    double f1() {
+      double tp = this.tp.totalCount();
+      double denominator = 2 * tp + fp.totalCount() + fn.totalCount();
+      return denominator == 0.0 ? 0.0 : 2 * tp / denominator;
+    }
+  }
+
+  private static Score score(CRFClassifier<CoreLabel> crf, List<List<CoreLabel>> documents, List<List<String>> reference) {
+    Score score = new Score();
+    for (int i = 0; i < documents.size(); i++) {
+      List<CoreLabel> document = crf.classify(documents.get(i));
+      crf.countResults(document, score.tp, score.fp, score.fn);
+      if (reference != null) {
+        List<String> answers = reference.get(i);
+        for (int j = 0; j < document.size(); j++) {
+          if ( ! answers.get(j).equals(document.get(j).get(CoreAnnotations.AnswerAnnotation.class))) {
+            score.changed++;
+          }
+        }
+      }
+    }
+    return score;
+  }
+
+  private static List<List<String>> answers(List<List<CoreLabel>> documents) {
+    List<List<String>> answers = new ArrayList<>();
+    for (List<CoreLabel> document : documents) {
+      List<String> docAnswers = new ArrayList<>();
+      for (CoreLabel token : document) {
+        docAnswers.add(token.get(CoreAnnotations.AnswerAnnotation.class));
+      }
+      answers.add(docAnswers);
+    }
+    return answers;
+  }
+
+  /**
+   * Tags the documents with the classifier's double weights and with
+   * each packing of them, and prints the entity F1 of each and how
+   * many tokens the packed weights tag differently.
+   */
+  public static void printF1Report(CRFClassifier<CoreLabel> crf, List<String> precisions,
+                                   List<List<CoreLabel>> documents, PrintStream out) {
+    int numTokens = 0;
+    for (List<CoreLabel> document : documents) {
+      numTokens += document.size();
+    }
+    CliquePotentialFunction original = crf.getCliquePotentialFunctionForTest();
+    try {
+      Score base = score(crf, documents, null);
+      List<List<String>> reference = answers(documents);
+      out.printf("%-24s %8s %8s %16s%n", "Weights", "F1", "Delta", "Changed tokens");
+      out.printf("%-24s %8.4f %8s %16s%n", "double", base.f1(), "", "");
+      for (String precision : precisions) {
+        crf.cliquePotentialFunction = PackedLinearCliquePotentialFunction.pack(crf.weights, precision);
+        Score packed = score(crf, documents, reference);
+        out.printf("%-24s %8.4f %+8.4f %9d / %d%n", precision, packed.f1(), packed.f1() - base.f1(), packed.changed, numTokens);
+      }
+    } finally {
+      crf.cliquePotentialFunction = original;
+    }
+  }
+
+  public static void main(String[] args) {
+    StringUtils.printErrInvocationString("CRFClassifierMemoryReport", args);
+    Properties props = StringUtils.argsToProperties(args);
+    List<String> precisions = new ArrayList<>();
+    String precision = props.getProperty("weightPrecision");
+    if (precision == null || precision.equalsIgnoreCase("double")) {
+      precisions.add("float");
+      precisions.add("byte");
+    } else {
+      precisions.add(precision);
+    }
+    // the report needs the double weights to compare against
+    props.setProperty("weightPrecision", "double");
+
+    String loadPath = props.getProperty("loadClassifier");
+    if (loadPath == null) {
+      System.err.println("usage: java edu.stanford.nlp.ie.crf.CRFClassifierMemoryReport -loadClassifier model.ser.gz [-testFile file] [-weightPrecision float|byte]");
+      System.exit(1);
+    }
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<>(props);
+    crf.loadClassifierNoExceptions(loadPath, props);
+
+    printMemoryReport(crf, precisions, System.out);
+
+    String testFile = props.getProperty("testFile");
+    if (testFile != null) {
+      List<List<CoreLabel>> documents = new ArrayList<>();
+      for (List<CoreLabel> document : crf.makeObjectBankFromFile(testFile, crf.defaultReaderAndWriter())) {
+        documents.add(document);
+      }
+      System.out.println();
+      printF1Report(crf, precisions, documents, System.out);
+    }
+  }
+
+}
@@ -95,6 +95,12 @@ public class CRFClassifierNonlinear<IN extends CoreMap> extends CRFClassifier<IN
     return transData;
   }
 
+  /** The nonlinear clique potentials only come with double weights */
+  @Override
+  public void compactWeights(String precision) {
+    throw new UnsupportedOperationException("CRFClassifierNonlinear cannot compact its weights");
+  }
+
   @Override
   protected CliquePotentialFunction getCliquePotentialFunctionForTest() {
     if (cliquePotentialFunction == null) {
@@ -0,0 +1,286 @@
+package edu.stanford.nlp.ie.crf;
+
+import edu.stanford.nlp.sequences.FeatureFactory;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.PackedStringIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps features given as a base feature plus clique suffix (see
+ * {@link FeatureFactory.SuffixedFeatureSink}) to their indices in a
+ * CRF feature index, without building the suffixed feature Strings.
+ * <br>
+ * The hash of a suffixed feature is computed from the cached hash
+ * codes of its two parts, and equals {@code String.hashCode()} of the
+ * concatenation.  The table is keyed by that hash; candidate matches
+ * are verified character by character against the indexed String,
+ * so lookups are exact.
+ * <br>
+ * This saves building, hashing and interning the suffixed Strings, but
+ * not the base feature Strings, which the feature factories' templates
+ * still build for each token: ids are looked up from them, not emitted
+ * by the templates.
+ * <br>
+ * Instances are immutable and safe to share between threads.  The
+ * per-document scratch state lives in {@link Collector}, which is not.
+ */
+class FeatureIdLookup {
+
+  private final Index<String> featureIndex;
+  /** The feature index if it is packed, so that matches can be checked without decoding */
+  private final PackedStringIndex packedIndex;
+  private final int size;
+
+  /** Feature hash for each feature id */
+  private final int[] hashes;
+  /** Open-addressing table of feature id + 1; 0 marks an empty slot */
+  private final int[] slots;
+  private final int mask;
+
+  FeatureIdLookup(Index<String> featureIndex) {
+    this.featureIndex = featureIndex;
+    this.packedIndex = featureIndex instanceof PackedStringIndex ? (PackedStringIndex) featureIndex : null;
+    this.size = featureIndex.size();
+    this.hashes = new int[size];
+    int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+    this.slots = new int[capacity];
+    this.mask = capacity - 1;
+    for (int id = 0; id < size; ++id) {
+      int hash = featureIndex.get(id).hashCode();
+      hashes[id] = hash;
+      int i = slot(hash);
+      while (slots[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      slots[i] = id + 1;
+    }
+  }
+
+  private int slot(int hash) {
+    int h = hash * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  /**
+   * Whether this lookup still describes the given index; it must be
+   * rebuilt if the classifier's feature index was replaced or grown.
+   */
+  boolean isCurrent(Index<String> index) {
+    return index == featureIndex && index.size() == size;
+  }
+
+  /** Returns the index of the feature, or -1 if it is not in the feature index. */
+  int indexOf(SuffixedFeature feature) {
+    int hash = feature.hash;
+    int i = slot(hash);
+    while (true) {
+      int entry = slots[i];
+      if (entry == 0) {
+        return -1;
+      }
+      int id = entry - 1;
+      if (hashes[id] == hash &&
+          (packedIndex != null ? packedIndex.keyEquals(id, feature) : feature.matches(featureIndex.get(id)))) {
+        return id;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+
+  /**
+   * The suffix part of a feature, {@code '|' + suffix}, with its hash
+   * and the power of 31 needed to combine it with a base hash.
+   */
+  private static class Tail {
+    final String text;
+    final int hash;
+    final int pow31;
+
+    Tail(String text) {
+      this.text = text;
+      this.hash = text.hashCode();
+      int pow = 1;
+      for (int i = 0; i < text.length(); ++i) {
+        pow *= 31;
+      }
+      this.pow31 = pow;
+    }
+  }
+
+
+  /**
+   * A feature String represented as a base String and an optional
+   * tail.  Its hashCode, equals and compareTo agree with those of the
+   * concatenated String, so a HashSet of these has the same iteration
+   * order as a HashSet of the Strings would.
+   */
+  static final class SuffixedFeature implements CharSequence, Comparable<SuffixedFeature> {
+    private String base;
+    private String tail;
+    private int length;
+    private int hash;
+
+    void set(String base, Tail tail) {
+      this.base = base;
+      if (tail == null) {
+        this.tail = null;
+        this.length = base.length();
+        this.hash = base.hashCode();
+      } else {
+        this.tail = tail.text;
+        this.length = base.length() + tail.text.length();
+        this.hash = base.hashCode() * tail.pow31 + tail.hash;
+      }
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int i) {
+      int baseLength = base.length();
+      return i < baseLength ? base.charAt(i) : tail.charAt(i - baseLength);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return toString().subSequence(start, end);
+    }
+
+    boolean matches(String feature) {
+      return feature.length() == length && feature.startsWith(base) &&
+          (tail == null || feature.startsWith(tail, base.length()));
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SuffixedFeature)) {
+        return false;
+      }
+      SuffixedFeature other = (SuffixedFeature) o;
+      if (other.hash != hash || other.length != length) {
+        return false;
+      }
+      for (int i = 0; i < length; ++i) {
+        if (charAt(i) != other.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /** Same ordering as {@link String#compareTo} on the concatenations. */
+    @Override
+    public int compareTo(SuffixedFeature other) {
+      int n = Math.min(length, other.length);
+      for (int i = 0; i < n; ++i) {
+        char c1 = charAt(i);
+        char c2 = other.charAt(i);
+        if (c1 != c2) {
+          return c1 - c2;
+        }
+      }
+      return length - other.length;
+    }
+
+    @Override
+    public String toString() {
+      return tail == null ? base : base + tail;
+    }
+  }
+
+
+  /**
+   * Collects the features of one clique from a
+   * {@link FeatureFactory#getCliqueFeatures(edu.stanford.nlp.util.PaddedList, int, edu.stanford.nlp.sequences.Clique, FeatureFactory.SuffixedFeatureSink)}
+   * call and resolves them to feature ids in the order the factory's
+   * String features would have had.  Reuses its feature objects between
+   * cliques, so one instance should be used by only one thread.
+   */
+  static class Collector implements FeatureFactory.SuffixedFeatureSink {
+    private final Map<String, Tail> tails = Generics.newHashMap();
+    private final List<SuffixedFeature> pool = new ArrayList<>();
+    private int used;
+    private Set<SuffixedFeature> features;
+    private int[] ids = new int[64];
+    private int numIds;
+
+    /** Start collecting the features of a new clique. */
+    void reset() {
+      used = 0;
+      features = Generics.newHashSet();
+    }
+
+    @Override
+    public void add(Collection<String> addend, String suffix) {
+      Tail tail = null;
+      if (suffix != null && ! suffix.isEmpty()) {
+        tail = tails.get(suffix);
+        if (tail == null) {
+          tail = new Tail('|' + suffix);
+          tails.put(suffix, tail);
+        }
+      }
+      for (String base : addend) {
+        if (used == pool.size()) {
+          pool.add(new SuffixedFeature());
+        }
+        SuffixedFeature feature = pool.get(used);
+        feature.set(base, tail);
+        if (features.add(feature)) {
+          ++used;
+        }
+      }
+    }
+
+    /**
+     * Append the ids of the features collected since the last
+     * {@link #reset()} to the id buffer, in the iteration order of the
+     * factory's feature set.  Features which are not in the feature
+     * index are skipped, as they are when looking up Strings.
+     */
+    void appendIds(FeatureIdLookup lookup) {
+      for (SuffixedFeature feature : features) {
+        int id = lookup.indexOf(feature);
+        if (id >= 0) {
+          appendId(id);
+        }
+      }
+    }
+
+    void appendId(int id) {
+      if (numIds == ids.length) {
+        ids = Arrays.copyOf(ids, ids.length * 2);
+      }
+      ids[numIds++] = id;
+    }
+
+    /** Start a new id buffer, e.g. for the next clique window. */
+    void clearIds() {
+      numIds = 0;
+    }
+
+    int[] idsToArray() {
+      return Arrays.copyOf(ids, numIds);
+    }
+  }
+
+}
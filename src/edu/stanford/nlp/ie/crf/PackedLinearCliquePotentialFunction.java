@@ -0,0 +1,130 @@
+package edu.stanford.nlp.ie.crf;
+
+/**
+ * A {@link LinearCliquePotentialFunction} for tagging, whose weights
+ * are packed one feature after another into a single array of floats
+ * or of 8 bit values instead of a {@code double[][]}.
+ * <br>
+ * Most features of a CRF have only a handful of weights, one per
+ * label of their clique, so a {@code double[]} per feature spends
+ * more on its object header and the reference to it than on the
+ * weights.  Packing the rows saves those along with half or seven
+ * eighths of the weights themselves.
+ * <br>
+ * Instances are immutable and safe to share between threads.
+ */
+abstract class PackedLinearCliquePotentialFunction implements CliquePotentialFunction {
+
+  /** The weights of feature i start at offsets[i] */
+  final int[] offsets;
+
+  PackedLinearCliquePotentialFunction(double[][] weights) {
+    offsets = new int[weights.length + 1];
+    for (int i = 0; i < weights.length; i++) {
+      offsets[i + 1] = offsets[i] + weights[i].length;
+    }
+  }
+
+  /**
+   * Packs the weights at the given precision, "float" or "byte".
+   *
+   * @throws IllegalArgumentException For any other precision
+   */
+  static PackedLinearCliquePotentialFunction pack(double[][] weights, String precision) {
+    if (precision.equalsIgnoreCase("float")) {
+      return new Floats(weights);
+    } else if (precision.equalsIgnoreCase("byte")) {
+      return new Bytes(weights);
+    } else {
+      throw new IllegalArgumentException("Unknown weight precision " + precision);
+    }
+  }
+
+  abstract double weight(int feature, int labelIndex);
+
+  /** Bytes taken up by the packed arrays */
+  abstract long sizeInBytes();
+
+  int numWeights() {
+    return offsets[offsets.length - 1];
+  }
+
+  @Override
+  public double computeCliquePotential(int cliqueSize, int labelIndex,
+      int[] cliqueFeatures, double[] featureVal, int posInSent) {
+    double output = 0.0;
+    for (int m = 0; m < cliqueFeatures.length; m++) {
+      double dotProd = weight(cliqueFeatures[m], labelIndex);
+      if (featureVal != null) {
+        dotProd *= featureVal[m];
+      }
+      output += dotProd;
+    }
+    return output;
+  }
+
+  /** The weights rounded to floats */
+  static class Floats extends PackedLinearCliquePotentialFunction {
+    private final float[] weights;
+
+    Floats(double[][] weights) {
+      super(weights);
+      this.weights = new float[numWeights()];
+      for (int i = 0; i < weights.length; i++) {
+        for (int j = 0; j < weights[i].length; j++) {
+          this.weights[offsets[i] + j] = (float) weights[i][j];
+        }
+      }
+    }
+
+    @Override
+    double weight(int feature, int labelIndex) {
+      return weights[offsets[feature] + labelIndex];
+    }
+
+    @Override
+    long sizeInBytes() {
+      return offsets.length * 4L + weights.length * 4L;
+    }
+  }
+
+  /**
+   * Each feature's weights quantized to 8 bits: the weight is its byte
+   * times the feature's scale, which maps the largest weight of the
+   * feature in absolute value to 127.
+   */
+  static class Bytes extends PackedLinearCliquePotentialFunction {
+    private final byte[] weights;
+    private final float[] scales;
+
+    Bytes(double[][] weights) {
+      super(weights);
+      this.weights = new byte[numWeights()];
+      this.scales = new float[weights.length];
+      for (int i = 0; i < weights.length; i++) {
+        double max = 0.0;
+        for (double w : weights[i]) {
+          max = Math.max(max, Math.abs(w));
+        }
+        if (max == 0.0) {
+          continue;
+        }
+        scales[i] = (float) (max / 127.0);
+        for (int j = 0; j < weights[i].length; j++) {
+          this.weights[offsets[i] + j] = (byte) Math.round(weights[i][j] / scales[i]);
+        }
+      }
+    }
+
+    @Override
+    double weight(int feature, int labelIndex) {
+      return weights[offsets[feature] + labelIndex] * scales[feature];
+    }
+
+    @Override
+    long sizeInBytes() {
+      return offsets.length * 4L + weights.length + scales.length * 4L;
+    }
+  }
+
+}
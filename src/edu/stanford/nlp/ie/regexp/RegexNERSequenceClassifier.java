@@ -9,6 +9,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Properties;
 
@@ -53,8 +54,12 @@ import edu.stanford.nlp.util.Generics;
  * already been tokenized.  So, for example, with our usual English tokenization, things like genitives
  * and commas at the end of words will be separated in the input and matched as a separate token.
  *
- * This class isn't implemented very efficiently, since every regex is evaluated at every token position.
- * So it can and does get quite slow if you have a lot of patterns in your NER rules.
+ * Entries whose tokens are all plain strings, as in most gazetteers, are put in a trie of tokens, which
+ * is walked from each token position, so their cost grows with the length of the document rather than
+ * with the number of entries.  Other entries are indexed by their first token, if it is a plain string,
+ * or else by the plain string their first regex starts with, if any; only entries whose first regex
+ * starts with a special character are tried at every token position.  So many such regexes can still
+ * make this slow.
  * {@code TokensRegex} is a more general framework to provide the functionality of this class.
  * But at present we still use this class.
  *
@@ -65,6 +70,15 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
 
   private final List<Entry> entries;
 
+  /** The entries whose tokens are all literal, by their tokens */
+  private final TrieNode literalEntries = new TrieNode();
+  /** Entries with some regex token, by their first token if it is literal */
+  private final Map<String, List<Entry>> entriesByFirstToken = Generics.newHashMap();
+  /** Entries with a regex first token, by the literal prefix of that regex */
+  private final PrefixNode entriesByPrefix = new PrefixNode();
+  /** Entries which have to be tried at every token */
+  private final List<Entry> otherEntries = new ArrayList<Entry>();
+
   private final Set<String> myLabels;
 
   private final boolean ignoreCase;
@@ -123,6 +137,7 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
       for (Entry entry: entries) myLabels.add(entry.type);
     }
     // System.err.println("RegexNER using labels: " +  myLabels);
+    indexEntries();
   }
 
   /**
@@ -165,30 +180,42 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
       for (Entry entry: entries) myLabels.add(entry.type);
     }
     // System.err.println("RegexNER using labels: " + myLabels);
+    indexEntries();
   }
 
   private static class Entry implements Comparable<Entry> {
     public List<Pattern> regex; // the regex, tokenized by splitting on white space
-    public List<String> exact = new ArrayList<String>();
+    /** The key of each regex token which only matches one string (see {@link #key}), or null */
+    public String[] literals;
     public String type; // the associated type
     public Set<String> overwritableTypes;
     public double priority;
+    /** The position of the entry in the sorted entries */
+    public int index;
 
-    public Entry(List<Pattern> regex, String type, Set<String> overwritableTypes, double priority) {
+    public Entry(List<Pattern> regex, String type, Set<String> overwritableTypes, double priority, boolean ignoreCase) {
       this.regex = regex;
       this.type = type.intern();
       this.overwritableTypes = overwritableTypes;
       this.priority = priority;
-      // Efficiency shortcut
-      for (Pattern p : regex) {
-        if (p.toString().matches("[a-zA-Z0-9]+")) {
-          exact.add(p.toString());
-        } else {
-          exact.add(null);
+      literals = new String[regex.size()];
+      for (int i = 0; i < literals.length; i++) {
+        String str = regex.get(i).pattern();
+        if (literalPrefixLength(str) == str.length()) {
+          literals[i] = key(str, ignoreCase);
         }
       }
     }
 
+    public boolean isLiteral() {
+      for (String literal : literals) {
+        if (literal == null) {
+          return false;
+        }
+      }
+      return true;
+    }
+
     /** If the given priorities are equal, an entry whose regex has more tokens is assigned
      *  a higher priority. This implementation is not fine-grained enough to be consistent with equals.
      */
@@ -224,30 +251,257 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
 
   @Override
   public List<CoreLabel> classify(List<CoreLabel> document) {
-    // This is pretty deathly slow. It loops over each entry, and then loops over each document token for it.
-    // We could gain by compiling into disjunctions patterns for the same class with the same priorities and restrictions?
-    for (Entry entry : entries) {
-      int start = 0; // the index of the token from which we begin our search each iteration
-      while (true) {
-        // only search the part of the document that we haven't yet considered
-        // System.err.println("REGEX FIND MATCH FOR " + entry.regex.toString());
-        start = findStartIndex(entry, document, start, myLabels, this.ignoreCase);
-        if (start < 0) break; // no match found
-
-        // make sure we annotate only valid POS tags
-        if (containsValidPos(document, start, start + entry.regex.size())) {
-          // annotate each matching token
-          for (int i = start; i < start + entry.regex.size(); i++) {
-            CoreLabel token = document.get(i);
-            token.set(CoreAnnotations.AnswerAnnotation.class, entry.type);
+    // Find where each entry matches the words and NER tags, and then label the matches entry by
+    // entry and left to right, skipping any which overlap a token already labeled.  This gives the
+    // same labels as looking for each entry in turn over the whole document.
+    int size = document.size();
+    String[] keys = new String[size];
+    for (int i = 0; i < size; i++) {
+      String word = document.get(i).word();
+      keys[i] = (word == null) ? null : key(word, ignoreCase);
+    }
+
+    List<Long> matches = new ArrayList<Long>();
+    for (int start = 0; start < size; start++) {
+      TrieNode node = literalEntries;
+      for (int i = start; i < size; i++) {
+        node = node.child(keys[i]);
+        if (node == null) {
+          break;
+        }
+        if (node.entries != null) {
+          for (Entry entry : node.entries) {
+            if (isOverwritable(entry, document, start)) {
+              matches.add(match(entry, start));
+            }
           }
         }
-        start++;
+      }
+      if (keys[start] == null) {
+        continue;
+      }
+      addMatches(entriesByFirstToken.get(keys[start]), document, keys, start, matches);
+      PrefixNode prefix = entriesByPrefix;
+      for (int i = 0; i < keys[start].length(); i++) {
+        prefix = prefix.child(keys[start].charAt(i));
+        if (prefix == null) {
+          break;
+        }
+        addMatches(prefix.entries, document, keys, start, matches);
+      }
+      addMatches(otherEntries, document, keys, start, matches);
+    }
+
+    Collections.sort(matches);
+    for (long match : matches) {
+      Entry entry = entries.get((int) (match >>> 32));
+      int start = (int) match;
+      int end = start + entry.regex.size();
+      // make sure we annotate only valid POS tags
+      if (isUnlabeled(document, start, end) && containsValidPos(document, start, end)) {
+        // annotate each matching token
+        for (int i = start; i < end; i++) {
+          CoreLabel token = document.get(i);
+          token.set(CoreAnnotations.AnswerAnnotation.class, entry.type);
+        }
       }
     }
     return document;
   }
 
+  /** A match, encoded so that matches sort by entry and then by start */
+  private static long match(Entry entry, int start) {
+    return ((long) entry.index << 32) | start;
+  }
+
+  private void addMatches(List<Entry> candidates, List<CoreLabel> document, String[] keys, int start, List<Long> matches) {
+    if (candidates == null) {
+      return;
+    }
+    for (Entry entry : candidates) {
+      if (matches(entry, document, keys, start)) {
+        matches.add(match(entry, start));
+      }
+    }
+  }
+
+  /**
+   * Checks if the entry's regex sequence matches the tokenized document at start.  Also requires
+   * that each token's current NER-type be overwritable.  Whether the tokens have already been
+   * Answer-annotated is checked when the matches are labeled.
+   */
+  private boolean matches(Entry entry, List<CoreLabel> document, String[] keys, int start) {
+    int rSize = entry.regex.size();
+    if (start + rSize > document.size() || ! isOverwritable(entry, document, start)) {
+      return false;
+    }
+    for (int i = 0; i < rSize; i++) {
+      String literal = entry.literals[i];
+      if (literal != null) {
+        if ( ! literal.equals(keys[start + i])) {
+          return false;
+        }
+      } else if ( ! entry.regex.get(i).matcher(document.get(start + i).word()).matches()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isOverwritable(Entry entry, List<CoreLabel> document, int start) {
+    for (int i = start, end = start + entry.regex.size(); i < end; i++) {
+      String NERType = document.get(i).get(CoreAnnotations.NamedEntityTagAnnotation.class);
+      if ( ! (entry.overwritableTypes.contains(NERType) || myLabels.contains(NERType))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isUnlabeled(List<CoreLabel> document, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (document.get(i).get(CoreAnnotations.AnswerAnnotation.class) != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Characters with a meaning in a regex; a regex without any of them only matches itself */
+  private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+  /**
+   * Returns the length of the literal prefix of a regex, which every string it matches starts
+   * with.  The regex is literal if this is its length.
+   */
+  private static int literalPrefixLength(String regex) {
+    if (regex.indexOf('|') >= 0) {
+      return 0;
+    }
+    int length = 0;
+    while (length < regex.length() && REGEX_METACHARACTERS.indexOf(regex.charAt(length)) < 0) {
+      length++;
+    }
+    if (length > 0 && length < regex.length() && "?*{".indexOf(regex.charAt(length)) >= 0) {
+      // the last character may be repeated zero times
+      length -= Character.charCount(regex.codePointBefore(length));
+    }
+    return length;
+  }
+
+  /**
+   * The form in which words are compared to literal regex tokens: with ignoreCase, ASCII letters
+   * are lowercased, which is how {@link Pattern#CASE_INSENSITIVE} compares them.
+   */
+  private static String key(String word, boolean ignoreCase) {
+    if ( ! ignoreCase) {
+      return word;
+    }
+    char[] chars = null;
+    for (int i = 0; i < word.length(); i++) {
+      char ch = word.charAt(i);
+      if (ch >= 'A' && ch <= 'Z') {
+        if (chars == null) {
+          chars = word.toCharArray();
+        }
+        chars[i] = (char) (ch + ('a' - 'A'));
+      }
+    }
+    return (chars == null) ? word : new String(chars);
+  }
+
+  /** A node of the trie of the literal entries, keyed by the keys of their tokens */
+  private static class TrieNode {
+    private Map<String, TrieNode> children; // = null
+    /** The entries whose tokens lead to this node */
+    private List<Entry> entries; // = null
+
+    TrieNode child(String key) {
+      return (children == null) ? null : children.get(key);
+    }
+
+    TrieNode addChild(String key) {
+      if (children == null) {
+        children = Generics.newHashMap(4);
+      }
+      TrieNode child = children.get(key);
+      if (child == null) {
+        child = new TrieNode();
+        children.put(key, child);
+      }
+      return child;
+    }
+
+    void addEntry(Entry entry) {
+      if (entries == null) {
+        entries = new ArrayList<Entry>(1);
+      }
+      entries.add(entry);
+    }
+  }
+
+  /** A node of the trie of the literal prefixes of regexes, keyed by their characters */
+  private static class PrefixNode {
+    private Map<Character, PrefixNode> children; // = null
+    /** The entries whose first regex has the characters leading to this node as its prefix */
+    private List<Entry> entries; // = null
+
+    PrefixNode child(char ch) {
+      return (children == null) ? null : children.get(ch);
+    }
+
+    PrefixNode addChild(char ch) {
+      if (children == null) {
+        children = Generics.newHashMap(4);
+      }
+      PrefixNode child = children.get(ch);
+      if (child == null) {
+        child = new PrefixNode();
+        children.put(ch, child);
+      }
+      return child;
+    }
+
+    void addEntry(Entry entry) {
+      if (entries == null) {
+        entries = new ArrayList<Entry>(1);
+      }
+      entries.add(entry);
+    }
+  }
+
+  private void indexEntries() {
+    for (Entry entry : entries) {
+      if (entry.isLiteral()) {
+        TrieNode node = literalEntries;
+        for (String literal : entry.literals) {
+          node = node.addChild(literal);
+        }
+        node.addEntry(entry);
+      } else if (entry.literals[0] != null) {
+        List<Entry> bucket = entriesByFirstToken.get(entry.literals[0]);
+        if (bucket == null) {
+          bucket = new ArrayList<Entry>();
+          entriesByFirstToken.put(entry.literals[0], bucket);
+        }
+        bucket.add(entry);
+      } else {
+        String first = entry.regex.get(0).pattern();
+        int prefixLength = literalPrefixLength(first);
+        if (prefixLength > 0) {
+          String prefix = key(first.substring(0, prefixLength), ignoreCase);
+          PrefixNode node = entriesByPrefix;
+          for (int i = 0; i < prefixLength; i++) {
+            node = node.addChild(prefix.charAt(i));
+          }
+          node.addEntry(entry);
+        } else {
+          otherEntries.add(entry);
+        }
+      }
+    }
+  }
+
   /**
    *  Creates a combined list of Entries using the provided mapping file, and sorts them by
    *  first by priority, then the number of tokens in the regex.
@@ -292,59 +546,18 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
         throw new IllegalArgumentException("ERROR: Invalid line " + lineCount + " in regexner file " + mapping + ": \"" + line + "\"!", e);
       }
 
-      entries.add(new Entry(tokens, type, overwritableTypes, priority));
+      entries.add(new Entry(tokens, type, overwritableTypes, priority, ignoreCase));
     }
 
     Collections.sort(entries);
+    for (int i = 0; i < entries.size(); i++) {
+      entries.get(i).index = i;
+    }
     // System.err.println("Read these entries:");
     // System.err.println(entries);
     return entries;
   }
 
-  /**
-   * Checks if the entry's regex sequence is contained in the tokenized document, starting the search
-   * from index searchStart. Also requires that each token's current NER-type be overwritable,
-   * and that each token has not yet been Answer-annotated.
-   *
-   * @param entry
-   * @param document
-   * @return on success, the index of the first token in the matching sequence, otherwise -1
-   */
-  private static int findStartIndex(Entry entry, List<CoreLabel> document, int searchStart, Set<String> myLabels, boolean ignoreCase) {
-    List<Pattern> regex = entry.regex;
-    int rSize = regex.size();
-    // System.err.println("REGEX FIND MATCH FOR " + regex.toString() + " length: " + rSize);
-
-    for (int start = searchStart, end = document.size() - regex.size(); start <= end; start++) {
-      boolean failed = false;
-      for (int i = 0; i < rSize; i++) {
-        Pattern pattern = regex.get(i);
-        String exact = entry.exact.get(i);
-        CoreLabel token = document.get(start + i);
-        String NERType = token.get(CoreAnnotations.NamedEntityTagAnnotation.class);
-        String currentType = token.get(CoreAnnotations.AnswerAnnotation.class);
-
-        if (
-            currentType != null ||
-            (exact != null && ! (ignoreCase ? exact.equalsIgnoreCase(token.word()) : exact.equals(token.word()))) ||
-            ! (entry.overwritableTypes.contains(NERType) || myLabels.contains(NERType))  ||
-            ! pattern.matcher(token.word()).matches()  // last, as this is likely the expensive operation
-            ) {
-          failed = true;
-          break;
-        }
-      }
-      if (! failed) {
-        // System.err.print("MATCHED REGEX:");
-        // for(int i = start; i < start + regex.size(); i ++) System.err.print(" " + document.get(i).word());
-        // System.err.println();
-        return start;
-      }
-    }
-    return -1;
-  }
-
-
   @Override
   public List<CoreLabel> classifyWithGlobalInformation(List<CoreLabel> tokenSeq, final CoreMap doc, final CoreMap sent) {
     return classify(tokenSeq);
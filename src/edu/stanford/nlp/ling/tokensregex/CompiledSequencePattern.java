@@ -0,0 +1,282 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The NFA of a {@link SequencePattern} flattened into arrays, which lets a
+ * {@link SequenceMatcher} find where its next match starts in a single pass
+ * over the sequence, instead of running the backtracking matcher from each
+ * start in turn.  The backtracking matcher is then run only from that start,
+ * to pick the match and its groups.
+ * <br>
+ * The pass follows the states the way the backtracking matcher does (node
+ * states consume an element, group ends are only passed after one is
+ * consumed, and so on), but keeps just one thread per state, the one that
+ * started earliest, in plain int arrays.  No per branch state is needed for
+ * that, as long as the pattern has no multi node patterns, back references
+ * or conjunctions; patterns with those are not compiled.  The counts of
+ * repeat states are ignored, which can only let through starts that the
+ * backtracking matcher then rejects.
+ * <br>
+ * Instances are immutable and safe to share between threads.
+ */
+class CompiledSequencePattern {
+
+  // Kinds of states
+  private static final byte PASS = 0;        // a state that just leads on to the next states
+  private static final byte NODE = 1;
+  private static final byte GROUP_START = 2;
+  private static final byte GROUP_END = 3;
+  private static final byte SEQ_START = 4;
+  private static final byte SEQ_END = 5;
+  private static final byte REPEAT = 6;
+  private static final byte MATCH = 7;
+
+  private final byte[] kinds;
+  private final NodePattern[] nodePatterns;
+  private final int[][] next;
+  private final int[] repeatStarts;
+  private final int root;
+  /** Whether every start found is the start of a match */
+  final boolean exact;
+
+  private CompiledSequencePattern(byte[] kinds, NodePattern[] nodePatterns, int[][] next, int[] repeatStarts, int root, boolean exact) {
+    this.kinds = kinds;
+    this.nodePatterns = nodePatterns;
+    this.next = next;
+    this.repeatStarts = repeatStarts;
+    this.root = root;
+    this.exact = exact;
+  }
+
+  private static byte kindOf(SequencePattern.State state) {
+    Class<?> c = state.getClass();
+    if (c == SequencePattern.State.class || c == SequencePattern.ValueState.class) return PASS;
+    if (c == SequencePattern.NodePatternState.class) return NODE;
+    if (c == SequencePattern.GroupStartState.class) return GROUP_START;
+    if (c == SequencePattern.GroupEndState.class) return GROUP_END;
+    if (c == SequencePattern.SeqStartState.class) return SEQ_START;
+    if (c == SequencePattern.SeqEndState.class) return SEQ_END;
+    if (c == SequencePattern.RepeatState.class) return REPEAT;
+    if (c == SequencePattern.MatchState.class) return MATCH;
+    return -1;
+  }
+
+  /**
+   * Compiles the NFA starting at the given state.
+   *
+   * @return The compiled NFA, or null if it has states that can't be compiled
+   */
+  static CompiledSequencePattern compile(SequencePattern.State root) {
+    Map<SequencePattern.State,Integer> ids = new IdentityHashMap<SequencePattern.State,Integer>();
+    List<SequencePattern.State> states = new ArrayList<SequencePattern.State>();
+    ids.put(root, 0);
+    states.add(root);
+    for (int i = 0; i < states.size(); i++) {
+      SequencePattern.State state = states.get(i);
+      if (kindOf(state) < 0) {
+        return null;
+      }
+      List<SequencePattern.State> targets = new ArrayList<SequencePattern.State>();
+      if (state.next != null) {
+        targets.addAll(state.next);
+      }
+      if (state instanceof SequencePattern.RepeatState) {
+        targets.add(((SequencePattern.RepeatState) state).repeatStart);
+      }
+      for (SequencePattern.State target:targets) {
+        if ( ! ids.containsKey(target)) {
+          ids.put(target, states.size());
+          states.add(target);
+        }
+      }
+    }
+
+    int n = states.size();
+    byte[] kinds = new byte[n];
+    NodePattern[] nodePatterns = new NodePattern[n];
+    int[][] next = new int[n][];
+    int[] repeatStarts = new int[n];
+    boolean exact = true;
+    for (int i = 0; i < n; i++) {
+      SequencePattern.State state = states.get(i);
+      kinds[i] = kindOf(state);
+      if (kinds[i] == NODE) {
+        nodePatterns[i] = ((SequencePattern.NodePatternState) state).pattern;
+      } else if (kinds[i] == REPEAT) {
+        repeatStarts[i] = ids.get(((SequencePattern.RepeatState) state).repeatStart);
+        exact = false;
+      }
+      next[i] = new int[(state.next != null)? state.next.size(): 0];
+      int j = 0;
+      if (state.next != null) {
+        for (SequencePattern.State s:state.next) {
+          next[i][j++] = ids.get(s);
+        }
+      }
+    }
+    return new CompiledSequencePattern(kinds, nodePatterns, next, repeatStarts, 0, exact);
+  }
+
+  /**
+   * Threads of the search: each is a state and the position where the thread started.
+   * A state is added at most once per step, by the thread that started first.
+   */
+  private static class Threads {
+    int[] states;
+    int[] starts;
+    int size = 0;
+
+    Threads(int capacity) {
+      states = new int[capacity];
+      starts = new int[capacity];
+    }
+
+    void add(int state, int start) {
+      if (size == states.length) {
+        states = java.util.Arrays.copyOf(states, size * 2);
+        starts = java.util.Arrays.copyOf(starts, size * 2);
+      }
+      states[size] = state;
+      starts[size] = start;
+      size++;
+    }
+  }
+
+  /** The working state of one search for a start */
+  private class Search<T> {
+    final SequenceMatcher<T> matcher;
+    final int[] marks = new int[kinds.length];
+    int mark = 0;
+    Threads pending = new Threads(kinds.length);  // threads waiting to consume the next element
+    Threads consumed = new Threads(kinds.length); // threads that have just consumed an element
+    int position;
+    int best = -1;  // earliest start of a thread that reached the match state
+
+    Search(SequenceMatcher<T> matcher) {
+      this.matcher = matcher;
+    }
+
+    /** Follows a state while consuming the element at position, like State.match(bid, matchedStates, true) */
+    void consume(int state, int start) {
+      if (marks[state] == mark) return;
+      marks[state] = mark;
+      switch (kinds[state]) {
+        case PASS:
+        case GROUP_START:
+          for (int s:next[state]) consume(s, start);
+          break;
+        case SEQ_START:
+          if (position == 0) {
+            for (int s:next[state]) consume(s, start);
+          }
+          break;
+        case REPEAT:
+          for (int s:next[state]) consume(s, start);
+          consume(repeatStarts[state], start);
+          break;
+        case NODE:
+          if (matchNode(nodePatterns[state])) {
+            for (int s:next[state]) consumed.add(s, start);
+          }
+          break;
+        default:
+          // Group and sequence ends can't be passed while consuming,
+          // and threads that reached the match state are done
+          break;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean matchNode(NodePattern pattern) {
+      if (matcher.matchWithResult) {
+        return pattern.matchWithResult(matcher.get(position)) != null;
+      } else {
+        return matcher.matchNode(pattern, position);
+      }
+    }
+
+    /** Follows a state after an element was consumed, like State.match(bid, matchedStates, false) */
+    void close(int state, int start) {
+      if (marks[state] == mark) return;
+      marks[state] = mark;
+      switch (kinds[state]) {
+        case PASS:
+        case GROUP_END:
+          for (int s:next[state]) close(s, start);
+          break;
+        case SEQ_END:
+          if (position == matcher.elements().size() - 1) {
+            for (int s:next[state]) close(s, start);
+          }
+          break;
+        case REPEAT:
+          for (int s:next[state]) close(s, start);
+          pending.add(state, start);
+          break;
+        case NODE:
+        case GROUP_START:
+          pending.add(state, start);
+          break;
+        case MATCH:
+          if (best < 0 || start < best) {
+            best = start;
+          }
+          break;
+        default:
+          // Sequence starts can't be passed once an element is consumed
+          break;
+      }
+    }
+
+    int find(int from, int to) {
+      for (position = from; position < to; position++) {
+        if (Thread.interrupted()) {
+          throw new RuntimeInterruptedException();
+        }
+        if (best < 0) {
+          // A new thread starts at each position until a match is found
+          pending.add(root, position);
+        }
+        // Pending threads are ordered by start, so the first thread to get to a state is the earliest
+        mark++;
+        consumed.size = 0;
+        for (int i = 0; i < pending.size; i++) {
+          if (best < 0 || pending.starts[i] < best) {
+            consume(pending.states[i], pending.starts[i]);
+          }
+        }
+        mark++;
+        pending.size = 0;
+        for (int i = 0; i < consumed.size; i++) {
+          close(consumed.states[i], consumed.starts[i]);
+        }
+        if (best >= 0) {
+          boolean earlier = false;
+          for (int i = 0; i < pending.size && ! earlier; i++) {
+            earlier = pending.starts[i] < best;
+          }
+          if ( ! earlier) {
+            return best;
+          }
+        }
+      }
+      return best;
+    }
+  }
+
+  /**
+   * Returns the first position from the given one on, before the end of the matcher's
+   * region, where the backtracking matcher may find a match, or -1 if there is none.
+   * If the pattern is exact, it will find a match there.
+   */
+  <T> int findStart(SequenceMatcher<T> matcher, int from) {
+    return new Search<T>(matcher).find(from, matcher.regionEnd());
+  }
+
+}
@@ -46,6 +46,10 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
   private final Env env;
   /* Keeps temporary tags created by extractor */
   private boolean keepTags = false;
+  /* Whether to apply token pattern rules only to sentences with the tokens they need */
+  private boolean useRuleTriggers = true;
+  /* Whether to check that rules that aren't triggered don't match */
+  private boolean verifyRuleTriggers = false;
   private final Class tokensAnnotationKey;
   private final Map<Integer, Stage<T>> stages;
 
@@ -71,6 +75,8 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
     SequenceMatchRules.ExtractRule<List<? extends CoreMap>, T> compositeExtractRule;
     /** Filtering rule */
     Predicate<T> filterRule;
+    /** Basic rules indexed by the tokens that trigger them (built when first needed) */
+    private volatile TokenTriggerIndex<T> basicRuleTriggers;
 
     private static <I,O> SequenceMatchRules.ExtractRule<I,O> addRule(SequenceMatchRules.ExtractRule<I, O> origRule,
                                                                      SequenceMatchRules.ExtractRule<I, O> rule)
@@ -92,9 +98,38 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
       compositeExtractRule = addRule(compositeExtractRule, rule);
     }
 
-    private void addBasicRule(SequenceMatchRules.ExtractRule<CoreMap, T> rule)
+    private synchronized void addBasicRule(SequenceMatchRules.ExtractRule<CoreMap, T> rule)
     {
       basicExtractRule = addRule(basicExtractRule, rule);
+      basicRuleTriggers = null;
+    }
+
+    private TokenTriggerIndex<T> getBasicRuleTriggers(boolean verify, Logger logger)
+    {
+      // Usually the index is up to date, and is used without locking
+      TokenTriggerIndex<T> triggers = basicRuleTriggers;
+      if (triggers != null && triggers.numRules() == numBasicRules()) {
+        return triggers;
+      }
+      synchronized (this) {
+        if (basicExtractRule instanceof SequenceMatchRules.ListExtractRule) {
+          List<SequenceMatchRules.ExtractRule<CoreMap, T>> rules = ((SequenceMatchRules.ListExtractRule<CoreMap, T>) basicExtractRule).rules;
+          // Rebuild the index if rules were added to the list since
+          if (basicRuleTriggers == null || basicRuleTriggers.numRules() != rules.size()) {
+            triggers = new TokenTriggerIndex<T>(rules);
+            triggers.setVerify(verify);
+            triggers.setLogger(logger);
+            basicRuleTriggers = triggers;
+          }
+        }
+        return basicRuleTriggers;
+      }
+    }
+
+    private int numBasicRules()
+    {
+      SequenceMatchRules.ExtractRule<CoreMap, T> rule = basicExtractRule;
+      return (rule instanceof SequenceMatchRules.ListExtractRule)? ((SequenceMatchRules.ListExtractRule<CoreMap, T>) rule).rules.size(): -1;
     }
 
     private void addFilterRule(Predicate<T> rule)
@@ -193,6 +228,59 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
 
   public void setLogger(Logger logger) {
     this.logger = logger;
+    for (Stage<T> stage:stages.values()) {
+      synchronized (stage) {
+        if (stage.basicRuleTriggers != null) {
+          stage.basicRuleTriggers.setLogger(logger);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets whether the token pattern rules of each stage are only applied to
+   * sentences that have tokens one of which the rule needs to match (see {@link TokenTriggerIndex}).
+   * This is on by default, and gives the same expressions as applying all the rules.
+   */
+  public void setUseRuleTriggers(boolean useRuleTriggers) {
+    this.useRuleTriggers = useRuleTriggers;
+  }
+
+  /**
+   * Sets whether to apply all rules while using rule triggers, and log a warning
+   * for each rule that wasn't triggered but matched anyway.
+   */
+  public void setVerifyRuleTriggers(boolean verifyRuleTriggers) {
+    this.verifyRuleTriggers = verifyRuleTriggers;
+    for (Stage<T> stage:stages.values()) {
+      synchronized (stage) {
+        if (stage.basicRuleTriggers != null) {
+          stage.basicRuleTriggers.setVerify(verifyRuleTriggers);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns, for each stage that has been applied with rule triggers, how many
+   * of its rules have triggers and how often rules were applied and skipped.
+   */
+  public String getRuleTriggerStats() {
+    StringBuilder sb = new StringBuilder();
+    List<Integer> stageIds = new ArrayList<Integer>(stages.keySet());
+    Collections.sort(stageIds);
+    for (int stageId:stageIds) {
+      TokenTriggerIndex<T> triggers;
+      Stage<T> stage = stages.get(stageId);
+      synchronized (stage) {
+        triggers = stage.basicRuleTriggers;
+      }
+      if (triggers != null) {
+        if (sb.length() > 0) sb.append('\n');
+        sb.append("Stage ").append(stageId).append(": ").append(triggers);
+      }
+    }
+    return sb.toString();
   }
 
   public void setExtractRules(SequenceMatchRules.ExtractRule<CoreMap, T> basicExtractRule,
@@ -431,7 +519,12 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
         matchedExpressions.clear();
       }
       if (basicExtractRule != null) {
-        basicExtractRule.extract(annotation, matchedExpressions);
+        TokenTriggerIndex<T> triggers = (useRuleTriggers)? stage.getBasicRuleTriggers(verifyRuleTriggers, logger): null;
+        if (triggers != null) {
+          triggers.extract(annotation, matchedExpressions);
+        } else {
+          basicExtractRule.extract(annotation, matchedExpressions);
+        }
         annotateExpressions(annotation, matchedExpressions);
         matchedExpressions = MatchedExpression.removeNullValues(matchedExpressions);
         matchedExpressions = MatchedExpression.removeNested(matchedExpressions);
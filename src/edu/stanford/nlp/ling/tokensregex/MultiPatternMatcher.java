@@ -13,6 +13,8 @@ import java.util.function.Function;
 public class MultiPatternMatcher<T> {
   Collection<SequencePattern<T>> patterns;
   SequencePatternTrigger<T> patternTrigger;
+  boolean shareNodePatterns = true;
+  private volatile SharedNodePatterns<T> sharedNodePatterns;
 
   public MultiPatternMatcher(SequencePatternTrigger<T> patternTrigger,
                              Collection<? extends SequencePattern<T>> patterns)
@@ -72,14 +74,17 @@ public class MultiPatternMatcher<T> {
     Collection<SequencePattern<T>> triggered = getTriggeredPatterns(elements);
     List<SequenceMatchResult<T>> all = new ArrayList<SequenceMatchResult<T>>();
     int i = 0;
+    SharedNodePatterns.Matches<T> nodePatternMatches = nodePatternMatches(elements);
     for (SequencePattern<T> p:triggered) {
       SequenceMatcher<T> m = p.getMatcher(elements);
+      m.nodePatternMatches = nodePatternMatches;
       m.setOrder(i);
       while (m.find()) {
         all.add(m.toBasicSequenceMatchResult());
       }
       i++;
     }
+    recordNodePatternMatches(nodePatternMatches);
     List<SequenceMatchResult<T>> res = IntervalTree.getNonOverlapping( all, SequenceMatchResult.TO_INTERVAL, cmp);
     Collections.sort(res, SequenceMatchResult.OFFSET_COMPARATOR);
 
@@ -99,8 +104,10 @@ public class MultiPatternMatcher<T> {
     Collection<SequencePattern<T>> triggered = getTriggeredPatterns(elements);
     List<SequenceMatchResult<T>> all = new ArrayList<SequenceMatchResult<T>>();
     int i = 0;
+    SharedNodePatterns.Matches<T> nodePatternMatches = nodePatternMatches(elements);
     for (SequencePattern<T> p:triggered) {
       SequenceMatcher<T> m = p.getMatcher(elements);
+      m.nodePatternMatches = nodePatternMatches;
       m.setFindType(findType);
       m.setOrder(i);
       while (m.find()) {
@@ -108,6 +115,7 @@ public class MultiPatternMatcher<T> {
       }
       i++;
     }
+    recordNodePatternMatches(nodePatternMatches);
     List<SequenceMatchResult<T>> res = IntervalTree.getNonOverlapping( all, SequenceMatchResult.TO_INTERVAL, SequenceMatchResult.DEFAULT_COMPARATOR);
     Collections.sort(res, SequenceMatchResult.OFFSET_COMPARATOR);
 
@@ -142,14 +150,17 @@ public class MultiPatternMatcher<T> {
     Collection<SequencePattern<T>> triggered = getTriggeredPatterns(elements);
     List<SequenceMatchResult<T>> all = new ArrayList<SequenceMatchResult<T>>();
     int i = 0;
+    SharedNodePatterns.Matches<T> nodePatternMatches = nodePatternMatches(elements);
     for (SequencePattern<T> p:triggered) {
       SequenceMatcher<T> m = p.getMatcher(elements);
+      m.nodePatternMatches = nodePatternMatches;
       m.setOrder(i);
       while (m.find()) {
         all.add(m.toBasicSequenceMatchResult());
       }
       i++;
     }
+    recordNodePatternMatches(nodePatternMatches);
     List<SequenceMatchResult<T>> res = IntervalTree.getNonOverlappingMaxScore( all, SequenceMatchResult.TO_INTERVAL, scorer);
     Collections.sort(res, SequenceMatchResult.OFFSET_COMPARATOR);
 
@@ -174,6 +185,49 @@ public class MultiPatternMatcher<T> {
     return Iterables.chain(allMatches);
   }
 
+  /**
+   * Sets whether the matchers of the patterns share which node patterns matched which
+   * elements, so that node patterns that appear in several patterns (or several times
+   * in one) are evaluated at most once per element.  This is on by default, and gives
+   * the same matches as long as node patterns only look at the node they are given.
+   * It is not used when matching with results (see {@link SequenceMatcher#setMatchWithResult}).
+   */
+  public void setShareNodePatterns(boolean shareNodePatterns) {
+    this.shareNodePatterns = shareNodePatterns;
+  }
+
+  /**
+   * Returns how many node patterns our patterns have and how many of them are distinct,
+   * and how many node pattern evaluations sharing them has saved so far.
+   */
+  public String getNodePatternStats() {
+    return getSharedNodePatterns().toString();
+  }
+
+  private SharedNodePatterns<T> getSharedNodePatterns() {
+    SharedNodePatterns<T> shared = sharedNodePatterns;
+    if (shared == null) {
+      synchronized (this) {
+        shared = sharedNodePatterns;
+        if (shared == null) {
+          shared = new SharedNodePatterns<T>(patterns);
+          sharedNodePatterns = shared;
+        }
+      }
+    }
+    return shared;
+  }
+
+  private SharedNodePatterns.Matches<T> nodePatternMatches(List<? extends T> elements) {
+    return (shareNodePatterns)? getSharedNodePatterns().matches(elements): null;
+  }
+
+  private void recordNodePatternMatches(SharedNodePatterns.Matches<T> nodePatternMatches) {
+    if (nodePatternMatches != null) {
+      getSharedNodePatterns().record(nodePatternMatches);
+    }
+  }
+
   /**
    * Given a sequence, return the collection of patterns that are triggered by the sequence
    *   (these patterns are the ones that may potentially match a subsequence in the sequence)
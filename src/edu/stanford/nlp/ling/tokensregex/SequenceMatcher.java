@@ -92,6 +92,12 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
   // Branching limit for searching with back tracking. Higher value makes the search faster but uses more memory.
   int branchLimit = 2;
 
+  // Whether to look for where matches start with the compiled pattern (if the pattern could be compiled)
+  boolean useCompiledPattern = true;
+
+  // Node pattern matches shared with the matchers of other patterns over the same elements (set by MultiPatternMatcher)
+  SharedNodePatterns.Matches<T> nodePatternMatches = null;
+
   protected SequenceMatcher(SequencePattern<T> pattern, List<? extends T> elements)
   {
     this.pattern = pattern;
@@ -112,6 +118,17 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
     this.branchLimit = blimit;
   }
 
+  /**
+   * Sets whether find looks for the start of the next match in one pass over the
+   * sequence with the pattern's compiled NFA, and runs the backtracking matcher from
+   * there, or runs the backtracking matcher from each start in turn.
+   * Either way gives the same matches; the compiled NFA is used by default,
+   * when the pattern could be compiled and matches are found without overlaps.
+   */
+  public void setUseCompiledPattern(boolean useCompiledPattern) {
+    this.useCompiledPattern = useCompiledPattern;
+  }
+
 
   /**
    * Interface that specifies what to replace a matched pattern with
@@ -336,6 +353,14 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
     matchingCompleted = false;
     if (matchStart)  {
       match = findMatchStart(start, false);
+    } else if (useCompiledPattern && pattern.compiledPattern != null && findType == FindType.FIND_NONOVERLAPPING) {
+      CompiledSequencePattern compiled = pattern.compiledPattern;
+      for (int i = compiled.findStart(this, start); i >= 0; i = compiled.findStart(this, i+1)) {
+        match = findMatchStart(i, false);
+        if (match) {
+          break;
+        }
+      }
     } else {
       for (int i = start; i < regionEnd; i++) {
         match = findMatchStart(i, false);
@@ -703,6 +728,17 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
     return elements.get(i);
   }
 
+  /** Returns whether the ith element matches the node pattern (false if the element is null) */
+  boolean matchNode(NodePattern<T> pattern, int i)
+  {
+    T node = get(i);
+    if (nodePatternMatches != null) {
+      return nodePatternMatches.match(pattern, i, node);
+    } else {
+      return node != null && pattern.match(node);
+    }
+  }
+
   /** Returns a non-null MatchedStates, which has a non-empty states list inside. */
   private MatchedStates<T> getStartStates()
   {
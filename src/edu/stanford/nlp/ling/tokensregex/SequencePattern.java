@@ -94,6 +94,8 @@ public class SequencePattern<T> {
   private SequenceMatchAction<T> action;
   State root;
   int totalGroups = 0;
+  // The NFA in arrays, for finding where matches start (null if the NFA can't be compiled)
+  final CompiledSequencePattern compiledPattern;
 
   // binding of group number to variable name
   VarGroupBindings varGroupBindings;
@@ -123,6 +125,7 @@ public class SequencePattern<T> {
     Frag f = nodeSequencePattern.build();
     f.connect(MATCH_STATE);
     this.root = f.start;
+    this.compiledPattern = CompiledSequencePattern.compile(root);
     varGroupBindings = new VarGroupBindings(totalGroups+1);
     nodeSequencePattern.updateBindings(varGroupBindings);
   }
@@ -290,6 +293,15 @@ public class SequencePattern<T> {
     protected PatternExpr optimize() { return this; }
 
     protected abstract PatternExpr transform(NodePatternTransformer transformer);
+
+    /**
+     * Returns lowercased prefixes of annotation values (paired with the annotation key)
+     * such that every sequence this pattern matches has an element whose value for the key,
+     * lowercased, starts with one of them.  Returns null if there are no such prefixes
+     * (or they can't be worked out), and an empty set if the pattern matches nothing.
+     * Used by {@link TokenTriggerIndex} to skip patterns that can't match.
+     */
+    protected Set<Pair<Class,String>> requiredPrefixes() { return null; }
   }
 
   /** Represents one element to be matched. */
@@ -319,6 +331,11 @@ public class SequencePattern<T> {
     @Override
     protected void updateBindings(VarGroupBindings bindings) {}
 
+    @Override
+    protected Set<Pair<Class,String>> requiredPrefixes() {
+      return TokenTriggerIndex.requiredPrefixes(nodePattern);
+    }
+
     @Override
     protected PatternExpr transform(NodePatternTransformer transformer) {
       return new NodePatternExpr(transformer.transform(nodePattern));
@@ -494,6 +511,16 @@ public class SequencePattern<T> {
       return new SequencePatternExpr(newPatterns);
     }
 
+    @Override
+    protected Set<Pair<Class,String>> requiredPrefixes() {
+      // Every part has to match, so the prefixes of any one will do
+      Set<Pair<Class,String>> best = null;
+      for (PatternExpr p:patterns) {
+        best = TokenTriggerIndex.moreSelective(best, p.requiredPrefixes());
+      }
+      return best;
+    }
+
     @Override
     protected PatternExpr transform(NodePatternTransformer transformer) {
       List<PatternExpr> newPatterns = new ArrayList<PatternExpr>(patterns.size());
@@ -591,6 +618,11 @@ public class SequencePattern<T> {
       return new ValuePatternExpr(expr.optimize(), value);
     }
 
+    @Override
+    protected Set<Pair<Class,String>> requiredPrefixes() {
+      return expr.requiredPrefixes();
+    }
+
     @Override
     protected PatternExpr transform(NodePatternTransformer transformer) {
       return new ValuePatternExpr(expr.transform(transformer), value);
@@ -668,6 +700,11 @@ public class SequencePattern<T> {
       return new GroupPatternExpr(pattern.optimize(), capture, captureGroupId, varname);
     }
 
+    @Override
+    protected Set<Pair<Class,String>> requiredPrefixes() {
+      return pattern.requiredPrefixes();
+    }
+
     @Override
     protected PatternExpr transform(NodePatternTransformer transformer)
     {
@@ -788,6 +825,11 @@ public class SequencePattern<T> {
     {
       return new RepeatPatternExpr(pattern.optimize(), minMatch, maxMatch, greedyMatch);
     }
+    @Override
+    protected Set<Pair<Class,String>> requiredPrefixes() {
+      return (minMatch > 0)? pattern.requiredPrefixes(): null;
+    }
+
     @Override
     protected PatternExpr transform(NodePatternTransformer transformer)
     {
@@ -871,6 +913,18 @@ public class SequencePattern<T> {
       return new OrPatternExpr(newPatterns);
     }
 
+    @Override
+    protected Set<Pair<Class,String>> requiredPrefixes() {
+      // One of the alternatives has to match, so we need prefixes for each
+      Set<Pair<Class,String>> prefixes = new HashSet<Pair<Class,String>>();
+      for (PatternExpr p:patterns) {
+        Set<Pair<Class,String>> ps = p.requiredPrefixes();
+        if (ps == null) return null;
+        prefixes.addAll(ps);
+      }
+      return prefixes;
+    }
+
     @Override
     protected PatternExpr transform(NodePatternTransformer transformer)
     {
@@ -1115,6 +1169,16 @@ public class SequencePattern<T> {
       return new AndPatternExpr(newPatterns);
     }
 
+    @Override
+    protected Set<Pair<Class,String>> requiredPrefixes() {
+      // Every part has to match, so the prefixes of any one will do
+      Set<Pair<Class,String>> best = null;
+      for (PatternExpr p:patterns) {
+        best = TokenTriggerIndex.moreSelective(best, p.requiredPrefixes());
+      }
+      return best;
+    }
+
     @Override
     protected PatternExpr transform(NodePatternTransformer transformer)
     {
@@ -1247,7 +1311,7 @@ public class SequencePattern<T> {
   /**
    * Final accepting state.
    */
-  private static class MatchState extends State {
+  static class MatchState extends State {
     @Override
     protected <T> boolean match(int bid, SequenceMatcher.MatchedStates<T> matchedStates, boolean consume, State prevState) {
       // Always add this state back (effectively looping forever in this matching state)
@@ -1259,7 +1323,7 @@ public class SequencePattern<T> {
   /**
    * State with associated value.
    */
-  private static class ValueState extends State {
+  static class ValueState extends State {
     final Object value;
 
     private ValueState(Object value) {
@@ -1273,7 +1337,7 @@ public class SequencePattern<T> {
   /**
    * State for matching one element/node
    */
-  private static class NodePatternState extends State {
+  static class NodePatternState extends State {
     final NodePattern pattern;
 
     protected NodePatternState(NodePattern p) {
@@ -1285,9 +1349,9 @@ public class SequencePattern<T> {
     {
       if (consume) {
         // Get element and return if it matched or not
-        T node = matchedStates.get();
         // TODO: Fix type checking
         if (matchedStates.matcher.matchWithResult) {
+          T node = matchedStates.get();
           Object obj = pattern.matchWithResult(node);
           if (obj != null) {
             if (obj != Boolean.TRUE) {
@@ -1300,7 +1364,7 @@ public class SequencePattern<T> {
             return false;
           }
         } else {
-          if (node != null && pattern.match(node)) {
+          if (matchedStates.matcher.matchNode(pattern, matchedStates.curPosition)) {
             // If matched, need to add next states to the queue of states to be processed
             matchedStates.addStates(bid, next);
             return true;
@@ -1383,9 +1447,9 @@ public class SequencePattern<T> {
   /**
    * State that matches a pattern that can occur multiple times.
    */
-  private static class RepeatState extends State {
+  static class RepeatState extends State {
 
-    private final State repeatStart;
+    final State repeatStart;
     private final int minMatch;
     private final int maxMatch;
     private final boolean greedyMatch;
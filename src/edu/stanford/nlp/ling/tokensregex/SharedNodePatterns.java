@@ -0,0 +1,184 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.Pair;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The node patterns of a set of sequence patterns, with identical node patterns
+ * (node patterns of the same kind with the same parameters, such as two
+ * <code>[ {tag:/NN.*&#47;} ]</code> in different rules) given the same id.
+ * <br>
+ * A {@link MultiPatternMatcher} uses this to let the matchers of all its patterns share
+ * one record ({@link Matches}) of which node patterns matched which elements of a
+ * sequence, so that each distinct node pattern is evaluated at most once per element,
+ * however many patterns use it.  This assumes that node patterns only look at the node
+ * they are given, which holds for all the node patterns built by the TokensRegex parser.
+ * <br>
+ * Node patterns this class doesn't know how to compare are only merged with themselves.
+ * Instances are safe to share between threads once built.
+ */
+class SharedNodePatterns<T> {
+
+  private final Map<NodePattern<T>,Integer> ids = new IdentityHashMap<NodePattern<T>,Integer>();
+  private int numNodePatterns = 0;
+  private int numDistinct = 0;
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong evaluations = new AtomicLong();
+
+  SharedNodePatterns(Collection<? extends SequencePattern<T>> patterns) {
+    Map<Object,Integer> keyIds = Generics.newHashMap();
+    for (SequencePattern<T> pattern:patterns) {
+      pattern.findNodePattern(p -> {
+        numNodePatterns++;
+        if ( ! ids.containsKey(p)) {
+          Object key = keyOf(p);
+          Integer id = keyIds.get(key);
+          if (id == null) {
+            id = numDistinct++;
+            keyIds.put(key, id);
+          }
+          ids.put(p, id);
+        }
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Returns an object that is equal to the key of another node pattern iff both match
+   * the same nodes.  Node patterns of unknown kinds are their own key.
+   */
+  private static Object keyOf(NodePattern<?> p) {
+    Class<?> c = p.getClass();
+    if (c == CoreMapNodePattern.class) {
+      List<Object> keys = new ArrayList<Object>();
+      for (Pair<Class,NodePattern> entry:((CoreMapNodePattern) p).getAnnotationPatterns()) {
+        keys.add(Pair.makePair(entry.first, keyOf(entry.second)));
+      }
+      return Arrays.asList(c, keys);
+    } else if (c == CoreMapNodePattern.StringAnnotationRegexPattern.class) {
+      java.util.regex.Pattern regex = ((CoreMapNodePattern.StringAnnotationRegexPattern) p).pattern;
+      return Arrays.asList(c, regex.pattern(), regex.flags());
+    } else if (c == CoreMapNodePattern.StringAnnotationPattern.class) {
+      CoreMapNodePattern.StringAnnotationPattern sp = (CoreMapNodePattern.StringAnnotationPattern) p;
+      return Arrays.asList(c, sp.target, sp.flags);
+    } else if (c == CoreMapNodePattern.StringInSetAnnotationPattern.class) {
+      CoreMapNodePattern.StringInSetAnnotationPattern sp = (CoreMapNodePattern.StringInSetAnnotationPattern) p;
+      return Arrays.asList(c, sp.targets, sp.flags);
+    } else if (c == CoreMapNodePattern.NumericAnnotationPattern.class) {
+      CoreMapNodePattern.NumericAnnotationPattern np = (CoreMapNodePattern.NumericAnnotationPattern) p;
+      return Arrays.asList(c, np.cmpType, np.value);
+    } else if (c == CoreMapNodePattern.IntegerAnnotationPattern.class) {
+      return Arrays.asList(c, ((CoreMapNodePattern.IntegerAnnotationPattern) p).value);
+    } else if (c == CoreMapNodePattern.NilAnnotationPattern.class
+        || c == CoreMapNodePattern.NotNilAnnotationPattern.class
+        || c == NodePattern.AnyNodePattern.class) {
+      return c;
+    } else if (c == NodePattern.NegateNodePattern.class) {
+      return Arrays.asList(c, keyOf(((NodePattern.NegateNodePattern<?>) p).p));
+    } else if (c == NodePattern.ConjNodePattern.class) {
+      return Arrays.asList(c, keysOf(((NodePattern.ConjNodePattern<?>) p).nodePatterns));
+    } else if (c == NodePattern.DisjNodePattern.class) {
+      return Arrays.asList(c, keysOf(((NodePattern.DisjNodePattern<?>) p).nodePatterns));
+    } else if (c == NodePattern.EqualsNodePattern.class) {
+      return Arrays.asList(c, ((NodePattern.EqualsNodePattern<?>) p).t);
+    } else {
+      return p;
+    }
+  }
+
+  private static List<Object> keysOf(List<? extends NodePattern<?>> patterns) {
+    List<Object> keys = new ArrayList<Object>(patterns.size());
+    for (NodePattern<?> p:patterns) {
+      keys.add(keyOf(p));
+    }
+    return keys;
+  }
+
+  /** Number of node patterns in all the patterns */
+  public int getNumNodePatterns() {
+    return numNodePatterns;
+  }
+
+  /** Number of distinct node patterns in all the patterns */
+  public int getNumDistinct() {
+    return numDistinct;
+  }
+
+  /** Number of times a node pattern was matched against an element through this object */
+  public long getLookups() {
+    return lookups.get();
+  }
+
+  /** Number of times a node pattern was actually evaluated on an element */
+  public long getEvaluations() {
+    return evaluations.get();
+  }
+
+  Matches<T> matches(List<? extends T> elements) {
+    return new Matches<T>(this, elements.size());
+  }
+
+  /** Adds the counts of a record to the totals */
+  void record(Matches<T> matches) {
+    lookups.addAndGet(matches.lookups);
+    evaluations.addAndGet(matches.evaluations);
+  }
+
+  @Override
+  public String toString() {
+    long looked = getLookups();
+    long evaluated = getEvaluations();
+    return numNodePatterns + " node patterns (" + numDistinct + " distinct), "
+        + looked + " node matches, " + evaluated + " evaluated, " + (looked - evaluated) + " saved";
+  }
+
+  /**
+   * Which node patterns matched which elements of one sequence, filled in
+   * as the patterns are matched.  Not thread safe.
+   */
+  static class Matches<T> {
+    private final SharedNodePatterns<T> shared;
+    /** Per distinct node pattern, two bits per element: whether it was evaluated, and whether it matched */
+    private final long[][] bits;
+    private final int size;
+    int lookups = 0;
+    int evaluations = 0;
+
+    private Matches(SharedNodePatterns<T> shared, int size) {
+      this.shared = shared;
+      this.bits = new long[shared.numDistinct][];
+      this.size = size;
+    }
+
+    /** Returns whether the given node, the ith element, matches the pattern */
+    boolean match(NodePattern<T> pattern, int i, T node) {
+      Integer id = shared.ids.get(pattern);
+      if (id == null || node == null) {
+        return node != null && pattern.match(node);
+      }
+      lookups++;
+      long[] row = bits[id];
+      if (row == null) {
+        row = new long[(2 * size + 63) >> 6];
+        bits[id] = row;
+      }
+      int bit = 2 * i;
+      long evaluated = 1L << bit;
+      long matched = 1L << (bit + 1);
+      int w = bit >> 6;
+      if ((row[w] & evaluated) == 0) {
+        evaluations++;
+        row[w] |= evaluated;
+        if (pattern.match(node)) {
+          row[w] |= matched;
+        }
+      }
+      return (row[w] & matched) != 0;
+    }
+  }
+
+}
@@ -0,0 +1,391 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.Pair;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Index over a list of extraction rules that picks out the rules that may match a
+ * {@link CoreMap}, so that {@link CoreMapExpressionExtractor} doesn't run every rule
+ * of a stage over every sentence.
+ * <br>
+ * When the index is built, each token pattern rule is given the words (or word prefixes)
+ * one of which has to be among the tokens for the rule to match, worked out from the
+ * literal strings and regular expressions in its pattern (see
+ * {@link SequencePattern.PatternExpr#requiredPrefixes}).  For instance,
+ * <code>( /the/? /next|following/ $TEUnits )</code> needs a token starting with
+ * <code>next</code> or <code>following</code>.  Comparisons ignore case, so they hold for
+ * case sensitive and case insensitive patterns alike.  Rules of other types, and rules
+ * where no such words can be found, are always applied.
+ * <br>
+ * When extracting, the words of the tokens are looked up in the index, and only the
+ * rules that are always applied and the rules that were triggered are run, in their
+ * original order.  With verification on, all the rules are run, and skipped rules that
+ * matched anyway are reported (this should not happen).
+ */
+public class TokenTriggerIndex<T> implements SequenceMatchRules.ExtractRule<CoreMap, T> {
+
+  private final List<SequenceMatchRules.ExtractRule<CoreMap, T>> rules;
+  /** Whether each rule is applied whatever the tokens are */
+  private final boolean[] alwaysApplied;
+  /** For each annotation holding tokens and annotation key on the tokens, the rules triggered by each prefix */
+  private final Map<Pair<Class,Class>, Map<String,List<Integer>>> prefixes = Generics.newHashMap();
+  /** Distinct lengths of the prefixes in each map, in increasing order */
+  private final Map<Pair<Class,Class>, int[]> prefixLengths = Generics.newHashMap();
+  private int numTriggered = 0;
+
+  private volatile boolean verify = false;
+  private volatile Logger logger = Logger.getLogger(TokenTriggerIndex.class.getName());
+  private final AtomicLong applied = new AtomicLong();
+  private final AtomicLong skipped = new AtomicLong();
+  private final AtomicLong missed = new AtomicLong();
+
+  public TokenTriggerIndex(List<? extends SequenceMatchRules.ExtractRule<CoreMap, T>> rules) {
+    this.rules = new ArrayList<SequenceMatchRules.ExtractRule<CoreMap, T>>(rules);
+    this.alwaysApplied = new boolean[rules.size()];
+    Map<Pair<Class,Class>, Set<Integer>> lengths = Generics.newHashMap();
+    for (int i = 0; i < rules.size(); i++) {
+      Pair<Class, Set<Pair<Class,String>>> trigger = triggerOf(rules.get(i));
+      if (trigger == null) {
+        alwaysApplied[i] = true;
+        continue;
+      }
+      numTriggered++;
+      for (Pair<Class,String> prefix:trigger.second) {
+        Pair<Class,Class> keys = Pair.makePair(trigger.first, prefix.first);
+        Map<String,List<Integer>> map = prefixes.get(keys);
+        if (map == null) {
+          prefixes.put(keys, map = Generics.newHashMap());
+          lengths.put(keys, new TreeSet<Integer>());
+        }
+        List<Integer> triggered = map.get(prefix.second);
+        if (triggered == null) {
+          map.put(prefix.second, triggered = new ArrayList<Integer>(1));
+        }
+        if (triggered.isEmpty() || triggered.get(triggered.size() - 1) != i) {
+          triggered.add(i);
+        }
+        lengths.get(keys).add(prefix.second.length());
+      }
+    }
+    for (Map.Entry<Pair<Class,Class>, Set<Integer>> entry:lengths.entrySet()) {
+      int[] ls = new int[entry.getValue().size()];
+      int j = 0;
+      for (int l:entry.getValue()) {
+        ls[j++] = l;
+      }
+      prefixLengths.put(entry.getKey(), ls);
+    }
+  }
+
+  /**
+   * Returns the annotation holding the tokens a rule matches over, and the prefixes one
+   * of which the tokens need to have for the rule to match, or null if the rule has to
+   * be applied anyway.
+   */
+  private static Pair<Class, Set<Pair<Class,String>>> triggerOf(SequenceMatchRules.ExtractRule<CoreMap, ?> rule) {
+    if (rule instanceof SequenceMatchRules.AnnotationExtractRule) {
+      SequenceMatchRules.AnnotationExtractRule r = (SequenceMatchRules.AnnotationExtractRule) rule;
+      if (SequenceMatchRules.TOKEN_PATTERN_RULE_TYPE.equals(r.ruleType) && ! r.isComposite
+          && r.extractRule instanceof SequenceMatchRules.CoreMapExtractRule) {
+        SequenceMatchRules.CoreMapExtractRule cmRule = (SequenceMatchRules.CoreMapExtractRule) r.extractRule;
+        if (cmRule.extractRule instanceof SequenceMatchRules.SequencePatternExtractRule) {
+          SequencePattern pattern = ((SequenceMatchRules.SequencePatternExtractRule) cmRule.extractRule).pattern;
+          Set<Pair<Class,String>> required = (pattern.getPatternExpr() != null)? pattern.getPatternExpr().requiredPrefixes(): null;
+          if (required != null) {
+            return Pair.makePair(cmRule.annotationField, required);
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /** Whether to run all rules and report the skipped rules that matched anyway */
+  public void setVerify(boolean verify) {
+    this.verify = verify;
+  }
+
+  /** Sets the logger that skipped rules which matched anyway are reported to */
+  public void setLogger(Logger logger) {
+    this.logger = logger;
+  }
+
+  /** Number of rules indexed */
+  public int numRules() {
+    return rules.size();
+  }
+
+  /** Number of rules that are only applied when triggered */
+  public int getNumTriggered() {
+    return numTriggered;
+  }
+
+  /** Number of times a rule was applied */
+  public long getApplied() {
+    return applied.get();
+  }
+
+  /** Number of times a rule was skipped */
+  public long getSkipped() {
+    return skipped.get();
+  }
+
+  /** Number of times a rule that would have been skipped matched (when verifying) */
+  public long getMissed() {
+    return missed.get();
+  }
+
+  /** Returns which rules may match the given CoreMap */
+  public BitSet getTriggered(CoreMap cm) {
+    BitSet triggered = new BitSet(rules.size());
+    for (Map.Entry<Pair<Class,Class>, Map<String,List<Integer>>> entry:prefixes.entrySet()) {
+      Object tokens = cm.get(entry.getKey().first);
+      if ( ! (tokens instanceof List)) continue;
+      int[] lengths = prefixLengths.get(entry.getKey());
+      for (Object token:(List) tokens) {
+        if ( ! (token instanceof CoreMap)) continue;
+        Object value = ((CoreMap) token).get(entry.getKey().second);
+        if ( ! (value instanceof String)) continue;
+        String word = ((String) value).toLowerCase(Locale.ROOT);
+        for (int length:lengths) {
+          if (length > word.length()) break;
+          List<Integer> ids = entry.getValue().get(word.substring(0, length));
+          if (ids != null) {
+            for (int id:ids) {
+              triggered.set(id);
+            }
+          }
+        }
+      }
+    }
+    return triggered;
+  }
+
+  @Override
+  public boolean extract(CoreMap cm, List<T> out) {
+    BitSet triggered = getTriggered(cm);
+    boolean extracted = false;
+    int numApplied = 0;
+    for (int i = 0; i < rules.size(); i++) {
+      SequenceMatchRules.ExtractRule<CoreMap, T> rule = rules.get(i);
+      if (alwaysApplied[i] || triggered.get(i)) {
+        numApplied++;
+        if (rule.extract(cm, out)) {
+          extracted = true;
+        }
+      } else if (verify) {
+        int n = out.size();
+        if (rule.extract(cm, out)) {
+          extracted = true;
+        }
+        if (out.size() > n) {
+          missed.incrementAndGet();
+          logger.warning("Rule " + nameOf(rule) + " matched although it wasn't triggered: " + out.subList(n, out.size()));
+        }
+      }
+    }
+    applied.addAndGet(numApplied);
+    skipped.addAndGet(rules.size() - numApplied);
+    return extracted;
+  }
+
+  private static String nameOf(SequenceMatchRules.ExtractRule<?,?> rule) {
+    if (rule instanceof SequenceMatchRules.AnnotationExtractRule) {
+      SequenceMatchRules.AnnotationExtractRule r = (SequenceMatchRules.AnnotationExtractRule) rule;
+      if (r.name != null) return r.name;
+      if (r.extractRule instanceof SequenceMatchRules.CoreMapExtractRule) {
+        Object inner = ((SequenceMatchRules.CoreMapExtractRule) r.extractRule).extractRule;
+        if (inner instanceof SequenceMatchRules.SequencePatternExtractRule) {
+          return ((SequenceMatchRules.SequencePatternExtractRule) inner).pattern.toString();
+        }
+      }
+    }
+    return rule.toString();
+  }
+
+  @Override
+  public String toString() {
+    long a = getApplied();
+    long s = getSkipped();
+    return rules.size() + " rules (" + numTriggered + " with triggers), applied " + a + " times, skipped " + s + " times"
+        + ((verify)? ", " + getMissed() + " skipped rules matched": "");
+  }
+
+  /**
+   * Of two sets of required prefixes (either of which may be null), returns the one
+   * more likely to rule out a match: the one with the longest shortest prefix,
+   * and then the smaller one.
+   */
+  static Set<Pair<Class,String>> moreSelective(Set<Pair<Class,String>> p1, Set<Pair<Class,String>> p2) {
+    if (p1 == null) return p2;
+    if (p2 == null) return p1;
+    int l1 = shortest(p1);
+    int l2 = shortest(p2);
+    if (l1 != l2) {
+      return (l1 > l2)? p1: p2;
+    }
+    return (p2.size() < p1.size())? p2: p1;
+  }
+
+  private static int shortest(Set<Pair<Class,String>> prefixes) {
+    int min = Integer.MAX_VALUE;
+    for (Pair<Class,String> p:prefixes) {
+      min = Math.min(min, p.second.length());
+    }
+    return min;
+  }
+
+  /**
+   * Returns the required prefixes (see {@link SequencePattern.PatternExpr#requiredPrefixes})
+   * of a node pattern, or null if it has none.
+   */
+  static Set<Pair<Class,String>> requiredPrefixes(NodePattern<?> pattern) {
+    if (pattern instanceof CoreMapNodePattern) {
+      // All the annotation patterns have to match
+      Set<Pair<Class,String>> best = null;
+      for (Pair<Class,NodePattern> entry:((CoreMapNodePattern) pattern).getAnnotationPatterns()) {
+        Set<String> strings = requiredStringPrefixes(entry.second);
+        if (strings != null) {
+          Set<Pair<Class,String>> ps = new HashSet<Pair<Class,String>>();
+          for (String s:strings) {
+            ps.add(Pair.makePair(entry.first, s));
+          }
+          best = moreSelective(best, ps);
+        }
+      }
+      return best;
+    } else if (pattern instanceof NodePattern.ConjNodePattern) {
+      Set<Pair<Class,String>> best = null;
+      for (NodePattern<?> p:((NodePattern.ConjNodePattern<?>) pattern).nodePatterns) {
+        best = moreSelective(best, requiredPrefixes(p));
+      }
+      return best;
+    } else if (pattern instanceof NodePattern.DisjNodePattern) {
+      Set<Pair<Class,String>> prefixes = new HashSet<Pair<Class,String>>();
+      for (NodePattern<?> p:((NodePattern.DisjNodePattern<?>) pattern).nodePatterns) {
+        Set<Pair<Class,String>> ps = requiredPrefixes(p);
+        if (ps == null) return null;
+        prefixes.addAll(ps);
+      }
+      return prefixes;
+    } else {
+      return null;
+    }
+  }
+
+  /** Returns the lowercased prefixes one of which a string matching the pattern has to start with, or null */
+  private static Set<String> requiredStringPrefixes(NodePattern<?> pattern) {
+    if (pattern instanceof CoreMapNodePattern.StringAnnotationPattern) {
+      CoreMapNodePattern.StringAnnotationPattern p = (CoreMapNodePattern.StringAnnotationPattern) pattern;
+      if (p.normalize() || p.target.isEmpty()) return null;
+      return Collections.singleton(p.target.toLowerCase(Locale.ROOT));
+    } else if (pattern instanceof CoreMapNodePattern.StringInSetAnnotationPattern) {
+      CoreMapNodePattern.StringInSetAnnotationPattern p = (CoreMapNodePattern.StringInSetAnnotationPattern) pattern;
+      if (p.normalize()) return null;
+      Set<String> prefixes = new HashSet<String>();
+      for (String target:p.targets) {
+        if (target.isEmpty()) return null;
+        prefixes.add(target.toLowerCase(Locale.ROOT));
+      }
+      return prefixes;
+    } else if (pattern instanceof CoreMapNodePattern.StringAnnotationRegexPattern) {
+      return regexPrefixes(((CoreMapNodePattern.StringAnnotationRegexPattern) pattern).pattern);
+    } else {
+      return null;
+    }
+  }
+
+  private static final String REGEX_METACHARACTERS = ".[]{}()*+?^$|\\";
+
+  /**
+   * Returns the lowercased literal prefixes one of which a string matching the regex
+   * (the whole string, as with {@link java.util.regex.Matcher#matches}) has to start with,
+   * or null if there are none.  Only the literal start of each top level alternative is used.
+   */
+  static Set<String> regexPrefixes(Pattern regex) {
+    String s = regex.pattern();
+    if ((regex.flags() & Pattern.LITERAL) != 0) {
+      return (s.isEmpty())? null: Collections.singleton(s.toLowerCase(Locale.ROOT));
+    }
+    if ((regex.flags() & (Pattern.COMMENTS | Pattern.CANON_EQ)) != 0) {
+      return null;
+    }
+    Set<String> prefixes = new HashSet<String>();
+    for (String alternative:splitAlternatives(s)) {
+      String prefix = literalPrefix(alternative);
+      if (prefix.isEmpty()) return null;
+      prefixes.add(prefix.toLowerCase(Locale.ROOT));
+    }
+    return prefixes;
+  }
+
+  /** Splits a regex on its top level | */
+  private static List<String> splitAlternatives(String regex) {
+    List<String> alternatives = new ArrayList<String>();
+    int depth = 0;
+    boolean inClass = false;
+    int start = 0;
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (inClass) {
+        if (c == ']') inClass = false;
+      } else if (c == '[') {
+        inClass = true;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (c == '|' && depth == 0) {
+        alternatives.add(regex.substring(start, i));
+        start = i + 1;
+      }
+    }
+    alternatives.add(regex.substring(start));
+    return alternatives;
+  }
+
+  /** Returns the characters a string matching the regex (with no top level |) has to start with */
+  private static String literalPrefix(String regex) {
+    StringBuilder sb = new StringBuilder();
+    int i = 0;
+    while (i < regex.length()) {
+      char c = regex.charAt(i);
+      char literal;
+      int next;
+      if (c == '\\') {
+        if (i + 1 >= regex.length()) break;
+        char e = regex.charAt(i + 1);
+        if (Character.isLetterOrDigit(e)) break;  // a character class (\d), or an escape we don't handle
+        literal = e;
+        next = i + 2;
+      } else if (REGEX_METACHARACTERS.indexOf(c) >= 0) {
+        break;
+      } else {
+        literal = c;
+        next = i + 1;
+      }
+      if (next < regex.length()) {
+        char q = regex.charAt(next);
+        if (q == '?' || q == '*' || q == '{') {
+          // The character is optional (or we don't know how often it is repeated)
+          break;
+        }
+        sb.append(literal);
+        if (q == '+') break;
+      } else {
+        sb.append(literal);
+      }
+      i = next;
+    }
+    return sb.toString();
+  }
+
+}
@@ -69,4 +69,13 @@ public interface ParserQuery {
   boolean parseUnparsable();
 
   List<? extends HasWord> originalSentence();
+
+  /**
+   * Lets go of the memory used by the most recent parse, such as the
+   * chart, after which its results can no longer be retrieved.  The query
+   * can still parse another sentence.  By default there is nothing to
+   * let go of.
+   */
+  default void release() {
+  }
 }
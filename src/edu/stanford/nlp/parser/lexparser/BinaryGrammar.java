@@ -27,6 +27,8 @@ public class BinaryGrammar implements Serializable, Iterable<BinaryRule> {
   private transient Set<BinaryRule>[] ruleSetWithRC;
   private transient BinaryRule[][] splitRulesWithLC;
   private transient BinaryRule[][] splitRulesWithRC;
+  private transient PackedRules[] packedRulesWithLC;
+  private transient PackedRules[] packedRulesWithRC;
   //  private transient BinaryRule[][] splitRulesWithParent = null;
   private transient Map<BinaryRule,BinaryRule> ruleMap;
   // for super speed! (maybe)
@@ -104,6 +106,13 @@ public class BinaryGrammar implements Serializable, Iterable<BinaryRule> {
       // parent accessor
       //      splitRulesWithParent[state] = toBRArray(rulesWithParent[state]);
     }
+
+    packedRulesWithLC = new PackedRules[numStates];
+    packedRulesWithRC = new PackedRules[numStates];
+    for (int state = 0; state < numStates; state++) {
+      packedRulesWithLC[state] = new PackedRules(splitRulesWithLC[state], true);
+      packedRulesWithRC[state] = new PackedRules(splitRulesWithRC[state], false);
+    }
   }
 
   public BinaryRule[] splitRulesWithLC(int state) {
@@ -120,6 +129,53 @@ public class BinaryGrammar implements Serializable, Iterable<BinaryRule> {
     return splitRulesWithRC[state];
   }
 
+  /**
+   * The same rules as {@link #splitRulesWithLC(int)}, packed into
+   * parallel arrays, in which {@code child} is the right child.
+   */
+  public PackedRules packedRulesWithLC(int state) {
+    return packedRulesWithLC[state];
+  }
+
+  /**
+   * The same rules as {@link #splitRulesWithRC(int)}, packed into
+   * parallel arrays, in which {@code child} is the left child.
+   */
+  public PackedRules packedRulesWithRC(int state) {
+    return packedRulesWithRC[state];
+  }
+
+  /**
+   * The split rules of one state packed into parallel arrays, in the
+   * order of the {@code BinaryRule} arrays, so that the inner loops of
+   * the CKY parsers read ints and floats rather than chasing rule objects.
+   */
+  public static class PackedRules {
+
+    /** The parent of each rule */
+    public final int[] parent;
+    /** The child of each rule which is not the state the rules are split by */
+    public final int[] child;
+    /** The score of each rule */
+    public final float[] score;
+
+    PackedRules(BinaryRule[] rules, boolean byLeftChild) {
+      parent = new int[rules.length];
+      child = new int[rules.length];
+      score = new float[rules.length];
+      for (int i = 0; i < rules.length; i++) {
+        parent[i] = rules[i].parent;
+        child[i] = byLeftChild ? rules[i].rightChild : rules[i].leftChild;
+        score[i] = rules[i].score;
+      }
+    }
+
+    public int size() {
+      return parent.length;
+    }
+
+  }
+
   //  public BinaryRule[] splitRulesWithParent(int state) {
   //    return splitRulesWithParent[state];
   //  }
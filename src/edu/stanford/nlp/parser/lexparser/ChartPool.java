@@ -0,0 +1,156 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import edu.stanford.nlp.util.Generics;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps the charts of {@link ExhaustivePCFGParser}s which have finished
+ * with them, so that the next parser which needs a chart of that size
+ * can reuse one rather than allocating a new one.  Charts run to
+ * hundreds of megabytes for long sentences, and when a new
+ * {@link LexicalizedParserQuery} is made for each sentence, as the
+ * pipeline does, allocating them over and over is a large part of the
+ * garbage collector's work.
+ * <br>
+ * Charts are sized in buckets of {@link #BUCKET_SIZE} words, so that a
+ * chart can be reused for sentences of similar lengths.  The pool only
+ * keeps idle charts up to a total of {@code maxBytes}; beyond that
+ * released charts are left to the garbage collector.  Idle charts are
+ * only softly reachable, so the garbage collector can also take them back
+ * when memory runs short, rather than the pool holding on to them for the
+ * life of the parser.  It is threadsafe,
+ * so one pool is shared by all the queries of a {@link LexicalizedParser}.
+ * A query gives its chart back with {@link LexicalizedParserQuery#release()}.
+ */
+public class ChartPool {
+
+  /** Chart sizes are rounded up to a multiple of this */
+  public static final int BUCKET_SIZE = 8;
+
+  private final long maxBytes;
+
+  /** The idle charts by size */
+  private final Map<Integer, Deque<IdleChart>> idle = Generics.newHashMap();
+  private long idleBytes;
+
+  private long requests;
+  private long hits;
+  private long discards;
+
+  /**
+   * @param maxBytes The most memory the idle charts may take up
+   */
+  public ChartPool(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /** The size of chart to use for sentences which need size {@code size}. */
+  static int bucket(int size) {
+    return (size + BUCKET_SIZE - 1) / BUCKET_SIZE * BUCKET_SIZE;
+  }
+
+  /**
+   * Returns an idle chart of the given size with the given arrays, or
+   * null if there is none.
+   */
+  synchronized ExhaustivePCFGParser.Chart take(int size, int numStates, int numTags,
+                                               boolean outside, boolean lengthNormalization) {
+    requests++;
+    Deque<IdleChart> charts = idle.get(size);
+    if (charts == null) {
+      return null;
+    }
+    for (Iterator<IdleChart> it = charts.iterator(); it.hasNext(); ) {
+      IdleChart idleChart = it.next();
+      ExhaustivePCFGParser.Chart chart = idleChart.get();
+      if (chart == null) {
+        // taken back by the garbage collector
+        it.remove();
+        idleBytes -= idleChart.bytes;
+      } else if (chart.fits(numStates, numTags, outside, lengthNormalization)) {
+        it.remove();
+        idleBytes -= idleChart.bytes;
+        hits++;
+        return chart;
+      }
+    }
+    return null;
+  }
+
+  /** Keeps the chart for reuse, if there is room for it. */
+  synchronized void release(ExhaustivePCFGParser.Chart chart) {
+    if (idleBytes + chart.bytes > maxBytes) {
+      removeCollected();
+    }
+    if (idleBytes + chart.bytes > maxBytes) {
+      discards++;
+      return;
+    }
+    Deque<IdleChart> charts = idle.get(chart.size);
+    if (charts == null) {
+      charts = new ArrayDeque<IdleChart>();
+      idle.put(chart.size, charts);
+    }
+    charts.push(new IdleChart(chart));
+    idleBytes += chart.bytes;
+  }
+
+  /** Forgets the idle charts which the garbage collector has taken back. */
+  private void removeCollected() {
+    for (Deque<IdleChart> charts : idle.values()) {
+      for (Iterator<IdleChart> it = charts.iterator(); it.hasNext(); ) {
+        IdleChart idleChart = it.next();
+        if (idleChart.get() == null) {
+          it.remove();
+          idleBytes -= idleChart.bytes;
+        }
+      }
+    }
+  }
+
+  /** Lets go of all the idle charts, for instance when memory has run out. */
+  public synchronized void clear() {
+    idle.clear();
+    idleBytes = 0;
+  }
+
+  /** The memory taken up by the idle charts. */
+  public synchronized long idleBytes() {
+    removeCollected();
+    return idleBytes;
+  }
+
+  /** The fraction of requests for a chart which reused an idle one. */
+  public synchronized double hitRate() {
+    return requests == 0 ? 0.0 : (double) hits / requests;
+  }
+
+  @Override
+  public synchronized String toString() {
+    removeCollected();
+    int numIdle = 0;
+    for (Deque<IdleChart> charts : idle.values()) {
+      numIdle += charts.size();
+    }
+    return String.format("Chart pool: %d of %d charts reused (%.1f%%); %d idle charts of %.1f MB (at most %.1f MB); %d discarded",
+                         hits, requests, 100.0 * hitRate(), numIdle, idleBytes / 1048576.0, maxBytes / 1048576.0, discards);
+  }
+
+  /** An idle chart, which the garbage collector may take back, and its size. */
+  private static class IdleChart extends SoftReference<ExhaustivePCFGParser.Chart> {
+
+    final long bytes;
+
+    IdleChart(ExhaustivePCFGParser.Chart chart) {
+      super(chart);
+      bytes = chart.bytes;
+    }
+
+  }
+
+}
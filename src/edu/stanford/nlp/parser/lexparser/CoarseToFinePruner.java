@@ -0,0 +1,474 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import edu.stanford.nlp.math.SloppyMath;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prunes the chart of an {@link ExhaustivePCFGParser} by first parsing
+ * with a coarse grammar, in which each state is projected onto a less
+ * split one (by default its basic category, so that {@code NP^S-v} and
+ * {@code NP^VP} both become {@code NP}).
+ * <br>
+ * Each coarse rule gets the probability of the fine rules projecting
+ * onto it, averaged over their parents.  A fine state over a span is
+ * then only built if the best coarse parse through its coarse state over
+ * that span is within {@code threshold} (a log probability, so
+ * non-positive) of the best coarse parse.  These are Viterbi
+ * max-marginals rather than summed posteriors, to match the fine
+ * parser, which also maximizes.  The closer the threshold is to 0, the
+ * more is pruned, and the more likely it is that the best fine parse is
+ * lost.  If the pruned chart has no parse at all, the parser fills in
+ * the rest of the chart without pruning.
+ * <br>
+ * The coarse pass starts from the fine chart's cells of length one, so
+ * it needs no lexicon of its own.  The coarse grammar ({@link Grammar})
+ * is built once per {@link LexicalizedParser} and shared, while the
+ * pruner holds the coarse chart, so is not threadsafe: use one per parser.
+ */
+class CoarseToFinePruner {
+
+  private final int numFineStates;
+  private final int numCoarseStates;
+  /** The coarse state of each fine state */
+  private final int[] coarseState;
+  private final int coarseGoal;
+  private final float threshold;
+
+  // the coarse binary rules, sorted by left child, and unary rules by child
+  private final int[] binaryParent;
+  private final int[] binaryLeftChild;
+  private final int[] binaryRightChild;
+  private final float[] binaryScore;
+  private final int[][] unaryParent;
+  private final float[][] unaryScore;
+
+  // The coarse chart is kept split-major, so that the best split for a
+  // rule is found by running down two arrays
+  private int length;
+  private int arraySize;
+  private float[][][] iScoreByStart; // [start][state][end]
+  private float[][][] iScoreByEnd; // [end][state][start]
+  private float[][][] oScoreByStart; // [start][state][end]: as a left child until done, then the whole outside score
+  private float[][][] oScoreByEnd; // [end][state][start]: as a right child
+  // as in ExhaustivePCFGParser, the nearest and furthest ends of each
+  // state from each start, and starts from each end, to narrow the splits
+  private int[][] narrowRExtent; // [start][state]
+  private int[][] wideRExtent; // [start][state]
+  private int[][] narrowLExtent; // [end][state]
+  private int[][] wideLExtent; // [end][state]
+  private float bestScore;
+  private final float[] cell;
+  private final float[] before;
+  private final boolean[] coarseAllowed;
+  private final boolean[] allowed;
+
+  private final Stats stats = new Stats();
+
+  CoarseToFinePruner(Grammar grammar, double threshold) {
+    this.threshold = (float) threshold;
+    numFineStates = grammar.numFineStates;
+    numCoarseStates = grammar.numCoarseStates;
+    coarseState = grammar.coarseState;
+    coarseGoal = grammar.coarseGoal;
+    binaryParent = grammar.binaryParent;
+    binaryLeftChild = grammar.binaryLeftChild;
+    binaryRightChild = grammar.binaryRightChild;
+    binaryScore = grammar.binaryScore;
+    unaryParent = grammar.unaryParent;
+    unaryScore = grammar.unaryScore;
+    cell = new float[numCoarseStates];
+    before = new float[numCoarseStates];
+    coarseAllowed = new boolean[numCoarseStates];
+    allowed = new boolean[numFineStates];
+  }
+
+  /**
+   * Does the coarse inside and outside passes for a sentence.
+   *
+   * @param fineIScore The fine chart, of which only the cells of length
+   *                   one (the tags and their unaries) are read
+   * @param length The length of the sentence, including the boundary
+   * @return Whether the coarse grammar found a parse; if not, nothing
+   *         can be pruned
+   */
+  boolean prune(float[][][] fineIScore, int length) {
+    this.length = length;
+    stats.clear();
+    if (length >= arraySize) {
+      arraySize = length + 1;
+      iScoreByStart = new float[arraySize][numCoarseStates][arraySize + 1];
+      iScoreByEnd = new float[arraySize + 1][numCoarseStates][arraySize];
+      oScoreByStart = new float[arraySize][numCoarseStates][arraySize + 1];
+      oScoreByEnd = new float[arraySize + 1][numCoarseStates][arraySize];
+      narrowRExtent = new int[arraySize][numCoarseStates];
+      wideRExtent = new int[arraySize][numCoarseStates];
+      narrowLExtent = new int[arraySize + 1][numCoarseStates];
+      wideLExtent = new int[arraySize + 1][numCoarseStates];
+    }
+    for (int loc = 0; loc <= length; loc++) {
+      if (loc < length) {
+        Arrays.fill(narrowRExtent[loc], length + 1);
+        Arrays.fill(wideRExtent[loc], -1);
+      }
+      Arrays.fill(narrowLExtent[loc], -1);
+      Arrays.fill(wideLExtent[loc], length + 1);
+      for (int state = 0; state < numCoarseStates; state++) {
+        if (loc < length) {
+          Arrays.fill(iScoreByStart[loc][state], Float.NEGATIVE_INFINITY);
+          Arrays.fill(oScoreByStart[loc][state], Float.NEGATIVE_INFINITY);
+        }
+        Arrays.fill(iScoreByEnd[loc][state], Float.NEGATIVE_INFINITY);
+        Arrays.fill(oScoreByEnd[loc][state], Float.NEGATIVE_INFINITY);
+      }
+    }
+    for (int start = 0; start < length; start++) {
+      float[] fine = fineIScore[start][start + 1];
+      Arrays.fill(cell, Float.NEGATIVE_INFINITY);
+      for (int state = 0; state < numFineStates; state++) {
+        if (fine[state] > cell[coarseState[state]]) {
+          cell[coarseState[state]] = fine[state];
+        }
+      }
+      setIScores(start, start + 1);
+    }
+    doInsideScores();
+    bestScore = iScoreByStart[0][coarseGoal][length];
+    if (bestScore == Float.NEGATIVE_INFINITY) {
+      return false;
+    }
+    oScoreByStart[0][coarseGoal][length] = 0.0f;
+    doOutsideScores();
+    return true;
+  }
+
+  /** Copies cell into the chart over [start, end). */
+  private void setIScores(int start, int end) {
+    for (int state = 0; state < numCoarseStates; state++) {
+      iScoreByStart[start][state][end] = cell[state];
+      iScoreByEnd[end][state][start] = cell[state];
+      if (cell[state] > Float.NEGATIVE_INFINITY) {
+        narrowRExtent[start][state] = Math.min(narrowRExtent[start][state], end);
+        wideRExtent[start][state] = Math.max(wideRExtent[start][state], end);
+        narrowLExtent[end][state] = Math.max(narrowLExtent[end][state], start);
+        wideLExtent[end][state] = Math.min(wideLExtent[end][state], start);
+      }
+    }
+  }
+
+  /** The first split at which the rule can make [start, end), given the extents. */
+  private int minSplit(int r, int start, int end) {
+    return Math.max(narrowRExtent[start][binaryLeftChild[r]], wideLExtent[end][binaryRightChild[r]]);
+  }
+
+  /** The last split at which the rule can make [start, end), given the extents. */
+  private int maxSplit(int r, int start, int end) {
+    return Math.min(wideRExtent[start][binaryLeftChild[r]], narrowLExtent[end][binaryRightChild[r]]);
+  }
+
+  private void doInsideScores() {
+    for (int diff = 2; diff <= length; diff++) {
+      // as in ExhaustivePCFGParser, only the whole sentence ends with the boundary
+      for (int start = 0; start < ((diff == length) ? 1 : length - diff); start++) {
+        int end = start + diff;
+        Arrays.fill(cell, Float.NEGATIVE_INFINITY);
+        float[][] iScore_start = iScoreByStart[start];
+        float[][] iScore_end = iScoreByEnd[end];
+        for (int r = 0; r < binaryParent.length; r++) {
+          float[] left = iScore_start[binaryLeftChild[r]];
+          float[] right = iScore_end[binaryRightChild[r]];
+          float best = Float.NEGATIVE_INFINITY;
+          for (int split = minSplit(r, start, end), max = maxSplit(r, start, end); split <= max; split++) {
+            float tot = left[split] + right[split];
+            best = Math.max(best, tot);
+          }
+          float tot = best + binaryScore[r];
+          if (tot > cell[binaryParent[r]]) {
+            cell[binaryParent[r]] = tot;
+          }
+        }
+        // the fine unary rules are closed, so apply these once
+        System.arraycopy(cell, 0, before, 0, numCoarseStates);
+        for (int child = 0; child < numCoarseStates; child++) {
+          float iS = before[child];
+          if (iS == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          int[] parents = unaryParent[child];
+          float[] scores = unaryScore[child];
+          for (int u = 0; u < parents.length; u++) {
+            float tot = iS + scores[u];
+            if (tot > cell[parents[u]]) {
+              cell[parents[u]] = tot;
+            }
+          }
+        }
+        setIScores(start, end);
+      }
+    }
+  }
+
+  private void doOutsideScores() {
+    for (int diff = length; diff >= 2; diff--) {
+      for (int start = 0; start < ((diff == length) ? 1 : length - diff); start++) {
+        int end = start + diff;
+        float[][] iScore_start = iScoreByStart[start];
+        float[][] iScore_end = iScoreByEnd[end];
+        float[][] oScore_start = oScoreByStart[start];
+        float[][] oScore_end = oScoreByEnd[end];
+        // all the binary rules over this span have been done
+        for (int state = 0; state < numCoarseStates; state++) {
+          float asLeft = oScore_start[state][end];
+          float asRight = oScore_end[state][start];
+          before[state] = cell[state] = asLeft > asRight ? asLeft : asRight;
+        }
+        for (int child = 0; child < numCoarseStates; child++) {
+          if (iScore_start[child][end] == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          int[] parents = unaryParent[child];
+          float[] scores = unaryScore[child];
+          for (int u = 0; u < parents.length; u++) {
+            float tot = before[parents[u]] + scores[u];
+            if (tot > cell[child]) {
+              cell[child] = tot;
+            }
+          }
+        }
+        for (int state = 0; state < numCoarseStates; state++) {
+          oScore_start[state][end] = cell[state];
+        }
+
+        for (int r = 0; r < binaryParent.length; r++) {
+          float oS = cell[binaryParent[r]];
+          if (oS == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          oS += binaryScore[r];
+          int leftChild = binaryLeftChild[r];
+          int rightChild = binaryRightChild[r];
+          float[] leftInside = iScore_start[leftChild];
+          float[] rightInside = iScore_end[rightChild];
+          float[] leftOutside = oScore_start[leftChild];
+          float[] rightOutside = oScore_end[rightChild];
+          for (int split = minSplit(r, start, end), max = maxSplit(r, start, end); split <= max; split++) {
+            float totL = oS + rightInside[split];
+            leftOutside[split] = Math.max(leftOutside[split], totL);
+            float totR = oS + leftInside[split];
+            rightOutside[split] = Math.max(rightOutside[split], totR);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns which fine states may be built over [start, end), or null if
+   * none may.  The array is reused by the next call.  Only valid after
+   * {@link #prune} has returned true, and only for spans of length two
+   * or more.
+   */
+  boolean[] allowedStates(int start, int end) {
+    float cutoff = bestScore + threshold;
+    boolean any = false;
+    for (int state = 0; state < numCoarseStates; state++) {
+      float iS = iScoreByStart[start][state][end];
+      boolean keep = iS + oScoreByStart[start][state][end] >= cutoff;
+      coarseAllowed[state] = keep;
+      if (iS > Float.NEGATIVE_INFINITY) {
+        stats.items++;
+        if ( ! keep) {
+          stats.prunedItems++;
+        }
+      }
+      any |= keep;
+    }
+    stats.cells++;
+    if ( ! any) {
+      stats.prunedCells++;
+      return null;
+    }
+    for (int state = 0; state < numFineStates; state++) {
+      allowed[state] = coarseAllowed[coarseState[state]];
+    }
+    return allowed;
+  }
+
+  /** Records that the pruned chart had no parse, so the sentence was reparsed without pruning. */
+  void recordFallback() {
+    stats.fallbacks++;
+  }
+
+  /** The pruning done for the last sentence. */
+  Stats stats() {
+    return stats;
+  }
+
+
+  /**
+   * The coarse grammar: the coarse state of each fine state and the
+   * coarse rules.  It doesn't change once built, so one is shared by all
+   * the parsers of a LexicalizedParser; see
+   * {@link LexicalizedParser#coarseGrammar()}.
+   */
+  static class Grammar {
+
+    private final int numFineStates;
+    private final int numCoarseStates;
+    private final int[] coarseState;
+    private final int coarseGoal;
+    private final int[] binaryParent;
+    private final int[] binaryLeftChild;
+    private final int[] binaryRightChild;
+    private final float[] binaryScore;
+    private final int[][] unaryParent;
+    private final float[][] unaryScore;
+
+    Grammar(BinaryGrammar bg, UnaryGrammar ug, Index<String> stateIndex,
+            TagProjection projection, String goalStr) {
+      numFineStates = stateIndex.size();
+      Index<String> coarseIndex = new HashIndex<String>();
+      coarseState = new int[numFineStates];
+      for (int state = 0; state < numFineStates; state++) {
+        coarseState[state] = coarseIndex.addToIndex(projection.project(stateIndex.get(state)));
+      }
+      coarseGoal = coarseIndex.addToIndex(projection.project(goalStr));
+      numCoarseStates = coarseIndex.size();
+
+      // A coarse rule gets the probability of its fine rules, averaged
+      // over the fine parents, which is what a coarse grammar read off the
+      // treebank would give if all those parents were equally frequent
+      boolean[] isParent = new boolean[numFineStates];
+      for (BinaryRule rule : bg) {
+        isParent[rule.parent] = true;
+      }
+      for (UnaryRule rule : ug) {
+        isParent[rule.parent] = true;
+      }
+      int[] numParents = new int[numCoarseStates];
+      for (int state = 0; state < numFineStates; state++) {
+        if (isParent[state]) {
+          numParents[coarseState[state]]++;
+        }
+      }
+      Map<Long, Float> binaries = Generics.newHashMap();
+      for (BinaryRule rule : bg) {
+        long key = ((long) coarseState[rule.parent] * numCoarseStates + coarseState[rule.leftChild]) * numCoarseStates +
+            coarseState[rule.rightChild];
+        addProbability(binaries, key, rule.score, numParents[coarseState[rule.parent]]);
+      }
+      Map<Long, Float> unaries = Generics.newHashMap();
+      for (Iterator<UnaryRule> it = ug.closedRuleIterator(); it.hasNext(); ) {
+        UnaryRule rule = it.next();
+        int parent = coarseState[rule.parent];
+        int child = coarseState[rule.child];
+        if (parent == child) {
+          // never better than not applying the rule
+          continue;
+        }
+        long key = (long) parent * numCoarseStates + child;
+        addProbability(unaries, key, rule.score, numParents[parent]);
+      }
+
+      List<Long> binaryKeys = Generics.newArrayList();
+      for (List<Long> keys : byChild(binaries.keySet(), numCoarseStates)) {
+        binaryKeys.addAll(keys);
+      }
+      int numBinaries = binaryKeys.size();
+      binaryParent = new int[numBinaries];
+      binaryLeftChild = new int[numBinaries];
+      binaryRightChild = new int[numBinaries];
+      binaryScore = new float[numBinaries];
+      for (int i = 0; i < numBinaries; i++) {
+        long key = binaryKeys.get(i);
+        binaryParent[i] = (int) (key / numCoarseStates / numCoarseStates);
+        binaryLeftChild[i] = (int) ((key / numCoarseStates) % numCoarseStates);
+        binaryRightChild[i] = (int) (key % numCoarseStates);
+        binaryScore[i] = binaries.get(key);
+      }
+      List<List<Long>> unariesByChild = byChild(unaries.keySet(), 1);
+      unaryParent = new int[numCoarseStates][];
+      unaryScore = new float[numCoarseStates][];
+      for (int child = 0; child < numCoarseStates; child++) {
+        List<Long> keys = unariesByChild.get(child);
+        unaryParent[child] = new int[keys.size()];
+        unaryScore[child] = new float[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+          long key = keys.get(i);
+          unaryParent[child][i] = (int) (key / numCoarseStates);
+          unaryScore[child][i] = unaries.get(key);
+        }
+      }
+    }
+
+    /** Adds exp(score) / numParents to the probability of the rule, in log space. */
+    private static void addProbability(Map<Long, Float> rules, long key, float score, int numParents) {
+      float share = score - (float) Math.log(numParents);
+      Float old = rules.get(key);
+      // the closed unary rules are best paths, so can add up to more than 1
+      rules.put(key, Math.min(0.0f, old == null ? share : SloppyMath.logAdd(old, share)));
+    }
+
+    /** Groups rule keys by the child found at {@code (key / divisor) % numCoarseStates}. */
+    private List<List<Long>> byChild(Iterable<Long> keys, int divisor) {
+      List<List<Long>> byChild = Generics.newArrayList(numCoarseStates);
+      for (int state = 0; state < numCoarseStates; state++) {
+        byChild.add(Generics.<Long>newArrayList());
+      }
+      for (long key : keys) {
+        byChild.get((int) ((key / divisor) % numCoarseStates)).add(key);
+      }
+      return byChild;
+    }
+
+  }
+
+
+  /**
+   * Counts of what was pruned, for one sentence or added up over many.
+   */
+  public static class Stats {
+
+    /** Chart cells of length two or more */
+    public long cells;
+    /** Cells in which nothing was left to build */
+    public long prunedCells;
+    /** Coarse states over cells which the coarse grammar could build */
+    public long items;
+    /** Those of the items whose fine states were not built */
+    public long prunedItems;
+    /** Sentences which had to be reparsed without pruning */
+    public long fallbacks;
+
+    public void clear() {
+      cells = prunedCells = items = prunedItems = fallbacks = 0;
+    }
+
+    public void add(Stats other) {
+      cells += other.cells;
+      prunedCells += other.prunedCells;
+      items += other.items;
+      prunedItems += other.prunedItems;
+      fallbacks += other.fallbacks;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Coarse-to-fine pruning: pruned %d of %d cells (%.1f%%) and %d of %d coarse items (%.1f%%); %d fallback parses",
+                           prunedCells, cells, percent(prunedCells, cells),
+                           prunedItems, items, percent(prunedItems, items), fallbacks);
+    }
+
+    private static double percent(long part, long whole) {
+      return whole == 0 ? 0.0 : 100.0 * part / whole;
+    }
+
+  }
+
+}
@@ -97,6 +97,9 @@ public class EvaluateTreebank {
 
   private boolean saidMemMessage = false;
 
+  /** What coarse-to-fine parsing pruned, added up over the sentences parsed */
+  private final CoarseToFinePruner.Stats pruningStats = new CoarseToFinePruner.Stats();
+
   /**
    * The tagger optionally used before parsing.
    * <br>
@@ -291,6 +294,12 @@ public class EvaluateTreebank {
       if (pq.saidMemMessage()) {
         saidMemMessage = true;
       }
+      if (op.testOptions.coarseToFine && pq.getPCFGParser() instanceof ExhaustivePCFGParser) {
+        CoarseToFinePruner.Stats stats = ((ExhaustivePCFGParser) pq.getPCFGParser()).pruningStats();
+        if (stats != null) {
+          pruningStats.add(stats);
+        }
+      }
 
       Tree tree;
       List<? extends HasWord> sentence = pq.originalSentence();
@@ -626,6 +635,7 @@ public class EvaluateTreebank {
           ParserQuery pq = wrapper.poll();
           goldTree = goldTrees.poll();
           processResults(pq, goldTree, pwErr, pwOut, pwFileOut, pwStats, treePrint);
+          pq.release();
         }
       } // for tree iterator
       wrapper.join();
@@ -633,6 +643,7 @@ public class EvaluateTreebank {
         ParserQuery pq = wrapper.poll();
         Tree goldTree = goldTrees.poll();
         processResults(pq, goldTree, pwErr, pwOut, pwFileOut, pwStats, treePrint);
+        pq.release();
       }
     } else {
       ParserQuery pq = pqFactory.parserQuery();
@@ -659,6 +670,15 @@ public class EvaluateTreebank {
     if (op.testOptions.evalb) {
       EvalbFormatWriter.closeEVALBfiles();
     }
+    if (op.testOptions.coarseToFine) {
+      pwErr.println(pruningStats);
+    }
+    if (op.testOptions.verbose && pqFactory instanceof LexicalizedParser) {
+      ChartPool chartPool = ((LexicalizedParser) pqFactory).chartPool();
+      if (chartPool != null) {
+        pwErr.println(chartPool);
+      }
+    }
     if(numSkippedEvals != 0) {
       pwErr.printf("Unable to evaluate %d parser hypotheses due to yield mismatch\n",numSkippedEvals);
     }
@@ -103,6 +103,9 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
 
   protected final int numStates;
   protected int arraySize = 0;
+  /** The arrays of the chart, all of which are also in the fields above */
+  private Chart chart;
+  private ChartPool chartPool;
 
   /**
    * When you want to force the parser to parse a particular
@@ -328,6 +331,9 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
   protected int[][] narrowRExtent; // = null; // [start][state]: the leftmost right extent of state s starting at position i
   protected int[][] wideRExtent; // = null; // [start][state] the rightmost right extent of state s starting at position i
 
+  /** Prunes the chart by parsing with a coarser grammar first; null unless op.testOptions.coarseToFine */
+  protected CoarseToFinePruner pruner; // = null;
+
   protected final boolean[] isTag; // this records whether grammar states (stateIndex) correspond to POS tags
 
 
@@ -687,47 +693,49 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
           if (end < min1) {
             continue;
           }
-          BinaryRule[] rules = bg.splitRulesWithLC(s);
-          for (BinaryRule br  : rules) {
-            float oS = oScore[start][end][br.parent];
+          BinaryGrammar.PackedRules rules = bg.packedRulesWithLC(s);
+          int leftChild = s;
+          for (int r = 0, numRules = rules.size(); r < numRules; r++) {
+            float oS = oScore[start][end][rules.parent[r]];
             if (oS == Float.NEGATIVE_INFINITY) {
               continue;
             }
-            int max1 = narrowLExtent[end][br.rightChild];
+            int rightChild = rules.child[r];
+            int max1 = narrowLExtent[end][rightChild];
             if (max1 < min1) {
               continue;
             }
             int min = min1;
             int max = max1;
             if (max - min > 2) {
-              int min2 = wideLExtent[end][br.rightChild];
+              int min2 = wideLExtent[end][rightChild];
               min = (min1 > min2 ? min1 : min2);
               if (max1 < min) {
                 continue;
               }
-              int max2 = wideRExtent[start][br.leftChild];
+              int max2 = wideRExtent[start][leftChild];
               max = (max1 < max2 ? max1 : max2);
               if (max < min) {
                 continue;
               }
             }
-            float pS = br.score;
+            float pS = rules.score[r];
             for (int split = min; split <= max; split++) {
-              float lS = iScore[start][split][br.leftChild];
+              float lS = iScore[start][split][leftChild];
               if (lS == Float.NEGATIVE_INFINITY) {
                 continue;
               }
-              float rS = iScore[split][end][br.rightChild];
+              float rS = iScore[split][end][rightChild];
               if (rS == Float.NEGATIVE_INFINITY) {
                 continue;
               }
               float totL = pS + rS + oS;
-              if (totL > oScore[start][split][br.leftChild]) {
-                oScore[start][split][br.leftChild] = totL;
+              if (totL > oScore[start][split][leftChild]) {
+                oScore[start][split][leftChild] = totL;
               }
               float totR = pS + lS + oS;
-              if (totR > oScore[split][end][br.rightChild]) {
-                oScore[split][end][br.rightChild] = totR;
+              if (totR > oScore[split][end][rightChild]) {
+                oScore[split][end][rightChild] = totR;
               }
             }
           }
@@ -737,47 +745,49 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
           if (max1 < start) {
             continue;
           }
-          BinaryRule[] rules = bg.splitRulesWithRC(s);
-          for (BinaryRule br : rules) {
-            float oS = oScore[start][end][br.parent];
+          BinaryGrammar.PackedRules rules = bg.packedRulesWithRC(s);
+          int rightChild = s;
+          for (int r = 0, numRules = rules.size(); r < numRules; r++) {
+            float oS = oScore[start][end][rules.parent[r]];
             if (oS == Float.NEGATIVE_INFINITY) {
               continue;
             }
-            int min1 = narrowRExtent[start][br.leftChild];
+            int leftChild = rules.child[r];
+            int min1 = narrowRExtent[start][leftChild];
             if (max1 < min1) {
               continue;
             }
             int min = min1;
             int max = max1;
             if (max - min > 2) {
-              int min2 = wideLExtent[end][br.rightChild];
+              int min2 = wideLExtent[end][rightChild];
               min = (min1 > min2 ? min1 : min2);
               if (max1 < min) {
                 continue;
               }
-              int max2 = wideRExtent[start][br.leftChild];
+              int max2 = wideRExtent[start][leftChild];
               max = (max1 < max2 ? max1 : max2);
               if (max < min) {
                 continue;
               }
             }
-            float pS = br.score;
+            float pS = rules.score[r];
             for (int split = min; split <= max; split++) {
-              float lS = iScore[start][split][br.leftChild];
+              float lS = iScore[start][split][leftChild];
               if (lS == Float.NEGATIVE_INFINITY) {
                 continue;
               }
-              float rS = iScore[split][end][br.rightChild];
+              float rS = iScore[split][end][rightChild];
               if (rS == Float.NEGATIVE_INFINITY) {
                 continue;
               }
               float totL = pS + rS + oS;
-              if (totL > oScore[start][split][br.leftChild]) {
-                oScore[start][split][br.leftChild] = totL;
+              if (totL > oScore[start][split][leftChild]) {
+                oScore[start][split][leftChild] = totL;
               }
               float totR = pS + lS + oS;
-              if (totR > oScore[split][end][br.rightChild]) {
-                oScore[split][end][br.rightChild] = totR;
+              if (totR > oScore[split][end][rightChild]) {
+                oScore[split][end][rightChild] = totR;
               }
             }
           }
@@ -834,6 +844,30 @@ oScore[split][end][br.rightChild] = totR;
    *  of length 2 or more.
    */
   void doInsideScores() {
+    boolean pruning = false;
+    if (pruner == null && op.testOptions.coarseToFine) {
+      // not made by a LexicalizedParserQuery, so no shared coarse grammar
+      setCoarseGrammar(new CoarseToFinePruner.Grammar(bg, ug, stateIndex, new BasicCategoryTagProjection(tlp), goalStr));
+    }
+    if (pruner != null) {
+      if (usePruning()) {
+        pruning = pruner.prune(iScore, length);
+      } else {
+        pruner.stats().clear();
+      }
+    }
+    doInsideChartCells(pruning);
+    if (pruning && iScore[0][length][stateIndex.indexOf(goalStr)] == Float.NEGATIVE_INFINITY) {
+      // pruned too much: what was built is still right, so just fill in the rest
+      pruner.recordFallback();
+      doInsideChartCells(false);
+    }
+    if (pruner != null && op.testOptions.verbose) {
+      System.err.println(pruner.stats());
+    }
+  } // end doInsideScores()
+
+  private void doInsideChartCells(boolean pruning) {
     for (int diff = 2; diff <= length; diff++) {
       if (Thread.interrupted()) {
         throw new RuntimeInterruptedException();
@@ -843,13 +877,23 @@ oScore[split][end][br.rightChild] = totR;
       // with whole sentence span. So for 3 word sentence + boundary = 4,
       // length == 4, and do [0,2], [1,3]; [0,3]; [0,4]
       for (int start = 0; start < ((diff == length) ? 1: length - diff); start++) {
-        doInsideChartCell(diff, start);
+        boolean[] allowed = null;
+        if (pruning) {
+          allowed = pruner.allowedStates(start, start + diff);
+          if (allowed == null) {
+            continue;
+          }
+        }
+        doInsideChartCell(diff, start, allowed);
       } // for start
     } // for diff (i.e., span)
-  } // end doInsideScores()
+  }
 
 
-  private void doInsideChartCell(final int diff, final int start) {
+  /** Fills in one cell of the chart.  If allowed is not null, only the
+   *  states it marks true are built.
+   */
+  private void doInsideChartCell(final int diff, final int start, final boolean[] allowed) {
     final boolean lengthNormalization = op.testOptions.lengthNormalization;
     if (spillGuts) {
       tick("Binaries for span " + diff + " start " + start + " ...");
@@ -880,10 +924,17 @@ oScore[split][end][br.rightChild] = totR;
       if (narrowR >= end) {  // can this left constituent leave space for a right constituent?
         continue;
       }
-      BinaryRule[] leftRules = bg.splitRulesWithLC(leftState);
-      //      if (spillGuts) System.out.println("Found " + leftRules.length + " left rules for state " + stateIndex.get(leftState));
-      for (BinaryRule rule : leftRules) {
-        int rightChild = rule.rightChild;
+      BinaryGrammar.PackedRules leftRules = bg.packedRulesWithLC(leftState);
+      int[] leftParents = leftRules.parent;
+      int[] rightChildren = leftRules.child;
+      float[] leftScores = leftRules.score;
+      //      if (spillGuts) System.out.println("Found " + leftRules.size() + " left rules for state " + stateIndex.get(leftState));
+      for (int r = 0, numRules = leftRules.size(); r < numRules; r++) {
+        int parentState = leftParents[r];
+        if (allowed != null && ! allowed[parentState]) {
+          continue;
+        }
+        int rightChild = rightChildren[r];
         int narrowL = narrowLExtent_end[rightChild];
         if (narrowL < narrowR) { // can this right constituent fit next to the left constituent?
           continue;
@@ -899,8 +950,7 @@ oScore[split][end][br.rightChild] = totR;
         if (min > max) { // can this left constituent stretch far enough to reach the right constituent?
           continue;
         }
-        float pS = rule.score;
-        int parentState = rule.parent;
+        float pS = leftScores[r];
         float oldIScore = iScore_start_end[parentState];
         float bestIScore = oldIScore;
         boolean foundBetter;  // always set below for this rule
@@ -948,7 +998,7 @@ oScore[split][end][br.rightChild] = totR;
               continue;
             }
             float tot = pS + lS + rS;
-            if (spillGuts) { System.err.println("Rule " + rule + " over [" + start + "," + end + ") has log score " + tot + " from L[" + stateIndex.get(leftState) + "=" + leftState + "] = "+ lS  + " R[" + stateIndex.get(rightChild) + "=" + rightChild + "] =  " + rS); }
+            if (spillGuts) { System.err.println("Rule " + stateIndex.get(parentState) + " -> " + stateIndex.get(leftState) + " " + stateIndex.get(rightChild) + " " + pS + " over [" + start + "," + end + ") has log score " + tot + " from L[" + stateIndex.get(leftState) + "=" + leftState + "] = "+ lS  + " R[" + stateIndex.get(rightChild) + "=" + rightChild + "] =  " + rS); }
             if (tot > bestIScore) {
               bestIScore = tot;
             }
@@ -1008,12 +1058,18 @@ oScore[split][end][br.rightChild] = totR;
       if (narrowL <= start) {
         continue;
       }
-      BinaryRule[] rightRules = bg.splitRulesWithRC(rightState);
-      //      if (spillGuts) System.out.println("Found " + rightRules.length + " right rules for state " + stateIndex.get(rightState));
-      for (BinaryRule rule : rightRules) {
-        //      if (spillGuts) System.out.println("Considering rule for " + start + " to " + end + ": " + rightRules[i]);
+      BinaryGrammar.PackedRules rightRules = bg.packedRulesWithRC(rightState);
+      int[] rightParents = rightRules.parent;
+      int[] leftChildren = rightRules.child;
+      float[] rightScores = rightRules.score;
+      //      if (spillGuts) System.out.println("Found " + rightRules.size() + " right rules for state " + stateIndex.get(rightState));
+      for (int r = 0, numRules = rightRules.size(); r < numRules; r++) {
+        int parentState = rightParents[r];
+        if (allowed != null && ! allowed[parentState]) {
+          continue;
+        }
 
-        int leftChild = rule.leftChild;
+        int leftChild = leftChildren[r];
         int narrowR = narrowRExtent_start[leftChild];
         if (narrowR > narrowL) {
           continue;
@@ -1029,8 +1085,7 @@ oScore[split][end][br.rightChild] = totR;
         if (min > max) {
           continue;
         }
-        float pS = rule.score;
-        int parentState = rule.parent;
+        float pS = rightScores[r];
         float oldIScore = iScore_start_end[parentState];
         float bestIScore = oldIScore;
         boolean foundBetter; // always initialized below
@@ -1144,6 +1199,9 @@ oScore[split][end][br.rightChild] = totR;
 
       UnaryRule[] unaries = ug.closedRulesByChild(state);
       for (UnaryRule ur : unaries) {
+        if (allowed != null && ! allowed[ur.parent]) {
+          continue;
+        }
 
         if (constraints != null) {
           boolean skip = false;
@@ -1201,6 +1259,26 @@ oScore[split][end][br.rightChild] = totR;
   }
 
 
+  /** Whether doInsideScores can prune with the coarse grammar. */
+  private boolean usePruning() {
+    return noConstraints() && ! op.testOptions.lengthNormalization && op.testOptions.maxSpanForTags <= 1;
+  }
+
+  /** What the coarse-to-fine pruning pruned in the last sentence, or null
+   *  if it is not on.
+   */
+  CoarseToFinePruner.Stats pruningStats() {
+    return pruner == null ? null : pruner.stats();
+  }
+
+  /** Whether there are no constraints.  setConstraints(null) leaves an
+   *  empty list rather than null, and ParserAnnotator always calls it.
+   */
+  private boolean noConstraints() {
+    List<ParserConstraint> constraints = getConstraints();
+    return constraints == null || constraints.isEmpty();
+  }
+
   private void initializeChart(Lattice lr) {
     for (LatticeEdge edge : lr) {
       int start = edge.start;
@@ -2172,7 +2250,7 @@ oScore[split][end][br.rightChild] = totR;
   public void nudgeDownArraySize() {
     try {
       if (arraySize > 2) {
-        considerCreatingArrays(arraySize - 2);
+        considerCreatingArrays(arraySize - 2, false);
       }
     } catch (OutOfMemoryError oome) {
       oome.printStackTrace();
@@ -2180,12 +2258,25 @@ oScore[split][end][br.rightChild] = totR;
   }
 
   private void considerCreatingArrays(int length) {
+    considerCreatingArrays(length, true);
+  }
+
+  /** @param bucket Whether to round the size up to one that the chart pool shares */
+  private void considerCreatingArrays(int length, boolean bucket) {
     if (length > op.testOptions.maxLength + 1 || length >= myMaxLength) {
       throw new OutOfMemoryError("Refusal to create such large arrays.");
     } else {
+      int size = length + 1;
+      if (bucket && chartPool != null) {
+        // a size other parsers can reuse
+        size = Math.max(size, Math.min(ChartPool.bucket(size), op.testOptions.maxLength + 2));
+      }
       try {
-        createArrays(length + 1);
+        createArrays(size);
       } catch (OutOfMemoryError e) {
+        if (chartPool != null) {
+          chartPool.clear();
+        }
         myMaxLength = length;
         if (arraySize > 0) {
           try {
@@ -2196,7 +2287,7 @@ oScore[split][end][br.rightChild] = totR;
         }
         throw e;
       }
-      arraySize = length + 1;
+      arraySize = size;
       if (op.testOptions.verbose) {
         System.err.println("Created PCFG parser arrays of size " + arraySize);
       }
@@ -2205,50 +2296,59 @@ oScore[split][end][br.rightChild] = totR;
 
   protected void createArrays(int length) {
     // zero out some stuff first in case we recently ran out of memory and are reallocating
+    if (chart != null && chartPool != null) {
+      chartPool.release(chart);
+    }
+    chart = null;
     clearArrays();
 
-    int numTags = tagIndex.size();
-    // allocate just the parts of iScore and oScore used (end > start, etc.)
-    // todo: with some modifications to doInsideScores, we wouldn't need to allocate iScore[i,length] for i != 0 and i != length
-    //    System.out.println("initializing iScore arrays with length " + length + " and numStates " + numStates);
-    iScore = new float[length][length + 1][];
-    for (int start = 0; start < length; start++) {
-      for (int end = start + 1; end <= length; end++) {
-        iScore[start][end] = new float[numStates];
-      }
-    }
-    //    System.out.println("finished initializing iScore arrays");
-    if (op.doDep && !op.testOptions.useFastFactored) {
-      //      System.out.println("initializing oScore arrays with length " + length + " and numStates " + numStates);
-      oScore = new float[length][length + 1][];
-      for (int start = 0; start < length; start++) {
-        for (int end = start + 1; end <= length; end++) {
-          oScore[start][end] = new float[numStates];
-        }
-      }
-      // System.out.println("finished initializing oScore arrays");
-    }
-    narrowRExtent = new int[length][numStates];
-    wideRExtent = new int[length][numStates];
-    narrowLExtent = new int[length + 1][numStates];
-    wideLExtent = new int[length + 1][numStates];
-    if (op.doDep && !op.testOptions.useFastFactored) {
-      iPossibleByL = new boolean[length][numStates];
-      iPossibleByR = new boolean[length + 1][numStates];
-      oPossibleByL = new boolean[length][numStates];
-      oPossibleByR = new boolean[length + 1][numStates];
-    }
-    tags = new boolean[length][numTags];
-
-    if (op.testOptions.lengthNormalization) {
-      wordsInSpan = new int[length][length + 1][];
-      for (int start = 0; start < length; start++) {
-        for (int end = start + 1; end <= length; end++) {
-          wordsInSpan[start][end] = new int[numStates];
-        }
-      }
+    boolean outside = op.doDep && ! op.testOptions.useFastFactored;
+    boolean lengthNormalization = op.testOptions.lengthNormalization;
+    if (chartPool != null) {
+      chart = chartPool.take(length, numStates, tagIndex.size(), outside, lengthNormalization);
+    }
+    if (chart == null) {
+      chart = new Chart(length, numStates, tagIndex.size(), outside, lengthNormalization);
+    }
+    iScore = chart.iScore;
+    oScore = chart.oScore;
+    narrowRExtent = chart.narrowRExtent;
+    wideRExtent = chart.wideRExtent;
+    narrowLExtent = chart.narrowLExtent;
+    wideLExtent = chart.wideLExtent;
+    iPossibleByL = chart.iPossibleByL;
+    iPossibleByR = chart.iPossibleByR;
+    oPossibleByL = chart.oPossibleByL;
+    oPossibleByR = chart.oPossibleByR;
+    tags = chart.tags;
+    wordsInSpan = chart.wordsInSpan;
+  }
+
+  /**
+   * Gives the chart back to the chart pool, if there is one, or else just
+   * lets go of it.  The parser allocates a new one, or takes one from the
+   * pool, the next time it parses, but until then none of the results of
+   * the last parse can be retrieved.
+   */
+  public void releaseChart() {
+    if (chart != null && chartPool != null) {
+      chartPool.release(chart);
     }
-    //    System.out.println("ExhaustivePCFGParser constructor finished.");
+    chart = null;
+    clearArrays();
+    arraySize = 0;
+  }
+
+  /** Sets the pool that charts are taken from and released to; null for none. */
+  public void setChartPool(ChartPool chartPool) {
+    this.chartPool = chartPool;
+  }
+
+  /** Sets the coarse grammar to prune with, which may be shared with
+   *  other parsers; null for no pruning.
+   */
+  void setCoarseGrammar(CoarseToFinePruner.Grammar coarseGrammar) {
+    pruner = (coarseGrammar == null) ? null : new CoarseToFinePruner(coarseGrammar, op.testOptions.coarseToFineThreshold);
   }
 
   private void clearArrays() {
@@ -2257,6 +2357,91 @@ oScore[split][end][br.rightChild] = totR;
     oFilteredEnd = oFilteredStart = null;
     tags = null;
     narrowRExtent = wideRExtent = narrowLExtent = wideLExtent = null;
+    wordsInSpan = null;
+  }
+
+
+  /**
+   * The arrays of a chart for sentences of up to {@code size - 1} words
+   * (counting the boundary), which a {@link ChartPool} can pass from one
+   * parser to another.
+   */
+  static class Chart {
+
+    final int size;
+    final long bytes;
+
+    // allocate just the parts of iScore and oScore used (end > start, etc.)
+    final float[][][] iScore;
+    final float[][][] oScore;
+    final int[][] narrowRExtent;
+    final int[][] wideRExtent;
+    final int[][] narrowLExtent;
+    final int[][] wideLExtent;
+    final boolean[][] iPossibleByL;
+    final boolean[][] iPossibleByR;
+    final boolean[][] oPossibleByL;
+    final boolean[][] oPossibleByR;
+    final boolean[][] tags;
+    final int[][][] wordsInSpan;
+
+    Chart(int size, int numStates, int numTags, boolean outside, boolean lengthNormalization) {
+      this.size = size;
+      // todo: with some modifications to doInsideScores, we wouldn't need to allocate iScore[i,length] for i != 0 and i != length
+      iScore = new float[size][size + 1][];
+      for (int start = 0; start < size; start++) {
+        for (int end = start + 1; end <= size; end++) {
+          iScore[start][end] = new float[numStates];
+        }
+      }
+      narrowRExtent = new int[size][numStates];
+      wideRExtent = new int[size][numStates];
+      narrowLExtent = new int[size + 1][numStates];
+      wideLExtent = new int[size + 1][numStates];
+      if (outside) {
+        oScore = new float[size][size + 1][];
+        for (int start = 0; start < size; start++) {
+          for (int end = start + 1; end <= size; end++) {
+            oScore[start][end] = new float[numStates];
+          }
+        }
+        iPossibleByL = new boolean[size][numStates];
+        iPossibleByR = new boolean[size + 1][numStates];
+        oPossibleByL = new boolean[size][numStates];
+        oPossibleByR = new boolean[size + 1][numStates];
+      } else {
+        oScore = null;
+        iPossibleByL = iPossibleByR = oPossibleByL = oPossibleByR = null;
+      }
+      tags = new boolean[size][numTags];
+      if (lengthNormalization) {
+        wordsInSpan = new int[size][size + 1][];
+        for (int start = 0; start < size; start++) {
+          for (int end = start + 1; end <= size; end++) {
+            wordsInSpan[start][end] = new int[numStates];
+          }
+        }
+      } else {
+        wordsInSpan = null;
+      }
+
+      // roughly, ignoring the array headers
+      long cells = (long) size * (size + 1) / 2;
+      long perState = 4 * cells + 4 * 4 * (size + 1);
+      if (outside) {
+        perState += 4 * cells + 4 * (size + 1);
+      }
+      if (lengthNormalization) {
+        perState += 4 * cells;
+      }
+      bytes = perState * numStates + (long) size * numTags;
+    }
+
+    boolean fits(int numStates, int numTags, boolean outside, boolean lengthNormalization) {
+      return iScore[0][1].length == numStates && tags[0].length == numTags &&
+          (oScore != null) == outside && (wordsInSpan != null) == lengthNormalization;
+    }
+
   }
 
 } // end class ExhaustivePCFGParser
@@ -102,6 +102,36 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
 
   public Reranker reranker; // = null;
 
+  /** The charts of finished queries, for new queries to reuse */
+  private transient ChartPool chartPool; // = null;
+
+  /**
+   * Returns the pool of PCFG charts shared by the queries of this
+   * parser, or null if op.testOptions.chartPoolMegabytes is 0.
+   */
+  public synchronized ChartPool chartPool() {
+    if (chartPool == null && op.testOptions.chartPoolMegabytes > 0) {
+      chartPool = new ChartPool(op.testOptions.chartPoolMegabytes * 1048576L);
+    }
+    return chartPool;
+  }
+
+  /** The coarse grammar for coarse-to-fine parsing, made when first needed */
+  private transient CoarseToFinePruner.Grammar coarseGrammar; // = null;
+
+  /**
+   * Returns the coarse grammar that the queries of this parser prune
+   * with, or null if op.testOptions.coarseToFine is off.  It is made once
+   * and shared, as making it goes through all the rules of the grammar.
+   */
+  synchronized CoarseToFinePruner.Grammar coarseGrammar() {
+    if (coarseGrammar == null && op.testOptions.coarseToFine) {
+      TreebankLanguagePack tlp = op.langpack();
+      coarseGrammar = new CoarseToFinePruner.Grammar(bg, ug, stateIndex, new BasicCategoryTagProjection(tlp), tlp.startSymbol());
+    }
+    return op.testOptions.coarseToFine ? coarseGrammar : null;
+  }
+
   @Override
   public TreebankLangParserParams getTLPParams() { return op.tlpParams; }
 
@@ -293,11 +323,15 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
   public Tree parse(List<? extends HasWord> lst) {
     try {
       ParserQuery pq = parserQuery();
-      if (pq.parse(lst)) {
-        Tree bestparse = pq.getBestParse();
-        // -10000 denotes unknown words
-        bestparse.setScore(pq.getPCFGScore() % -10000.0);
-        return bestparse;
+      try {
+        if (pq.parse(lst)) {
+          Tree bestparse = pq.getBestParse();
+          // -10000 denotes unknown words
+          bestparse.setScore(pq.getPCFGScore() % -10000.0);
+          return bestparse;
+        }
+      } finally {
+        pq.release();
       }
     } catch (Exception e) {
       System.err.println("Following exception caught during parsing:");
@@ -356,10 +390,14 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
    */
   public Tree parseTree(List<? extends HasWord> sentence) {
     ParserQuery pq = parserQuery();
-    if (pq.parse(sentence)) {
-      return pq.getBestParse();
-    } else {
-      return null;
+    try {
+      if (pq.parse(sentence)) {
+        return pq.getBestParse();
+      } else {
+        return null;
+      }
+    } finally {
+      pq.release();
     }
   }
 
@@ -1136,6 +1174,15 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
    * needed for the parser). If this is not specified, the parser will
    * try to dynamically grow its parse chart when long sentence are
    * encountered, but may run out of memory trying to do so.</LI>
+   * <LI><code>-coarseToFine</code> Parse with a coarse grammar of basic
+   * categories first, and prune the states of the full grammar which
+   * are unlikely to be in the best parse.  Faster on long sentences,
+   * but may occasionally lose the best parse.  The pruning is controlled
+   * by <code>-coarseToFineThreshold logProb</code> (default -10; nearer 0
+   * prunes more).</LI>
+   * <LI><code>-chartPoolMB megabytes</code> How much memory the PCFG charts
+   * of finished parses may keep for later parses to reuse (default 256;
+   * 0 turns this off).  See {@link ChartPool}.</LI>
    * <LI><code>-outputFormat styles</code> Choose the style(s) of output
    * sentences: <code>penn</code> for prettyprinting as in the Penn
    * treebank files, or <code>oneline</code> for printing sentences one
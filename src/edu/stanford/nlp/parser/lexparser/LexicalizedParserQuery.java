@@ -128,6 +128,8 @@ public class LexicalizedParserQuery implements ParserQuery {
       } else {
         pparser = new ExhaustivePCFGParser(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
       }
+      pparser.setChartPool(parser.chartPool());
+      pparser.setCoarseGrammar(parser.coarseGrammar());
     } else {
       pparser = null;
     }
@@ -167,6 +169,17 @@ public class LexicalizedParserQuery implements ParserQuery {
     subcategoryStripper = op.tlpParams.subcategoryStripper();
   }
 
+  /**
+   * Gives the PCFG parser's chart back to the parser's {@link ChartPool},
+   * so that another query can use it.
+   */
+  @Override
+  public void release() {
+    if (pparser != null) {
+      pparser.releaseChart();
+    }
+  }
+
   @Override
   public void setConstraints(List<ParserConstraint> constraints) {
     if (pparser != null) {
@@ -195,6 +195,7 @@ public class ParseFiles {
           while (wrapper.peek()) {
             ParserQuery pq = wrapper.poll();
             processResults(pq, numProcessed++, pwo);
+            pq.release();
           }
         }
 
@@ -202,6 +203,7 @@ public class ParseFiles {
         while (wrapper.peek()) {
           ParserQuery pq = wrapper.poll();
           processResults(pq, numProcessed++, pwo);
+          pq.release();
         }
       } else {
         ParserQuery pq = pqFactory.parserQuery();
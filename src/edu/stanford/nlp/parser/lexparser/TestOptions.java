@@ -62,9 +62,32 @@ public class TestOptions implements Serializable {
   public boolean useFastFactored = false;
 
 
+  /**
+   * The most memory, in megabytes, that the PCFG charts of finished
+   * queries are kept in for new queries to reuse.  0 turns this off.
+   * The charts are softly held, so the garbage collector can still take
+   * them back.  See {@link ChartPool}.
+   */
+  public int chartPoolMegabytes = 256;
+
   /** If true, use faster iterative deepening CKY algorithm. */
   public boolean iterativeCKY = false;
 
+  /**
+   * If true, the PCFG parser first parses with a coarse grammar, in which
+   * states are projected onto their basic categories, and only builds the
+   * states whose coarse state is within <code>coarseToFineThreshold</code>
+   * of the best coarse parse.  See {@link CoarseToFinePruner}.
+   */
+  public boolean coarseToFine = false;
+
+  /**
+   * The log probability (so non-positive) below the best coarse parse at
+   * which coarse-to-fine parsing prunes.  Nearer 0 is faster but loses
+   * more best parses.
+   */
+  public double coarseToFineThreshold = -10.0;
+
   /**
    * The maximum sentence length (including punctuation, etc.) to parse.
    */
@@ -0,0 +1,259 @@
+package edu.stanford.nlp.parser.nndep;
+
+import edu.stanford.nlp.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact binary serialization of a trained {@link DependencyParser}
+ * model, meant to replace the gzipped text format at load time.
+ * <p>
+ * All numbers are little-endian. The file begins with the 8-byte magic
+ * string {@code NNDEPBIN}, a format version and the model dimensions,
+ * followed by the word / POS / label vocabularies as length-prefixed
+ * UTF-8 strings. The weight matrices follow, starting at a 64-byte
+ * aligned offset and stored as row-major float32: {@code E},
+ * {@code W1}, {@code b1}, {@code W2}, and finally the int32 ids of the
+ * features to pre-compute.
+ * <p>
+ * When the model is a plain file on disk it is memory-mapped read-only.
+ * The embedding matrix {@code E}, which has a row for every known word
+ * and is by far the largest part of the model, is then never copied:
+ * the parser reads its rows straight out of the mapped pages, so
+ * several JVMs loading the same model share one copy of it in the page
+ * cache. The other matrices are small and are decoded into
+ * {@code double} arrays on the heap. Models found on the classpath or
+ * at a URL are read into memory first, and their embeddings stay in
+ * that byte array.
+ *
+ * @see DependencyParser#writeBinaryModelFile(String)
+ */
+public class BinaryModel {
+
+  private static final byte[] MAGIC = "NNDEPBIN".getBytes(StandardCharsets.US_ASCII);
+  private static final int VERSION = 1;
+  private static final int ALIGNMENT = 64;
+
+  final List<String> knownWords, knownPos, knownLabels;
+  final double[][] W1, W2;
+  final double[] b1;
+  final List<Integer> preComputed;
+
+  /** The embeddings of a model to write; null for a model read */
+  final double[][] E;
+  /**
+   * The embeddings of a model read, row-major with
+   * {@link #embeddingSize} floats per row; null for a model to write
+   */
+  final FloatBuffer embeddings;
+  final int embeddingSize;
+
+  BinaryModel(List<String> knownWords, List<String> knownPos, List<String> knownLabels,
+              double[][] E, double[][] W1, double[] b1, double[][] W2, List<Integer> preComputed) {
+    this(knownWords, knownPos, knownLabels, E, null, E[0].length, W1, b1, W2, preComputed);
+  }
+
+  private BinaryModel(List<String> knownWords, List<String> knownPos, List<String> knownLabels,
+                      double[][] E, FloatBuffer embeddings, int embeddingSize,
+                      double[][] W1, double[] b1, double[][] W2, List<Integer> preComputed) {
+    this.knownWords = knownWords;
+    this.knownPos = knownPos;
+    this.knownLabels = knownLabels;
+    this.E = E;
+    this.embeddings = embeddings;
+    this.embeddingSize = embeddingSize;
+    this.W1 = W1;
+    this.b1 = b1;
+    this.W2 = W2;
+    this.preComputed = preComputed;
+  }
+
+  /**
+   * Returns true if the given path (file, classpath resource or URL)
+   * starts with the binary model magic string.
+   */
+  public static boolean isBinaryModel(String path) {
+    try (InputStream is = IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(path)) {
+      byte[] header = new byte[MAGIC.length];
+      int read = 0;
+      while (read < header.length) {
+        int n = is.read(header, read, header.length - read);
+        if (n < 0)
+          return false;
+        read += n;
+      }
+      return Arrays.equals(header, MAGIC);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  public void write(String path) throws IOException {
+    if (E == null)
+      throw new IllegalStateException("Only models built from their weights can be written");
+    int numVocab = knownWords.size() + knownPos.size() + knownLabels.size();
+    int eSize = E[0].length;
+    int hSize = b1.length;
+
+    ByteArrayOutputStream vocab = new ByteArrayOutputStream();
+    for (List<String> strings : Arrays.asList(knownWords, knownPos, knownLabels)) {
+      for (String s : strings) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        vocab.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length).array());
+        vocab.write(bytes);
+      }
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 4 * 10).order(ByteOrder.LITTLE_ENDIAN);
+    header.put(MAGIC);
+    header.putInt(VERSION);
+    header.putInt(knownWords.size());
+    header.putInt(knownPos.size());
+    header.putInt(knownLabels.size());
+    header.putInt(eSize);
+    header.putInt(hSize);
+    header.putInt(W1[0].length / eSize);
+    header.putInt(W2.length);
+    header.putInt(preComputed.size());
+    header.putInt(vocab.size());
+
+    long dataStart = align(header.capacity() + vocab.size());
+    long numFloats = (long) numVocab * eSize + (long) hSize * W1[0].length + hSize + (long) W2.length * hSize;
+    long dataSize = 4 * (numFloats + preComputed.size());
+    if (dataSize > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Model too large for the binary format: " + dataSize + " bytes");
+
+    ByteBuffer data = ByteBuffer.allocate((int) dataSize).order(ByteOrder.LITTLE_ENDIAN);
+    for (double[] row : E)
+      putFloats(data, row);
+    for (double[] row : W1)
+      putFloats(data, row);
+    putFloats(data, b1);
+    for (double[] row : W2)
+      putFloats(data, row);
+    for (int id : preComputed)
+      data.putInt(id);
+
+    try (OutputStream os = IOUtils.getDataOutputStream(path)) {
+      os.write(header.array());
+      vocab.writeTo(os);
+      os.write(new byte[(int) (dataStart - header.capacity() - vocab.size())]);
+      os.write(data.array());
+    }
+  }
+
+  private static long align(long offset) {
+    return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+  }
+
+  private static void putFloats(ByteBuffer buffer, double[] values) {
+    for (double value : values)
+      buffer.putFloat((float) value);
+  }
+
+  public static BinaryModel read(String path) throws IOException {
+    File file = new File(path);
+    ByteBuffer buffer;
+    if (file.isFile() && !path.endsWith(".gz")) {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+           FileChannel channel = raf.getChannel()) {
+        // The mapping stays valid after the channel is closed
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+    } else {
+      try (InputStream is = IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(path)) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        IOUtils.writeStreamToStream(is, bytes);
+        buffer = ByteBuffer.wrap(bytes.toByteArray());
+      }
+    }
+    return read(buffer.order(ByteOrder.LITTLE_ENDIAN));
+  }
+
+  static BinaryModel read(ByteBuffer buffer) {
+    byte[] magic = new byte[MAGIC.length];
+    buffer.get(magic);
+    if (!Arrays.equals(magic, MAGIC))
+      throw new IllegalArgumentException("Not a binary dependency parser model");
+    int version = buffer.getInt();
+    if (version != VERSION)
+      throw new IllegalArgumentException("Unsupported binary model version " + version);
+
+    int nDict = buffer.getInt();
+    int nPOS = buffer.getInt();
+    int nLabel = buffer.getInt();
+    int eSize = buffer.getInt();
+    int hSize = buffer.getInt();
+    int nTokens = buffer.getInt();
+    int nW2Rows = buffer.getInt();
+    int nPreComputed = buffer.getInt();
+    int vocabSize = buffer.getInt();
+
+    int vocabStart = buffer.position();
+    List<String> knownWords = readStrings(buffer, nDict);
+    List<String> knownPos = readStrings(buffer, nPOS);
+    List<String> knownLabels = readStrings(buffer, nLabel);
+    if (buffer.position() != vocabStart + vocabSize)
+      throw new IllegalArgumentException("Corrupt binary model: vocabulary size mismatch");
+
+    buffer.position((int) align(buffer.position()));
+    FloatBuffer floats = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    float[] row = new float[Math.max(eSize * nTokens, Math.max(hSize, eSize))];
+
+    // a view of the embeddings, which are left where they are
+    int numEmbeddingFloats = (nDict + nPOS + nLabel) * eSize;
+    FloatBuffer embeddings = floats.duplicate();
+    embeddings.limit(numEmbeddingFloats);
+    embeddings = embeddings.slice();
+    floats.position(numEmbeddingFloats);
+
+    double[][] W1 = readMatrix(floats, row, hSize, eSize * nTokens);
+    double[] b1 = readMatrix(floats, row, 1, hSize)[0];
+    double[][] W2 = readMatrix(floats, row, nW2Rows, hSize);
+
+    buffer.position(buffer.position() + 4 * floats.position());
+    IntBuffer ints = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    int[] ids = new int[nPreComputed];
+    ints.get(ids);
+    List<Integer> preComputed = new ArrayList<>(nPreComputed);
+    for (int id : ids)
+      preComputed.add(id);
+
+    return new BinaryModel(knownWords, knownPos, knownLabels, null, embeddings, eSize, W1, b1, W2, preComputed);
+  }
+
+  private static List<String> readStrings(ByteBuffer buffer, int n) {
+    List<String> strings = new ArrayList<>(n);
+    for (int i = 0; i < n; ++i) {
+      byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      strings.add(new String(bytes, StandardCharsets.UTF_8));
+    }
+    return strings;
+  }
+
+  private static double[][] readMatrix(FloatBuffer floats, float[] row, int rows, int cols) {
+    double[][] matrix = new double[rows][cols];
+    for (double[] out : matrix) {
+      floats.get(row, 0, cols);
+      for (int j = 0; j < cols; ++j)
+        out[j] = row[j];
+    }
+    return matrix;
+  }
+
+}
@@ -1,15 +1,16 @@
 package edu.stanford.nlp.parser.nndep;
 
 import edu.stanford.nlp.util.CollectionUtils;
+import edu.stanford.nlp.util.IntIntHashMap;
 import edu.stanford.nlp.util.Pair;
 import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
 import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
+import java.nio.FloatBuffer;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
@@ -44,6 +45,15 @@ public class Classifier {
   private final double[][] W1, W2, E;
   private final double[] b1;
 
+  /**
+   * The embedding matrix of a model loaded from a {@link BinaryModel},
+   * row-major with {@code config.embeddingSize} floats per row, read
+   * straight out of the (usually memory-mapped) model file. When this
+   * is set, {@link #E} is null and the classifier can only be used for
+   * inference.
+   */
+  private final FloatBuffer mappedE;
+
   // Global gradSaved
   private double[][] gradSaved;
 
@@ -63,9 +73,20 @@ public class Classifier {
   /**
    * Describes features which should be precomputed. Each entry maps a
    * feature ID to its destined index in the saved hidden unit
-   * activation data (see {@link #saved}).
+   * activation data (see {@link #saved}). Features which are not
+   * precomputed map to -1.
+   * <p>
+   * This lookup happens for every input token of every transition, so
+   * it is kept in a primitive open-addressing table rather than a
+   * boxed {@code Map<Integer, Integer>}.
    */
-  private final Map<Integer, Integer> preMap;
+  private final IntIntHashMap preMap;
+
+  /**
+   * Per-thread scratch space for feed-forward inference, so that
+   * scoring a transition does not allocate hidden layer buffers.
+   */
+  private final ThreadLocal<ScoringBuffers> scoringBuffers = ThreadLocal.withInitial(ScoringBuffers::new);
 
   /**
    * Initial training state is dependent on how the classifier is
@@ -126,20 +147,37 @@ public class Classifier {
    */
   public Classifier(Config config, Dataset dataset, double[][] E, double[][] W1, double[] b1, double[][] W2,
                     List<Integer> preComputed) {
+    this(config, dataset, E, null, W1, b1, W2, preComputed);
+  }
+
+  /**
+   * Instantiate a classifier with previously learned parameters in
+   * order to perform new inference, reading the embedding matrix out
+   * of the given buffer (see {@link #mappedE}) rather than from the heap.
+   */
+  Classifier(Config config, FloatBuffer E, double[][] W1, double[] b1, double[][] W2, List<Integer> preComputed) {
+    this(config, null, null, E, W1, b1, W2, preComputed);
+  }
+
+  private Classifier(Config config, Dataset dataset, double[][] E, FloatBuffer mappedE,
+                     double[][] W1, double[] b1, double[][] W2, List<Integer> preComputed) {
     this.config = config;
     this.dataset = dataset;
 
     this.E = E;
+    this.mappedE = mappedE;
     this.W1 = W1;
     this.b1 = b1;
     this.W2 = W2;
 
-    initGradientHistories();
+    if (E != null)
+      initGradientHistories();
 
     numLabels = W2.length;
 
-    preMap = new HashMap<>();
-    for (int i = 0; i < preComputed.size() && i < config.numPreComputed; ++i)
+    int numPreMapped = Math.min(preComputed.size(), config.numPreComputed);
+    preMap = new IntIntHashMap(numPreMapped, -1);
+    for (int i = 0; i < numPreMapped; ++i)
       preMap.put(preComputed.get(i), i);
 
     isTraining = dataset != null;
@@ -206,10 +244,10 @@ public class Classifier {
           int tok = feature.get(j);
           int index = tok * config.numTokens + j;
 
-          if (preMap.containsKey(index)) {
+          int id = preMap.get(index);
+          if (id >= 0) {
             // Unit activations for this input feature value have been
             // precomputed
-            int id = preMap.get(index);
 
             // Only extract activations for those nodes which are still
             // activated (`ls`)
@@ -277,8 +315,8 @@ public class Classifier {
         for (int j = 0; j < config.numTokens; ++j) {
           int tok = feature.get(j);
           int index = tok * config.numTokens + j;
-          if (preMap.containsKey(index)) {
-            int id = preMap.get(index);
+          int id = preMap.get(index);
+          if (id >= 0) {
             for (int nodeIndex : ls)
               gradSaved[id][nodeIndex] += gradHidden[nodeIndex];
           } else {
@@ -635,7 +673,7 @@ public class Classifier {
    * @see #preCompute(java.util.Set)
    */
   public void preCompute() {
-    preCompute(preMap.keySet());
+    preCompute(preMap.keys());
   }
 
   /**
@@ -646,6 +684,10 @@ public class Classifier {
    *                     activations should be precomputed
    */
   public void preCompute(Set<Integer> toPreCompute) {
+    preCompute(toPreCompute.stream().mapToInt(Integer::intValue).toArray());
+  }
+
+  private void preCompute(int[] toPreCompute) {
     long startTime = System.currentTimeMillis();
 
     // NB: It'd make sense to just make the first dimension of this
@@ -655,41 +697,97 @@ public class Classifier {
     // "smallMap.")
     saved = new double[preMap.size()][config.hiddenSize];
 
+    double[] scratch = new double[config.embeddingSize];
     for (int x : toPreCompute) {
       int mapX = preMap.get(x);
       int tok = x / config.numTokens;
       int pos = x % config.numTokens;
+      double[] embedding = embedding(tok, scratch);
       for (int j = 0; j < config.hiddenSize; ++j)
         for (int k = 0; k < config.embeddingSize; ++k)
-          saved[mapX][j] += W1[j][pos * config.embeddingSize + k] * E[tok][k];
+          saved[mapX][j] += W1[j][pos * config.embeddingSize + k] * embedding[k];
     }
-    System.err.println("PreComputed " + toPreCompute.size() + ", Elapsed Time: " + (System
+    System.err.println("PreComputed " + toPreCompute.length + ", Elapsed Time: " + (System
         .currentTimeMillis() - startTime) / 1000.0 + " (s)");
   }
 
-  double[] computeScores(int[] feature) {
-    return computeScores(feature, preMap);
+  /**
+   * Reusable buffers for {@link #computeScores(int[])} and
+   * {@link #computeScores(int[][])}. One instance is kept per thread;
+   * the batch buffers grow to the largest batch seen.
+   */
+  private static class ScoringBuffers {
+    double[] hidden;
+    double[] embedding = new double[0];
+    double[][] batchHidden = new double[0][];
+    int[][] batchPreIds = new int[0][];
+    double[][][] batchEmbeddings = new double[0][][];
+
+    double[] hidden(int hiddenSize) {
+      if (hidden == null || hidden.length != hiddenSize)
+        hidden = new double[hiddenSize];
+      else
+        Arrays.fill(hidden, 0.0);
+      return hidden;
+    }
+
+    double[] embedding(int embeddingSize) {
+      if (embedding.length != embeddingSize)
+        embedding = new double[embeddingSize];
+      return embedding;
+    }
+
+    void ensureBatch(int batchSize, int hiddenSize, int numTokens) {
+      if (batchHidden.length < batchSize) {
+        batchHidden = new double[batchSize][];
+        batchPreIds = new int[batchSize][];
+      }
+      for (int b = 0; b < batchSize; ++b) {
+        if (batchHidden[b] == null || batchHidden[b].length != hiddenSize)
+          batchHidden[b] = new double[hiddenSize];
+        else
+          Arrays.fill(batchHidden[b], 0.0);
+        if (batchPreIds[b] == null || batchPreIds[b].length < numTokens)
+          batchPreIds[b] = new int[numTokens];
+      }
+    }
+
+    /** Room for the embeddings of every token of a batch */
+    void ensureBatchEmbeddings(int batchSize, int numTokens, int embeddingSize) {
+      if (batchEmbeddings.length < batchSize)
+        batchEmbeddings = Arrays.copyOf(batchEmbeddings, batchSize);
+      for (int b = 0; b < batchSize; ++b) {
+        if (batchEmbeddings[b] == null || batchEmbeddings[b].length < numTokens
+            || batchEmbeddings[b][0].length != embeddingSize)
+          batchEmbeddings[b] = new double[numTokens][embeddingSize];
+      }
+    }
   }
 
   /**
    * Feed a feature vector forward through the network. Returns the
    * values of the output layer.
    */
-  private double[] computeScores(int[] feature, Map<Integer, Integer> preMap) {
-    double[] hidden = new double[config.hiddenSize];
+  double[] computeScores(int[] feature) {
+    ScoringBuffers buffers = scoringBuffers.get();
+    double[] hidden = buffers.hidden(config.hiddenSize);
+    double[] scratch = buffers.embedding(config.embeddingSize);
     int offset = 0;
     for (int j = 0; j < feature.length; ++j) {
       int tok = feature[j];
-      int index = tok * config.numTokens + j;
+      int id = preMap.get(tok * config.numTokens + j);
 
-      if (preMap.containsKey(index)) {
-        int id = preMap.get(index);
+      if (id >= 0) {
+        double[] savedRow = saved[id];
         for (int i = 0; i < config.hiddenSize; ++i)
-          hidden[i] += saved[id][i];
+          hidden[i] += savedRow[i];
       } else {
-        for (int i = 0; i < config.hiddenSize; ++i)
+        double[] embedding = embedding(tok, scratch);
+        for (int i = 0; i < config.hiddenSize; ++i) {
+          double[] W1row = W1[i];
           for (int k = 0; k < config.embeddingSize; ++k)
-            hidden[i] += W1[i][offset + k] * E[tok][k];
+            hidden[i] += W1row[offset + k] * embedding[k];
+        }
       }
       offset += config.embeddingSize;
     }
@@ -700,9 +798,93 @@ public class Classifier {
     }
 
     double[] scores = new double[numLabels];
-    for (int i = 0; i < numLabels; ++i)
+    for (int i = 0; i < numLabels; ++i) {
+      double[] W2row = W2[i];
       for (int j = 0; j < config.hiddenSize; ++j)
-        scores[i] += W2[i][j] * hidden[j];
+        scores[i] += W2row[j] * hidden[j];
+    }
+    return scores;
+  }
+
+  /**
+   * Feed many feature vectors forward through the network at once,
+   * for example the current configurations of a batch of sentences
+   * which are being parsed in lockstep.
+   * <p>
+   * Each row of {@code W1} and {@code W2} is streamed through once per
+   * batch rather than once per feature vector. The arithmetic for each
+   * vector is performed in the same order as in
+   * {@link #computeScores(int[])}, so the scores are identical.
+   *
+   * @param features One feature vector per configuration
+   * @return The output layer values for each configuration, in order
+   */
+  double[][] computeScores(int[][] features) {
+    final int batchSize = features.length;
+    final int hiddenSize = config.hiddenSize;
+    final int embeddingSize = config.embeddingSize;
+
+    ScoringBuffers buffers = scoringBuffers.get();
+    buffers.ensureBatch(batchSize, hiddenSize, config.numTokens);
+    double[][] hidden = buffers.batchHidden;
+    int[][] preIds = buffers.batchPreIds;
+
+    for (int b = 0; b < batchSize; ++b) {
+      int[] feature = features[b];
+      for (int j = 0; j < feature.length; ++j)
+        preIds[b][j] = preMap.get(feature[j] * config.numTokens + j);
+    }
+
+    // Embeddings read out of a buffer are copied out once per batch
+    // rather than once per hidden unit
+    double[][][] embeddings = null;
+    if (E == null) {
+      buffers.ensureBatchEmbeddings(batchSize, config.numTokens, embeddingSize);
+      embeddings = buffers.batchEmbeddings;
+      for (int b = 0; b < batchSize; ++b) {
+        int[] feature = features[b];
+        for (int j = 0; j < feature.length; ++j)
+          if (preIds[b][j] < 0)
+            embedding(feature[j], embeddings[b][j]);
+      }
+    }
+
+    // Hidden unit outer, configuration inner: W1[i] stays in cache
+    // while every configuration in the batch consumes it
+    for (int i = 0; i < hiddenSize; ++i) {
+      double[] W1row = W1[i];
+      for (int b = 0; b < batchSize; ++b) {
+        int[] feature = features[b];
+        int[] ids = preIds[b];
+        double h = hidden[b][i];
+        int offset = 0;
+        for (int j = 0; j < feature.length; ++j) {
+          int id = ids[j];
+          if (id >= 0) {
+            h += saved[id][i];
+          } else {
+            double[] embedding = (E != null) ? E[feature[j]] : embeddings[b][j];
+            for (int k = 0; k < embeddingSize; ++k)
+              h += W1row[offset + k] * embedding[k];
+          }
+          offset += embeddingSize;
+        }
+        h += b1[i];
+        hidden[b][i] = h * h * h;  // cube nonlinearity
+      }
+    }
+
+    double[][] scores = new double[batchSize][numLabels];
+    for (int i = 0; i < numLabels; ++i) {
+      double[] W2row = W2[i];
+      for (int b = 0; b < batchSize; ++b) {
+        double[] hiddenRow = hidden[b];
+        double score = 0.0;
+        for (int j = 0; j < hiddenSize; ++j)
+          score += W2row[j] * hiddenRow[j];
+        scores[b][i] = score;
+      }
+    }
     return scores;
   }
 
@@ -718,8 +900,32 @@ public class Classifier {
     return W2;
   }
 
+  /**
+   * Returns the embedding matrix. For a classifier whose embeddings are
+   * read out of a buffer (see {@link #mappedE}) this is a new copy.
+   */
   public double[][] getE() {
-    return E;
+    if (E != null)
+      return E;
+    int embeddingSize = config.embeddingSize;
+    double[][] copy = new double[mappedE.limit() / embeddingSize][];
+    double[] scratch = new double[embeddingSize];
+    for (int tok = 0; tok < copy.length; ++tok)
+      copy[tok] = embedding(tok, scratch).clone();
+    return copy;
+  }
+
+  /**
+   * Returns the embedding of token {@code tok}: its row of {@link #E},
+   * or else its row of {@link #mappedE} copied into {@code scratch}.
+   */
+  private double[] embedding(int tok, double[] scratch) {
+    if (E != null)
+      return E[tok];
+    int base = tok * scratch.length;
+    for (int k = 0; k < scratch.length; ++k)
+      scratch[k] = mappedE.get(base + k);
+    return scratch;
   }
 
   /**
@@ -186,6 +186,15 @@ public class Config
    */
   public String tagger = MaxentTagger.DEFAULT_JAR_PATH;
 
+  /**
+   * Number of sentences which are parsed in lockstep when parsing a
+   * collection of sentences. At each step the classifier scores the
+   * current configurations of all unfinished sentences in the batch
+   * together, which streams the weight matrices through the cache once
+   * per step rather than once per sentence.
+   */
+  public int sentenceBatchSize = 64;
+
   public Config(Properties properties) {
     setProperties(properties);
   }
@@ -210,6 +219,7 @@ public class Config
     // Runtime parsing options
     sentenceDelimiter = PropertiesUtils.getString(props, "sentenceDelimiter", sentenceDelimiter);
     tagger = PropertiesUtils.getString(props, "tagger.model", tagger);
+    sentenceBatchSize = PropertiesUtils.getInt(props, "sentenceBatchSize", sentenceBatchSize);
 
     String escaperClass = props.getProperty("escaper");
     escaper = escaperClass != null ? ReflectionLoading.loadByReflection(escaperClass) : null;
@@ -470,6 +470,21 @@ public class DependencyParser {
     }
   }
 
+  /**
+   * Write the current model in the binary format described in
+   * {@link BinaryModel}. Weights are stored with single precision.
+   * Binary models load much faster than text models, and
+   * {@link #loadModelFile(String)} recognizes them automatically.
+   */
+  public void writeBinaryModelFile(String modelFile) {
+    try {
+      new BinaryModel(knownWords, knownPos, knownLabels, classifier.getE(), classifier.getW1(),
+          classifier.getb1(), classifier.getW2(), preComputed).write(modelFile);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
   /**
    * Convenience method; see {@link #loadFromModelFile(String, java.util.Properties)}.
    *
@@ -502,6 +517,11 @@ public class DependencyParser {
   }
 
   private void loadModelFile(String modelFile, boolean verbose) {
+    if (BinaryModel.isBinaryModel(modelFile)) {
+      loadBinaryModelFile(modelFile, verbose);
+      return;
+    }
+
     Timing t = new Timing();
     try {
 
@@ -621,6 +641,36 @@ public class DependencyParser {
     t.done("Initializing dependency parser");
   }
 
+  private void loadBinaryModelFile(String modelFile, boolean verbose) {
+    Timing t = new Timing();
+    System.err.println("Loading binary depparse model file: " + modelFile + " ... ");
+    BinaryModel model;
+    try {
+      model = BinaryModel.read(modelFile);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+    if (verbose) {
+      System.err.println("dict=" + model.knownWords.size());
+      System.err.println("pos=" + model.knownPos.size());
+      System.err.println("label=" + model.knownLabels.size());
+      System.err.println("embeddingSize=" + model.embeddingSize);
+      System.err.println("hiddenSize=" + model.b1.length);
+      System.err.println("preComputed=" + model.preComputed.size());
+    }
+
+    knownWords = model.knownWords;
+    knownPos = model.knownPos;
+    knownLabels = model.knownLabels;
+    generateIDs();
+
+    preComputed = model.preComputed;
+    classifier = new Classifier(config, model.embeddings, model.W1, model.b1, model.W2, preComputed);
+
+    initialize(verbose);
+    t.done("Initializing dependency parser");
+  }
+
   // TODO this should be a function which returns the embeddings array + embedID
   // otherwise the class needlessly carries around the extra baggage of `embeddings`
   // (never again used) for the entire training process
@@ -721,7 +771,7 @@ public class DependencyParser {
         // prediction, we just do this once in #initialize
         classifier.preCompute();
 
-        List<DependencyTree> predicted = devSents.stream().map(this::predictInner).collect(toList());
+        List<DependencyTree> predicted = predictInner(devSents);
 
         double uas = system.getUASScore(devSents, predicted, devTrees);
         System.err.println("UAS: " + uas);
@@ -746,7 +796,7 @@ public class DependencyParser {
     if (devFile != null) {
       // Do final UAS evaluation and save if final model beats the
       // best intermediate one
-      List<DependencyTree> predicted = devSents.stream().map(this::predictInner).collect(toList());
+      List<DependencyTree> predicted = predictInner(devSents);
       double uas = system.getUASScore(devSents, predicted, devTrees);
 
       if (uas > bestUAS) {
@@ -852,6 +902,58 @@ public class DependencyParser {
     return c.tree;
   }
 
+  /**
+   * Determine the dependency parses of many sentences, advancing the
+   * parser configurations of up to {@link Config#sentenceBatchSize}
+   * sentences in lockstep so that each step's transitions are scored
+   * in one batched pass through the classifier. The results are
+   * identical to calling {@link #predictInner(CoreMap)} on each
+   * sentence.
+   */
+  private List<DependencyTree> predictInner(List<? extends CoreMap> sentences) {
+    int numTrans = system.transitions.size();
+    int batchSize = Math.max(1, config.sentenceBatchSize);
+
+    List<DependencyTree> result = new ArrayList<>(sentences.size());
+    for (int start = 0; start < sentences.size(); start += batchSize) {
+      int end = Math.min(start + batchSize, sentences.size());
+
+      List<Configuration> active = new ArrayList<>(end - start);
+      for (CoreMap sentence : sentences.subList(start, end)) {
+        Configuration c = system.initialConfiguration(sentence);
+        result.add(c.tree);
+        if (!system.isTerminal(c))
+          active.add(c);
+      }
+
+      while (!active.isEmpty()) {
+        int[][] features = new int[active.size()][];
+        for (int b = 0; b < features.length; ++b)
+          features[b] = getFeatureArray(active.get(b));
+        double[][] scores = classifier.computeScores(features);
+
+        List<Configuration> stillActive = new ArrayList<>(active.size());
+        for (int b = 0; b < features.length; ++b) {
+          Configuration c = active.get(b);
+          double optScore = Double.NEGATIVE_INFINITY;
+          String optTrans = null;
+
+          for (int j = 0; j < numTrans; ++j) {
+            if (scores[b][j] > optScore && system.canApply(c, system.transitions.get(j))) {
+              optScore = scores[b][j];
+              optTrans = system.transitions.get(j);
+            }
+          }
+          system.apply(c, optTrans);
+          if (!system.isTerminal(c))
+            stillActive.add(c);
+        }
+        active = stillActive;
+      }
+    }
+    return result;
+  }
+
   /**
    * Determine the dependency parse of the given sentence using the loaded model.
    * You must first load a parser before calling this method.
@@ -864,12 +966,35 @@ public class DependencyParser {
       throw new IllegalStateException("Parser has not been  " +
           "loaded and initialized; first load a model.");
 
-    DependencyTree result = predictInner(sentence);
+    return toGrammaticalStructure(sentence, predictInner(sentence));
+  }
 
-    // The rest of this method is just busy-work to convert the
-    // package-local representation into a CoreNLP-standard
-    // GrammaticalStructure.
+  /**
+   * Determine the dependency parses of the given sentences using the
+   * loaded model. Sentences are parsed in lockstep batches of
+   * {@link Config#sentenceBatchSize}, which is considerably faster than
+   * calling {@link #predict(edu.stanford.nlp.util.CoreMap)} on each one.
+   *
+   * @throws java.lang.IllegalStateException If parser has not yet been loaded and initialized
+   *         (see {@link #initialize(boolean)}
+   */
+  public List<GrammaticalStructure> predictSentences(List<? extends CoreMap> sentences) {
+    if (system == null)
+      throw new IllegalStateException("Parser has not been  " +
+          "loaded and initialized; first load a model.");
+
+    List<DependencyTree> trees = predictInner(sentences);
+    List<GrammaticalStructure> result = new ArrayList<>(trees.size());
+    for (int i = 0; i < trees.size(); ++i)
+      result.add(toGrammaticalStructure(sentences.get(i), trees.get(i)));
+    return result;
+  }
 
+  /**
+   * Convert the package-local representation of a parse into a
+   * CoreNLP-standard GrammaticalStructure.
+   */
+  private GrammaticalStructure toGrammaticalStructure(CoreMap sentence, DependencyTree result) {
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
     List<TypedDependency> dependencies = new ArrayList<>();
 
@@ -933,6 +1058,10 @@ public class DependencyParser {
    * @see #predict(edu.stanford.nlp.util.CoreMap)
    */
   public GrammaticalStructure predict(List<? extends HasWord> sentence) {
+    return predict(toSentence(sentence));
+  }
+
+  private static CoreMap toSentence(List<? extends HasWord> sentence) {
     CoreLabel sentenceLabel = new CoreLabel();
     List<CoreLabel> tokens = new ArrayList<>();
 
@@ -964,7 +1093,7 @@ public class DependencyParser {
 
     sentenceLabel.set(CoreAnnotations.TokensAnnotation.class, tokens);
 
-    return predict(sentenceLabel);
+    return sentenceLabel;
   }
 
   //TODO: support sentence-only files as input
@@ -989,7 +1118,7 @@ public class DependencyParser {
       numWords += testSent.get(CoreAnnotations.TokensAnnotation.class).size();
     }
 
-    List<DependencyTree> predicted = testSents.stream().map(this::predictInner).collect(toList());
+    List<DependencyTree> predicted = predictInner(testSents);
     Map<String, Double> result = system.evaluate(testSents, predicted, testTrees);
     
     double uasNoPunc = result.get("UASwoPunc");
@@ -1029,10 +1158,9 @@ public class DependencyParser {
 
     timer.start();
 
+    List<CoreMap> sentences = tagged.stream().map(DependencyParser::toSentence).collect(toList());
     int numSentences = 0;
-    for (List<TaggedWord> taggedSentence : tagged) {
-      GrammaticalStructure parse = predict(taggedSentence);
-
+    for (GrammaticalStructure parse : predictSentences(sentences)) {
       Collection<TypedDependency> deps = parse.typedDependencies();
       for (TypedDependency dep : deps)
         output.println(dep);
@@ -1074,6 +1202,7 @@ public class DependencyParser {
   static {
     numArgs.put("textFile", 1);
     numArgs.put("outFile", 1);
+    numArgs.put("binaryModel", 1);
   }
 
   /**
@@ -1095,6 +1224,10 @@ public class DependencyParser {
    *     <code>java edu.stanford.nlp.parser.nndep.DependencyParser -model modelOutputFile.txt.gz -textFile rawTextToParse -outFile dependenciesOutputFile.txt</code>
    *   </li>
    *   <li>
+   *     <strong>Convert a text model to the faster-loading binary format:</strong>
+   *     <code>java edu.stanford.nlp.parser.nndep.DependencyParser -model modelOutputFile.txt.gz -binaryModel modelOutputFile.bin</code>
+   *   </li>
+   *   <li>
    *     <strong>Parse raw text from standard input, writing to standard output:</strong>
    *     <code>java edu.stanford.nlp.parser.nndep.DependencyParser -model modelOutputFile.txt.gz -textFile - -outFile -</code>
    *   </li>
@@ -1109,7 +1242,8 @@ public class DependencyParser {
    *   <tr><th>Option</th><th>Required for training</th><th>Required for testing / parsing</th><th>Description</th></tr>
    *   <tr><td><tt>&#8209;devFile</tt></td><td>Optional</td><td>No</td><td>Path to a development-set treebank in <a href="http://ilk.uvt.nl/conll/#dataformat">CoNLL-X format</a>. If provided, the </td></tr>
    *   <tr><td><tt>&#8209;embedFile</tt></td><td>Optional (highly recommended!)</td><td>No</td><td>A word embedding file, containing distributed representations of English words. Each line of the provided file should contain a single word followed by the elements of the corresponding word embedding (space-delimited). It is not absolutely necessary that all words in the treebank be covered by this embedding file, though the parser's performance will generally improve if you are able to provide better embeddings for more words.</td></tr>
-   *   <tr><td><tt>&#8209;model</tt></td><td>Yes</td><td>Yes</td><td>Path to a model file. If the path ends in <tt>.gz</tt>, the model will be read as a Gzipped model file. During training, we write to this path; at test time we read a pre-trained model from this path.</td></tr>
+   *   <tr><td><tt>&#8209;model</tt></td><td>Yes</td><td>Yes</td><td>Path to a model file. If the path ends in <tt>.gz</tt>, the model will be read as a Gzipped model file. During training, we write to this path; at test time we read a pre-trained model from this path. Binary models (see <tt>binaryModel</tt>) are recognized automatically.</td></tr>
+   *   <tr><td><tt>&#8209;binaryModel</tt></td><td>No</td><td>No</td><td>If provided, load (or train) the model given by <tt>model</tt> and write it to this path in the binary format of {@link BinaryModel}, which is memory-mapped at load time.</td></tr>
    *   <tr><td><tt>&#8209;textFile</tt></td><td>No</td><td>Yes (or <tt>testFile</tt>)</td><td>Path to a plaintext file containing sentences to be parsed.</td></tr>
    *   <tr><td><tt>&#8209;testFile</tt></td><td>No</td><td>Yes (or <tt>textFile</tt>)</td><td>Path to a test-set treebank in <a href="http://ilk.uvt.nl/conll/#dataformat">CoNLL-X format</a> for final evaluation of the parser.</td></tr>
    *   <tr><td><tt>&#8209;trainFile</tt></td><td>Yes</td><td>No</td><td>Path to a training treebank in <a href="http://ilk.uvt.nl/conll/#dataformat">CoNLL-X format</a></td></tr>
@@ -1154,6 +1288,14 @@ public class DependencyParser {
           props.getProperty("embedFile"));
 
     boolean loaded = false;
+    // Convert to the binary model format
+    if (props.containsKey("binaryModel")) {
+      if (!props.containsKey("trainFile"))
+        parser.loadModelFile(props.getProperty("model"));
+      loaded = true;
+      parser.writeBinaryModelFile(props.getProperty("binaryModel"));
+    }
+
     // Test with CoNLL-X data
     if (props.containsKey("testFile")) {
       parser.loadModelFile(props.getProperty("model"));
@@ -11,6 +11,7 @@ import edu.stanford.nlp.parser.common.ParserConstraint;
 import edu.stanford.nlp.tagger.common.Tagger;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.Treebank;
+import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.Index;
 import edu.stanford.nlp.util.ScoredObject;
 
@@ -116,6 +117,21 @@ public abstract class BaseModel implements Serializable {
 
   public abstract Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints);
 
+  /**
+   * Finds the highest scoring transitions for each of several states,
+   * such as all of the states of a beam, in the same order as the
+   * states.  This scores them one at a time; a model which can share
+   * work between the states should override it.  Either way, the
+   * results must be the same as scoring the states one at a time.
+   */
+  public List<Collection<ScoredObject<Integer>>> findHighestScoringTransitions(List<State> states, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
+    List<Collection<ScoredObject<Integer>>> transitions = Generics.newArrayList(states.size());
+    for (State state : states) {
+      transitions.add(findHighestScoringTransitions(state, requireLegal, numTransitions, constraints));
+    }
+    return transitions;
+  }
+
   /**
    * Train a new model.  This is the method to override for new models
    * such that the ShiftReduceParser will fill in the model.  Given a
@@ -8,75 +8,80 @@ import edu.stanford.nlp.trees.TreeCoreAnnotations;
 import edu.stanford.nlp.util.TreeShapedStack;
 
 public class BasicFeatureFactory extends FeatureFactory {
-  public static void addUnaryStackFeatures(List<String> features, CoreLabel label, String conFeature, String wordTagFeature, String tagFeature, String wordConFeature, String tagConFeature) {
+  public static void addUnaryStackFeatures(FeatureCollector features, CoreLabel label, String conFeature, String wordTagFeature, String tagFeature, String wordConFeature, String tagConFeature) {
     if (label == null) {
-      features.add(conFeature + NULL);
+      features.add(conFeature, NULL);
       return;
     }
     String constituent = getFeatureFromCoreLabel(label, FeatureComponent.VALUE);
     String tag = getFeatureFromCoreLabel(label, FeatureComponent.HEADTAG);
     String word = getFeatureFromCoreLabel(label, FeatureComponent.HEADWORD);
 
-    features.add(conFeature + constituent);
-    features.add(wordTagFeature + word + "-" + tag);
-    features.add(tagFeature + tag);
-    features.add(wordConFeature + word + "-" + constituent);
-    features.add(tagConFeature + tag + "-" + constituent);
+    features.add(conFeature, constituent);
+    features.add(wordTagFeature, word, "-", tag);
+    features.add(tagFeature, tag);
+    features.add(wordConFeature, word, "-", constituent);
+    features.add(tagConFeature, tag, "-", constituent);
   }
 
-  public static void addUnaryQueueFeatures(List<String> features, CoreLabel label, String wtFeature) {
+  public static void addUnaryQueueFeatures(FeatureCollector features, CoreLabel label, String wtFeature) {
     if (label == null) {
-      features.add(wtFeature + NULL);
+      features.add(wtFeature, NULL);
       return;
     }
     String tag = label.get(TreeCoreAnnotations.HeadTagLabelAnnotation.class).value();
     String word = label.get(TreeCoreAnnotations.HeadWordLabelAnnotation.class).value();
 
-    // TODO: check to see if this is slow because of the string concat
-    features.add(wtFeature + tag + "-" + word);
+    features.add(wtFeature, tag, "-", word);
   }
 
-  public static void addBinaryFeatures(List<String> features,
+  public static void addBinaryFeatures(FeatureCollector features,
                                        String name1, CoreLabel label1, FeatureComponent feature11, FeatureComponent feature12,
                                        String name2, CoreLabel label2, FeatureComponent feature21, FeatureComponent feature22) {
     if (label1 == null) {
       if (label2 == null) {
-        features.add(name1 + "n" + name2 + "n");
+        features.add(name1, "n", name2, "n");
       } else {
-        addUnaryFeature(features, name1 + "n" + name2 + feature21.shortName() + "-", label2, feature21);
-        addUnaryFeature(features, name1 + "n" + name2 + feature22.shortName() + "-", label2, feature22);
+        // The feature names are passed in pieces rather than
+        // concatenated here, so that hashed features need no Strings
+        features.add(name1, "n", name2, feature21.shortName(), "-", getFeatureFromCoreLabel(label2, feature21));
+        features.add(name1, "n", name2, feature22.shortName(), "-", getFeatureFromCoreLabel(label2, feature22));
       }
     } else if (label2 == null) {
-      addUnaryFeature(features, name1 + feature11.shortName() + name2 + "n-", label1, feature11);
-      addUnaryFeature(features, name1 + feature12.shortName() + name2 + "n-", label1, feature12);
+      features.add(name1, feature11.shortName(), name2, "n-", getFeatureFromCoreLabel(label1, feature11));
+      features.add(name1, feature12.shortName(), name2, "n-", getFeatureFromCoreLabel(label1, feature12));
     } else {
-      addBinaryFeature(features, name1 + feature11.shortName() + name2 + feature21.shortName() + "-", label1, feature11, label2, feature21);
-      addBinaryFeature(features, name1 + feature11.shortName() + name2 + feature22.shortName() + "-", label1, feature11, label2, feature22);
-      addBinaryFeature(features, name1 + feature12.shortName() + name2 + feature21.shortName() + "-", label1, feature12, label2, feature21);
-      addBinaryFeature(features, name1 + feature12.shortName() + name2 + feature22.shortName() + "-", label1, feature12, label2, feature22);
+      String value11 = getFeatureFromCoreLabel(label1, feature11);
+      String value12 = getFeatureFromCoreLabel(label1, feature12);
+      String value21 = getFeatureFromCoreLabel(label2, feature21);
+      String value22 = getFeatureFromCoreLabel(label2, feature22);
+      features.add(name1, feature11.shortName(), name2, feature21.shortName(), "-", value11, "-", value21);
+      features.add(name1, feature11.shortName(), name2, feature22.shortName(), "-", value11, "-", value22);
+      features.add(name1, feature12.shortName(), name2, feature21.shortName(), "-", value12, "-", value21);
+      features.add(name1, feature12.shortName(), name2, feature22.shortName(), "-", value12, "-", value22);
     }
   }
 
-  public static void addUnaryFeature(List<String> features, String featureType, CoreLabel label, FeatureComponent feature) {
+  public static void addUnaryFeature(FeatureCollector features, String featureType, CoreLabel label, FeatureComponent feature) {
     String value = getFeatureFromCoreLabel(label, feature);
-    features.add(featureType + value);
+    features.add(featureType, value);
   }
 
-  public static void addBinaryFeature(List<String> features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2) {
+  public static void addBinaryFeature(FeatureCollector features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2) {
     String value1 = getFeatureFromCoreLabel(label1, feature1);
     String value2 = getFeatureFromCoreLabel(label2, feature2);
-    features.add(featureType + value1 + "-" + value2);
+    features.add(featureType, value1, "-", value2);
   }
 
-  public static void addTrigramFeature(List<String> features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2, CoreLabel label3, FeatureComponent feature3) {
+  public static void addTrigramFeature(FeatureCollector features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2, CoreLabel label3, FeatureComponent feature3) {
     String value1 = getFeatureFromCoreLabel(label1, feature1);
     String value2 = getFeatureFromCoreLabel(label2, feature2);
     String value3 = getFeatureFromCoreLabel(label3, feature3);
 
-    features.add(featureType + value1 + "-" + value2 + "-" + value3);
+    features.add(featureType, value1, "-", value2, "-", value3);
   }
 
-  public static void addPositionFeatures(List<String> features, State state) {
+  public static void addPositionFeatures(FeatureCollector features, State state) {
     if (state.tokenPosition >= state.sentence.size()) {
       features.add("QUEUE_FINISHED");
     }
@@ -85,37 +90,37 @@ public class BasicFeatureFactory extends FeatureFactory {
     }
   }
 
-  public static void addSeparatorFeature(List<String> features, String featureType, State.HeadPosition separator) {
+  public static void addSeparatorFeature(FeatureCollector features, String featureType, State.HeadPosition separator) {
     if (separator == null) {
       return;
     }
-    features.add(featureType + separator);
+    features.add(featureType, separator.toString());
   }
 
-  public static void addSeparatorFeature(List<String> features, String featureType, CoreLabel label, FeatureComponent feature, State.HeadPosition separator) {
+  public static void addSeparatorFeature(FeatureCollector features, String featureType, CoreLabel label, FeatureComponent feature, State.HeadPosition separator) {
     if (separator == null) {
       return;
     }
 
     String value = getFeatureFromCoreLabel(label, feature);
 
-    features.add(featureType + value + "-" + separator);
+    features.add(featureType, value, "-", separator.toString());
   }
 
-  public static void addSeparatorFeature(List<String> features, String featureType, CoreLabel label, FeatureComponent feature, boolean between) {
+  public static void addSeparatorFeature(FeatureCollector features, String featureType, CoreLabel label, FeatureComponent feature, boolean between) {
     String value = getFeatureFromCoreLabel(label, feature);
 
-    features.add(featureType + value + "-" + between);
+    features.add(featureType, value, "-", String.valueOf(between));
   }
 
-  public static void addSeparatorFeature(List<String> features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2, boolean between) {
+  public static void addSeparatorFeature(FeatureCollector features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2, boolean between) {
     String value1 = getFeatureFromCoreLabel(label1, feature1);
     String value2 = getFeatureFromCoreLabel(label2, feature2);
 
-    features.add(featureType + value1 + "-" + value2 + "-" + between);
+    features.add(featureType, value1, "-", value2, "-", String.valueOf(between));
   }
 
-  public static void addSeparatorFeatures(List<String> features, String name1, CoreLabel label1, String name2, CoreLabel label2, String separatorBetween, int countBetween) {
+  public static void addSeparatorFeatures(FeatureCollector features, String name1, CoreLabel label1, String name2, CoreLabel label2, String separatorBetween, int countBetween) {
     if (label1 == null || label2 == null) {
       return;
     }
@@ -123,22 +128,27 @@ public class BasicFeatureFactory extends FeatureFactory {
     // 0 separators is captured by the countBetween features
     if (separatorBetween != null) {
       String separatorBetweenName = "Sepb" + name1 + name2 + "-" + separatorBetween + "-";
-      addUnaryFeature(features, name1 + "w" + separatorBetweenName, label1, FeatureComponent.HEADWORD);
-      addBinaryFeature(features, name1 + "wc" + separatorBetweenName, label1, FeatureComponent.HEADWORD, label1, FeatureComponent.VALUE);
-      addUnaryFeature(features, name2 + "w" + separatorBetweenName, label2, FeatureComponent.HEADWORD);
-      addBinaryFeature(features, name2 + "wc" + separatorBetweenName, label2, FeatureComponent.HEADWORD, label2, FeatureComponent.VALUE);
-      addBinaryFeature(features, name1 + "c" + name2 + "c" + separatorBetweenName, label1, FeatureComponent.VALUE, label2, FeatureComponent.VALUE);
+      addSeparatorFeatures(features, name1, label1, name2, label2, separatorBetweenName);
     }
 
     String countBetweenName = "Sepb" + name1 + name2 + "-" + countBetween + "-";
-    addUnaryFeature(features, name1 + "w" + countBetweenName, label1, FeatureComponent.HEADWORD);
-    addBinaryFeature(features, name1 + "wc" + countBetweenName, label1, FeatureComponent.HEADWORD, label1, FeatureComponent.VALUE);
-    addUnaryFeature(features, name2 + "w" + countBetweenName, label2, FeatureComponent.HEADWORD);
-    addBinaryFeature(features, name2 + "wc" + countBetweenName, label2, FeatureComponent.HEADWORD, label2, FeatureComponent.VALUE);
-    addBinaryFeature(features, name1 + "c" + name2 + "c" + countBetweenName, label1, FeatureComponent.VALUE, label2, FeatureComponent.VALUE);
+    addSeparatorFeatures(features, name1, label1, name2, label2, countBetweenName);
   }
 
-  public static void addSeparatorFeatures(List<String> features, CoreLabel s0Label, CoreLabel s1Label, State.HeadPosition s0Separator, State.HeadPosition s1Separator) {
+  private static void addSeparatorFeatures(FeatureCollector features, String name1, CoreLabel label1, String name2, CoreLabel label2, String separatorName) {
+    String word1 = getFeatureFromCoreLabel(label1, FeatureComponent.HEADWORD);
+    String con1 = getFeatureFromCoreLabel(label1, FeatureComponent.VALUE);
+    String word2 = getFeatureFromCoreLabel(label2, FeatureComponent.HEADWORD);
+    String con2 = getFeatureFromCoreLabel(label2, FeatureComponent.VALUE);
+
+    features.add(name1, "w", separatorName, word1);
+    features.add(name1, "wc", separatorName, word1, "-", con1);
+    features.add(name2, "w", separatorName, word2);
+    features.add(name2, "wc", separatorName, word2, "-", con2);
+    features.add(name1, "c", name2, "c", separatorName, con1, "-", con2);
+  }
+
+  public static void addSeparatorFeatures(FeatureCollector features, CoreLabel s0Label, CoreLabel s1Label, State.HeadPosition s0Separator, State.HeadPosition s1Separator) {
     boolean between = false;
     if ((s0Separator != null && (s0Separator == State.HeadPosition.BOTH || s0Separator == State.HeadPosition.LEFT)) ||
         (s1Separator != null && (s1Separator == State.HeadPosition.BOTH || s1Separator == State.HeadPosition.RIGHT))) {
@@ -182,7 +192,7 @@ public class BasicFeatureFactory extends FeatureFactory {
    * ends of the tree.  Also adds notes about the sizes of the given
    * tree.  However, it seems somewhat slow and doesn't help accuracy.
    */
-  public void addEdgeFeatures(List<String> features, State state, String nodeName, String neighborName, Tree node, Tree neighbor) {
+  public void addEdgeFeatures(FeatureCollector features, State state, String nodeName, String neighborName, Tree node, Tree neighbor) {
     if (node == null) {
       return;
     }
@@ -192,7 +202,7 @@ public class BasicFeatureFactory extends FeatureFactory {
 
     // Trees of size one are already featurized
     if (right == left) {
-      features.add(nodeName + "SZ1");
+      features.add(nodeName, "SZ1");
       return;
     }
 
@@ -204,23 +214,23 @@ public class BasicFeatureFactory extends FeatureFactory {
     }
 
     if (right - left == 1) {
-      features.add(nodeName + "SZ2");
+      features.add(nodeName, "SZ2");
       return;
     }
 
     if (right - left == 2) {
-      features.add(nodeName + "SZ3");
+      features.add(nodeName, "SZ3");
       addUnaryQueueFeatures(features, getCoreLabel(state.sentence.get(left + 1)), nodeName + "EM-");
       return;
     }
 
-    features.add(nodeName + "SZB");
+    features.add(nodeName, "SZB");
     addUnaryQueueFeatures(features, getCoreLabel(state.sentence.get(left + 1)), nodeName + "El-");
     addUnaryQueueFeatures(features, getCoreLabel(state.sentence.get(right - 1)), nodeName + "Er-");
   }
 
   /** This option also does not seem to help */
-  public void addEdgeFeatures2(List<String> features, State state, String nodeName, Tree node) {
+  public void addEdgeFeatures2(FeatureCollector features, State state, String nodeName, Tree node) {
     if (node == null) {
       return;
     }
@@ -246,7 +256,7 @@ public class BasicFeatureFactory extends FeatureFactory {
   /**
    * Also did not seem to help
    */
-  public void addExtraTrigramFeatures(List<String> features, CoreLabel s0Label, CoreLabel s1Label, CoreLabel s2Label, CoreLabel q0Label, CoreLabel q1Label) {
+  public void addExtraTrigramFeatures(FeatureCollector features, CoreLabel s0Label, CoreLabel s1Label, CoreLabel s2Label, CoreLabel q0Label, CoreLabel q1Label) {
     addTrigramFeature(features, "S0wS1wS2c-", s0Label, FeatureComponent.HEADWORD, s1Label, FeatureComponent.HEADWORD, s2Label, FeatureComponent.VALUE);
     addTrigramFeature(features, "S0wS1cS2w-", s0Label, FeatureComponent.HEADWORD, s1Label, FeatureComponent.VALUE, s2Label, FeatureComponent.HEADWORD);
     addTrigramFeature(features, "S0cS1wS2w-", s0Label, FeatureComponent.VALUE, s1Label, FeatureComponent.HEADWORD, s2Label, FeatureComponent.HEADWORD);
@@ -266,6 +276,12 @@ public class BasicFeatureFactory extends FeatureFactory {
 
   @Override
   public List<String> featurize(State state, List<String> features) {
+    featurize(state, new FeatureCollector.Strings(features));
+    return features;
+  }
+
+  @Override
+  public void featurize(State state, FeatureCollector features) {
     final TreeShapedStack<Tree> stack = state.stack;
     final List<Tree> sentence = state.sentence;
     final int tokenPosition = state.tokenPosition;
@@ -376,8 +392,6 @@ public class BasicFeatureFactory extends FeatureFactory {
     Tree q0Node = state.getQueueNode(0);
     addSeparatorFeatures(features, "S0", s0Label, "S1", s1Label, state.getSeparatorBetween(s0Node, s1Node), state.getSeparatorCount(s0Node, s1Node));
     addSeparatorFeatures(features, "S0", s0Label, "Q0", q0Label, state.getSeparatorBetween(q0Node, s0Node), state.getSeparatorCount(q0Node, s0Node));
-
-    return features;
   }
 
   private static final long serialVersionUID = 1;
@@ -0,0 +1,78 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.List;
+
+/**
+ * Receives the features produced by a {@link FeatureFactory}.  A
+ * feature is handed over as the pieces it is made of, such as a
+ * feature name, a word and a tag, and what is made of the pieces is
+ * up to the collector: {@link Strings} concatenates them into the
+ * Strings used for training, and {@link HashedFeatures} hashes them
+ * without ever building the String.
+ * <br>
+ * There is one method for each number of pieces the feature
+ * factories use.  Keeping the concatenation in one expression lets
+ * the JIT build each String with a single copy, which is noticeably
+ * faster than appending the pieces to a buffer one call at a time.
+ *
+ * @see HashedFeatures
+ */
+public abstract class FeatureCollector {
+  public abstract void add(String feature);
+
+  public abstract void add(String p1, String p2);
+
+  public abstract void add(String p1, String p2, String p3);
+
+  public abstract void add(String p1, String p2, String p3, String p4);
+
+  public abstract void add(String p1, String p2, String p3, String p4, String p5);
+
+  public abstract void add(String p1, String p2, String p3, String p4, String p5, String p6);
+
+  public abstract void add(String p1, String p2, String p3, String p4, String p5, String p6, String p7, String p8);
+
+  /** Collects the features as Strings in a List */
+  public static class Strings extends FeatureCollector {
+    private final List<String> features;
+
+    public Strings(List<String> features) {
+      this.features = features;
+    }
+
+    @Override
+    public void add(String feature) {
+      features.add(feature);
+    }
+
+    @Override
+    public void add(String p1, String p2) {
+      features.add(p1 + p2);
+    }
+
+    @Override
+    public void add(String p1, String p2, String p3) {
+      features.add(p1 + p2 + p3);
+    }
+
+    @Override
+    public void add(String p1, String p2, String p3, String p4) {
+      features.add(p1 + p2 + p3 + p4);
+    }
+
+    @Override
+    public void add(String p1, String p2, String p3, String p4, String p5) {
+      features.add(p1 + p2 + p3 + p4 + p5);
+    }
+
+    @Override
+    public void add(String p1, String p2, String p3, String p4, String p5, String p6) {
+      features.add(p1 + p2 + p3 + p4 + p5 + p6);
+    }
+
+    @Override
+    public void add(String p1, String p2, String p3, String p4, String p5, String p6, String p7, String p8) {
+      features.add(p1 + p2 + p3 + p4 + p5 + p6 + p7 + p8);
+    }
+  }
+}
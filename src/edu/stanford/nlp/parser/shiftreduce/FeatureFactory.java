@@ -16,6 +16,18 @@ public abstract class FeatureFactory implements Serializable {
 
   abstract public List<String> featurize(State state, List<String> features);
 
+  /**
+   * Sends the features of the state to the collector.  Factories
+   * which build their features a piece at a time should override this
+   * so that a {@link HashedFeatures} never sees a String; by default
+   * the features are built as Strings and then passed on whole.
+   */
+  public void featurize(State state, FeatureCollector features) {
+    for (String feature : featurize(state)) {
+      features.add(feature);
+    }
+  }
+
   enum Transition {
     LEFT, RIGHT, UNARY
   };
@@ -0,0 +1,134 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import edu.stanford.nlp.util.Generics;
+
+/**
+ * The weights of a {@link PerceptronModel} keyed by the hashes of its
+ * features rather than by the feature Strings.  The rows of all the
+ * {@link Weight}s are packed one after another into a single
+ * {@code long[]}, in the same (transition, score) format Weight uses,
+ * and are found through an open addressing table of the feature
+ * hashes.  This does away with the Strings, the Weight objects and
+ * the HashMap entries, which make up most of the memory of a model,
+ * and lets the parser score a state from the {@link HashedFeatures}
+ * without building any Strings.
+ * <br>
+ * The table is immutable once built; a model which needs to be
+ * trained further has to keep its String features.
+ */
+public class HashedFeatureWeights implements Serializable {
+  /** Feature hashes, with 0 marking an empty slot */
+  private final long[] keys;
+  /** The row for the feature in slot i is rows[rowStart[i]] up to rows[rowStart[i + 1]] */
+  private final int[] rowStart;
+  private final long[] rows;
+  private final int mask;
+
+  private final int numFeatures;
+  private final int collisions;
+
+  public HashedFeatureWeights(Map<String, Weight> featureWeights) {
+    // Features whose hashes collide share one row, the sum of their rows
+    Map<Long, Weight> hashedWeights = Generics.newHashMap();
+    int collisions = 0;
+    for (Map.Entry<String, Weight> entry : featureWeights.entrySet()) {
+      if (entry.getValue().size() == 0) {
+        continue;
+      }
+      Long hash = HashedFeatures.hash(entry.getKey());
+      Weight weight = hashedWeights.get(hash);
+      if (weight == null) {
+        hashedWeights.put(hash, new Weight(entry.getValue()));
+      } else {
+        weight.addScaled(entry.getValue(), 1.0f);
+        ++collisions;
+      }
+    }
+    this.numFeatures = hashedWeights.size();
+    this.collisions = collisions;
+
+    int capacity = 2;
+    while (capacity < numFeatures * 2) {
+      capacity <<= 1;
+    }
+    keys = new long[capacity];
+    mask = capacity - 1;
+    Weight[] slotWeights = new Weight[capacity];
+    int numWeights = 0;
+    for (Map.Entry<Long, Weight> entry : hashedWeights.entrySet()) {
+      long hash = entry.getKey();
+      int slot = slot(hash);
+      while (keys[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = hash;
+      slotWeights[slot] = entry.getValue();
+      numWeights += entry.getValue().size();
+    }
+
+    rowStart = new int[capacity + 1];
+    rows = new long[numWeights];
+    int next = 0;
+    for (int slot = 0; slot < capacity; ++slot) {
+      rowStart[slot] = next;
+      if (slotWeights[slot] != null) {
+        long[] packed = slotWeights[slot].packed;
+        System.arraycopy(packed, 0, rows, next, packed.length);
+        next += packed.length;
+      }
+    }
+    rowStart[capacity] = next;
+  }
+
+  private int slot(long hash) {
+    // the low bits of an FNV hash are not well mixed on their own
+    hash ^= hash >>> 29;
+    hash *= 0xbf58476d1ce4e5b9L;
+    hash ^= hash >>> 32;
+    return (int) hash & mask;
+  }
+
+  /** Adds the row of the feature with the given hash, if any, to the scores */
+  public void score(long hash, float[] scores) {
+    for (int slot = slot(hash); keys[slot] != 0; slot = (slot + 1) & mask) {
+      if (keys[slot] == hash) {
+        for (int i = rowStart[slot], end = rowStart[slot + 1]; i < end; ++i) {
+          // same packing as Weight.score
+          final long pack = rows[i];
+          scores[(int) (pack >>> 32)] += Float.intBitsToFloat((int) (pack & 0xFFFFFFFF));
+        }
+        return;
+      }
+    }
+  }
+
+  /** Adds the rows of all of the features to the scores */
+  public void score(HashedFeatures features, float[] scores) {
+    for (int i = 0, size = features.size(); i < size; ++i) {
+      score(features.get(i), scores);
+    }
+  }
+
+  public int numFeatures() {
+    return numFeatures;
+  }
+
+  public int numWeights() {
+    return rows.length;
+  }
+
+  /** How many features of the original model shared a hash with another */
+  public int collisions() {
+    return collisions;
+  }
+
+  /** Roughly how many bytes the arrays take up */
+  public long bytes() {
+    return keys.length * 8L + rowStart.length * 4L + rows.length * 8L;
+  }
+
+  private static final long serialVersionUID = 1;
+}
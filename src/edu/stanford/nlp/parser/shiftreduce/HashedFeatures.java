@@ -0,0 +1,101 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Arrays;
+
+/**
+ * Collects features as 64 bit hashes instead of Strings.  A feature
+ * is hashed a piece at a time with FNV-1a over its chars, so the hash
+ * of a feature given in several pieces is the same as
+ * {@link #hash(String)} of the concatenated String.  That is what
+ * lets {@link HashedFeatureWeights} be built from the String features
+ * of an existing model.
+ * <br>
+ * The hashes are kept in an array which is reused from one state to
+ * the next; call {@link #clear} before featurizing a new state.
+ * With 64 bits, two features of a model with a few million features
+ * are unlikely to collide, and the model tolerates it when they do.
+ */
+public class HashedFeatures extends FeatureCollector {
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private long[] hashes = new long[256];
+  private int size = 0;
+
+  public void clear() {
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long get(int i) {
+    return hashes[i];
+  }
+
+  private void push(long hash) {
+    if (size == hashes.length) {
+      hashes = Arrays.copyOf(hashes, size * 2);
+    }
+    hashes[size++] = finish(hash);
+  }
+
+  @Override
+  public void add(String feature) {
+    push(update(FNV_OFFSET, feature));
+  }
+
+  @Override
+  public void add(String p1, String p2) {
+    push(update(update(FNV_OFFSET, p1), p2));
+  }
+
+  @Override
+  public void add(String p1, String p2, String p3) {
+    push(update(update(update(FNV_OFFSET, p1), p2), p3));
+  }
+
+  @Override
+  public void add(String p1, String p2, String p3, String p4) {
+    push(update(update(update(update(FNV_OFFSET, p1), p2), p3), p4));
+  }
+
+  @Override
+  public void add(String p1, String p2, String p3, String p4, String p5) {
+    push(update(update(update(update(update(FNV_OFFSET, p1), p2), p3), p4), p5));
+  }
+
+  @Override
+  public void add(String p1, String p2, String p3, String p4, String p5, String p6) {
+    push(update(update(update(update(update(update(FNV_OFFSET, p1), p2), p3), p4), p5), p6));
+  }
+
+  @Override
+  public void add(String p1, String p2, String p3, String p4, String p5, String p6, String p7, String p8) {
+    long hash = update(update(update(update(FNV_OFFSET, p1), p2), p3), p4);
+    push(update(update(update(update(hash, p5), p6), p7), p8));
+  }
+
+  /** A null piece is "null", as it would be in a concatenated String */
+  private static long update(long hash, String piece) {
+    if (piece == null) {
+      piece = "null";
+    }
+    for (int i = 0, length = piece.length(); i < length; ++i) {
+      hash ^= piece.charAt(i);
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /** 0 marks an empty slot in HashedFeatureWeights, so no feature may hash to it */
+  private static long finish(long hash) {
+    return hash == 0 ? FNV_PRIME : hash;
+  }
+
+  /** The hash of a feature given as one String */
+  public static long hash(String feature) {
+    return finish(update(FNV_OFFSET, feature));
+  }
+}
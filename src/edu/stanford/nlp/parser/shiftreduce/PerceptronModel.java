@@ -32,9 +32,22 @@ import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
 import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
 public class PerceptronModel extends BaseModel { // Serializable
+  /** The weights by feature String.  null once the model is compacted */
   Map<String, Weight> featureWeights;
   final FeatureFactory featureFactory;
 
+  /**
+   * The weights by feature hash, for a model which has been compacted
+   * with {@link #compactFeatures}.  Such a model featurizes states
+   * into {@link HashedFeatures} and never builds feature Strings.
+   */
+  HashedFeatureWeights hashedWeights;
+  /** The tag set of a compacted model, which can no longer be read off the features */
+  Set<String> compactedTagSet;
+
+  /** Reusable hash arrays, one per parsing thread */
+  private transient ThreadLocal<HashedFeatures> hashedFeatures;
+
   public PerceptronModel(ShiftReduceOptions op, Index<Transition> transitionIndex,
                          Set<String> knownStates, Set<String> rootStates, Set<String> rootOnlyStates) {
     super(op, transitionIndex, knownStates, rootStates, rootOnlyStates);
@@ -62,6 +75,12 @@ public class PerceptronModel extends BaseModel { // Serializable
     super(other);
     this.featureFactory = other.featureFactory;
 
+    if (other.featureWeights == null) {
+      // the hashed weights are never changed, so they can be shared
+      this.hashedWeights = other.hashedWeights;
+      this.compactedTagSet = other.compactedTagSet;
+      return;
+    }
     this.featureWeights = Generics.newHashMap();
     for (String feature : other.featureWeights.keySet()) {
       featureWeights.put(feature, new Weight(other.featureWeights.get(feature)));
@@ -141,10 +160,47 @@ public class PerceptronModel extends BaseModel { // Serializable
   }
 
 
+  /**
+   * Replaces the String feature weights with {@link HashedFeatureWeights},
+   * which take a fraction of the memory and let the parser score states
+   * without building feature Strings.  This is how an existing
+   * serialized model is converted; see the -compactModel flag of
+   * {@link ShiftReduceParser#main}.  A compacted model can no longer
+   * be trained or averaged.
+   */
+  public void compactFeatures() {
+    if (featureWeights == null) {
+      return;
+    }
+    compactedTagSet = tagSet();
+    hashedWeights = new HashedFeatureWeights(featureWeights);
+    featureWeights = null;
+    if (hashedWeights.collisions() > 0) {
+      System.err.println("Warning: " + hashedWeights.collisions() + " features shared a hash with another feature");
+    }
+  }
+
+  private HashedFeatures hashedFeatures() {
+    ThreadLocal<HashedFeatures> local = hashedFeatures;
+    if (local == null) {
+      // the field is transient; a lost race only costs an extra buffer
+      local = ThreadLocal.withInitial(HashedFeatures::new);
+      hashedFeatures = local;
+    }
+    return local.get();
+  }
+
   /**
    * Output some random facts about the model
    */
   public void outputStats() {
+    if (featureWeights == null) {
+      System.err.println("Number of known features: " + hashedWeights.numFeatures() + " (compacted to hashes)");
+      System.err.println("Number of non-zero weights: " + hashedWeights.numWeights());
+      System.err.println("Size of compacted weights: " + hashedWeights.bytes() + " bytes");
+      System.err.println("Number of transitions: " + transitionIndex.size());
+      return;
+    }
     System.err.println("Number of known features: " + featureWeights.size());
     int numWeights = 0;
     for (Map.Entry<String, Weight> stringWeightEntry : featureWeights.entrySet()) {
@@ -166,6 +222,9 @@ public class PerceptronModel extends BaseModel { // Serializable
    */
   @Override
   Set<String> tagSet() {
+    if (featureWeights == null) {
+      return compactedTagSet;
+    }
     Set<String> tags = Generics.newHashSet();
     Pattern p1 = Pattern.compile("Q0TQ1T-([^-]+)-.*");
     Pattern p2 = Pattern.compile("S0T-(.*)");
@@ -197,6 +256,15 @@ public class PerceptronModel extends BaseModel { // Serializable
 
   @Override
   public Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
+    if (featureWeights == null) {
+      HashedFeatures features = hashedFeatures();
+      features.clear();
+      featureFactory.featurize(state, features);
+      float[] scores = new float[transitionIndex.size()];
+      // Features not in our index are ignored
+      hashedWeights.score(features, scores);
+      return findHighestScoringTransitions(state, scores, requireLegal, numTransitions, constraints);
+    }
     List<String> features = featureFactory.featurize(state);
     return findHighestScoringTransitions(state, features, requireLegal, numTransitions, constraints);
   }
@@ -211,7 +279,10 @@ public class PerceptronModel extends BaseModel { // Serializable
       }
       weight.score(scores);
     }
+    return findHighestScoringTransitions(state, scores, requireLegal, numTransitions, constraints);
+  }
 
+  private Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, float[] scores, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
     PriorityQueue<ScoredObject<Integer>> queue = new PriorityQueue<ScoredObject<Integer>>(numTransitions + 1, ScoredComparator.ASCENDING_COMPARATOR);
     for (int i = 0; i < scores.length; ++i) {
       if (!requireLegal || transitionIndex.get(i).isLegal(state, constraints)) {
@@ -36,6 +36,9 @@ public class ShiftReduceOptions extends Options {
     if (args[i].equalsIgnoreCase("-beamSize")) {
       testOptions().beamSize = Integer.valueOf(args[i + 1]);
       i += 2;
+    } else if (args[i].equalsIgnoreCase("-beamThreads")) {
+      testOptions().beamThreads = Integer.valueOf(args[i + 1]);
+      i += 2;
     } else if (args[i].equalsIgnoreCase("-trainBeamSize")) {
       trainOptions().beamSize = Integer.valueOf(args[i + 1]);
       i += 2;
@@ -33,6 +33,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.io.RuntimeIOException;
@@ -87,6 +88,9 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
 
   BaseModel model;
 
+  /** The threads which score the beam, if op.testOptions().beamThreads > 1 */
+  private transient volatile ForkJoinPool beamPool; // = null;
+
   public ShiftReduceParser(ShiftReduceOptions op) {
     this(op, null);
   }
@@ -119,6 +123,27 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
     return op;
   }
 
+  /**
+   * Returns the pool of threads shared by the queries of this parser
+   * for scoring their beams, or null if the beams are scored on the
+   * calling thread.  The threads are daemons, so the pool never needs
+   * shutting down.  This is called on every step of the beam, so the
+   * parser is only locked while the pool is created.
+   */
+  ForkJoinPool beamPool() {
+    ForkJoinPool pool = beamPool;
+    if (pool == null && op.testOptions().beamThreads > 1) {
+      synchronized (this) {
+        pool = beamPool;
+        if (pool == null) {
+          pool = new ForkJoinPool(op.testOptions().beamThreads);
+          beamPool = pool;
+        }
+      }
+    }
+    return pool;
+  }
+
   @Override
   public TreebankLangParserParams getTLPParams() {
     return op.tlpParams;
@@ -482,6 +507,18 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
     }
   }
 
+  /**
+   * Converts the feature weights of the model from Strings to hashes,
+   * which makes the model much smaller and faster.  The parses do not
+   * change, but a compacted model cannot be trained further.
+   */
+  public void compactFeatures() {
+    if (!(model instanceof PerceptronModel)) {
+      throw new UnsupportedOperationException("Can only compact the features of a PerceptronModel");
+    }
+    ((PerceptronModel) model).compactFeatures();
+  }
+
   static final String[] FORCE_TAGS = { "-forceTags" };
 
   public static void main(String[] args) {
@@ -497,6 +534,8 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
 
     String continueTraining = null;
 
+    String compactModelPath = null;
+
     for (int argIndex = 0; argIndex < args.length; ) {
       if (args[argIndex].equalsIgnoreCase("-trainTreebank")) {
         if (trainTreebankPath == null) {
@@ -519,6 +558,9 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
       } else if (args[argIndex].equalsIgnoreCase("-continueTraining")) {
         continueTraining = args[argIndex + 1];
         argIndex += 2;
+      } else if (args[argIndex].equalsIgnoreCase("-compactModel")) {
+        compactModelPath = args[argIndex + 1];
+        argIndex += 2;
       } else {
         remainingArgs.add(args[argIndex]);
         ++argIndex;
@@ -552,6 +594,14 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
       parser = ShiftReduceParser.loadModel(serializedPath, ArrayUtils.concatenate(FORCE_TAGS, newArgs));
     }
 
+    if (compactModelPath != null) {
+      Timing compactTimer = new Timing();
+      parser.compactFeatures();
+      compactTimer.done("Compacting the features");
+      ((PerceptronModel) parser.model).outputStats();
+      parser.saveModel(compactModelPath);
+    }
+
     //parser.outputStats();
 
     if (testTreebankPath != null) {
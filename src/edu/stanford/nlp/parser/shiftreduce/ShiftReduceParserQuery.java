@@ -7,6 +7,10 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import edu.stanford.nlp.ling.HasWord;
 import edu.stanford.nlp.ling.Label;
@@ -17,6 +21,7 @@ import edu.stanford.nlp.parser.common.ParserQuery;
 import edu.stanford.nlp.parser.lexparser.Debinarizer;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
 import edu.stanford.nlp.util.ScoredComparator;
 import edu.stanford.nlp.util.ScoredObject;
 
@@ -36,6 +41,9 @@ public class ShiftReduceParserQuery implements ParserQuery {
 
   List<ParserConstraint> constraints = null;
 
+  /** Fewer states than this are not worth handing to another thread */
+  private static final int MIN_STATES_PER_TASK = 2;
+
   public ShiftReduceParserQuery(ShiftReduceParser parser) {
     this.parser = parser;
   }
@@ -68,8 +76,14 @@ public class ShiftReduceParserQuery implements ParserQuery {
       PriorityQueue<State> oldBeam = beam;
       beam = new PriorityQueue<State>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
       State bestState = null;
-      for (State state : oldBeam) {
-        Collection<ScoredObject<Integer>> predictedTransitions = parser.model.findHighestScoringTransitions(state, true, maxBeamSize, constraints);
+      // All of the states are scored together, but the new states
+      // are still added in the order of the old beam, so the result
+      // is the same as expanding one state at a time
+      List<State> states = Generics.newArrayList(oldBeam);
+      List<Collection<ScoredObject<Integer>>> stateTransitions = findHighestScoringTransitions(states, maxBeamSize);
+      for (int i = 0; i < states.size(); ++i) {
+        State state = states.get(i);
+        Collection<ScoredObject<Integer>> predictedTransitions = stateTransitions.get(i);
         // System.err.println("Examining state: " + state);
         for (ScoredObject<Integer> predictedTransition : predictedTransitions) {
           Transition transition = parser.model.transitionIndex.get(predictedTransition.object());
@@ -127,6 +141,36 @@ public class ShiftReduceParserQuery implements ParserQuery {
     return success;
   }
 
+  /**
+   * Scores the states of the beam, split between the threads of the
+   * parser's beam pool if it has one.
+   */
+  private List<Collection<ScoredObject<Integer>>> findHighestScoringTransitions(List<State> states, int maxBeamSize) {
+    ForkJoinPool pool = parser.beamPool();
+    int numTasks = (pool == null) ? 1 : Math.min(pool.getParallelism(), states.size() / MIN_STATES_PER_TASK);
+    if (numTasks <= 1) {
+      return parser.model.findHighestScoringTransitions(states, true, maxBeamSize, constraints);
+    }
+
+    List<Callable<List<Collection<ScoredObject<Integer>>>>> tasks = Generics.newArrayList(numTasks);
+    for (int task = 0; task < numTasks; ++task) {
+      final List<State> taskStates = states.subList(task * states.size() / numTasks, (task + 1) * states.size() / numTasks);
+      tasks.add(() -> parser.model.findHighestScoringTransitions(taskStates, true, maxBeamSize, constraints));
+    }
+
+    List<Collection<ScoredObject<Integer>>> transitions = Generics.newArrayList(states.size());
+    try {
+      for (Future<List<Collection<ScoredObject<Integer>>>> result : pool.invokeAll(tasks)) {
+        transitions.addAll(result.get());
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeInterruptedException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+    return transitions;
+  }
+
   /**
    * TODO: if we add anything interesting to report, we should report it here
    */
@@ -8,4 +8,10 @@ public class ShiftReduceTestOptions extends TestOptions {
   public String recordDebinarized = null;
 
   public int beamSize = 0;
+
+  /**
+   * How many threads to use to score the states of the beam.  The
+   * parses are the same however many are used.
+   */
+  public int beamThreads = 1;
 }
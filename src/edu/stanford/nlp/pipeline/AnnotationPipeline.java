@@ -5,9 +5,16 @@ import edu.stanford.nlp.trees.TreeCoreAnnotations;
 import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.util.logging.Redwood;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 
 
 /**
@@ -27,16 +34,14 @@ public class AnnotationPipeline implements Annotator {
   protected static final boolean TIME = true;
 
   private final List<Annotator> annotators;
-  private List<MutableLong> accumulatedTime;
+  private final List<AnnotatorStatistics> statistics;
+  private final List<AnnotationPipelineListener> listeners = new CopyOnWriteArrayList<>();
 
   public AnnotationPipeline(List<Annotator> annotators) {
     this.annotators = annotators;
-    if (TIME) {
-      int num = annotators.size();
-      accumulatedTime = new ArrayList<MutableLong>(num);
-      for (int i = 0; i < num; i++) {
-        accumulatedTime.add(new MutableLong());
-      }
+    statistics = new CopyOnWriteArrayList<>();
+    for (Annotator annotator : annotators) {
+      statistics.add(new AnnotatorStatistics(StringUtils.getShortClassName(annotator)));
     }
   }
 
@@ -46,9 +51,7 @@ public class AnnotationPipeline implements Annotator {
 
   public void addAnnotator(Annotator annotator) {
     annotators.add(annotator);
-    if (TIME) {
-      accumulatedTime.add(new MutableLong());
-    }
+    statistics.add(new AnnotatorStatistics(StringUtils.getShortClassName(annotator)));
   }
 
   /**
@@ -59,18 +62,78 @@ public class AnnotationPipeline implements Annotator {
    */
   @Override
   public void annotate(Annotation annotation) {
-    Iterator<MutableLong> it = accumulatedTime.iterator();
-    Timing t = new Timing();
-    for (Annotator annotator : annotators) {
-      if (TIME) {
-        t.start();
-      }
+    for (int i = 0; i < annotators.size(); ++i) {
+      runAnnotator(i, annotation);
+    }
+  }
+
+  /**
+   * Runs the annotator at the given position on the annotation,
+   * recording its statistics and notifying the listeners.
+   */
+  void runAnnotator(int index, Annotation annotation) {
+    Annotator annotator = annotators.get(index);
+    if ( ! TIME) {
       annotator.annotate(annotation);
-      if (TIME) {
-        long elapsed = t.stop();
-        MutableLong m = it.next();
-        m.incValue(elapsed);
-      }
+      return;
+    }
+    long allocatedBefore = MemoryMonitor.threadAllocatedBytes();
+    long start = System.nanoTime();
+    annotator.annotate(annotation);
+    long elapsed = System.nanoTime() - start;
+    long allocated = allocatedBefore < 0 ? -1 : MemoryMonitor.threadAllocatedBytes() - allocatedBefore;
+    statistics.get(index).record(annotation, elapsed, allocated);
+    for (AnnotationPipelineListener listener : listeners) {
+      listener.annotatorFinished(index, annotator, annotation, elapsed, allocated);
+    }
+  }
+
+  /** Called by the pipelined mode when a stage takes a document off its queue. */
+  void recordQueueDepth(int index, int depth) {
+    statistics.get(index).recordQueueDepth(depth);
+    for (AnnotationPipelineListener listener : listeners) {
+      listener.queueDepth(index, depth);
+    }
+  }
+
+  List<Annotator> annotators() {
+    return annotators;
+  }
+
+  /**
+   * Adds a listener which is told how long each annotator takes on
+   * each document, in addition to the statistics kept by the pipeline.
+   */
+  public void addListener(AnnotationPipelineListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(AnnotationPipelineListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Returns the statistics for each annotator, in pipeline order.  They
+   * are live: they keep updating as more documents are annotated.
+   */
+  public List<AnnotatorStatistics> getStatistics() {
+    return Collections.unmodifiableList(statistics);
+  }
+
+  /**
+   * Registers a JMX MBean exposing the statistics of this pipeline,
+   * under the name {@code edu.stanford.nlp.pipeline:type=AnnotationPipeline,name=<name>}.
+   *
+   * @return The name the MBean was registered under
+   */
+  public ObjectName registerMBean(String name) {
+    try {
+      ObjectName objectName = new ObjectName("edu.stanford.nlp.pipeline:type=AnnotationPipeline,name=" + ObjectName.quote(name));
+      StandardMBean mbean = new StandardMBean(new MXBeanView(), AnnotationPipelineMXBean.class, true);
+      ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, objectName);
+      return objectName;
+    } catch (JMException e) {
+      throw new RuntimeException(e);
     }
   }
 
@@ -122,6 +185,7 @@ public class AnnotationPipeline implements Annotator {
         annotate(ann);
         callback.apply(ann);
       }
+      return;
     }
     // Java's equivalent to ".map{ lambda(annotation) => annotate(annotation) }
     Iterable<Runnable> threads = new Iterable<Runnable>() {
@@ -162,16 +226,53 @@ public class AnnotationPipeline implements Annotator {
     Redwood.Util.threadAndRun(this.getClass().getSimpleName(), threads, numThreads );
   }
 
+  /**
+   * Annotate a stream of input annotations with each annotator running
+   * as its own stage, one thread per stage.
+   *
+   * @see #annotatePipelined(Iterable, int[], int, Function)
+   */
+  public void annotatePipelined(Iterable<Annotation> annotations, Function<Annotation,Object> callback) {
+    int[] stageThreads = new int[annotators.size()];
+    Arrays.fill(stageThreads, 1);
+    annotatePipelined(annotations, stageThreads, 2 * Math.max(annotators.size(), 1), callback);
+  }
+
+  /**
+   * Annotate a stream of input annotations with each annotator running
+   * as its own stage, connected to the next by a bounded queue.
+   * Unlike {@link #annotate(Iterable, int, Function)}, which runs whole
+   * documents on each thread, this lets cheap annotators work ahead on
+   * later documents while an expensive one (such as the parser) is busy,
+   * and the number of documents held in memory is bounded by
+   * {@code maxInFlight} rather than by the input.
+   * <br>
+   * Annotators given more than one thread are called concurrently and
+   * must be threadsafe.  The callback is called on the calling thread,
+   * in input order.
+   *
+   * @param annotations The input annotations to process
+   * @param stageThreads The number of threads for each annotator, in pipeline order
+   * @param maxInFlight The maximum number of documents in the pipeline at once
+   * @param callback A function to be called when an annotation finishes.
+   *                 The return value of the callback is ignored.
+   */
+  public void annotatePipelined(Iterable<Annotation> annotations, int[] stageThreads, int maxInFlight,
+                                Function<Annotation,Object> callback) {
+    new StagedAnnotationRunner(this, stageThreads, maxInFlight)
+        .run(annotations, callback);
+  }
+
   /** Return the total pipeline annotation time in milliseconds.
    *
    *  @return The total pipeline annotation time in milliseconds
    */
   protected long getTotalTime() {
     long total = 0;
-    for (MutableLong m: accumulatedTime) {
-      total += m.longValue();
+    for (AnnotatorStatistics stats : statistics) {
+      total += stats.getTotalNanos();
     }
-    return total;
+    return total / 1000000;
   }
 
   /** Return a String that gives detailed human-readable information about
@@ -186,19 +287,99 @@ public class AnnotationPipeline implements Annotator {
     StringBuilder sb = new StringBuilder();
     if (TIME) {
       sb.append("Annotation pipeline timing information:\n");
-      Iterator<MutableLong> it = accumulatedTime.iterator();
       long total = 0;
-      for (Annotator annotator : annotators) {
-        MutableLong m = it.next();
-        sb.append(StringUtils.getShortClassName(annotator)).append(": ");
-        sb.append(Timing.toSecondsString(m.longValue())).append(" sec.\n");
-        total += m.longValue();
+      for (AnnotatorStatistics stats : statistics) {
+        long millis = stats.getTotalNanos() / 1000000;
+        sb.append(stats.getName()).append(": ");
+        sb.append(Timing.toSecondsString(millis)).append(" sec.\n");
+        total += millis;
       }
       sb.append("TOTAL: ").append(Timing.toSecondsString(total)).append(" sec.");
     }
     return sb.toString();
   }
 
+  /** Return a String with the latency percentiles, throughput and
+   *  other {@link AnnotatorStatistics} of each annotator, one per line.
+   *
+   *  @return Human readable statistics for each annotator.
+   */
+  public String statisticsInformation() {
+    StringBuilder sb = new StringBuilder("Annotation pipeline statistics:");
+    for (AnnotatorStatistics stats : statistics) {
+      sb.append('\n').append(stats);
+    }
+    return sb.toString();
+  }
+
+
+  /** Adapts the statistics to {@link AnnotationPipelineMXBean}. */
+  private class MXBeanView implements AnnotationPipelineMXBean {
+
+    private double[] doubles(ToDoubleFunction<AnnotatorStatistics> f) {
+      return statistics.stream().mapToDouble(f).toArray();
+    }
+
+    private long[] longs(ToLongFunction<AnnotatorStatistics> f) {
+      return statistics.stream().mapToLong(f).toArray();
+    }
+
+    @Override
+    public String[] getAnnotatorNames() {
+      return statistics.stream().map(AnnotatorStatistics::getName).toArray(String[]::new);
+    }
+
+    @Override
+    public long[] getDocumentCounts() {
+      return longs(AnnotatorStatistics::getCount);
+    }
+
+    @Override
+    public double[] getP50Millis() {
+      return doubles(stats -> stats.getPercentileNanos(50) / 1e6);
+    }
+
+    @Override
+    public double[] getP99Millis() {
+      return doubles(stats -> stats.getPercentileNanos(99) / 1e6);
+    }
+
+    @Override
+    public double[] getMaxMillis() {
+      return doubles(stats -> stats.getMaxNanos() / 1e6);
+    }
+
+    @Override
+    public double[] getTotalSeconds() {
+      return doubles(stats -> stats.getTotalNanos() / 1e9);
+    }
+
+    @Override
+    public double[] getTokensPerSecond() {
+      return doubles(AnnotatorStatistics::getTokensPerSecond);
+    }
+
+    @Override
+    public long[] getAllocatedBytes() {
+      return longs(AnnotatorStatistics::getAllocatedBytes);
+    }
+
+    @Override
+    public double[] getMeanQueueDepths() {
+      return doubles(AnnotatorStatistics::getMeanQueueDepth);
+    }
+
+    @Override
+    public long[] getMaxQueueDepths() {
+      return longs(AnnotatorStatistics::getMaxQueueDepth);
+    }
+
+    @Override
+    public void resetStatistics() {
+      statistics.forEach(AnnotatorStatistics::reset);
+    }
+  }
+
   @Override
   public Set<Requirement> requirementsSatisfied() {
     Set<Requirement> satisfied = Generics.newHashSet();
@@ -0,0 +1,36 @@
+package edu.stanford.nlp.pipeline;
+
+/**
+ * Receives a measurement each time an {@link AnnotationPipeline} runs one
+ * of its annotators on a document.  Listeners are called on the thread
+ * which ran the annotator, so with the multi-threaded modes they must be
+ * threadsafe, and they should be cheap: they run inside the pipeline.
+ *
+ * @see AnnotationPipeline#addListener(AnnotationPipelineListener)
+ * @see AnnotatorStatistics
+ */
+public interface AnnotationPipelineListener {
+
+  /**
+   * Called after an annotator has annotated a document.
+   *
+   * @param index The position of the annotator in the pipeline
+   * @param annotator The annotator which ran
+   * @param annotation The document, as the annotator left it
+   * @param elapsedNanos Wall clock time the annotator took
+   * @param allocatedBytes Bytes allocated by the annotating thread meanwhile,
+   *                       or -1 if the JVM cannot measure it
+   */
+  void annotatorFinished(int index, Annotator annotator, Annotation annotation,
+                         long elapsedNanos, long allocatedBytes);
+
+  /**
+   * Called by {@link AnnotationPipeline#annotatePipelined} each time a
+   * stage takes a document off its input queue.
+   *
+   * @param index The position of the annotator in the pipeline
+   * @param depth The number of documents still waiting for that stage
+   */
+  default void queueDepth(int index, int depth) { }
+
+}
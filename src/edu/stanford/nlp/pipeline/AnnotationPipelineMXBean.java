@@ -0,0 +1,34 @@
+package edu.stanford.nlp.pipeline;
+
+/**
+ * JMX view of the {@link AnnotatorStatistics} of an
+ * {@link AnnotationPipeline}.  Each array has one entry per annotator,
+ * in pipeline order.
+ *
+ * @see AnnotationPipeline#registerMBean(String)
+ */
+public interface AnnotationPipelineMXBean {
+
+  String[] getAnnotatorNames();
+
+  long[] getDocumentCounts();
+
+  double[] getP50Millis();
+
+  double[] getP99Millis();
+
+  double[] getMaxMillis();
+
+  double[] getTotalSeconds();
+
+  double[] getTokensPerSecond();
+
+  long[] getAllocatedBytes();
+
+  double[] getMeanQueueDepths();
+
+  long[] getMaxQueueDepths();
+
+  void resetStatistics();
+
+}
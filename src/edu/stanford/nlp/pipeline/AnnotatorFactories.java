@@ -23,6 +23,14 @@ public class AnnotatorFactories {
 
   private AnnotatorFactories() {} // static factory class
 
+  /** The nthreads and maxtime properties of a {@link SentenceAnnotator}, for its signature */
+  private static String threadsSignature(String name, Properties properties) {
+    return name + ".nthreads:" +
+        properties.getProperty(name + ".nthreads", properties.getProperty("nthreads", "")) +
+        name + ".maxtime:" +
+        properties.getProperty(name + ".maxtime", "0");
+  }
+
   public static AnnotatorFactory tokenize(Properties properties, final AnnotatorImplementations annotatorImplementation) {
     return new AnnotatorFactory(properties, annotatorImplementation) {
       private static final long serialVersionUID = 1L;
@@ -311,8 +319,7 @@ public class AnnotatorFactories {
       @Override
       public String additionalSignature() {
         // keep track of all relevant properties for this annotator here!
-        // nothing for this one
-        return "";
+        return threadsSignature("lemma", properties);
       }
     };
   }
@@ -432,7 +439,8 @@ public class AnnotatorFactories {
                 TrueCaseAnnotator.DEFAULT_MODEL_BIAS) +
             "truecase.mixedcasefile:" +
             properties.getProperty("truecase.mixedcasefile",
-                DefaultPaths.DEFAULT_TRUECASE_DISAMBIGUATION_LIST);
+                DefaultPaths.DEFAULT_TRUECASE_DISAMBIGUATION_LIST) +
+            threadsSignature("truecase", properties);
       }
     };
   }
@@ -523,7 +531,8 @@ public class AnnotatorFactories {
 
       @Override
       public String additionalSignature() {
-        return "sentiment.model=" + properties.get("sentiment.model");
+        return "sentiment.model=" + properties.get("sentiment.model") +
+            threadsSignature(StanfordCoreNLP.STANFORD_SENTIMENT, properties);
       }
     };
   }
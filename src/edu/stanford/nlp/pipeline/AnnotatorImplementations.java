@@ -62,7 +62,9 @@ public class AnnotatorImplementations {
    * Annotate lemmas
    */
   public Annotator morpha(Properties properties, boolean verbose) {
-    return new MorphaAnnotator(verbose);
+    int nThreads = PropertiesUtils.getInt(properties, "lemma.nthreads", PropertiesUtils.getInt(properties, "nthreads", 1));
+    long maxTime = PropertiesUtils.getLong(properties, "lemma.maxtime", 0);
+    return new MorphaAnnotator(verbose, nThreads, maxTime);
   }
 
   /**
@@ -171,7 +173,9 @@ public class AnnotatorImplementations {
                                String classBias,
                                String mixedCaseFileName,
                                boolean verbose) {
-    return new TrueCaseAnnotator(modelLoc, classBias, mixedCaseFileName, verbose);
+    int nThreads = PropertiesUtils.getInt(properties, "truecase.nthreads", PropertiesUtils.getInt(properties, "nthreads", 1));
+    long maxTime = PropertiesUtils.getLong(properties, "truecase.maxtime", 0);
+    return new TrueCaseAnnotator(modelLoc, classBias, mixedCaseFileName, verbose, nThreads, maxTime);
   }
 
   /**
@@ -0,0 +1,241 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.CoreMap;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Running statistics for one annotator of an {@link AnnotationPipeline}:
+ * a latency histogram, throughput counters, time per sentence by
+ * sentence length, queue depths in the pipelined mode, and the bytes
+ * allocated while annotating.
+ * <br>
+ * Latencies are kept in a log-scale histogram with eight buckets per
+ * power of two, so percentiles are exact to within 12.5% and recording
+ * costs a few atomic increments.  All methods are threadsafe.
+ */
+public class AnnotatorStatistics {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  /**
+   * Upper bounds (inclusive) on the mean sentence length, in tokens, of
+   * the buckets of {@link #getNanosPerSentence(int)}; the last bucket
+   * holds everything longer.
+   */
+  public static final int[] SENTENCE_LENGTH_BOUNDS = { 10, 20, 40, 80 };
+
+  private final String name;
+
+  private final AtomicLongArray histogram = new AtomicLongArray(NUM_BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+  private final AtomicLong tokens = new AtomicLong();
+  private final AtomicLong allocatedBytes = new AtomicLong();
+
+  private final AtomicLongArray bucketSentences = new AtomicLongArray(SENTENCE_LENGTH_BOUNDS.length + 1);
+  private final AtomicLongArray bucketNanos = new AtomicLongArray(SENTENCE_LENGTH_BOUNDS.length + 1);
+
+  private final AtomicLong queueSamples = new AtomicLong();
+  private final AtomicLong queueDepthSum = new AtomicLong();
+  private final AtomicLong maxQueueDepth = new AtomicLong();
+
+  public AnnotatorStatistics(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Records one run of the annotator on the given document.
+   *
+   * @param allocated Bytes allocated meanwhile, or a negative number if unknown
+   */
+  public void record(Annotation annotation, long elapsedNanos, long allocated) {
+    long nanos = Math.max(elapsedNanos, 0);
+    histogram.incrementAndGet(bucket(nanos));
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+    maxNanos.accumulateAndGet(nanos, Math::max);
+    if (allocated > 0) {
+      allocatedBytes.addAndGet(allocated);
+    }
+
+    List<?> docTokens = annotation.get(CoreAnnotations.TokensAnnotation.class);
+    if (docTokens != null) {
+      tokens.addAndGet(docTokens.size());
+    }
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    if (sentences != null && ! sentences.isEmpty()) {
+      // the annotator ran on the whole document, so charge each sentence
+      // the mean time, in the bucket of the document's mean sentence length
+      long sentenceTokens = docTokens != null ? docTokens.size() : 0;
+      if (docTokens == null) {
+        for (CoreMap sentence : sentences) {
+          List<?> words = sentence.get(CoreAnnotations.TokensAnnotation.class);
+          sentenceTokens += words == null ? 0 : words.size();
+        }
+      }
+      int b = sentenceLengthBucket(sentenceTokens / (double) sentences.size());
+      bucketSentences.addAndGet(b, sentences.size());
+      bucketNanos.addAndGet(b, nanos);
+    }
+  }
+
+  public void recordQueueDepth(int depth) {
+    queueSamples.incrementAndGet();
+    queueDepthSum.addAndGet(depth);
+    maxQueueDepth.accumulateAndGet(depth, Math::max);
+  }
+
+  private static int bucket(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+    int mantissa = (int) (nanos >>> exponent) & (SUB_BUCKETS - 1);
+    return (exponent + 1) * SUB_BUCKETS + mantissa;
+  }
+
+  /** The largest value which falls in the given histogram bucket. */
+  private static long bucketUpperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS - 1;
+    long mantissa = (bucket % SUB_BUCKETS) | SUB_BUCKETS;
+    return ((mantissa + 1) << exponent) - 1;
+  }
+
+  private static int sentenceLengthBucket(double length) {
+    for (int i = 0; i < SENTENCE_LENGTH_BOUNDS.length; ++i) {
+      if (length <= SENTENCE_LENGTH_BOUNDS[i]) {
+        return i;
+      }
+    }
+    return SENTENCE_LENGTH_BOUNDS.length;
+  }
+
+  /** The number of documents annotated. */
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getTotalNanos() {
+    return totalNanos.get();
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * An upper bound on the given percentile of the per-document latency,
+   * within 12.5%, or 0 if nothing has been recorded.
+   *
+   * @param percentile Between 0 and 100
+   */
+  public long getPercentileNanos(double percentile) {
+    long n = count.get();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; ++i) {
+      seen += histogram.get(i);
+      if (seen >= rank) {
+        return Math.min(bucketUpperBound(i), maxNanos.get());
+      }
+    }
+    return maxNanos.get();
+  }
+
+  /** The number of tokens in the documents annotated. */
+  public long getTokens() {
+    return tokens.get();
+  }
+
+  /** Tokens per second of time spent in this annotator. */
+  public double getTokensPerSecond() {
+    long nanos = totalNanos.get();
+    return nanos == 0 ? 0.0 : tokens.get() * 1e9 / nanos;
+  }
+
+  /** Bytes allocated by the annotating threads, or 0 if the JVM cannot measure it. */
+  public long getAllocatedBytes() {
+    return allocatedBytes.get();
+  }
+
+  /** The number of sentences recorded in the given sentence length bucket. */
+  public long getSentences(int bucket) {
+    return bucketSentences.get(bucket);
+  }
+
+  /**
+   * Mean time per sentence for documents whose mean sentence length
+   * falls in the given bucket of {@link #SENTENCE_LENGTH_BOUNDS}.
+   */
+  public double getNanosPerSentence(int bucket) {
+    long sentences = bucketSentences.get(bucket);
+    return sentences == 0 ? 0.0 : bucketNanos.get(bucket) / (double) sentences;
+  }
+
+  public double getMeanQueueDepth() {
+    long samples = queueSamples.get();
+    return samples == 0 ? 0.0 : queueDepthSum.get() / (double) samples;
+  }
+
+  public long getMaxQueueDepth() {
+    return maxQueueDepth.get();
+  }
+
+  public void reset() {
+    for (int i = 0; i < NUM_BUCKETS; ++i) {
+      histogram.set(i, 0);
+    }
+    for (int i = 0; i < bucketSentences.length(); ++i) {
+      bucketSentences.set(i, 0);
+      bucketNanos.set(i, 0);
+    }
+    count.set(0);
+    totalNanos.set(0);
+    maxNanos.set(0);
+    tokens.set(0);
+    allocatedBytes.set(0);
+    queueSamples.set(0);
+    queueDepthSum.set(0);
+    maxQueueDepth.set(0);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(name);
+    sb.append(String.format(": n=%d p50=%.1fms p99=%.1fms max=%.1fms %.0f tokens/sec",
+        getCount(), getPercentileNanos(50) / 1e6, getPercentileNanos(99) / 1e6,
+        getMaxNanos() / 1e6, getTokensPerSecond()));
+    if (getAllocatedBytes() > 0) {
+      sb.append(String.format(" alloc=%.1fMB", getAllocatedBytes() / 1e6));
+    }
+    if (queueSamples.get() > 0) {
+      sb.append(String.format(" queue=%.1f/%d", getMeanQueueDepth(), getMaxQueueDepth()));
+    }
+    for (int b = 0; b <= SENTENCE_LENGTH_BOUNDS.length; ++b) {
+      if (getSentences(b) > 0) {
+        String range = b < SENTENCE_LENGTH_BOUNDS.length ? "<=" + SENTENCE_LENGTH_BOUNDS[b]
+                                                         : ">" + SENTENCE_LENGTH_BOUNDS[b - 1];
+        sb.append(String.format(" [%s tok: %.2fms/sent]", range, getNanosPerSentence(b) / 1e6));
+      }
+    }
+    return sb.toString();
+  }
+
+}
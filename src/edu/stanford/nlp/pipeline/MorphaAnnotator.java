@@ -19,13 +19,22 @@ import java.util.Set;
  * {@code SentencesAnnotation.class} key.
  * The Annotator adds lemma information to each CoreLabel,
  * in the LemmaAnnotation.class.
+ * <br>
+ * Sentences can be lemmatized in parallel ({@code lemma.nthreads}),
+ * each thread using its own {@link Morphology}, whose lexer is not
+ * threadsafe.
  *
  * @author Jenny Finkel
  */
-public class MorphaAnnotator implements Annotator{
+public class MorphaAnnotator extends SentenceAnnotator {
 
   private boolean VERBOSE = false;
 
+  private final int nThreads;
+  private final long maxTime;
+
+  private final ThreadLocal<Morphology> morphology = ThreadLocal.withInitial(Morphology::new);
+
 
   private static final String[] prep = {"abroad", "across", "after", "ahead", "along", "aside", "away", "around", "back", "down", "forward", "in", "off", "on", "over", "out", "round", "together", "through", "up"};
   private static final List<String> particles = Arrays.asList(prep);
@@ -35,30 +44,61 @@ public class MorphaAnnotator implements Annotator{
   }
 
   public MorphaAnnotator(boolean verbose) {
+    this(verbose, 1, 0);
+  }
+
+  public MorphaAnnotator(boolean verbose, int nThreads, long maxTime) {
     VERBOSE = verbose;
+    this.nThreads = nThreads;
+    this.maxTime = maxTime;
   }
 
+  @Override
   public void annotate(Annotation annotation) {
     if (VERBOSE) {
       System.err.print("Finding lemmas ...");
     }
-    Morphology morphology = new Morphology();
     if (annotation.has(CoreAnnotations.SentencesAnnotation.class)) {
-      for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-        List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
-        //System.err.println("Lemmatizing sentence: " + tokens);
-        for (CoreLabel token : tokens) {
-          String text = token.get(CoreAnnotations.TextAnnotation.class);
-          String posTag = token.get(CoreAnnotations.PartOfSpeechAnnotation.class);
-          addLemma(morphology, CoreAnnotations.LemmaAnnotation.class, token, text, posTag);
-        }
-      }
+      super.annotate(annotation);
     } else {
       throw new RuntimeException("Unable to find words/tokens in: " +
                                  annotation);
     }
   }
 
+  @Override
+  protected int nThreads() {
+    return nThreads;
+  }
+
+  @Override
+  protected long maxTime() {
+    return maxTime;
+  }
+
+  @Override
+  protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+    Morphology morphology = this.morphology.get();
+    List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+    //System.err.println("Lemmatizing sentence: " + tokens);
+    for (CoreLabel token : tokens) {
+      String text = token.get(CoreAnnotations.TextAnnotation.class);
+      String posTag = token.get(CoreAnnotations.PartOfSpeechAnnotation.class);
+      addLemma(morphology, CoreAnnotations.LemmaAnnotation.class, token, text, posTag);
+    }
+  }
+
+  /** Falls back to using each word as its own lemma. */
+  @Override
+  protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+    List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+    for (CoreLabel token : tokens) {
+      if (token.lemma() == null) {
+        token.setLemma(token.get(CoreAnnotations.TextAnnotation.class));
+      }
+    }
+  }
+
 
   private static void addLemma(Morphology morpha,
                         Class<? extends CoreAnnotation<String>> ann,
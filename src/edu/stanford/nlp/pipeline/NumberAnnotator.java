@@ -20,14 +20,22 @@ import java.util.Set;
  * tokens already have a (POS) TagAnnotation, and an original round of NER that
  * covers MONEY and American DATE/TIME formats, such as MUC NER in
  * AnswerAnnotation, to which we add.
+ * <br>
+ * Sentences can be annotated in parallel ({@code name.nthreads}), with
+ * an optional per-sentence time limit ({@code name.maxtime}).  The
+ * NumberSequenceClassifier keeps no per-sentence state, and is already
+ * shared between threads by the NER annotator.
  *
  * @author Jenny Finkel
  */
 
-public class NumberAnnotator implements Annotator {
+public class NumberAnnotator extends SentenceAnnotator {
 
   private final AbstractSequenceClassifier<CoreLabel> nsc;
 
+  private final int nThreads;
+  private final long maxTime;
+
   private boolean VERBOSE = true;
   private static final String DEFAULT_BACKGROUND_SYMBOL = "O";
   private String BACKGROUND_SYMBOL;
@@ -50,6 +58,8 @@ public class NumberAnnotator implements Annotator {
     BACKGROUND_SYMBOL = backgroundSymbol;
     VERBOSE = verbose;
     nsc = new NumberSequenceClassifier(useSUTime);
+    nThreads = 1;
+    maxTime = 0;
   }
 
   public NumberAnnotator(String name, Properties props) {
@@ -60,6 +70,8 @@ public class NumberAnnotator implements Annotator {
         NumberSequenceClassifier.USE_SUTIME_DEFAULT);
     VERBOSE = false;
     nsc = new NumberSequenceClassifier(useSUTime);
+    nThreads = PropertiesUtils.getInt(props, name + ".nthreads", PropertiesUtils.getInt(props, "nthreads", 1));
+    maxTime = PropertiesUtils.getLong(props, name + ".maxtime", 0);
   }
 
   @Override
@@ -70,10 +82,7 @@ public class NumberAnnotator implements Annotator {
 
     if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
       // classify tokens for each sentence
-      for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-        List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
-        doOneSentenceNew(tokens, annotation, sentence);
-      }
+      super.annotate(annotation);
       if (VERBOSE) {
         System.err.println("done. Output: " + annotation.get(CoreAnnotations.SentencesAnnotation.class));
       }
@@ -85,6 +94,27 @@ public class NumberAnnotator implements Annotator {
     }
   }
 
+  @Override
+  protected int nThreads() {
+    return nThreads;
+  }
+
+  @Override
+  protected long maxTime() {
+    return maxTime;
+  }
+
+  @Override
+  protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+    List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+    doOneSentenceNew(tokens, annotation, sentence);
+  }
+
+  /** Leaves the sentence's NER tags as they were. */
+  @Override
+  protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+  }
+
   private void doOneSentenceNew(List<CoreLabel> words, Annotation doc, CoreMap sentence) {
     List<CoreLabel> newWords = NumberSequenceClassifier.copyTokens(words, sentence);
 
@@ -10,6 +10,7 @@ import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.Sentence;
 import edu.stanford.nlp.ling.TaggedWord;
 import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+import edu.stanford.nlp.tagger.maxent.TestSentence;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.PropertiesUtils;
 import edu.stanford.nlp.util.Timing;
@@ -106,8 +107,9 @@ public class POSTaggerAnnotator implements Annotator {
     // turn the annotation into a sentence
     if (annotation.has(CoreAnnotations.SentencesAnnotation.class)) {
       if (nThreads == 1) {
+        TestSentence context = new TestSentence(pos);
         for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-          doOneSentence(sentence);
+          doOneSentence(sentence, context);
         }
       } else {
         MulticoreWrapper<CoreMap, CoreMap> wrapper = new MulticoreWrapper<CoreMap, CoreMap>(nThreads, new POSTaggerProcessor());
@@ -127,24 +129,27 @@ public class POSTaggerAnnotator implements Annotator {
     }
   }
 
+  /** Each thread gets its own processor, which reuses one TestSentence for all its sentences */
   private class POSTaggerProcessor implements ThreadsafeProcessor<CoreMap, CoreMap> {
+    private final TestSentence context = new TestSentence(pos);
+
     @Override
     public CoreMap process(CoreMap sentence) {
-      return doOneSentence(sentence);
+      return doOneSentence(sentence, context);
     }
 
     @Override
     public ThreadsafeProcessor<CoreMap, CoreMap> newInstance() {
-      return this;
+      return new POSTaggerProcessor();
     }
   }
 
-  private CoreMap doOneSentence(CoreMap sentence) {
+  private CoreMap doOneSentence(CoreMap sentence, TestSentence context) {
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
     List<TaggedWord> tagged = null;
     if (tokens.size() <= maxSentenceLength) {
       try {
-        tagged = pos.tagSentence(tokens, this.reuseTags);
+        tagged = context.tagSentence(tokens, this.reuseTags);
       } catch (OutOfMemoryError e) {
         System.err.println("WARNING: Tagging of sentence ran out of memory. " +
                            "Will ignore and continue: " +
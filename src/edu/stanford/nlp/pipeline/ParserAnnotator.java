@@ -280,6 +280,9 @@ public class ParserAnnotator extends SentenceAnnotator {
       System.err.println("WARNING: Parsing of sentence failed, possibly because of out of memory.  " +
                          "Will ignore and continue: " +
                          Sentence.listToString(words));
+    } finally {
+      // the tree is built; let the next sentence have the chart
+      pq.release();
     }
     return tree;
   }
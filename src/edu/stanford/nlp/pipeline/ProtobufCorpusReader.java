@@ -0,0 +1,453 @@
+package edu.stanford.nlp.pipeline;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import edu.stanford.nlp.io.RuntimeIOException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a corpus written by {@link ProtobufCorpusWriter}, or any file of
+ * length-delimited {@link CoreNLPProtos.Document} records.
+ * <br>
+ * Documents can be read in order with {@link #iterator()}, or by number
+ * with {@link #get(int)}, using the sidecar {@code .idx} index; if there
+ * is no index, or it does not match the corpus, the reader builds one by
+ * scanning the record headers.  {@link #iterator(int, int, int)} decodes
+ * on several threads and still returns the documents in order.
+ * <br>
+ * Often only some annotations are needed: to count entity types, there
+ * is no point in rebuilding parse trees and dependency graphs.
+ * {@link #setLayers(Set)} selects the optional {@link Layer}s to
+ * decode.  The others are skipped over in the serialized bytes, so they
+ * are never parsed, let alone turned into {@link Annotation} objects.
+ * Tokens, sentences and the document text are always read.
+ * <br>
+ * A reader may be used from several threads at once.
+ */
+public class ProtobufCorpusReader implements Iterable<Annotation>, Closeable {
+
+  /** Optional annotations which need not be decoded. */
+  public enum Layer {
+    /** Constituency parse trees */
+    PARSE(7),
+    /** Sentiment trees and sentence sentiment */
+    SENTIMENT(31, 32, 33),
+    /** Basic, collapsed and CC-processed dependency graphs */
+    DEPENDENCIES(8, 9, 10),
+    /** Machine reading entities and relations */
+    RELATIONS(51, 52, 53),
+    /** Entity mentions */
+    MENTIONS(55),
+    /**
+     * Numerized tokens.  These are not stored but recomputed from the
+     * tokens on reading, which is relatively expensive.
+     */
+    NUMBERS(),
+    /** Coreference chains */
+    COREF();
+
+    /** Fields of {@link CoreNLPProtos.Sentence} which hold this layer */
+    private final int[] sentenceFields;
+
+    Layer(int... sentenceFields) {
+      this.sentenceFields = sentenceFields;
+    }
+  }
+
+  private static final int DOCUMENT_SENTENCE_FIELD = 2;
+  private static final int DOCUMENT_COREF_FIELD = 3;
+  private static final int SENTENCE_NUMERIZED_FIELD = 54;
+
+  /** The name of the threads of {@link #iterator(int, int, int)} */
+  static final String THREAD_NAME = "ProtobufCorpusReader";
+  private static final long IDLE_THREAD_SECONDS = 1;
+
+  private final FileChannel channel;
+  private final long[] offsets;
+  private final ProtobufAnnotationSerializer serializer;
+
+  private volatile Set<Layer> layers = Collections.unmodifiableSet(EnumSet.allOf(Layer.class));
+  /** Indexed by Sentence field number: skip this field */
+  private volatile boolean[] skippedSentenceFields = new boolean[0];
+
+  public ProtobufCorpusReader(String path) throws IOException {
+    this(path, new ProtobufAnnotationSerializer(false));
+  }
+
+  public ProtobufCorpusReader(String path, ProtobufAnnotationSerializer serializer) throws IOException {
+    this.channel = new RandomAccessFile(path, "r").getChannel();
+    this.serializer = serializer;
+    long[] index = readIndex(path + ProtobufCorpusWriter.INDEX_SUFFIX, channel.size());
+    this.offsets = index != null ? index : scanOffsets(channel);
+  }
+
+  /**
+   * Returns the record offsets from the index file, followed by the
+   * length of the corpus, or null if the index is missing or stale.
+   */
+  private static long[] readIndex(String indexPath, long corpusLength) throws IOException {
+    File file = new File(indexPath);
+    if ( ! file.isFile() || file.length() < ProtobufCorpusWriter.INDEX_MAGIC.length + 16) {
+      return null;
+    }
+    ByteBuffer buffer;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      buffer = ByteBuffer.allocate((int) raf.length()).order(ByteOrder.LITTLE_ENDIAN);
+      raf.getChannel().read(buffer, 0);
+      buffer.flip();
+    }
+    byte[] magic = new byte[ProtobufCorpusWriter.INDEX_MAGIC.length];
+    buffer.get(magic);
+    if ( ! Arrays.equals(magic, ProtobufCorpusWriter.INDEX_MAGIC)) {
+      return null;
+    }
+    long n = buffer.getLong();
+    if (n < 0 || buffer.remaining() != 8 * (n + 1)) {
+      return null;
+    }
+    long[] offsets = new long[(int) n + 1];
+    buffer.asLongBuffer().get(offsets);
+    if (offsets[(int) n] != corpusLength) {
+      return null;
+    }
+    return offsets;
+  }
+
+  /** Finds the record offsets by reading the length prefix of each record. */
+  private static long[] scanOffsets(FileChannel channel) throws IOException {
+    long length = channel.size();
+    long[] offsets = new long[1024];
+    int n = 0;
+    ByteBuffer header = ByteBuffer.allocate(5);
+    long position = 0;
+    while (position < length) {
+      if (n + 1 >= offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+      offsets[n++] = position;
+      header.clear();
+      channel.read(header, position);
+      header.flip();
+      int size = 0;
+      int shift = 0;
+      int headerLength = 0;
+      while (true) {
+        if ( ! header.hasRemaining()) {
+          throw new IOException("Corrupt corpus: bad record length at offset " + position);
+        }
+        byte b = header.get();
+        ++headerLength;
+        size |= (b & 0x7f) << shift;
+        if (b >= 0) {
+          break;
+        }
+        shift += 7;
+      }
+      position += headerLength + size;
+    }
+    if (position != length) {
+      throw new IOException("Corrupt corpus: last record is truncated");
+    }
+    offsets[n] = length;
+    return Arrays.copyOf(offsets, n + 1);
+  }
+
+  /**
+   * Writes an index for a corpus of delimited documents which does not
+   * have one, e.g. one written by {@link ProtobufAnnotationSerializer}.
+   */
+  public static void writeIndex(String path) throws IOException {
+    try (FileChannel channel = new RandomAccessFile(path, "r").getChannel()) {
+      long[] offsets = scanOffsets(channel);
+      ProtobufCorpusWriter.writeIndex(path + ProtobufCorpusWriter.INDEX_SUFFIX,
+                                      Arrays.copyOf(offsets, offsets.length - 1), offsets[offsets.length - 1]);
+    }
+  }
+
+  /** The number of documents in the corpus. */
+  public int size() {
+    return offsets.length - 1;
+  }
+
+  /**
+   * Chooses the optional layers to decode; the default is all of them.
+   *
+   * @return This reader
+   */
+  public ProtobufCorpusReader setLayers(Set<Layer> layers) {
+    EnumSet<Layer> wanted = layers.isEmpty() ? EnumSet.noneOf(Layer.class) : EnumSet.copyOf(layers);
+    int maxField = 0;
+    for (Layer layer : Layer.values()) {
+      for (int field : layer.sentenceFields) {
+        maxField = Math.max(maxField, field);
+      }
+    }
+    boolean[] skipped = new boolean[maxField + 1];
+    for (Layer layer : EnumSet.complementOf(wanted)) {
+      for (int field : layer.sentenceFields) {
+        skipped[field] = true;
+      }
+    }
+    this.skippedSentenceFields = skipped;
+    this.layers = Collections.unmodifiableSet(wanted);
+    return this;
+  }
+
+  public Set<Layer> getLayers() {
+    return layers;
+  }
+
+  /** Reads the serialized bytes of document {@code n}, without its length prefix. */
+  byte[] readRecord(int n) throws IOException {
+    if (n < 0 || n >= size()) {
+      throw new IndexOutOfBoundsException("Document " + n + " of " + size());
+    }
+    long start = offsets[n];
+    long length = offsets[n + 1] - start;
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Document " + n + " is too large: " + length + " bytes");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, start + buffer.position()) < 0) {
+        throw new IOException("Corrupt corpus: document " + n + " is truncated");
+      }
+    }
+    byte[] record = buffer.array();
+    CodedInputStream input = CodedInputStream.newInstance(record);
+    int size = input.readRawVarint32();
+    int headerLength = input.getTotalBytesRead();
+    if (headerLength + size != record.length) {
+      throw new IOException("Corrupt corpus: document " + n + " does not match the index");
+    }
+    return Arrays.copyOfRange(record, headerLength, record.length);
+  }
+
+  /** Returns document {@code n} as a protocol buffer, without the layers which are not wanted. */
+  public CoreNLPProtos.Document getProto(int n) throws IOException {
+    return decode(readRecord(n), layers, skippedSentenceFields);
+  }
+
+  /** Returns document {@code n}, without the layers which are not wanted. */
+  public Annotation get(int n) throws IOException {
+    return serializer.fromProto(getProto(n));
+  }
+
+  private static CoreNLPProtos.Document decode(byte[] record, Set<Layer> layers, boolean[] skippedSentenceFields)
+      throws IOException {
+    if (layers.size() == Layer.values().length) {
+      return CoreNLPProtos.Document.parseFrom(record);
+    }
+    ByteArrayOutputStream filtered = new ByteArrayOutputStream(record.length);
+    CodedOutputStream output = CodedOutputStream.newInstance(filtered);
+    CodedInputStream input = CodedInputStream.newInstance(record);
+    input.setSizeLimit(Integer.MAX_VALUE);
+    boolean coref = layers.contains(Layer.COREF);
+    boolean numbers = layers.contains(Layer.NUMBERS);
+    int start = 0;
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      int field = WireFormat.getTagFieldNumber(tag);
+      if (field == DOCUMENT_SENTENCE_FIELD) {
+        ByteString sentence = filterSentence(input.readBytes(), skippedSentenceFields, numbers);
+        output.writeBytes(DOCUMENT_SENTENCE_FIELD, sentence);
+      } else if (field == DOCUMENT_COREF_FIELD && ! coref) {
+        input.skipField(tag);
+      } else {
+        input.skipField(tag);
+        output.writeRawBytes(record, start, input.getTotalBytesRead() - start);
+      }
+      start = input.getTotalBytesRead();
+    }
+    output.flush();
+    return CoreNLPProtos.Document.parseFrom(filtered.toByteArray());
+  }
+
+  /** Copies a serialized Sentence, leaving out the skipped fields. */
+  private static ByteString filterSentence(ByteString sentence, boolean[] skipped, boolean numbers) throws IOException {
+    byte[] bytes = sentence.toByteArray();
+    ByteArrayOutputStream filtered = new ByteArrayOutputStream(bytes.length);
+    CodedOutputStream output = CodedOutputStream.newInstance(filtered);
+    CodedInputStream input = CodedInputStream.newInstance(bytes);
+    input.setSizeLimit(Integer.MAX_VALUE);
+    int start = 0;
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      int field = WireFormat.getTagFieldNumber(tag);
+      input.skipField(tag);
+      if (field >= skipped.length || ! skipped[field]) {
+        output.writeRawBytes(bytes, start, input.getTotalBytesRead() - start);
+      }
+      start = input.getTotalBytesRead();
+    }
+    if ( ! numbers) {
+      // the last value of a field wins, so this overrides a stored true
+      // and keeps the reader from recomputing the numerized tokens
+      output.writeBool(SENTENCE_NUMERIZED_FIELD, false);
+    }
+    output.flush();
+    return ByteString.copyFrom(filtered.toByteArray());
+  }
+
+  /** Iterates over all the documents in order, on the calling thread. */
+  @Override
+  public Iterator<Annotation> iterator() {
+    return new Iterator<Annotation>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < size();
+      }
+
+      @Override
+      public Annotation next() {
+        if ( ! hasNext()) {
+          throw new NoSuchElementException();
+        }
+        try {
+          return get(next++);
+        } catch (IOException e) {
+          throw new RuntimeIOException(e);
+        }
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Iterates over documents {@code from} (inclusive) to {@code to}
+   * (exclusive) in order, decoding them on {@code nThreads} threads.
+   * Only a few documents per thread are decoded ahead of the caller.
+   * The threads exit once they have been idle for a second, so an
+   * iterator which is dropped before the end does not keep them alive.
+   */
+  public Iterator<Annotation> iterator(int from, int to, int nThreads) {
+    if (from < 0 || to > size() || from > to) {
+      throw new IndexOutOfBoundsException("Documents " + from + " to " + to + " of " + size());
+    }
+    if (nThreads == 1) {
+      return new Iterator<Annotation>() {
+        private int next = from;
+
+        @Override
+        public boolean hasNext() {
+          return next < to;
+        }
+
+        @Override
+        public Annotation next() {
+          if ( ! hasNext()) {
+            throw new NoSuchElementException();
+          }
+          try {
+            return get(next++);
+          } catch (IOException e) {
+            throw new RuntimeIOException(e);
+          }
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    Set<Layer> layers = this.layers;
+    boolean[] skippedSentenceFields = this.skippedSentenceFields;
+    int maxAhead = 4 * nThreads;
+    ThreadPoolExecutor threads = new ThreadPoolExecutor(nThreads, nThreads, IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, THREAD_NAME);
+          thread.setDaemon(true);
+          return thread;
+        });
+    // shutdown() is only reached if the caller reads to the end
+    threads.allowCoreThreadTimeOut(true);
+    return new Iterator<Annotation>() {
+      private int next = from;
+      private final Queue<Future<Annotation>> pending = new ArrayDeque<>();
+
+      {
+        fill();
+      }
+
+      /** Keeps up to maxAhead documents being decoded. */
+      private void fill() {
+        while (next < to && pending.size() < maxAhead) {
+          final int n = next++;
+          pending.add(threads.submit(() -> serializer.fromProto(decode(readRecord(n), layers, skippedSentenceFields))));
+        }
+        if (next == to) {
+          threads.shutdown();
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        return ! pending.isEmpty();
+      }
+
+      @Override
+      public Annotation next() {
+        if ( ! hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Future<Annotation> result = pending.poll();
+        fill();
+        try {
+          return result.get();
+        } catch (InterruptedException e) {
+          threads.shutdownNow();
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+          threads.shutdownNow();
+          if (e.getCause() instanceof IOException) {
+            throw new RuntimeIOException((IOException) e.getCause());
+          } else if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+          }
+          throw new RuntimeException(e.getCause());
+        }
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+}
@@ -0,0 +1,89 @@
+package edu.stanford.nlp.pipeline;
+
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Writes a corpus of annotated documents for {@link ProtobufCorpusReader}.
+ * The corpus file is a sequence of length-delimited
+ * {@link CoreNLPProtos.Document} records, exactly as written by
+ * {@link ProtobufAnnotationSerializer#write(Annotation, OutputStream)}, so
+ * existing readers can still stream it.  On {@link #close()} a sidecar
+ * index, {@code <corpus>.idx}, is written with the offset of each record,
+ * which lets the reader jump straight to any document.
+ * <br>
+ * The index holds the magic string {@code CNLPIDX1}, the number of
+ * documents {@code n}, and {@code n + 1} offsets, the last being the
+ * length of the corpus file; all numbers are little-endian longs.
+ */
+public class ProtobufCorpusWriter implements Closeable {
+
+  static final byte[] INDEX_MAGIC = { 'C', 'N', 'L', 'P', 'I', 'D', 'X', '1' };
+  static final String INDEX_SUFFIX = ".idx";
+
+  private final String path;
+  private final OutputStream out;
+  private final ProtobufAnnotationSerializer serializer;
+
+  private long[] offsets = new long[1024];
+  private int size = 0;
+  private long position = 0;
+
+  public ProtobufCorpusWriter(String path) throws IOException {
+    this(path, new ProtobufAnnotationSerializer(false));
+  }
+
+  public ProtobufCorpusWriter(String path, ProtobufAnnotationSerializer serializer) throws IOException {
+    this.path = path;
+    this.out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16);
+    this.serializer = serializer;
+  }
+
+  public void write(Annotation annotation) throws IOException {
+    write(serializer.toProto(annotation));
+  }
+
+  public void write(CoreNLPProtos.Document document) throws IOException {
+    if (size == offsets.length) {
+      offsets = Arrays.copyOf(offsets, size * 2);
+    }
+    offsets[size++] = position;
+    int length = document.getSerializedSize();
+    document.writeDelimitedTo(out);
+    position += CodedOutputStream.computeRawVarint32Size(length) + length;
+  }
+
+  /** The number of documents written so far. */
+  public int size() {
+    return size;
+  }
+
+  /** Finishes the corpus file and writes its index. */
+  @Override
+  public void close() throws IOException {
+    out.close();
+    writeIndex(path + INDEX_SUFFIX, Arrays.copyOf(offsets, size), position);
+  }
+
+  static void writeIndex(String indexPath, long[] offsets, long end) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(INDEX_MAGIC.length + 8 * (offsets.length + 2)).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put(INDEX_MAGIC);
+    buffer.putLong(offsets.length);
+    for (long offset : offsets) {
+      buffer.putLong(offset);
+    }
+    buffer.putLong(end);
+    try (OutputStream os = new FileOutputStream(indexPath)) {
+      os.write(buffer.array());
+    }
+  }
+
+}
@@ -15,18 +15,25 @@ import java.util.*;
  * entities (number, money, date, time) in the pipeline package world. It uses a
  * lot of code with {@link edu.stanford.nlp.ie.QuantifiableEntityNormalizer}.
  * New stuff should generally be added there so as to reduce code duplication.
+ * <br>
+ * Sentences can be normalized in parallel ({@code name.nthreads}), with
+ * an optional per-sentence time limit ({@code name.maxtime}).  The
+ * normalizer's static state is only its patterns and the background
+ * symbol, which is set once when the annotator is built.
  * 
  * @author Jenny Finkel
  * @author Christopher Manning (extended for RTE)
  * @author Chris Cox (original version)
  */
 
-public class QuantifiableEntityNormalizingAnnotator implements Annotator {
+public class QuantifiableEntityNormalizingAnnotator extends SentenceAnnotator {
 
   private Timing timer = new Timing();
   private final boolean VERBOSE;
   private static final String DEFAULT_BACKGROUND_SYMBOL = "O";
   private final boolean collapse;  // TODO: collpase = true won't work properly (see annotateTokens)
+  private final int nThreads;
+  private final long maxTime;
 
   public static final String BACKGROUND_SYMBOL_PROPERTY = "background";
   public static final String COLLAPSE_PROPERTY = "collapse";
@@ -50,6 +57,8 @@ public class QuantifiableEntityNormalizingAnnotator implements Annotator {
       System.err.println("WARNING: QuantifiableEntityNormalizingAnnotator does not work well with collapse=true");
     }
     VERBOSE = false;
+    nThreads = PropertiesUtils.getInt(props, name + ".nthreads", PropertiesUtils.getInt(props, "nthreads", 1));
+    maxTime = PropertiesUtils.getLong(props, name + ".maxtime", 0);
   }
 
   /**
@@ -83,11 +92,14 @@ public class QuantifiableEntityNormalizingAnnotator implements Annotator {
     QuantifiableEntityNormalizer.BACKGROUND_SYMBOL = backgroundSymbol;
     VERBOSE = verbose;
     this.collapse = collapse;
+    this.nThreads = 1;
+    this.maxTime = 0;
     if (this.collapse) {
       System.err.println("WARNING: QuantifiableEntityNormalizingAnnotator does not work well with collapse=true");
     }
   }
 
+  @Override
   public void annotate(Annotation annotation) {
     if (VERBOSE) {
       timer.start();
@@ -95,10 +107,7 @@ public class QuantifiableEntityNormalizingAnnotator implements Annotator {
     }
     if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
       List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
-      for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-        List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
-        annotateTokens(tokens);
-      }
+      super.annotate(annotation);
       if (VERBOSE) {
         timer.stop("done.");
         System.err.println("output: " + sentences + '\n');
@@ -111,6 +120,27 @@ public class QuantifiableEntityNormalizingAnnotator implements Annotator {
     }
   }
 
+  @Override
+  protected int nThreads() {
+    return nThreads;
+  }
+
+  @Override
+  protected long maxTime() {
+    return maxTime;
+  }
+
+  @Override
+  protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+    List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+    annotateTokens(tokens);
+  }
+
+  /** Leaves the sentence's entities unnormalized. */
+  @Override
+  protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+  }
+
   private <TOKEN extends CoreLabel> void annotateTokens(List<TOKEN> tokens) {
     // Make a copy of the tokens before annotating because QuantifiableEntityNormalizer may change the POS too
     List<CoreLabel> words = new ArrayList<CoreLabel>();
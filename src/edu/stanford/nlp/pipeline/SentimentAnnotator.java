@@ -1,5 +1,6 @@
 package edu.stanford.nlp.pipeline;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
@@ -9,12 +10,13 @@ import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
 import edu.stanford.nlp.sentiment.CollapseUnaryTransformer;
 import edu.stanford.nlp.sentiment.SentimentCoreAnnotations;
-import edu.stanford.nlp.sentiment.SentimentCostAndGradient;
+import edu.stanford.nlp.sentiment.SentimentInference;
 import edu.stanford.nlp.sentiment.SentimentModel;
 import edu.stanford.nlp.sentiment.SentimentUtils;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.TreeCoreAnnotations;
 import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.PropertiesUtils;
 
 /**
  * This annotator attaches a binarized tree with sentiment annotations
@@ -31,14 +33,23 @@ import edu.stanford.nlp.util.CoreMap;
  * ParserAnnotator is because it may require specific options set in
  * the parser.  An alternative would be to do the binarization here,
  * which would require at a minimum the HeadFinder used in the parser.
+ * <br>
+ * With one thread, the trees of all the sentences in a document are
+ * evaluated together by a {@link SentimentInference}.  With more
+ * threads ({@code sentiment.nthreads} or {@code nthreads}), or with a
+ * time limit per sentence ({@code sentiment.maxtime}), sentences are
+ * evaluated in parallel, one at a time per thread.
  *
  * @author John Bauer 
  */
-public class SentimentAnnotator implements Annotator {
+public class SentimentAnnotator extends SentenceAnnotator {
   static final String DEFAULT_MODEL = "edu/stanford/nlp/models/sentiment/sentiment.ser.gz";
   String modelPath;
   SentimentModel model;
+  SentimentInference inference;
   CollapseUnaryTransformer transformer = new CollapseUnaryTransformer();
+  private final int nThreads;
+  private final long maxTime;
 
   public SentimentAnnotator(String name, Properties props) {
     this.modelPath = props.getProperty(name + ".model", DEFAULT_MODEL);
@@ -46,6 +57,9 @@ public class SentimentAnnotator implements Annotator {
       throw new IllegalArgumentException("No model specified for Sentiment annotator");
     }
     this.model = SentimentModel.loadSerialized(modelPath);
+    this.inference = new SentimentInference(model);
+    this.nThreads = PropertiesUtils.getInt(props, name + ".nthreads", PropertiesUtils.getInt(props, "nthreads", 1));
+    this.maxTime = PropertiesUtils.getLong(props, name + ".maxtime", 0);
   }
 
   public Set<Requirement> requirementsSatisfied() {
@@ -56,25 +70,58 @@ public class SentimentAnnotator implements Annotator {
     return PARSE_TAG_BINARIZED_TREES;
   }
 
+  @Override
+  protected int nThreads() {
+    return nThreads;
+  }
+
+  @Override
+  protected long maxTime() {
+    return maxTime;
+  }
+
+  @Override
   public void annotate(Annotation annotation) {
-    if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
-      // TODO: parallelize
-      List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
-      for (CoreMap sentence : sentences) {
-        Tree binarized = sentence.get(TreeCoreAnnotations.BinarizedTreeAnnotation.class);
-        if (binarized == null) {
-          throw new AssertionError("Binarized sentences not built by parser");
-        }
-        Tree collapsedUnary = transformer.transformTree(binarized);
-        SentimentCostAndGradient scorer = new SentimentCostAndGradient(model, null);
-        scorer.forwardPropagateTree(collapsedUnary);
-        sentence.set(SentimentCoreAnnotations.AnnotatedTree.class, collapsedUnary);
-        int sentiment = RNNCoreAnnotations.getPredictedClass(collapsedUnary);
-        sentence.set(SentimentCoreAnnotations.ClassName.class, SentimentUtils.sentimentString(model, sentiment));
-      }
-    } else {
-      throw new RuntimeException("unable to find sentences in: " + annotation);
+    if (nThreads() != 1 || maxTime() > 0 || !annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
+      super.annotate(annotation);
+      return;
+    }
+    // Single threaded: evaluate the whole document as one batch
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    List<Tree> trees = new ArrayList<Tree>(sentences.size());
+    for (CoreMap sentence : sentences) {
+      trees.add(collapsedTree(sentence));
+    }
+    inference.forwardPropagateTrees(trees);
+    for (int i = 0; i < sentences.size(); ++i) {
+      setSentiment(sentences.get(i), trees.get(i));
+    }
+  }
+
+  @Override
+  protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+    Tree collapsedUnary = collapsedTree(sentence);
+    inference.forwardPropagateTree(collapsedUnary);
+    setSentiment(sentence, collapsedUnary);
+  }
+
+  @Override
+  protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+    // leave the sentence without sentiment annotations
+  }
+
+  private Tree collapsedTree(CoreMap sentence) {
+    Tree binarized = sentence.get(TreeCoreAnnotations.BinarizedTreeAnnotation.class);
+    if (binarized == null) {
+      throw new AssertionError("Binarized sentences not built by parser");
     }
+    return transformer.transformTree(binarized);
+  }
+
+  private void setSentiment(CoreMap sentence, Tree collapsedUnary) {
+    sentence.set(SentimentCoreAnnotations.AnnotatedTree.class, collapsedUnary);
+    int sentiment = RNNCoreAnnotations.getPredictedClass(collapsedUnary);
+    sentence.set(SentimentCoreAnnotations.ClassName.class, SentimentUtils.sentimentString(model, sentiment));
   }
 
 }
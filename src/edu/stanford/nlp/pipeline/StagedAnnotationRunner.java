@@ -0,0 +1,207 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Runs a list of annotators over a stream of documents as a pipeline of
+ * stages: each annotator gets its own threads, and documents move from
+ * one stage to the next through bounded queues.  While the parser works
+ * on one document, the tokenizer and tagger can already be working on
+ * the next ones.
+ * <br>
+ * At most {@code maxInFlight} documents are between the input iterator
+ * and the callback at any time, so memory use does not grow with the
+ * size of the corpus; when a slow stage falls behind, the earlier
+ * stages block.  The callback is called from the thread which called
+ * {@link #run}, once per document, in input order.
+ * <br>
+ * A stage with more than one thread calls its annotator concurrently
+ * on different documents, so the annotator must be threadsafe, just as
+ * for {@link AnnotationPipeline#annotate(Iterable, int, Function)}.
+ * If an annotator throws, no further documents are passed to the
+ * callback and {@link #run} rethrows the first exception once the
+ * stages have stopped.
+ */
+class StagedAnnotationRunner {
+
+  /** A document on its way through the stages; {@code seq} is its position in the input */
+  private static class Item {
+    final int seq;
+    final Annotation annotation;
+
+    Item(int seq, Annotation annotation) {
+      this.seq = seq;
+      this.annotation = annotation;
+    }
+  }
+
+  /** Marks the end of the input on every queue */
+  private static final Item END = new Item(-1, null);
+
+  private final AnnotationPipeline pipeline;
+  private final List<Annotator> annotators;
+  private final int[] stageThreads;
+  private final int maxInFlight;
+
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  /**
+   * @param pipeline The pipeline whose annotators to run, one stage each
+   * @param stageThreads The number of threads for each stage
+   * @param maxInFlight The maximum number of documents being processed at once
+   */
+  StagedAnnotationRunner(AnnotationPipeline pipeline, int[] stageThreads, int maxInFlight) {
+    List<Annotator> annotators = pipeline.annotators();
+    if (stageThreads.length != annotators.size()) {
+      throw new IllegalArgumentException("Expected thread counts for " + annotators.size() +
+                                         " stages, got " + stageThreads.length);
+    }
+    for (int threads : stageThreads) {
+      if (threads < 1) {
+        throw new IllegalArgumentException("Each stage needs at least one thread");
+      }
+    }
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+    }
+    this.pipeline = pipeline;
+    this.annotators = annotators;
+    this.stageThreads = stageThreads.clone();
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Annotates all the documents, calling {@code callback} on each one in
+   * input order once every stage has processed it.  Returns when all
+   * documents are done.
+   */
+  void run(Iterable<Annotation> annotations, Function<Annotation, Object> callback) {
+    int numStages = annotators.size();
+    List<BlockingQueue<Item>> queues = new ArrayList<>(numStages + 1);
+    for (int i = 0; i <= numStages; ++i) {
+      queues.add(new ArrayBlockingQueue<>(maxInFlight + 1));
+    }
+    Semaphore inFlight = new Semaphore(maxInFlight);
+
+    List<Thread> threads = new ArrayList<>();
+    threads.add(new Thread(() -> feed(annotations.iterator(), queues.get(0), inFlight),
+                           "AnnotationPipeline-input"));
+    for (int stage = 0; stage < numStages; ++stage) {
+      String name = "AnnotationPipeline-" + stage + '-' + annotators.get(stage).getClass().getSimpleName();
+      AtomicInteger running = new AtomicInteger(stageThreads[stage]);
+      for (int t = 0; t < stageThreads[stage]; ++t) {
+        final int s = stage;
+        threads.add(new Thread(() -> work(s, queues.get(s), queues.get(s + 1), running), name + '-' + t));
+      }
+    }
+    for (Thread thread : threads) {
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    try {
+      collect(queues.get(numStages), inFlight, callback);
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    } catch (InterruptedException e) {
+      for (Thread thread : threads) {
+        thread.interrupt();
+      }
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (RuntimeException | Error e) {
+      // the callback failed; stop the stages rather than leave them blocked
+      for (Thread thread : threads) {
+        thread.interrupt();
+      }
+      throw e;
+    }
+
+    Throwable t = failure.get();
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    } else if (t != null) {
+      throw new RuntimeException(t);
+    }
+  }
+
+  private void feed(Iterator<Annotation> input, BlockingQueue<Item> out, Semaphore inFlight) {
+    try {
+      try {
+        for (int seq = 0; failure.get() == null && input.hasNext(); ++seq) {
+          Annotation annotation = input.next();
+          inFlight.acquire();
+          out.put(new Item(seq, annotation));
+        }
+      } catch (RuntimeException | Error e) {
+        failure.compareAndSet(null, e);
+      }
+      out.put(END);
+    } catch (InterruptedException e) {
+      // shutting down
+    }
+  }
+
+  private void work(int stage, BlockingQueue<Item> in, BlockingQueue<Item> out, AtomicInteger running) {
+    try {
+      while (true) {
+        Item item = in.take();
+        if (item == END) {
+          // let the other threads of this stage see the end too;
+          // the last one to stop passes it on
+          in.put(END);
+          if (running.decrementAndGet() == 0) {
+            out.put(END);
+          }
+          return;
+        }
+        pipeline.recordQueueDepth(stage, in.size());
+        if (failure.get() == null) {
+          try {
+            pipeline.runAnnotator(stage, item.annotation);
+          } catch (RuntimeException | Error e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+        out.put(item);
+      }
+    } catch (InterruptedException e) {
+      // shutting down
+    }
+  }
+
+  /** Takes finished documents off the last queue and hands them to the callback in input order. */
+  private void collect(BlockingQueue<Item> in, Semaphore inFlight, Function<Annotation, Object> callback)
+      throws InterruptedException {
+    PriorityQueue<Item> pending = new PriorityQueue<>(maxInFlight, (a, b) -> Integer.compare(a.seq, b.seq));
+    int next = 0;
+    while (true) {
+      Item item = in.take();
+      if (item == END) {
+        return;
+      }
+      pending.add(item);
+      while ( ! pending.isEmpty() && pending.peek().seq == next) {
+        Item done = pending.poll();
+        ++next;
+        if (failure.get() == null) {
+          callback.apply(done.annotation);
+        }
+        inFlight.release();
+      }
+    }
+  }
+
+}
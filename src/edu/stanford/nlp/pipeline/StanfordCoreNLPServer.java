@@ -0,0 +1,476 @@
+package edu.stanford.nlp.pipeline;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+import edu.stanford.nlp.util.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long-running HTTP server which annotates documents with a
+ * {@link StanfordCoreNLP} pipeline.  Annotators are loaded once, through
+ * the shared {@link AnnotatorPool}, and reused by all requests; clients
+ * may choose a different set of annotators per request, and pipelines
+ * for the same set share the already loaded annotators.  Only the
+ * {@code pipelines} most recently used pipelines are kept.
+ * <br>
+ * Documents are annotated by a fixed pool of {@code threads} workers.
+ * Up to {@code queue} further requests wait for a worker; beyond that
+ * the server answers 503 at once rather than building up a backlog.
+ * A request which does not finish within its timeout is answered with
+ * 504 and its worker interrupted.  Most annotators never look at the
+ * interrupt, though, so the request still counts against
+ * {@code threads} + {@code queue} until its worker is done with it.
+ * A document larger than {@code maxRequestBytes} (16 MB by default) is
+ * answered with 413 without being read further, which with the limit on
+ * requests in flight bounds the memory held by documents waiting for a
+ * worker.
+ * The annotators are shared between the workers, so they must be
+ * threadsafe, as for
+ * {@link AnnotationPipeline#annotate(Iterable, int)}.
+ * <br>
+ * Requests are {@code POST /?annotators=...&outputFormat=...} with the
+ * document in the body; any other path is answered with 404.  All query
+ * parameters are optional:
+ * <table>
+ * <tr><th>Parameter</th><th>Default</th><th>Meaning</th></tr>
+ * <tr><td>annotators</td><td>the server's {@code annotators} property</td><td>annotators to run</td></tr>
+ * <tr><td>inputFormat</td><td>text</td><td>{@code text} (UTF-8) or {@code serialized}, a delimited
+ *   protobuf document as written by {@link ProtobufAnnotationSerializer}</td></tr>
+ * <tr><td>outputFormat</td><td>json</td><td>{@code json}, {@code xml}, {@code text} or {@code serialized}</td></tr>
+ * <tr><td>timeout</td><td>the server's {@code timeout}</td><td>milliseconds before giving up on the request</td></tr>
+ * </table>
+ * {@code GET /ping} answers {@code pong}, and {@code GET /stats} the
+ * {@link AnnotationPipeline#statisticsInformation()} of each pipeline.
+ * <br>
+ * Usage: {@code java edu.stanford.nlp.pipeline.StanfordCoreNLPServer -port 9000 -threads 8
+ * -queue 64 -timeout 15000 -pipelines 4 -maxRequestBytes 16777216 -annotators tokenize,ssplit,pos ...}; any other
+ * properties are passed on to the pipelines.
+ */
+public class StanfordCoreNLPServer {
+
+  private final Properties defaultProps;
+  private final int timeout;
+  private final long maxRequestBytes;
+
+  private final HttpServer server;
+  private final ThreadPoolExecutor workers;
+  private final ExecutorService connections;
+  /** A permit for each request from being accepted until its worker is done with it */
+  private final Semaphore inFlight;
+
+  /**
+   * Pipelines by annotator list and whether the input is already
+   * annotated, least recently used first.  A pipeline is built outside
+   * the lock by the first request to ask for it, while other requests for
+   * it wait on its future.
+   */
+  private final LinkedHashMap<String, FutureTask<StanfordCoreNLP>> pipelines;
+
+  /**
+   * @param props Properties for the pipelines, plus the server's own
+   *              {@code port}, {@code threads}, {@code queue}, {@code timeout},
+   *              {@code pipelines} and {@code maxRequestBytes}
+   */
+  public StanfordCoreNLPServer(Properties props) throws IOException {
+    this.defaultProps = new Properties();
+    this.defaultProps.putAll(props);
+    int port = PropertiesUtils.getInt(props, "port", 9000);
+    int threads = PropertiesUtils.getInt(props, "threads", Runtime.getRuntime().availableProcessors());
+    int queue = PropertiesUtils.getInt(props, "queue", 4 * threads);
+    this.timeout = PropertiesUtils.getInt(props, "timeout", 15000);
+    int maxPipelines = Math.max(PropertiesUtils.getInt(props, "pipelines", 4), 1);
+    this.maxRequestBytes = PropertiesUtils.getLong(props, "maxRequestBytes", 16 << 20);
+    for (String key : new String[] { "port", "threads", "queue", "timeout", "pipelines", "maxRequestBytes" }) {
+      defaultProps.remove(key);
+    }
+    pipelines = new LinkedHashMap<String, FutureTask<StanfordCoreNLP>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, FutureTask<StanfordCoreNLP>> eldest) {
+        return size() > maxPipelines;
+      }
+    };
+
+    workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                     new ArrayBlockingQueue<>(Math.max(queue, 1)), daemonThreads("CoreNLP-worker"));
+    inFlight = new Semaphore(threads + Math.max(queue, 0));
+    // connection threads only read requests and wait for the workers
+    connections = Executors.newCachedThreadPool(daemonThreads("CoreNLP-connection"));
+
+    server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.createContext("/", new AnnotateHandler());
+    server.createContext("/ping", exchange -> respond(exchange, 200, "text/plain", "pong\n"));
+    server.createContext("/stats", new StatsHandler());
+    server.setExecutor(connections);
+
+    if (PropertiesUtils.getBool(props, "preload", true) && props.getProperty("annotators") != null) {
+      getPipeline(props.getProperty("annotators"), false);
+    }
+  }
+
+  private static ThreadFactory daemonThreads(String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  /** The port the server listens on, useful when it was started on port 0. */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Stops accepting requests, waits up to {@code delaySeconds} for the
+   * current ones, and stops the workers.
+   */
+  public void stop(int delaySeconds) {
+    server.stop(delaySeconds);
+    workers.shutdownNow();
+    connections.shutdownNow();
+  }
+
+  /**
+   * Returns a pipeline for the given annotators, building it if it is
+   * not one of the most recently used.
+   */
+  StanfordCoreNLP getPipeline(String annotators, boolean annotatedInput) {
+    String key = annotators + (annotatedInput ? "|annotated" : "");
+    FutureTask<StanfordCoreNLP> pipeline;
+    boolean build = false;
+    synchronized (pipelines) {
+      pipeline = pipelines.get(key);
+      if (pipeline == null) {
+        pipeline = new FutureTask<>(() -> {
+          Properties props = new Properties();
+          props.putAll(defaultProps);
+          props.setProperty("annotators", annotators);
+          // a serialized document may already carry the annotations
+          // which the requested annotators require
+          return new StanfordCoreNLP(props, ! annotatedInput &&
+                                     PropertiesUtils.getBool(props, "enforceRequirements", true));
+        });
+        pipelines.put(key, pipeline);
+        build = true;
+      }
+    }
+    if (build) {
+      pipeline.run();
+    }
+    try {
+      return pipeline.get();
+    } catch (ExecutionException e) {
+      // don't keep a pipeline which could not be built, such as for an unknown annotator
+      synchronized (pipelines) {
+        pipelines.remove(key, pipeline);
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeInterruptedException(e);
+    }
+  }
+
+  /** The number of pipelines kept. */
+  int numPipelines() {
+    synchronized (pipelines) {
+      return pipelines.size();
+    }
+  }
+
+
+  private static Map<String, String> queryParameters(HttpExchange exchange) throws UnsupportedEncodingException {
+    Map<String, String> params = Generics.newHashMap();
+    String query = exchange.getRequestURI().getRawQuery();
+    if (query == null) {
+      return params;
+    }
+    for (String param : query.split("&")) {
+      int eq = param.indexOf('=');
+      if (eq < 0) {
+        params.put(URLDecoder.decode(param, "UTF-8"), "");
+      } else {
+        params.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"),
+                   URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+      }
+    }
+    return params;
+  }
+
+  private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+    respond(exchange, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(body);
+    }
+  }
+
+
+  private class AnnotateHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        if ( ! "/".equals(exchange.getRequestURI().getPath())) {
+          // this context gets every path which no other context matches
+          respond(exchange, 404, "text/plain", "Not found\n");
+          return;
+        }
+        if ( ! "POST".equals(exchange.getRequestMethod())) {
+          respond(exchange, 405, "text/plain", "POST a document to annotate\n");
+          return;
+        }
+        Map<String, String> params = queryParameters(exchange);
+        String annotators = params.getOrDefault("annotators", defaultProps.getProperty("annotators"));
+        if (annotators == null || annotators.trim().isEmpty()) {
+          respond(exchange, 400, "text/plain", "No annotators given\n");
+          return;
+        }
+        String inputFormat = params.getOrDefault("inputFormat", "text");
+        String outputFormat = params.getOrDefault("outputFormat", "json");
+        if ( ! inputFormat.equals("text") && ! inputFormat.equals("serialized")) {
+          respond(exchange, 400, "text/plain", "Unknown inputFormat " + inputFormat + '\n');
+          return;
+        }
+        if ( ! contentType(outputFormat).isPresent()) {
+          respond(exchange, 400, "text/plain", "Unknown outputFormat " + outputFormat + '\n');
+          return;
+        }
+        int requestTimeout;
+        try {
+          requestTimeout = Integer.parseInt(params.getOrDefault("timeout", Integer.toString(timeout)));
+        } catch (NumberFormatException e) {
+          respond(exchange, 400, "text/plain", "Bad timeout " + params.get("timeout") + '\n');
+          return;
+        }
+
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null && tooLarge(contentLength)) {
+          respond(exchange, 413, "text/plain", "Document larger than " + maxRequestBytes + " bytes\n");
+          return;
+        }
+
+        if ( ! inFlight.tryAcquire()) {
+          respond(exchange, 503, "text/plain", "Server busy, try again later\n");
+          return;
+        }
+        // the worker releases the permit when done, unless the request
+        // is abandoned before a worker starts on it
+        AtomicInteger state = new AtomicInteger(QUEUED);
+        Future<byte[]> result;
+        try {
+          byte[] body;
+          try (InputStream is = exchange.getRequestBody()) {
+            body = readBody(is);
+          }
+          if (body == null) {
+            // sent without a length, or with a wrong one
+            state.set(ABANDONED);
+            inFlight.release();
+            respond(exchange, 413, "text/plain", "Document larger than " + maxRequestBytes + " bytes\n");
+            return;
+          }
+          result = workers.submit(() -> {
+            if ( ! state.compareAndSet(QUEUED, RUNNING)) {
+              return null;
+            }
+            try {
+              return annotate(annotators, inputFormat, outputFormat, body);
+            } finally {
+              inFlight.release();
+            }
+          });
+        } catch (IOException | RuntimeException e) {
+          if (state.compareAndSet(QUEUED, ABANDONED)) {
+            inFlight.release();
+          }
+          if (e instanceof RejectedExecutionException) {
+            respond(exchange, 503, "text/plain", "Server busy, try again later\n");
+            return;
+          }
+          throw e;
+        }
+        try {
+          byte[] output = requestTimeout > 0 ? result.get(requestTimeout, TimeUnit.MILLISECONDS) : result.get();
+          respond(exchange, 200, contentType(outputFormat).get(), output);
+        } catch (TimeoutException e) {
+          abandon(result, state);
+          respond(exchange, 504, "text/plain", "Annotation timed out after " + requestTimeout + " ms\n");
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          int status = cause instanceof IllegalArgumentException ? 400 : 500;
+          respond(exchange, status, "text/plain", cause.getClass().getSimpleName() + ": " + cause.getMessage() + '\n');
+        } catch (InterruptedException e) {
+          abandon(result, state);
+          Thread.currentThread().interrupt();
+          respond(exchange, 503, "text/plain", "Server shutting down\n");
+        }
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+
+  private boolean tooLarge(String contentLength) {
+    try {
+      return Long.parseLong(contentLength.trim()) > maxRequestBytes;
+    } catch (NumberFormatException e) {
+      return false; // the body is still checked as it is read
+    }
+  }
+
+  /** Reads the whole request body, or returns null as soon as it is over {@code maxRequestBytes}. */
+  private byte[] readBody(InputStream is) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    for (int n; (n = is.read(buffer)) >= 0; ) {
+      if (body.size() + (long) n > maxRequestBytes) {
+        return null;
+      }
+      body.write(buffer, 0, n);
+    }
+    return body.toByteArray();
+  }
+
+  // the states of a request's task
+  private static final int QUEUED = 0;
+  private static final int RUNNING = 1;
+  private static final int ABANDONED = 2;
+
+  /**
+   * Gives up on a request.  If no worker has started on it, its permit is
+   * released now; otherwise its worker is interrupted, but keeps the
+   * permit until it is done, as most annotators ignore interrupts.
+   */
+  private void abandon(Future<byte[]> result, AtomicInteger state) {
+    if (state.compareAndSet(QUEUED, ABANDONED)) {
+      inFlight.release();
+    }
+    result.cancel(true);
+  }
+
+  private static Optional<String> contentType(String outputFormat) {
+    switch (outputFormat) {
+      case "json": return Optional.of("application/json; charset=utf-8");
+      case "xml": return Optional.of("application/xml; charset=utf-8");
+      case "text": return Optional.of("text/plain; charset=utf-8");
+      case "serialized": return Optional.of("application/x-protobuf");
+      default: return Optional.empty();
+    }
+  }
+
+  /** Runs on a worker thread: reads the document, annotates it and writes the output. */
+  private byte[] annotate(String annotators, String inputFormat, String outputFormat, byte[] input)
+      throws IOException, ClassNotFoundException {
+    boolean serializedInput = inputFormat.equals("serialized");
+    StanfordCoreNLP pipeline = getPipeline(annotators, serializedInput);
+    Annotation annotation;
+    if (serializedInput) {
+      annotation = new ProtobufAnnotationSerializer(false).read(new ByteArrayInputStream(input)).first;
+    } else {
+      annotation = new Annotation(new String(input, StandardCharsets.UTF_8));
+    }
+    pipeline.annotate(annotation);
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    switch (outputFormat) {
+      case "json":
+        JSONOutputter.jsonPrint(annotation, output, pipeline);
+        break;
+      case "xml":
+        XMLOutputter.xmlPrint(annotation, output, pipeline);
+        break;
+      case "text":
+        TextOutputter.prettyPrint(annotation, output, pipeline);
+        break;
+      case "serialized":
+        new ProtobufAnnotationSerializer(false).write(annotation, output).flush();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown outputFormat " + outputFormat);
+    }
+    return output.toByteArray();
+  }
+
+
+  private class StatsHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      StringBuilder sb = new StringBuilder();
+      sb.append("workers: ").append(workers.getActiveCount()).append(" busy, ")
+          .append(workers.getQueue().size()).append(" queued, ")
+          .append(workers.getCompletedTaskCount()).append(" completed\n");
+      List<Map.Entry<String, FutureTask<StanfordCoreNLP>>> entries;
+      synchronized (pipelines) {
+        entries = new ArrayList<>(pipelines.entrySet());
+      }
+      for (Map.Entry<String, FutureTask<StanfordCoreNLP>> entry : entries) {
+        StanfordCoreNLP pipeline;
+        try {
+          if ( ! entry.getValue().isDone()) {
+            continue; // still being built
+          }
+          pipeline = entry.getValue().get();
+        } catch (InterruptedException | ExecutionException e) {
+          continue;
+        }
+        sb.append('\n').append(entry.getKey()).append('\n')
+            .append(pipeline.statisticsInformation()).append('\n');
+      }
+      respond(exchange, 200, "text/plain; charset=utf-8", sb.toString());
+    }
+  }
+
+
+  public static void main(String[] args) throws IOException {
+    Properties props = StringUtils.argsToProperties(args);
+    StanfordCoreNLPServer server = new StanfordCoreNLPServer(props);
+    server.start();
+    System.err.println("StanfordCoreNLPServer listening on port " + server.getPort());
+  }
+
+}
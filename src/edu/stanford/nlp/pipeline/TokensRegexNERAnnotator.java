@@ -5,7 +5,9 @@ import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.tokensregex.*;
+import edu.stanford.nlp.ling.tokensregex.matcher.Match;
 import edu.stanford.nlp.ling.tokensregex.matcher.TrieMap;
+import edu.stanford.nlp.ling.tokensregex.matcher.TrieMapMatcher;
 import edu.stanford.nlp.sequences.SeqClassifierFlags;
 import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.util.logging.Redwood;
@@ -28,7 +30,8 @@ import java.util.regex.Pattern;
  * </pre>
  * where each argument is tab-separated, and the last two arguments are optional. Several regexes can be
  * associated with a single type. In the case where multiple regexes match a phrase, the priority ranking
- * is used to choose between the possible types. When the priority is the same, then longer matches are favored.
+ * is used to choose between the possible types. When the priority is the same, then longer matches are favored,
+ * then matches that start earlier, then the entry that was read first.
  * This classifier is designed to be used as part of a full
  * NER system to label entities that don't fall into the usual NER categories. It only records the label
  * if the token has not already been NER-annotated, or it has been annotated but the NER-type has been
@@ -57,6 +60,13 @@ import java.util.regex.Pattern;
  * </p>
  *
  * <p>
+ * Entries of the second format whose tokens contain no regex metacharacters are plain phrases.  These are
+ * not compiled into TokensRegex patterns but are all looked up together in a {@link TrieMap} of their tokens,
+ * which keeps large mapping files of names quick to load and match.  The number of entries matched each
+ * way is logged when the mappings are read.
+ * </p>
+ *
+ * <p>
  * This annotator is similar to {@link RegexNERAnnotator} but uses TokensRegex as the underlying library for matching
  * regular expressions.  This allows for more flexibility in the types of expressions matched as well as utilizing
  * any optimization that is included in the TokensRegex library.
@@ -106,22 +116,33 @@ import java.util.regex.Pattern;
  *      <td><code>false</code></td></tr>
  *   <tr><td><code>verbose</code></td><td>If true, turns on extra debugging messages.</td>
  *      <td><code>false</code></td></tr>
+ *   <tr><td><code>nthreads</code></td><td>Number of sentences to annotate in parallel.
+ *      The patterns are compiled once and matched with a new matcher per sentence, so they are shared freely.</td>
+ *      <td>the global <code>nthreads</code>, or <code>1</code></td></tr>
+ *   <tr><td><code>maxtime</code></td><td>If positive, sentences not annotated within this many milliseconds
+ *      are left unchanged.</td>
+ *      <td><code>0</code></td></tr>
  * </table>
  * </p>
  *
  * @author Angel Chang
  */
-public class TokensRegexNERAnnotator implements Annotator {
+public class TokensRegexNERAnnotator extends SentenceAnnotator {
   protected static final Redwood.RedwoodChannels logger = Redwood.channels("TokenRegexNER");
 
   private final boolean ignoreCase;
   private final List<Entry> entries;
   private final Map<SequencePattern<CoreMap>,Entry> patternToEntry;
   private final MultiPatternMatcher<CoreMap>  multiPatternMatcher;
+  // entries that are plain phrases, keyed by the keys of their tokens
+  private final TrieMap<String,List<Entry>> phraseEntries;
+  private final TrieMapMatcher<String,List<Entry>> phraseMatcher;
 
   private final Set<String> myLabels;  // set of labels to always overwrite
   private final Pattern validPosPattern;
   private final boolean verbose;
+  private final int nThreads;
+  private final long maxTime;
 
   // Labels for which we don't use the default overwrite types (mylabels)
   private final Set<String> noDefaultOverwriteLabels;
@@ -147,6 +168,8 @@ public class TokensRegexNERAnnotator implements Annotator {
                   " specified overwriteableType for the regex will the NER type be overwritten."),
           new PropertiesUtils.Property("backgroundSymbol", DEFAULT_BACKGROUND_SYMBOL, "Comma separated list of NER labels to always replace."),
           new PropertiesUtils.Property("verbose", "false", ""),
+          new PropertiesUtils.Property("nthreads", "", "Number of sentences to annotate in parallel (defaults to the global nthreads)."),
+          new PropertiesUtils.Property("maxtime", "0", "If positive, time limit per sentence in milliseconds."),
   };
 
   /** Construct a new TokensRegexAnnotator.
@@ -192,6 +215,8 @@ public class TokensRegexNERAnnotator implements Annotator {
             : Collections.unmodifiableSet(new HashSet<String>());
     this.ignoreCase = PropertiesUtils.getBool(properties, prefix + "ignorecase", false);
     this.verbose = PropertiesUtils.getBool(properties, prefix + "verbose", false);
+    this.nThreads = PropertiesUtils.getInt(properties, prefix + "nthreads", PropertiesUtils.getInt(properties, "nthreads", 1));
+    this.maxTime = PropertiesUtils.getLong(properties, prefix + "maxtime", 0);
 
     if (validPosRegex != null && !validPosRegex.equals("")) {
       validPosPattern = Pattern.compile(validPosRegex);
@@ -200,8 +225,10 @@ public class TokensRegexNERAnnotator implements Annotator {
     }
     entries = Collections.unmodifiableList(readEntries(name, noDefaultOverwriteLabels, ignoreCase, verbose, mappings));
     IdentityHashMap<SequencePattern<CoreMap>, Entry> patternToEntry = new IdentityHashMap<SequencePattern<CoreMap>, Entry>();
-    multiPatternMatcher = createPatternMatcher(patternToEntry);
+    phraseEntries = new TrieMap<String,List<Entry>>();
+    multiPatternMatcher = createPatternMatcher(name, patternToEntry, phraseEntries);
     this.patternToEntry = Collections.unmodifiableMap(patternToEntry);
+    phraseMatcher = new TrieMapMatcher<String,List<Entry>>(phraseEntries);
     Set<String> myLabels = Generics.newHashSet();
     // Can always override background or none.
     Collections.addAll(myLabels, backgroundSymbols);
@@ -219,10 +246,7 @@ public class TokensRegexNERAnnotator implements Annotator {
 
     List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
     if (sentences != null) {
-      for (CoreMap sentence : sentences) {
-        List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
-        annotateMatched(tokens);
-      }
+      super.annotate(annotation);
     } else {
       List<CoreLabel> tokens = annotation.get(CoreAnnotations.TokensAnnotation.class);
       if (tokens != null){
@@ -236,7 +260,33 @@ public class TokensRegexNERAnnotator implements Annotator {
       System.err.println("done.");
   }
 
-  private MultiPatternMatcher<CoreMap> createPatternMatcher(Map<SequencePattern<CoreMap>, Entry> patternToEntry) {
+  @Override
+  protected int nThreads() {
+    return nThreads;
+  }
+
+  @Override
+  protected long maxTime() {
+    return maxTime;
+  }
+
+  @Override
+  protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+    List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+    annotateMatched(tokens);
+  }
+
+  /** Leaves the sentence's NER tags as they were. */
+  @Override
+  protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+  }
+
+  /**
+   * Compiles the entries that need TokensRegex into patterns and adds the plain phrases to phraseEntries.
+   */
+  private MultiPatternMatcher<CoreMap> createPatternMatcher(String annotatorName,
+                                                            Map<SequencePattern<CoreMap>, Entry> patternToEntry,
+                                                            TrieMap<String, List<Entry>> phraseEntries) {
     // Convert to tokensregex pattern
     int patternFlags = ignoreCase? Pattern.CASE_INSENSITIVE:0;
     int stringMatchFlags = ignoreCase? NodePattern.CASE_INSENSITIVE:0;
@@ -245,10 +295,29 @@ public class TokensRegexNERAnnotator implements Annotator {
     env.setDefaultStringMatchFlags(stringMatchFlags);
     NodePattern<String> posTagPattern = (validPosPattern != null && PosMatchType.MATCH_ALL_TOKENS.equals(posMatchType))?
             new CoreMapNodePattern.StringAnnotationRegexPattern(validPosPattern):null;
-    List<TokenSequencePattern> patterns = new ArrayList<TokenSequencePattern>(entries.size());
+    List<TokenSequencePattern> patterns = new ArrayList<TokenSequencePattern>();
+    int phrases = 0;
+    int tokensRegexes = 0;
     for (Entry entry:entries) {
+      if (entry.isPhrase()) {
+        if (entry.annotateGroup != 0) {
+          throw new RuntimeException("Invalid match group for entry " + entry);
+        }
+        List<String> key = new ArrayList<String>(entry.regex.length);
+        for (String token:entry.regex) {
+          key.add(phraseKey(token));
+        }
+        List<Entry> sameKey = phraseEntries.get(key);
+        if (sameKey == null) {
+          phraseEntries.put(key, sameKey = new ArrayList<Entry>(1));
+        }
+        sameKey.add(entry);
+        phrases++;
+        continue;
+      }
       TokenSequencePattern pattern;
       if (entry.tokensRegex != null) {
+        tokensRegexes++;
         // TODO: posTagPatterns...
         pattern = TokenSequencePattern.compile(env, entry.tokensRegex);
       } else {
@@ -270,13 +339,83 @@ public class TokensRegexNERAnnotator implements Annotator {
       patterns.add(pattern);
       patternToEntry.put(pattern, entry);
     }
+    logger.log("TokensRegexNERAnnotator " + annotatorName +
+            ": Matching " + phrases + " entries as phrases, " + (patterns.size() - tokensRegexes) +
+            " as token regexes and " + tokensRegexes + " as TokensRegex patterns");
     return TokenSequencePattern.getMultiPatternMatcher(patterns);
   }
 
+  /**
+   * The form in which token texts are compared to the tokens of phrase entries: with ignoreCase,
+   * ASCII letters are lowercased, which is how {@link Pattern#CASE_INSENSITIVE} compares them.
+   */
+  private String phraseKey(String word) {
+    if ( ! ignoreCase) {
+      return word;
+    }
+    char[] chars = null;
+    for (int i = 0; i < word.length(); i++) {
+      char ch = word.charAt(i);
+      if (ch >= 'A' && ch <= 'Z') {
+        if (chars == null) {
+          chars = word.toCharArray();
+        }
+        chars[i] = (char) (ch + ('a' - 'A'));
+      }
+    }
+    return (chars == null) ? word : new String(chars);
+  }
+
+  /**
+   * Finds where the phrase entries match.  As with a TokensRegex pattern, the matches of one entry
+   * don't overlap each other, and are taken from left to right.
+   */
+  private void findPhrases(List<CoreLabel> tokens, List<EntryMatch> matches) {
+    List<String> keys = new ArrayList<String>(tokens.size());
+    for (CoreLabel token:tokens) {
+      String word = token.word();
+      keys.add((word != null)? phraseKey(word): "");
+    }
+    Map<Entry,Integer> lastEnds = null;
+    for (Match<String,List<Entry>> m:phraseMatcher.findAllMatches(keys)) {
+      int start = m.getBegin();
+      int end = m.getEnd();
+      if (validPosPattern != null && PosMatchType.MATCH_ALL_TOKENS.equals(posMatchType)) {
+        boolean allValid = true;
+        for (int i = start; i < end && allValid; i++) {
+          String pos = tokens.get(i).get(CoreAnnotations.PartOfSpeechAnnotation.class);
+          allValid = pos != null && validPosPattern.matcher(pos).matches();
+        }
+        if ( ! allValid) continue;
+      }
+      for (Entry entry:m.getValue()) {
+        if (lastEnds == null) {
+          lastEnds = Generics.newHashMap();
+        }
+        Integer lastEnd = lastEnds.get(entry);
+        if (lastEnd == null || lastEnd <= start) {
+          matches.add(new EntryMatch(entry, start, end, null));
+          lastEnds.put(entry, end);
+        }
+      }
+    }
+  }
+
   private void annotateMatched(List<CoreLabel> tokens) {
-    List<SequenceMatchResult<CoreMap>> matched = multiPatternMatcher.findNonOverlapping(tokens);
-    for (SequenceMatchResult<CoreMap> m:matched) {
-      Entry entry = patternToEntry.get(m.pattern());
+    List<EntryMatch> all = new ArrayList<EntryMatch>();
+    if ( ! phraseEntries.isEmpty()) {
+      findPhrases(tokens, all);
+    }
+    for (SequencePattern<CoreMap> p:multiPatternMatcher.getTriggeredPatterns(tokens)) {
+      SequenceMatcher<CoreMap> m = p.getMatcher(tokens);
+      while (m.find()) {
+        all.add(new EntryMatch(patternToEntry.get(p), m.start(), m.end(), m.toBasicSequenceMatchResult()));
+      }
+    }
+    List<EntryMatch> matched = IntervalTree.getNonOverlapping(all, EntryMatch.PRIORITY_LENGTH_OFFSET_ORDER_COMPARATOR);
+    Collections.sort(matched, HasInterval.ENDPOINTS_COMPARATOR);
+    for (EntryMatch m:matched) {
+      Entry entry = m.entry;
 
       // Check if we will overwrite the existing annotation with this annotation
       int g = entry.annotateGroup;
@@ -293,8 +432,8 @@ public class TokensRegexNERAnnotator implements Annotator {
         }
       } else {
         if (verbose) {
-          System.err.println("Not annotating  '" + m.group(g) + "': " +
-                  StringUtils.joinFields(m.groupNodes(g), CoreAnnotations.NamedEntityTagAnnotation.class)
+          System.err.println("Not annotating  '" + StringUtils.joinWords(tokens.subList(start, end), " ") + "': " +
+                  StringUtils.joinFields(tokens.subList(start, end), CoreAnnotations.NamedEntityTagAnnotation.class)
                   + " with " + entry.type + ", sentence is '" + StringUtils.joinWords(tokens, " ") + "'");
         }
       }
@@ -394,6 +533,50 @@ public class TokensRegexNERAnnotator implements Annotator {
     return overwriteOriginalNer;
   }
 
+  /** A match of an entry, either a phrase or a TokensRegex pattern */
+  private static class EntryMatch implements HasInterval<Integer> {
+    final Entry entry;
+    final Interval<Integer> interval;
+    final SequenceMatchResult<CoreMap> result; // null for phrases
+
+    EntryMatch(Entry entry, int start, int end, SequenceMatchResult<CoreMap> result) {
+      this.entry = entry;
+      this.interval = Interval.toInterval(start, end, Interval.INTERVAL_OPEN_END);
+      this.result = result;
+    }
+
+    int start(int group) {
+      return (result != null)? result.start(group): interval.getBegin();
+    }
+
+    int end(int group) {
+      return (result != null)? result.end(group): interval.getEnd();
+    }
+
+    @Override
+    public Interval<Integer> getInterval() {
+      return interval;
+    }
+
+    /** Higher priority first, then longer matches, then earlier matches, then earlier entries */
+    static final Comparator<EntryMatch> PRIORITY_LENGTH_OFFSET_ORDER_COMPARATOR = (m1, m2) -> {
+      if (m1.entry.priority != m2.entry.priority) {
+        return (m1.entry.priority > m2.entry.priority)? -1: 1;
+      }
+      int length1 = m1.interval.getEnd() - m1.interval.getBegin();
+      int length2 = m2.interval.getEnd() - m2.interval.getBegin();
+      if (length1 != length2) {
+        return (length1 > length2)? -1: 1;
+      }
+      if ( ! m1.interval.getBegin().equals(m2.interval.getBegin())) {
+        return (m1.interval.getBegin() < m2.interval.getBegin())? -1: 1;
+      }
+      return Integer.compare(m1.entry.index, m2.entry.index);
+    };
+  }
+
+  private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
   private static class Entry {
     public final String tokensRegex;
     public final String[] regex; // the regex, tokenized by splitting on white space
@@ -401,14 +584,34 @@ public class TokensRegexNERAnnotator implements Annotator {
     public final Set<String> overwritableTypes; // what types can be overwritten by this entry
     public final double priority;
     public final int annotateGroup;
+    public final int index; // the position of this entry among all entries
 
-    public Entry(String tokensRegex, String[] regex, String type, Set<String> overwritableTypes, double priority, int annotateGroup) {
+    public Entry(String tokensRegex, String[] regex, String type, Set<String> overwritableTypes, double priority, int annotateGroup, int index) {
       this.tokensRegex = tokensRegex;
       this.regex = regex;
       this.type = type.intern();
       this.overwritableTypes = overwritableTypes;
       this.priority = priority;
       this.annotateGroup = annotateGroup;
+      this.index = index;
+    }
+
+    /** Whether this entry is a sequence of tokens without regex metacharacters, each matching just itself */
+    public boolean isPhrase() {
+      if (regex == null) {
+        return false;
+      }
+      for (String token:regex) {
+        if (token.isEmpty()) {
+          return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+          if (REGEX_METACHARACTERS.indexOf(token.charAt(i)) >= 0) {
+            return false;
+          }
+        }
+      }
+      return true;
     }
 
     public String toString() {
@@ -530,7 +733,7 @@ public class TokensRegexNERAnnotator implements Annotator {
         type = newType;
       }
 
-      Entry entry = new Entry(tokensRegex, regexes, type, overwritableTypes, priority, annotateGroup);
+      Entry entry = new Entry(tokensRegex, regexes, type, overwritableTypes, priority, annotateGroup, entries.size());
 
       if (seenRegexes.containsKey(key)) {
         Entry oldEntry = seenRegexes.get(key);
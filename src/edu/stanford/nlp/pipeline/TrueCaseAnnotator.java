@@ -19,7 +19,13 @@ import edu.stanford.nlp.objectbank.ObjectBank;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.Generics;
 
-public class TrueCaseAnnotator implements Annotator {
+/**
+ * Restores the case of each token with a CRFBiasedClassifier, setting
+ * TrueCaseAnnotation and TrueCaseTextAnnotation.  Sentences can be
+ * annotated in parallel ({@code truecase.nthreads}), with an optional
+ * per-sentence time limit ({@code truecase.maxtime}).
+ */
+public class TrueCaseAnnotator extends SentenceAnnotator {
 
   @SuppressWarnings("unchecked")
   private CRFBiasedClassifier trueCaser;
@@ -27,6 +33,9 @@ public class TrueCaseAnnotator implements Annotator {
   private Map<String,String> mixedCaseMap = Generics.newHashMap();
   
   private boolean VERBOSE = true;
+
+  private final int nThreads;
+  private final long maxTime;
   
   public static final String DEFAULT_MODEL_BIAS = "INIT_UPPER:-0.7,UPPER:-0.7,O:0";
   
@@ -41,12 +50,23 @@ public class TrueCaseAnnotator implements Annotator {
         verbose);
   }
 
+  public TrueCaseAnnotator(String modelLoc,
+      String classBias,
+      String mixedCaseFileName,
+      boolean verbose){
+    this(modelLoc, classBias, mixedCaseFileName, verbose, 1, 0);
+  }
+
   @SuppressWarnings("unchecked")
   public TrueCaseAnnotator(String modelLoc, 
       String classBias,
       String mixedCaseFileName,
-      boolean verbose){
+      boolean verbose,
+      int nThreads,
+      long maxTime){
     this.VERBOSE = verbose;
+    this.nThreads = nThreads;
+    this.maxTime = maxTime;
     
     Properties props = new Properties();
     props.setProperty("loadClassifier", modelLoc);
@@ -75,7 +95,7 @@ public class TrueCaseAnnotator implements Annotator {
     mixedCaseMap = loadMixedCaseMap(mixedCaseFileName);
   }
 
-  @SuppressWarnings("unchecked")
+  @Override
   public void annotate(Annotation annotation) {
     if (VERBOSE) {
       System.err.print("Adding true-case annotation...");
@@ -83,21 +103,45 @@ public class TrueCaseAnnotator implements Annotator {
     
     if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
       // classify tokens for each sentence 
-      for (CoreMap sentence: annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-        List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
-        List<CoreLabel> output = this.trueCaser.classifySentence(tokens);
-        for (int i = 0; i < tokens.size(); ++i) {
-          
-          // add the named entity tag to each token
-          String neTag = output.get(i).get(CoreAnnotations.AnswerAnnotation.class);
-          tokens.get(i).set(CoreAnnotations.TrueCaseAnnotation.class, neTag);
-          setTrueCaseText(tokens.get(i));
-        }
-      }
+      super.annotate(annotation);
     } else {
       throw new RuntimeException("unable to find sentences in: " + annotation);
     }
   }
+
+  @Override
+  protected int nThreads() {
+    return nThreads;
+  }
+
+  @Override
+  protected long maxTime() {
+    return maxTime;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+    List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+    List<CoreLabel> output = this.trueCaser.classifySentence(tokens);
+    for (int i = 0; i < tokens.size(); ++i) {
+
+      // add the named entity tag to each token
+      String neTag = output.get(i).get(CoreAnnotations.AnswerAnnotation.class);
+      tokens.get(i).set(CoreAnnotations.TrueCaseAnnotation.class, neTag);
+      setTrueCaseText(tokens.get(i));
+    }
+  }
+
+  /** Leaves the words in their original case. */
+  @Override
+  protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+    for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+      if (token.get(CoreAnnotations.TrueCaseTextAnnotation.class) == null) {
+        token.set(CoreAnnotations.TrueCaseTextAnnotation.class, token.word());
+      }
+    }
+  }
   
   private void setTrueCaseText(CoreLabel l) {
     String trueCase = l.getString(CoreAnnotations.TrueCaseAnnotation.class);
@@ -69,6 +69,14 @@ public class RNNTrainOptions implements Serializable {
    */
   public String initialMatrixLogPath = null;
 
+  /**
+   * How many threads to use when computing the gradient of a batch.
+   * The batch is split into one shard per thread, so results depend
+   * on this number (through floating point summation order), but not
+   * on thread timing.
+   */
+  public int trainThreads = 1;
+
   @Override
   public String toString() {
     StringBuilder result = new StringBuilder();
@@ -97,6 +105,7 @@ public class RNNTrainOptions implements Serializable {
     result.append("adagradResetFrequency=" + adagradResetFrequency + "\n");
     result.append("shuffleMatrices=" + shuffleMatrices + "\n");
     result.append("initialMatrixLogPath=" + initialMatrixLogPath + "\n");
+    result.append("trainThreads=" + trainThreads + "\n");
     return result.toString();
   }
 
@@ -154,6 +163,9 @@ public class RNNTrainOptions implements Serializable {
     } else if (args[argIndex].equalsIgnoreCase("-initialMatrixLogPath")) {
       initialMatrixLogPath = args[argIndex + 1];
       return argIndex + 2;
+    } else if (args[argIndex].equalsIgnoreCase("-trainThreads")) {
+      trainThreads = Integer.parseInt(args[argIndex + 1]);
+      return argIndex + 2;
     } else {
       return argIndex;
     }
@@ -2,7 +2,6 @@ package edu.stanford.nlp.sentiment;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.ejml.simple.SimpleMatrix;
 
@@ -14,6 +13,8 @@ import edu.stanford.nlp.optimization.AbstractCachingDiffFunction;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.TwoDimensionalMap;
+import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
+import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
 // TODO: get rid of the word Sentiment everywhere
 public class SentimentCostAndGradient extends AbstractCachingDiffFunction {
@@ -60,84 +61,150 @@ public class SentimentCostAndGradient extends AbstractCachingDiffFunction {
     return argmax;
   }
 
-  @Override
-  public void calculate(double[] theta) {
-    model.vectorToParams(theta);
-
-    // double localValue = 0.0;
-    // double[] localDerivative = new double[theta.length];
-
+  /**
+   * The derivatives and error summed over some of the trees in a
+   * batch.  With several training threads, each thread fills in its
+   * own, and they are added up at the end.
+   */
+  private class Derivatives {
     // We use TreeMap for each of these so that they stay in a
     // canonical sorted order
-    // TODO: factor out the initialization routines
     // binaryTD stands for Transform Derivatives (see the SentimentModel)
-    TwoDimensionalMap<String, String, SimpleMatrix> binaryTD = TwoDimensionalMap.treeMap();
+    final TwoDimensionalMap<String, String, SimpleMatrix> binaryTD = TwoDimensionalMap.treeMap();
     // the derivatives of the tensors for the binary nodes
-    TwoDimensionalMap<String, String, SimpleTensor> binaryTensorTD = TwoDimensionalMap.treeMap();
+    final TwoDimensionalMap<String, String, SimpleTensor> binaryTensorTD = TwoDimensionalMap.treeMap();
     // binaryCD stands for Classification Derivatives
-    TwoDimensionalMap<String, String, SimpleMatrix> binaryCD = TwoDimensionalMap.treeMap();
+    final TwoDimensionalMap<String, String, SimpleMatrix> binaryCD = TwoDimensionalMap.treeMap();
 
     // unaryCD stands for Classification Derivatives
-    Map<String, SimpleMatrix> unaryCD = Generics.newTreeMap();
+    final Map<String, SimpleMatrix> unaryCD = Generics.newTreeMap();
 
     // word vector derivatives
-    Map<String, SimpleMatrix> wordVectorD = Generics.newTreeMap();
-
-    for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : model.binaryTransform) {
-      int numRows = entry.getValue().numRows();
-      int numCols = entry.getValue().numCols();
+    final Map<String, SimpleMatrix> wordVectorD = Generics.newTreeMap();
 
-      binaryTD.put(entry.getFirstKey(), entry.getSecondKey(), new SimpleMatrix(numRows, numCols));
-    }
+    double error = 0.0;
 
-    if (!model.op.combineClassification) {
-      for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : model.binaryClassification) {
+    Derivatives() {
+      for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : model.binaryTransform) {
         int numRows = entry.getValue().numRows();
         int numCols = entry.getValue().numCols();
 
-        binaryCD.put(entry.getFirstKey(), entry.getSecondKey(), new SimpleMatrix(numRows, numCols));
+        binaryTD.put(entry.getFirstKey(), entry.getSecondKey(), new SimpleMatrix(numRows, numCols));
       }
-    }
 
-    if (model.op.useTensors) {
-      for (TwoDimensionalMap.Entry<String, String, SimpleTensor> entry : model.binaryTensors) {
+      if (!model.op.combineClassification) {
+        for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : model.binaryClassification) {
+          int numRows = entry.getValue().numRows();
+          int numCols = entry.getValue().numCols();
+
+          binaryCD.put(entry.getFirstKey(), entry.getSecondKey(), new SimpleMatrix(numRows, numCols));
+        }
+      }
+
+      if (model.op.useTensors) {
+        for (TwoDimensionalMap.Entry<String, String, SimpleTensor> entry : model.binaryTensors) {
+          int numRows = entry.getValue().numRows();
+          int numCols = entry.getValue().numCols();
+          int numSlices = entry.getValue().numSlices();
+
+          binaryTensorTD.put(entry.getFirstKey(), entry.getSecondKey(), new SimpleTensor(numRows, numCols, numSlices));
+        }
+      }
+
+      for (Map.Entry<String, SimpleMatrix> entry : model.unaryClassification.entrySet()) {
         int numRows = entry.getValue().numRows();
         int numCols = entry.getValue().numCols();
-        int numSlices = entry.getValue().numSlices();
+        unaryCD.put(entry.getKey(), new SimpleMatrix(numRows, numCols));
+      }
 
-        binaryTensorTD.put(entry.getFirstKey(), entry.getSecondKey(), new SimpleTensor(numRows, numCols, numSlices));
+      // wordVectorD will be filled on an as-needed basis
+    }
+
+    /** Forward and back propagates the trees, adding up their derivatives and error. */
+    void addTrees(List<Tree> trees) {
+      for (Tree tree : trees) {
+        Tree trainingTree = tree.deepCopy();
+        // this will attach the error vectors and the node vectors
+        // to each node in the tree
+        forwardPropagateTree(trainingTree);
+        backpropDerivativesAndError(trainingTree, binaryTD, binaryCD, binaryTensorTD, unaryCD, wordVectorD);
+        error += sumError(trainingTree);
       }
     }
 
-    for (Map.Entry<String, SimpleMatrix> entry : model.unaryClassification.entrySet()) {
-      int numRows = entry.getValue().numRows();
-      int numCols = entry.getValue().numCols();
-      unaryCD.put(entry.getKey(), new SimpleMatrix(numRows, numCols));
+    /** Adds the derivatives and error of another set of trees to these. */
+    void add(Derivatives other) {
+      for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : other.binaryTD) {
+        binaryTD.put(entry.getFirstKey(), entry.getSecondKey(), binaryTD.get(entry.getFirstKey(), entry.getSecondKey()).plus(entry.getValue()));
+      }
+      for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : other.binaryCD) {
+        binaryCD.put(entry.getFirstKey(), entry.getSecondKey(), binaryCD.get(entry.getFirstKey(), entry.getSecondKey()).plus(entry.getValue()));
+      }
+      for (TwoDimensionalMap.Entry<String, String, SimpleTensor> entry : other.binaryTensorTD) {
+        binaryTensorTD.put(entry.getFirstKey(), entry.getSecondKey(), binaryTensorTD.get(entry.getFirstKey(), entry.getSecondKey()).plus(entry.getValue()));
+      }
+      for (Map.Entry<String, SimpleMatrix> entry : other.unaryCD.entrySet()) {
+        unaryCD.put(entry.getKey(), unaryCD.get(entry.getKey()).plus(entry.getValue()));
+      }
+      for (Map.Entry<String, SimpleMatrix> entry : other.wordVectorD.entrySet()) {
+        SimpleMatrix old = wordVectorD.get(entry.getKey());
+        wordVectorD.put(entry.getKey(), old == null ? entry.getValue() : old.plus(entry.getValue()));
+      }
+      error += other.error;
     }
+  }
 
-    // wordVectorD will be filled on an as-needed basis
+  class DerivativesProcessor implements ThreadsafeProcessor<List<Tree>, Derivatives> {
+    @Override
+    public Derivatives process(List<Tree> trees) {
+      Derivatives derivatives = new Derivatives();
+      derivatives.addTrees(trees);
+      return derivatives;
+    }
 
-    // TODO: This part can easily be parallelized
-    List<Tree> forwardPropTrees = Generics.newArrayList();
-    for (Tree tree : trainingBatch) {
-      Tree trainingTree = tree.deepCopy();
-      // this will attach the error vectors and the node vectors
-      // to each node in the tree
-      forwardPropagateTree(trainingTree);
-      forwardPropTrees.add(trainingTree);
+    @Override
+    public ThreadsafeProcessor<List<Tree>, Derivatives> newInstance() {
+      // should be threadsafe
+      return this;
     }
+  }
 
-    // TODO: we may find a big speedup by separating the derivatives and then summing
-    double error = 0.0;
-    for (Tree tree : forwardPropTrees) {
-      backpropDerivativesAndError(tree, binaryTD, binaryCD, binaryTensorTD, unaryCD, wordVectorD);
-      error += sumError(tree);
+  @Override
+  public void calculate(double[] theta) {
+    model.vectorToParams(theta);
+
+    // The batch is split into one contiguous shard per thread, and the
+    // shards' derivatives are added up in shard order, so the result
+    // depends only on the number of threads, not on their timing
+    int numShards = Math.max(1, Math.min(model.op.trainOptions.trainThreads, trainingBatch.size()));
+    Derivatives derivatives;
+    if (numShards == 1) {
+      derivatives = new Derivatives();
+      derivatives.addTrees(trainingBatch);
+    } else {
+      MulticoreWrapper<List<Tree>, Derivatives> wrapper = new MulticoreWrapper<List<Tree>, Derivatives>(numShards, new DerivativesProcessor());
+      for (int shard = 0; shard < numShards; ++shard) {
+        int start = trainingBatch.size() * shard / numShards;
+        int end = trainingBatch.size() * (shard + 1) / numShards;
+        wrapper.put(trainingBatch.subList(start, end));
+      }
+      wrapper.join();
+      derivatives = wrapper.poll();
+      while (wrapper.peek()) {
+        derivatives.add(wrapper.poll());
+      }
     }
 
+    TwoDimensionalMap<String, String, SimpleMatrix> binaryTD = derivatives.binaryTD;
+    TwoDimensionalMap<String, String, SimpleTensor> binaryTensorTD = derivatives.binaryTensorTD;
+    TwoDimensionalMap<String, String, SimpleMatrix> binaryCD = derivatives.binaryCD;
+    Map<String, SimpleMatrix> unaryCD = derivatives.unaryCD;
+    Map<String, SimpleMatrix> wordVectorD = derivatives.wordVectorD;
+
     // scale the error by the number of sentences so that the
     // regularization isn't drowned out for large training batchs
     double scale = (1.0 / trainingBatch.size());
-    value = error * scale;
+    value = derivatives.error * scale;
 
     value += scaleAndRegularize(binaryTD, model.binaryTransform, scale, model.op.trainOptions.regTransformMatrix, false);
     value += scaleAndRegularize(binaryCD, model.binaryClassification, scale, model.op.trainOptions.regClassification, true);
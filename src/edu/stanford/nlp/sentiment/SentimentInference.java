@@ -0,0 +1,474 @@
+package edu.stanford.nlp.sentiment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.simple.SimpleMatrix;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.neural.SimpleTensor;
+import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.TwoDimensionalMap;
+
+/**
+ * Forward propagation of a {@link SentimentModel} over many trees at
+ * once, for tagging rather than training.
+ * <br>
+ * {@link SentimentCostAndGradient#forwardPropagateTree} recurses over
+ * one tree, allocating several new matrices at every node and looking
+ * the node's parameters up in tree maps by category name.  This class
+ * instead flattens all the trees it is given into one list of nodes,
+ * indexed by height above the words, and evaluates the nodes of each
+ * height together.  Nodes which use the same transform are evaluated
+ * as a single matrix product, so each row of the transform (and each
+ * tensor slice) is read once per batch rather than once per node.  All
+ * of the intermediate vectors live in flat {@code double[]} buffers
+ * which are kept per thread and reused between calls.
+ * <br>
+ * The arithmetic is done in the same order as the EJML operations of
+ * {@code forwardPropagateTree}, so the annotations attached to the
+ * trees are the same: the RNNCoreAnnotations.NodeVector, Predictions
+ * and PredictedClass of every non-leaf node.
+ * <br>
+ * The parameters are read directly from the model's matrices, so this
+ * sees parameter updates made in place (as by
+ * {@link SentimentModel#vectorToParams}), but it should be rebuilt if
+ * the model's maps of matrices or word vectors change.  One instance
+ * can be used from several threads at once.
+ */
+public class SentimentInference {
+
+  private final SentimentModel model;
+  private final int numHid;
+  private final int numClasses;
+  private final boolean useTensors;
+
+  /** Binary transforms, each numHid x (2 * numHid + 1) in row-major order */
+  private final List<double[]> transforms = new ArrayList<>();
+  /** The tensor slices for each transform, each (2 * numHid) x (2 * numHid) */
+  private final List<double[][]> tensors = new ArrayList<>();
+  /** Classification matrices, each numClasses x (numHid + 1) */
+  private final List<double[]> classifications = new ArrayList<>();
+
+  private final Map<String, Map<String, Integer>> transformIds = Generics.newHashMap();
+  private final Map<String, Map<String, Integer>> binaryClassificationIds = Generics.newHashMap();
+  private final Map<String, Integer> unaryClassificationIds = Generics.newHashMap();
+
+  private final Map<String, double[]> wordVectors;
+  private final double[] unknownWordVector;
+
+  private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+  public SentimentInference(SentimentModel model) {
+    this.model = model;
+    this.numHid = model.numHid;
+    this.numClasses = model.numClasses;
+    this.useTensors = model.op.useTensors;
+
+    for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : model.binaryTransform) {
+      int id = transforms.size();
+      transforms.add(data(entry.getValue()));
+      if (useTensors) {
+        SimpleTensor tensor = model.binaryTensors.get(entry.getFirstKey(), entry.getSecondKey());
+        double[][] slices = new double[tensor.numSlices()][];
+        for (int slice = 0; slice < slices.length; ++slice) {
+          slices[slice] = data(tensor.getSlice(slice));
+        }
+        tensors.add(slices);
+      }
+      put(transformIds, entry.getFirstKey(), entry.getSecondKey(), id);
+    }
+    for (Map.Entry<String, SimpleMatrix> entry : model.unaryClassification.entrySet()) {
+      unaryClassificationIds.put(entry.getKey(), classifications.size());
+      classifications.add(data(entry.getValue()));
+    }
+    for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : model.binaryClassification) {
+      put(binaryClassificationIds, entry.getFirstKey(), entry.getSecondKey(), classifications.size());
+      classifications.add(data(entry.getValue()));
+    }
+
+    wordVectors = Generics.newHashMap(model.wordVectors.size());
+    for (Map.Entry<String, SimpleMatrix> entry : model.wordVectors.entrySet()) {
+      wordVectors.put(entry.getKey(), data(entry.getValue()));
+    }
+    unknownWordVector = wordVectors.get(SentimentModel.UNKNOWN_WORD);
+  }
+
+  private static double[] data(SimpleMatrix matrix) {
+    DenseMatrix64F dense = matrix.getMatrix();
+    if (dense.data.length != dense.getNumElements()) {
+      // shouldn't happen for the model's matrices, but the arithmetic below relies on it
+      return Arrays.copyOf(dense.data, dense.getNumElements());
+    }
+    return dense.data;
+  }
+
+  private static void put(Map<String, Map<String, Integer>> map, String first, String second, int id) {
+    Map<String, Integer> inner = map.get(first);
+    if (inner == null) {
+      inner = Generics.newHashMap();
+      map.put(first, inner);
+    }
+    inner.put(second, id);
+  }
+
+  private static int get(Map<String, Map<String, Integer>> map, String first, String second) {
+    Map<String, Integer> inner = map.get(first);
+    Integer id = inner == null ? null : inner.get(second);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Same as {@link SentimentCostAndGradient#forwardPropagateTree} on
+   * one tree.
+   */
+  public void forwardPropagateTree(Tree tree) {
+    forwardPropagateTrees(Collections.singletonList(tree));
+  }
+
+  /**
+   * Assigns node vectors and class predictions to every non-leaf node
+   * of the given trees, which should be binarized with their unary
+   * nodes collapsed (see {@link CollapseUnaryTransformer}).  The result
+   * is the same as calling
+   * {@link SentimentCostAndGradient#forwardPropagateTree} on each tree.
+   */
+  public void forwardPropagateTrees(List<Tree> trees) {
+    Buffers b = buffers.get();
+    b.clear();
+    for (Tree tree : trees) {
+      flatten(tree, b);
+    }
+    int numNodes = b.numNodes;
+    if (numNodes == 0) {
+      return;
+    }
+    b.ensureVectors(numNodes, numHid, numClasses);
+
+    // Words first: height 0 is exactly the preterminals
+    double[] vectors = b.vectors;
+    for (int node = 0; node < numNodes; ++node) {
+      if (b.height[node] == 0) {
+        double[] wordVector = b.wordVector[node];
+        int offset = node * numHid;
+        for (int i = 0; i < numHid; ++i) {
+          vectors[offset + i] = Math.tanh(wordVector[i]);
+        }
+      }
+    }
+
+    // Then each height in turn, one matrix product per transform
+    int numTransforms = Math.max(transforms.size(), 1);
+    int[] order = b.sortNodes(b.transform, b.height, numTransforms, (b.maxHeight + 1) * numTransforms);
+    int start = 0;
+    while (start < numNodes) {
+      int node = order[start];
+      if (b.height[node] == 0) {
+        ++start;
+        continue;
+      }
+      int transform = b.transform[node];
+      int height = b.height[node];
+      int end = start + 1;
+      while (end < numNodes && b.height[order[end]] == height && b.transform[order[end]] == transform) {
+        ++end;
+      }
+      propagateBinary(b, order, start, end, transform);
+      start = end;
+    }
+
+    // Finally the class predictions of all nodes, one product per classification matrix
+    order = b.sortNodes(b.classification, null, classifications.size(), classifications.size());
+    start = 0;
+    while (start < numNodes) {
+      int classification = b.classification[order[start]];
+      int end = start + 1;
+      while (end < numNodes && b.classification[order[end]] == classification) {
+        ++end;
+      }
+      classify(b, order, start, end, classification);
+      start = end;
+    }
+
+    for (int node = 0; node < numNodes; ++node) {
+      CoreLabel label = (CoreLabel) b.trees[node].label();
+      double[] nodeVector = Arrays.copyOfRange(vectors, node * numHid, (node + 1) * numHid);
+      double[] predictions = Arrays.copyOfRange(b.predictions, node * numClasses, (node + 1) * numClasses);
+      int argmax = 0;
+      for (int i = 1; i < numClasses; ++i) {
+        if (predictions[i] > predictions[argmax]) {
+          argmax = i;
+        }
+      }
+      label.set(RNNCoreAnnotations.Predictions.class, SimpleMatrix.wrap(DenseMatrix64F.wrap(numClasses, 1, predictions)));
+      label.set(RNNCoreAnnotations.PredictedClass.class, argmax);
+      label.set(RNNCoreAnnotations.NodeVector.class, SimpleMatrix.wrap(DenseMatrix64F.wrap(numHid, 1, nodeVector)));
+      b.trees[node] = null;
+      b.wordVector[node] = null;
+    }
+  }
+
+  /** Adds the non-leaf nodes of tree to the buffers, children first, and returns the root's node number. */
+  private int flatten(Tree tree, Buffers b) {
+    if (tree.isLeaf()) {
+      throw new AssertionError("We should not have reached leaves in forwardPropagate");
+    }
+    if (!(tree.label() instanceof CoreLabel)) {
+      throw new AssertionError("Expected CoreLabels in the nodes");
+    }
+    if (tree.isPreTerminal()) {
+      int node = b.addNode(tree, 0);
+      String category = model.basicCategory(tree.label().value());
+      b.classification[node] = classificationId(unaryClassificationIds.get(category), category);
+      String word = tree.children()[0].label().value();
+      if (model.op.lowercaseWordVectors) {
+        word = word.toLowerCase();
+      }
+      double[] wordVector = wordVectors.get(word);
+      b.wordVector[node] = wordVector != null ? wordVector : unknownWordVector;
+      if (b.wordVector[node] == null) {
+        throw new IllegalArgumentException("Model has no vector for " + word + " nor an unknown word vector");
+      }
+      return node;
+    } else if (tree.children().length == 1) {
+      throw new AssertionError("Non-preterminal nodes of size 1 should have already been collapsed");
+    } else if (tree.children().length == 2) {
+      int left = flatten(tree.children()[0], b);
+      int right = flatten(tree.children()[1], b);
+      int node = b.addNode(tree, Math.max(b.height[left], b.height[right]) + 1);
+      b.left[node] = left;
+      b.right[node] = right;
+
+      String leftCategory = model.basicCategory(tree.children()[0].label().value());
+      String rightCategory = model.basicCategory(tree.children()[1].label().value());
+      int transform = get(transformIds, leftCategory, rightCategory);
+      if (transform < 0) {
+        throw new IllegalArgumentException("Model has no binary transform for " + leftCategory + " " + rightCategory);
+      }
+      b.transform[node] = transform;
+      if (model.op.combineClassification) {
+        b.classification[node] = classificationId(unaryClassificationIds.get(""), "");
+      } else {
+        int id = get(binaryClassificationIds, leftCategory, rightCategory);
+        b.classification[node] = classificationId(id < 0 ? null : id, leftCategory + " " + rightCategory);
+      }
+      return node;
+    } else {
+      throw new AssertionError("Tree not correctly binarized");
+    }
+  }
+
+  private static int classificationId(Integer id, String category) {
+    if (id == null) {
+      throw new IllegalArgumentException("Model has no classification matrix for " + category);
+    }
+    return id;
+  }
+
+  /**
+   * Computes tanh(W [left; right; 1] + tensor products) for the nodes
+   * order[start..end), which all use the given transform.
+   */
+  private void propagateBinary(Buffers b, int[] order, int start, int end, int transform) {
+    final int numHid = this.numHid;
+    final int inputSize = 2 * numHid + 1;
+    final int batch = end - start;
+    double[] inputs = b.inputs(batch * inputSize);
+    double[] vectors = b.vectors;
+    for (int k = 0; k < batch; ++k) {
+      int node = order[start + k];
+      int offset = k * inputSize;
+      System.arraycopy(vectors, b.left[node] * numHid, inputs, offset, numHid);
+      System.arraycopy(vectors, b.right[node] * numHid, inputs, offset + numHid, numHid);
+      inputs[offset + 2 * numHid] = 1.0;
+    }
+
+    double[] W = transforms.get(transform);
+    for (int row = 0; row < numHid; ++row) {
+      int rowOffset = row * inputSize;
+      for (int k = 0; k < batch; ++k) {
+        int offset = k * inputSize;
+        double sum = 0.0;
+        for (int j = 0; j < inputSize; ++j) {
+          sum += W[rowOffset + j] * inputs[offset + j];
+        }
+        vectors[order[start + k] * numHid + row] = sum;
+      }
+    }
+
+    if (useTensors) {
+      final int size = 2 * numHid;
+      double[] partial = b.partial(size);
+      double[][] slices = tensors.get(transform);
+      for (int slice = 0; slice < slices.length; ++slice) {
+        double[] T = slices[slice];
+        for (int k = 0; k < batch; ++k) {
+          int offset = k * inputSize;
+          // in^T T, then times in, summing in the same order as EJML
+          Arrays.fill(partial, 0, size, 0.0);
+          for (int i = 0; i < size; ++i) {
+            double x = inputs[offset + i];
+            int sliceRow = i * size;
+            for (int j = 0; j < size; ++j) {
+              partial[j] += x * T[sliceRow + j];
+            }
+          }
+          double product = 0.0;
+          for (int j = 0; j < size; ++j) {
+            product += partial[j] * inputs[offset + j];
+          }
+          vectors[order[start + k] * numHid + slice] += product;
+        }
+      }
+    }
+
+    for (int k = start; k < end; ++k) {
+      int offset = order[k] * numHid;
+      for (int i = 0; i < numHid; ++i) {
+        vectors[offset + i] = Math.tanh(vectors[offset + i]);
+      }
+    }
+  }
+
+  /**
+   * Computes softmax(C [vector; 1]) for the nodes order[start..end),
+   * which all use the given classification matrix.
+   */
+  private void classify(Buffers b, int[] order, int start, int end, int classification) {
+    final int numHid = this.numHid;
+    final int numClasses = this.numClasses;
+    final int inputSize = numHid + 1;
+    double[] C = classifications.get(classification);
+    double[] vectors = b.vectors;
+    double[] predictions = b.predictions;
+    for (int row = 0; row < numClasses; ++row) {
+      int rowOffset = row * inputSize;
+      for (int k = start; k < end; ++k) {
+        int node = order[k];
+        int offset = node * numHid;
+        double sum = 0.0;
+        for (int j = 0; j < numHid; ++j) {
+          sum += C[rowOffset + j] * vectors[offset + j];
+        }
+        sum += C[rowOffset + numHid];
+        predictions[node * numClasses + row] = sum;
+      }
+    }
+    for (int k = start; k < end; ++k) {
+      int offset = order[k] * numClasses;
+      double sum = 0.0;
+      for (int i = 0; i < numClasses; ++i) {
+        predictions[offset + i] = Math.exp(predictions[offset + i]);
+        sum += predictions[offset + i];
+      }
+      double scale = 1.0 / sum;
+      for (int i = 0; i < numClasses; ++i) {
+        predictions[offset + i] *= scale;
+      }
+    }
+  }
+
+
+  /** Per-thread node arrays and scratch space, grown as needed and reused between calls */
+  private static class Buffers {
+    int numNodes;
+    int maxHeight;
+    Tree[] trees = new Tree[64];
+    double[][] wordVector = new double[64][];
+    int[] height = new int[64];
+    int[] left = new int[64];
+    int[] right = new int[64];
+    int[] transform = new int[64];
+    int[] classification = new int[64];
+
+    double[] vectors = new double[0];
+    double[] predictions = new double[0];
+    double[] inputs = new double[0];
+    double[] partial = new double[0];
+    int[] order = new int[0];
+    int[] counts = new int[0];
+
+    void clear() {
+      numNodes = 0;
+      maxHeight = 0;
+    }
+
+    int addNode(Tree tree, int nodeHeight) {
+      if (numNodes == trees.length) {
+        int capacity = trees.length * 2;
+        trees = Arrays.copyOf(trees, capacity);
+        wordVector = Arrays.copyOf(wordVector, capacity);
+        height = Arrays.copyOf(height, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        transform = Arrays.copyOf(transform, capacity);
+        classification = Arrays.copyOf(classification, capacity);
+      }
+      int node = numNodes++;
+      trees[node] = tree;
+      height[node] = nodeHeight;
+      transform[node] = 0;
+      maxHeight = Math.max(maxHeight, nodeHeight);
+      return node;
+    }
+
+    void ensureVectors(int nodes, int numHid, int numClasses) {
+      if (vectors.length < nodes * numHid) {
+        vectors = new double[nodes * numHid * 2];
+      }
+      if (predictions.length < nodes * numClasses) {
+        predictions = new double[nodes * numClasses * 2];
+      }
+    }
+
+    double[] inputs(int size) {
+      if (inputs.length < size) {
+        inputs = new double[size * 2];
+      }
+      return inputs;
+    }
+
+    double[] partial(int size) {
+      if (partial.length < size) {
+        partial = new double[size];
+      }
+      return partial;
+    }
+
+    /**
+     * Counting sort of the node numbers by (major, key), where major is
+     * optional and key is in [0, numKeys).  Stable, so nodes with the
+     * same key stay in tree order.
+     */
+    int[] sortNodes(int[] key, int[] major, int numKeys, int numGroups) {
+      if (order.length < numNodes) {
+        order = new int[numNodes * 2];
+      }
+      if (counts.length < numGroups + 1) {
+        counts = new int[numGroups + 1];
+      }
+      Arrays.fill(counts, 0, numGroups + 1, 0);
+      for (int node = 0; node < numNodes; ++node) {
+        ++counts[group(key, major, numKeys, node) + 1];
+      }
+      for (int g = 0; g < numGroups; ++g) {
+        counts[g + 1] += counts[g];
+      }
+      for (int node = 0; node < numNodes; ++node) {
+        order[counts[group(key, major, numKeys, node)]++] = node;
+      }
+      return order;
+    }
+
+    private static int group(int[] key, int[] major, int numKeys, int node) {
+      return major == null ? key[node] : major[node] * numKeys + key[node];
+    }
+  }
+
+}
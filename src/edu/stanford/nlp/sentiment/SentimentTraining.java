@@ -50,6 +50,7 @@ public class SentimentTraining {
     int numBatches = trainingTrees.size() / model.op.trainOptions.batchSize + 1;
     System.err.println("Training on " + trainingTrees.size() + " trees in " + numBatches + " batches");
     System.err.println("Times through each training batch: " + model.op.trainOptions.epochs);
+    System.err.println("Training will use " + Math.max(model.op.trainOptions.trainThreads, 1) + " thread(s)");
     for (int epoch = 0; epoch < model.op.trainOptions.epochs; ++epoch) {
       System.err.println("======================================");
       System.err.println("Starting epoch " + epoch);
@@ -5,6 +5,7 @@ import java.io.Serializable;
 
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.PaddedList;
 
 
@@ -80,6 +81,34 @@ public abstract class FeatureFactory<IN> implements Serializable {
    */
   public abstract Collection<String> getCliqueFeatures(PaddedList<IN> info, int position, Clique clique);
 
+  /**
+   * Receives the features of a clique as groups of base features which
+   * all share one suffix, as they would be passed to
+   * {@link #addAllInterningAndSuffixing}.  This lets a caller look up
+   * feature indices without building the suffixed feature Strings.
+   */
+  public interface SuffixedFeatureSink {
+    void add(Collection<String> features, String suffix);
+  }
+
+  /**
+   * Optionally describes the same features as
+   * {@link #getCliqueFeatures(PaddedList, int, Clique)}, but passes them to
+   * {@code sink} as base features plus suffix instead of concatenating
+   * them.  The suffixed features must be exactly those the other method
+   * adds to its result, passed in the same order, and the result of
+   * that method must be a {@link Generics#newHashSet()} to which they
+   * are added in that order, so that callers can reproduce its
+   * iteration order.
+   *
+   * @return true if the features were passed to the sink, false if this
+   *     factory does not support this method (the default), in which
+   *     case the caller should use getCliqueFeatures instead.
+   */
+  public boolean getCliqueFeatures(PaddedList<IN> info, int position, Clique clique, SuffixedFeatureSink sink) {
+    return false;
+  }
+
 
   /** Makes more complete feature names out of partial feature names, by
    *  adding a suffix to the String feature name, adding results to an
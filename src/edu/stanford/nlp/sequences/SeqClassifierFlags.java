@@ -1028,6 +1028,38 @@ public class SeqClassifierFlags implements Serializable {
    */
   public String priorModelFactory;
 
+  /**
+   * At test time, have CRFClassifier look up feature indices from the
+   * feature factories' base features and clique suffixes, without
+   * building the suffixed feature Strings or hashing them into the
+   * feature index.  Gives identical data and labels.  The base feature
+   * Strings are still built by the factories' templates, and are hashed
+   * once each; only the suffixed copies are avoided.
+   */
+  public boolean featureIdInference = false;
+
+  /**
+   * After loading a CRFClassifier, replace its feature index with a
+   * {@link edu.stanford.nlp.util.PackedStringIndex}, which keeps the
+   * feature Strings off the Java heap.  The classifier can then no
+   * longer add features, so this is only for tagging.  This lowers the
+   * heap used once loaded, not the peak while loading: the serialized
+   * HashIndex is still read in full before it is packed.
+   */
+  public boolean packedFeatureIndex = false;
+
+  /**
+   * How a loaded CRFClassifier keeps its weights for tagging: "double"
+   * keeps the trained {@code double[][]}, "float" packs them into one
+   * float array, and "byte" quantizes each feature's weights to 8 bits
+   * with a per-feature scale.  Anything but "double" frees the original
+   * weights, so the classifier can then no longer be trained, saved or
+   * given class biases.  The {@code double[][]} is still read in full
+   * when loading, so this lowers the heap used once loaded, not the
+   * peak while loading.  See CRFClassifierMemoryReport for the memory saved and the effect
+   * on F1.
+   */
+  public String weightPrecision = "double";
 
   // "ADD VARIABLES ABOVE HERE"
 
@@ -2538,6 +2570,12 @@ public class SeqClassifierFlags implements Serializable {
         removeStrictGoodCoNLLDuplicates = Boolean.parseBoolean(val);
       } else if (key.equalsIgnoreCase("priorModelFactory")) {
         priorModelFactory = val;
+      } else if (key.equalsIgnoreCase("featureIdInference")) {
+        featureIdInference = Boolean.parseBoolean(val);
+      } else if (key.equalsIgnoreCase("packedFeatureIndex")) {
+        packedFeatureIndex = Boolean.parseBoolean(val);
+      } else if (key.equalsIgnoreCase("weightPrecision")) {
+        weightPrecision = val;
 
         // ADD VALUE ABOVE HERE
       } else if ( ! key.isEmpty() && ! key.equals("prop")) {
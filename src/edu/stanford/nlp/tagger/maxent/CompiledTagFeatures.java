@@ -0,0 +1,140 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import edu.stanford.nlp.util.IntIntHashMap;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The feature values of one {@link Extractor} whose value depends only on
+ * tags (see {@link Extractor#tagPositions()}), compiled so that while
+ * tagging they are looked up by tag index rather than by String.
+ * <br>
+ * The dynamic extractors are evaluated once per tag window in the Viterbi
+ * search, and the String path builds a new value such as
+ * {@code "DT!JJ"} and hashes it every time.  Here every combination of
+ * tags at the extractor's positions is packed into an int, with one extra
+ * index standing for the "NA" tag outside the sentence, and mapped to
+ * the same weight index array {@link MaxentTagger#fAssociations} holds
+ * for that value.  The table is filled by running the extractor itself
+ * on each combination, so it gives exactly the same features as the
+ * String path.
+ *
+ * @see TestSentence
+ */
+class CompiledTagFeatures {
+
+  /** Extractors over more tag combinations than this stay on the String path */
+  static final int MAX_COMBINATIONS = 1 << 17;
+
+  /** The distinct tag positions the extractor looks at */
+  private final int[] positions;
+  /** The number of tag indices, plus one for "NA" */
+  private final int radix;
+  private final IntIntHashMap index;
+  private final int[][] associations;
+
+  private CompiledTagFeatures(int[] positions, int radix, IntIntHashMap index, int[][] associations) {
+    this.positions = positions;
+    this.radix = radix;
+    this.index = index;
+    this.associations = associations;
+  }
+
+  /**
+   * Compiles the feature values of {@code extractor}, or returns null if
+   * it does not depend on tags alone or looks at too many of them.
+   *
+   * @param extractor The extractor
+   * @param fAssociations Its map from feature values to weight indices by tag
+   * @param tags The tag set; indices 0 to {@code numTags - 1} are the tags
+   * @param numTags The number of tags
+   */
+  static CompiledTagFeatures compile(Extractor extractor, Map<String, int[]> fAssociations,
+                                     TTags tags, int numTags) {
+    int[] positions = extractor.tagPositions();
+    if (positions == null || positions.length == 0) {
+      return null;
+    }
+    positions = distinct(positions);
+    int radix = numTags + 1;
+    long combinations = 1;
+    for (int i = 0; i < positions.length; i++) {
+      combinations *= radix;
+      if (combinations > MAX_COMBINATIONS) {
+        return null;
+      }
+    }
+
+    // a window just wide enough for all the positions, with every
+    // position inside the sentence; "NA" is set as a literal tag,
+    // which reads the same as a position outside the sentence
+    int left = Math.min(0, positions[0]);
+    int right = Math.max(0, positions[positions.length - 1]);
+    PairsHolder pairs = new PairsHolder();
+    pairs.setSize(right - left + 1);
+    History h = new History(0, right - left, -left, pairs, null);
+
+    String[] tagNames = new String[radix];
+    for (int t = 0; t < numTags; t++) {
+      tagNames[t] = tags.getTag(t);
+    }
+    tagNames[numTags] = TestSentence.naTag;
+
+    IntIntHashMap index = new IntIntHashMap(fAssociations.size(), -1);
+    // several combinations can give the same value, so share its array
+    Map<int[], Integer> slots = new IdentityHashMap<int[], Integer>();
+    int[][] associations = new int[fAssociations.size()][];
+    for (int key = 0; key < combinations; key++) {
+      int rest = key;
+      for (int position : positions) {
+        pairs.setTag(h.current + position, tagNames[rest % radix]);
+        rest /= radix;
+      }
+      int[] association = fAssociations.get(extractor.extract(h));
+      if (association != null) {
+        Integer slot = slots.get(association);
+        if (slot == null) {
+          slot = slots.size();
+          slots.put(association, slot);
+          associations[slot] = association;
+        }
+        index.put(key, slot);
+      }
+    }
+    return new CompiledTagFeatures(positions, radix, index, Arrays.copyOf(associations, slots.size()));
+  }
+
+  static int[] distinct(int[] positions) {
+    int[] sorted = positions.clone();
+    Arrays.sort(sorted);
+    int n = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i == 0 || sorted[i] != sorted[i - 1]) {
+        sorted[n++] = sorted[i];
+      }
+    }
+    return Arrays.copyOf(sorted, n);
+  }
+
+  /**
+   * Returns the weight indices by tag for the value of the extractor at
+   * {@code h}, or null if that value has no features.
+   *
+   * @param h The history
+   * @param tagIds The index of the tag at each position of the sentence,
+   *               counted from {@code h.start}
+   */
+  int[] get(History h, int[] tagIds) {
+    int key = 0;
+    for (int i = positions.length - 1; i >= 0; i--) {
+      int p = h.current + positions[i];
+      int id = (p < h.start || p > h.end) ? radix - 1 : tagIds[p - h.start];
+      key = key * radix + id;
+    }
+    int slot = index.get(key);
+    return slot < 0 ? null : associations[slot];
+  }
+
+}
@@ -36,6 +36,8 @@ import java.io.Serializable;
  * <li>isDynamic() Return true if a function of any tags (for efficiency)
  * <li>extract(History, PairsHolder) The actual function that returns the
  * value for the feature.
+ * <li>tagPositions() If the value is a function of some tags only, the
+ * positions of those tags (for efficiency)
  * </ul>
  * <p>
  * Note that some extractors can be reused across multiple taggers,
@@ -173,6 +175,33 @@ public class Extractor implements Serializable {
     return isTag ? pH.getTag(h, position) : pH.getWord(h, position);
   }
 
+  /**
+   * Returns the positions of the tags whose values alone determine the
+   * value of this extractor, or null if it also looks at anything else,
+   * such as the words.  Extractors which return positions here are
+   * looked up by tag index rather than by String while tagging; see
+   * {@link CompiledTagFeatures}.  Subclasses which call the
+   * {@code isTag} constructor but also look at words must override
+   * this to return null.
+   */
+  int[] tagPositions() {
+    return isTag ? new int[] { position } : null;
+  }
+
+  /**
+   * Returns the positions of the tags whose values, together with the
+   * words of the sentence, determine the value of this extractor, or
+   * null if it also looks at anything else that changes while a sentence
+   * is tagged.  Extractors which return positions here but not from
+   * {@link #tagPositions()} are looked up by tag index within each
+   * sentence; see {@link WordTagFeatures}.  Extractors which are not
+   * dynamic only look at the words, so by default they return no
+   * positions.
+   */
+  int[] wordTagPositions() {
+    return isDynamic() ? tagPositions() : new int[0];
+  }
+
   @SuppressWarnings({"MethodMayBeStatic"})
   String extractLV(History h, PairsHolder pH) {
     // should extract last verbal word and also the current word
@@ -320,6 +320,16 @@ public class ExtractorFrames {
       return pH.getTag(h, position) + '!' + pH.getWord(h, wordPosition);
     }
 
+    @Override
+    int[] tagPositions() {
+      return null;
+    }
+
+    @Override
+    int[] wordTagPositions() {
+      return new int[] { position };
+    }
+
     @Override
     public String toString() {
       return (getClass().getName() + "(w" + wordPosition +
@@ -460,6 +470,11 @@ public class ExtractorFrames {
       return pH.getTag(h, leftPosition) + '!' + pH.getTag(h, rightPosition);
     }
 
+    @Override
+    int[] tagPositions() {
+      return new int[] { leftPosition, rightPosition };
+    }
+
     @Override public boolean isLocal() { return false; }
     @Override public boolean isDynamic() { return true; }
 
@@ -509,6 +524,11 @@ public class ExtractorFrames {
     @Override public boolean isLocal() { return false; }
     @Override public boolean isDynamic() { return true; }
 
+    @Override
+    int[] wordTagPositions() {
+      return new int[] { tag };
+    }
+
     @Override
     public String toString() {
       return (getClass().getName() + "(w" + leftWord +
@@ -552,6 +572,15 @@ public class ExtractorFrames {
       return sb.toString();
     }
 
+    @Override
+    int[] tagPositions() {
+      int[] positions = new int[Math.abs(position)];
+      for (int i = 0; i < positions.length; i++) {
+        positions[i] = position < 0 ? position + i : position - i;
+      }
+      return positions;
+    }
+
   }
 
 
@@ -612,6 +641,11 @@ public class ExtractorFrames {
       return pH.getTag(h, position1) + '!' + pH.getTag(h, position2) + '!' + pH.getTag(h, position3);
     }
 
+    @Override
+    int[] tagPositions() {
+      return new int[] { position1, position2, position3 };
+    }
+
     @Override public boolean isLocal() { return false; }
     @Override public boolean isDynamic() { return true; }
 
@@ -672,6 +706,11 @@ public class ExtractorFrames {
     @Override public boolean isLocal() { return false; }
     @Override public boolean isDynamic() { return true; }
 
+    @Override
+    int[] wordTagPositions() {
+      return new int[] { position1, position2 };
+    }
+
     @Override
     public String toString() {
       return (getClass().getName() + "(t" + position1 +
@@ -990,6 +990,7 @@ class ExtractorMidSentenceCap extends RareExtractor {
 
   @Override public boolean isLocal() { return false; }
   @Override public boolean isDynamic() { return true; }
+  @Override int[] wordTagPositions() { return new int[] { -1 }; }
 }
 
 
@@ -1031,6 +1032,7 @@ class ExtractorStartSentenceCap extends RareExtractor {
 
   @Override public boolean isLocal() { return false; }
   @Override public boolean isDynamic() { return true; }
+  @Override int[] wordTagPositions() { return new int[] { -1 }; }
 }
 
 
@@ -1073,6 +1075,7 @@ class ExtractorMidSentenceCapC extends RareExtractor {
 
   @Override public boolean isLocal() { return false; }
   @Override public boolean isDynamic() { return true; }
+  @Override int[] wordTagPositions() { return new int[] { -1 }; }
 }
 
 
@@ -1299,6 +1302,18 @@ class ExtractorsConjunction extends RareExtractor {
   @Override public boolean isLocal() { return isLocal; }
   @Override public boolean isDynamic() { return isDynamic; }
 
+  @Override
+  int[] wordTagPositions() {
+    int[] positions1 = extractor1.wordTagPositions();
+    int[] positions2 = extractor2.wordTagPositions();
+    if (positions1 == null || positions2 == null) {
+      return null;
+    }
+    int[] positions = Arrays.copyOf(positions1, positions1.length + positions2.length);
+    System.arraycopy(positions2, 0, positions, positions1.length, positions2.length);
+    return positions;
+  }
+
   @Override
   public String toString() {
     return StringUtils.getShortClassName(this) + '(' + extractor1 + ',' + extractor2 + ')';
@@ -51,6 +51,7 @@ import edu.stanford.nlp.tagger.io.TaggedFileRecord;
 import edu.stanford.nlp.util.DataFilePaths;
 import java.util.function.Function;
 import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.MemoryMonitor;
 import edu.stanford.nlp.util.ReflectionLoading;
 import edu.stanford.nlp.util.Timing;
 import edu.stanford.nlp.util.StringUtils;
@@ -60,6 +61,7 @@ import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 import java.lang.reflect.Method;
 import java.text.NumberFormat;
@@ -349,6 +351,11 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
   private double defaultScore;
   private double[] defaultScores = null;
 
+  private volatile CompiledTagFeatures[] compiledTagFeatures = null;
+
+  private final LongAdder tokensTagged = new LongAdder();
+  private final LongAdder bytesAllocated = new LongAdder();
+
   int leftContext;
   int rightContext;
 
@@ -536,6 +543,35 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
     return defaultScore > 0.0;
   }
 
+  /**
+   * Returns, for each extractor index into fAssociations, its feature
+   * values compiled for lookup by tag index, or null for extractors
+   * which look at more than tags.  These are built on first use and
+   * then shared by all the threads tagging with this tagger.
+   */
+  CompiledTagFeatures[] getCompiledTagFeatures() {
+    CompiledTagFeatures[] compiled = compiledTagFeatures;
+    if (compiled == null) {
+      compiled = initCompiledTagFeatures();
+    }
+    return compiled;
+  }
+
+  private synchronized CompiledTagFeatures[] initCompiledTagFeatures() {
+    if (compiledTagFeatures == null) {
+      int szCommon = extractors.size();
+      CompiledTagFeatures[] compiled = new CompiledTagFeatures[fAssociations.size()];
+      for (int i = 0; i < compiled.length; i++) {
+        Extractor e = (i < szCommon) ? extractors.get(i) : extractorsRare.get(i - szCommon);
+        if (e.isDynamic()) {
+          compiled[i] = CompiledTagFeatures.compile(e, fAssociations.get(i), tags, ySize);
+        }
+      }
+      compiledTagFeatures = compiled;
+    }
+    return compiledTagFeatures;
+  }
+
   /**
    * Figures out what tokenizer factory might be described by the
    * config.  If it's described by name in the config, uses reflection
@@ -958,15 +994,61 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    */
   @Override
   public List<List<TaggedWord>> process(List<? extends List<? extends HasWord>> sentences) {
-    List<List<TaggedWord>> taggedSentences = Generics.newArrayList();
+    return tagSentences(sentences);
+  }
+
+  /**
+   * Tags each of the sentences.  This is faster than calling
+   * {@link #tagSentence(List)} on them one at a time, since one
+   * {@link TestSentence} and its buffers and caches are used for all of
+   * them.  (To tag on several threads, keep a TestSentence per thread.)
+   *
+   * @param sentences The sentences to tag
+   * @return A List of sentences of TaggedWord, one for each input sentence
+   */
+  public List<List<TaggedWord>> tagSentences(List<? extends List<? extends HasWord>> sentences) {
+    return tagSentences(sentences, false);
+  }
 
+  /**
+   * Tags each of the sentences, reusing one {@link TestSentence} for all
+   * of them.  If reuseTags is true, the tags of words which are HasTag
+   * are kept rather than predicted.
+   *
+   * @param sentences The sentences to tag
+   * @param reuseTags Whether or not to reuse the given tags
+   * @return A List of sentences of TaggedWord, one for each input sentence
+   */
+  public List<List<TaggedWord>> tagSentences(List<? extends List<? extends HasWord>> sentences,
+                                             boolean reuseTags) {
+    List<List<TaggedWord>> taggedSentences = new ArrayList<List<TaggedWord>>(sentences.size());
     TestSentence testSentence = new TestSentence(this);
     for (List<? extends HasWord> sentence : sentences) {
-      taggedSentences.add(testSentence.tagSentence(sentence, false));
+      taggedSentences.add(testSentence.tagSentence(sentence, reuseTags));
     }
     return taggedSentences;
   }
 
+  /** Called by TestSentence after each sentence it tags. */
+  void recordTagging(int numTokens, long allocated) {
+    tokensTagged.add(numTokens);
+    bytesAllocated.add(allocated);
+  }
+
+  /**
+   * The average number of bytes allocated per word tagged, over all the
+   * sentences this tagger has tagged on any thread, or -1 if this JVM
+   * cannot measure allocation.  This is a measure of the garbage
+   * collection load from tagging.
+   */
+  public double allocatedBytesPerToken() {
+    if (MemoryMonitor.threadAllocatedBytes() < 0) {
+      return -1;
+    }
+    long tokens = tokensTagged.sum();
+    return tokens == 0 ? 0.0 : (double) bytesAllocated.sum() / tokens;
+  }
+
 
   /**
    * Returns a new Sentence that is a copy of the given sentence with all the
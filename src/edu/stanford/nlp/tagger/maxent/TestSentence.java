@@ -23,6 +23,7 @@ import edu.stanford.nlp.tagger.common.Tagger;
 import edu.stanford.nlp.util.ArrayUtils;
 import edu.stanford.nlp.util.ConfusionMatrix;
 import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.MemoryMonitor;
 import edu.stanford.nlp.util.Pair;
 
 import java.io.OutputStreamWriter;
@@ -35,6 +36,14 @@ import java.text.DecimalFormat;
 
 
 /**
+ * Tags sentences with a {@link MaxentTagger}.
+ * <br>
+ * A TestSentence can be used for any number of sentences, one after the
+ * other, and keeps its buffers and the scores of the local features of
+ * the words it has seen from one sentence to the next.  It is not
+ * threadsafe: for tagging on several threads, give each thread its own
+ * TestSentence and reuse it, rather than making a new one per sentence.
+ *
  * @author Kristina Toutanova
  * @author Michel Galley
  * @version 1.0
@@ -46,6 +55,9 @@ public class TestSentence implements SequenceModel {
   private static final String[] naTagArr = { naTag };
   protected static final boolean DBG = false;
   protected static final int kBestSize = 1;
+  // localScores is cleared when it has more words than this, so that a
+  // TestSentence kept for a long time does not keep growing
+  private static final int MAX_LOCAL_SCORES = 20000;
 
   protected final String tagSeparator;
   protected final String encoding;
@@ -70,6 +82,23 @@ public class TestSentence implements SequenceModel {
   protected volatile Map<String,double[]> localScores = Generics.newHashMap();
   protected volatile double[][] localContextScores;
 
+  // The possible tag indices at each position, counting the padding of
+  // leftWindow() positions; these are computed once per sentence
+  private int[][] possibleTagIds;
+  // While the scorer is running, the index of the tag set at each
+  // position of the sentence, kept in step with the tags in pairs
+  private int[] tagIds;
+  private CompiledTagFeatures[] compiledFeatures;
+  // The extractors of words and tags, looked up by tag index within the
+  // sentence; these are made on first use and reset for each sentence
+  private WordTagFeatures[] wordTagFeatures;
+  private int[] tagIdBuffer = new int[0];
+  private double[] dynamicScores;
+  private List<String> originalTagBuffer;
+
+  private long tokensTagged; // = 0;
+  private long allocatedBytes; // = 0;
+
   protected final MaxentTagger maxentTagger;
 
   public TestSentence(MaxentTagger maxentTagger) {
@@ -105,9 +134,14 @@ public class TestSentence implements SequenceModel {
    */
   public ArrayList<TaggedWord> tagSentence(List<? extends HasWord> s,
                                            boolean reuseTags) {
-    this.origWords = new ArrayList<HasWord>(s);
+    long allocatedBefore = MemoryMonitor.threadAllocatedBytes();
+    this.origWords = Collections.unmodifiableList(s);
     int sz = s.size();
-    this.sent = new ArrayList<String>(sz + 1);
+    if (sent == null) {
+      sent = new ArrayList<String>(sz + 1);
+    } else {
+      sent.clear();
+    }
     for (int j = 0; j < sz; j++) {
       if (maxentTagger.wordFunction != null) {
         sent.add(maxentTagger.wordFunction.apply(s.get(j).word()));
@@ -116,8 +150,14 @@ public class TestSentence implements SequenceModel {
       }
     }
     sent.add(Tagger.EOS_WORD);
+    this.originalTags = null;
     if (reuseTags) {
-      this.originalTags = new ArrayList<String>(sz + 1);
+      if (originalTagBuffer == null) {
+        originalTagBuffer = new ArrayList<String>(sz + 1);
+      } else {
+        originalTagBuffer.clear();
+      }
+      this.originalTags = originalTagBuffer;
       for (int j = 0; j < sz; ++j) {
         if (s.get(j) instanceof HasTag) {
           originalTags.add(((HasTag) s.get(j)).tag());
@@ -138,6 +178,12 @@ public class TestSentence implements SequenceModel {
         result.get(j).setWord(s.get(j).word());
       }
     }
+    tokensTagged += sz;
+    if (allocatedBefore >= 0) {
+      long allocated = MemoryMonitor.threadAllocatedBytes() - allocatedBefore;
+      allocatedBytes += allocated;
+      maxentTagger.recordTagging(sz, allocated);
+    }
     return result;
   }
 
@@ -148,7 +194,21 @@ public class TestSentence implements SequenceModel {
 
   protected void init() {
     //the eos are assumed already there
-    localContextScores = new double[size][];
+    // the buffers from earlier sentences are reused if they are big enough
+    if (localContextScores == null || localContextScores.length < size) {
+      localContextScores = new double[size][];
+    } else {
+      Arrays.fill(localContextScores, 0, size, null);
+    }
+    int padded = size + leftWindow() + rightWindow();
+    if (possibleTagIds == null || possibleTagIds.length < padded) {
+      possibleTagIds = new int[padded][];
+    } else {
+      Arrays.fill(possibleTagIds, 0, padded, null);
+    }
+    if (localScores.size() > MAX_LOCAL_SCORES) {
+      localScores.clear();
+    }
     for (int i = 0; i < size - 1; i++) {
       if (maxentTagger.dict.isUnknown(sent.get(i))) {
         numUnknown++;
@@ -219,7 +279,7 @@ public class TestSentence implements SequenceModel {
       // iterate over the sentence
       for (int current = 0; current < size; current++) {
         History h = new History(start, end, current + start, pairs, maxentTagger.extractors);
-        String[] tags = stringTagsAt(h.current - h.start + leftWindow());
+        int[] tags = getPossibleValues(h.current - h.start + leftWindow());
         double[] probs = getHistories(tags, h);
         ArrayMath.logNormalize(probs);
 
@@ -229,9 +289,8 @@ public class TestSentence implements SequenceModel {
 
         for (int j = 0; j < tags.length; j++) {
           // score the j-th tag
-          String tag = tags[j];
           boolean approximate = maxentTagger.hasApproximateScoring();
-          int tagindex = approximate ? maxentTagger.tags.getIndex(tag) : j;
+          int tagindex = approximate ? tags[j] : j;
           // System.err.println("Mapped from j="+ j + " " + tag + " to " + tagindex);
           probabilities[current][hyp][tagindex] = probs[j];
         }
@@ -315,16 +374,19 @@ public class TestSentence implements SequenceModel {
 
   private void runTagInference() {
     this.initializeScorer();
-
-    BestSequenceFinder ti = new ExactBestSequenceFinder();
-      //new BeamBestSequenceFinder(50);
-      //new KBestSequenceFinder()
-    int[] bestTags = ti.bestSequence(this);
-    finalTags = new String[bestTags.length];
-    for (int j = 0; j < size; j++) {
-      finalTags[j] = maxentTagger.tags.getTag(bestTags[j + leftWindow()]);
+    try {
+      BestSequenceFinder ti = new ExactBestSequenceFinder();
+        //new BeamBestSequenceFinder(50);
+        //new KBestSequenceFinder()
+      int[] bestTags = ti.bestSequence(this);
+      finalTags = new String[bestTags.length];
+      for (int j = 0; j < size; j++) {
+        finalTags[j] = maxentTagger.tags.getTag(bestTags[j + leftWindow()]);
+      }
+    } finally {
+      // even if tagging failed, so that this TestSentence can be reused
+      cleanUpScorer();
     }
-    cleanUpScorer();
   }
 
 
@@ -344,6 +406,7 @@ public class TestSentence implements SequenceModel {
         break;
       } //but shouldn't happen
       h.setTag(j - left, maxentTagger.tags.getTag(tags[j]));
+      tagIds[j - left] = tags[j];
     }
   }
 
@@ -353,6 +416,31 @@ public class TestSentence implements SequenceModel {
     for (int i = 0; i < size; i++)
       pairs.setWord(i,sent.get(i));
     endSizePairs += size;
+    if (tagIdBuffer.length < size) {
+      tagIdBuffer = new int[size];
+    }
+    tagIds = tagIdBuffer;
+    compiledFeatures = maxentTagger.getCompiledTagFeatures();
+    if (wordTagFeatures == null) {
+      wordTagFeatures = createWordTagFeatures();
+    }
+    for (WordTagFeatures features : wordTagFeatures) {
+      if (features != null) {
+        features.reset(size);
+      }
+    }
+  }
+
+  private WordTagFeatures[] createWordTagFeatures() {
+    int szCommon = maxentTagger.extractors.size();
+    WordTagFeatures[] features = new WordTagFeatures[compiledFeatures.length];
+    for (int i = 0; i < features.length; i++) {
+      Extractor e = (i < szCommon) ? maxentTagger.extractors.get(i) : maxentTagger.extractorsRare.get(i - szCommon);
+      if (e.isDynamic() && compiledFeatures[i] == null) {
+        features[i] = WordTagFeatures.create(e, maxentTagger.fAssociations.get(i), maxentTagger.ySize);
+      }
+    }
+    return features;
   }
 
 
@@ -361,6 +449,7 @@ public class TestSentence implements SequenceModel {
    */
   protected void cleanUpScorer() {
     revert(0);
+    tagIds = null;
   }
 
   // This scores the current assignment in PairsHolder at
@@ -373,15 +462,13 @@ public class TestSentence implements SequenceModel {
   }
 
   private double[] getExactScores(History h) {
-    String[] tags = stringTagsAt(h.current - h.start + leftWindow());
+    int[] tags = getPossibleValues(h.current - h.start + leftWindow());
     double[] histories = getHistories(tags, h); // log score for each tag
     ArrayMath.logNormalize(histories);
     double[] scores = new double[tags.length];
     for (int j = 0; j < tags.length; j++) {
       // score the j-th tag
-      String tag = tags[j];
-      int tagindex = maxentTagger.tags.getIndex(tag);
-      scores[j] = histories[tagindex];
+      scores[j] = histories[tags[j]];
     }
     return scores;
   }
@@ -390,7 +477,7 @@ public class TestSentence implements SequenceModel {
   // (e.g., apple_CC) gets a default (constant) score instead of its exact score.
   // The scores of all other tags are computed exactly.
   private double[] getApproximateScores(History h) {
-    String[] tags = stringTagsAt(h.current - h.start + leftWindow());
+    int[] tags = getPossibleValues(h.current - h.start + leftWindow());
     double[] scores = getHistories(tags, h); // log score for each active tag, unnormalized
 
     // Number of tags that get assigned a default score:
@@ -404,23 +491,23 @@ public class TestSentence implements SequenceModel {
   }
 
   // This precomputes scores of local features (localScores).
-  protected double[] getHistories(String[] tags, History h) {
+  // With exact scoring, the array returned is reused by the next call.
+  protected double[] getHistories(int[] tags, History h) {
     boolean rare = maxentTagger.isRare(ExtractorFrames.cWord.extract(h));
     Extractors ex = maxentTagger.extractors, exR = maxentTagger.extractorsRare;
+    boolean approximate = maxentTagger.hasApproximateScoring();
     String w = pairs.getWord(h.current);
     double[] lS, lcS;
-    lS = localScores.get(w);
-    if (lS == null) {
+    if (approximate && originalTags != null && originalTags.get(h.current - h.start) != null) {
+      // Approximate scores are only for the candidate tags, and a forced
+      // tag may differ from one sentence to the next, so the scores of a
+      // word with a forced tag are neither cached nor taken from the
+      // cache.  (Exact scores are for all the tags, so they always fit.)
       lS = getHistories(tags, h, ex.local, rare ? exR.local : null);
-      localScores.put(w,lS);
-    } else if (lS.length != tags.length) {
-      // This case can occur when a word was given a specific forced
-      // tag, and then later it shows up without the forced tag.
-      // TODO: if a word is given a forced tag, we should always get
-      // its features rather than use the cache, just in case the tag
-      // given is not the same tag as before
-      lS = getHistories(tags, h, ex.local, rare ? exR.local : null);
-      if (tags.length > 1) {
+    } else {
+      lS = localScores.get(w);
+      if (lS == null) {
+        lS = getHistories(tags, h, ex.local, rare ? exR.local : null);
         localScores.put(w,lS);
       }
     }
@@ -429,46 +516,52 @@ public class TestSentence implements SequenceModel {
       localContextScores[h.current] = lcS;
       ArrayMath.pairwiseAddInPlace(lcS,lS);
     }
-    double[] totalS = getHistories(tags, h, ex.dynamic, rare ? exR.dynamic : null);
+    double[] totalS;
+    if (approximate) {
+      totalS = getApproximateHistories(tags, h, ex.dynamic, rare ? exR.dynamic : null);
+    } else {
+      // called once per tag window, so reuse one array
+      if (dynamicScores == null) {
+        dynamicScores = new double[maxentTagger.ySize];
+      } else {
+        Arrays.fill(dynamicScores, 0.0);
+      }
+      totalS = getExactHistories(h, ex.dynamic, rare ? exR.dynamic : null, dynamicScores);
+    }
     ArrayMath.pairwiseAddInPlace(totalS,lcS);
     return totalS;
   }
 
-  private double[] getHistories(String[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
+  private double[] getHistories(int[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
     if(maxentTagger.hasApproximateScoring())
       return getApproximateHistories(tags, h, extractors, extractorsRare);
-    return getExactHistories(h, extractors, extractorsRare);
+    return getExactHistories(h, extractors, extractorsRare, new double[maxentTagger.ySize]);
   }
 
-  private double[] getExactHistories(History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
-    double[] scores = new double[maxentTagger.ySize];
+  // Adds the scores of the features for each tag to scores, which is returned
+  private double[] getExactHistories(History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare, double[] scores) {
     int szCommon = maxentTagger.extractors.size();
+    double[] lambda = maxentTagger.getLambdaSolve().lambda;
 
     for (Pair<Integer,Extractor> e : extractors) {
-      int kf = e.first();
-      Extractor ex = e.second();
-      String val = ex.extract(h);
-      int[] fAssociations = maxentTagger.fAssociations.get(kf).get(val);
+      int[] fAssociations = getAssociations(h, e.first(), e.second());
       if (fAssociations != null) {
         for (int i = 0; i < maxentTagger.ySize; i++) {
           int fNum = fAssociations[i];
           if (fNum > -1) {
-            scores[i] += maxentTagger.getLambdaSolve().lambda[fNum];
+            scores[i] += lambda[fNum];
           }
         }
       }
     }
     if (extractorsRare != null) {
       for (Pair<Integer,Extractor> e : extractorsRare) {
-        int kf = e.first();
-        Extractor ex = e.second();
-        String val = ex.extract(h);
-        int[] fAssociations = maxentTagger.fAssociations.get(kf+szCommon).get(val);
+        int[] fAssociations = getAssociations(h, e.first() + szCommon, e.second());
         if (fAssociations != null) {
           for (int i = 0; i < maxentTagger.ySize; i++) {
             int fNum = fAssociations[i];
             if (fNum > -1) {
-              scores[i] += maxentTagger.getLambdaSolve().lambda[fNum];
+              scores[i] += lambda[fNum];
             }
           }
         }
@@ -478,40 +571,31 @@ public class TestSentence implements SequenceModel {
   }
 
   // Returns an unnormalized score (in log space) for each tag
-  private double[] getApproximateHistories(String[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
+  private double[] getApproximateHistories(int[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
 
     double[] scores = new double[tags.length];
     int szCommon = maxentTagger.extractors.size();
+    double[] lambda = maxentTagger.getLambdaSolve().lambda;
 
     for (Pair<Integer,Extractor> e : extractors) {
-      int kf = e.first();
-      Extractor ex = e.second();
-      String val = ex.extract(h);
-      int[] fAssociations = maxentTagger.fAssociations.get(kf).get(val);
+      int[] fAssociations = getAssociations(h, e.first(), e.second());
       if (fAssociations != null) {
         for (int j = 0; j < tags.length; j++) {
-          String tag = tags[j];
-          int tagIndex = maxentTagger.tags.getIndex(tag);
-          int fNum = fAssociations[tagIndex];
+          int fNum = fAssociations[tags[j]];
           if (fNum > -1) {
-            scores[j] += maxentTagger.getLambdaSolve().lambda[fNum];
+            scores[j] += lambda[fNum];
           }
         }
       }
     }
     if (extractorsRare != null) {
       for (Pair<Integer,Extractor> e : extractorsRare) {
-        int kf = e.first();
-        Extractor ex = e.second();
-        String val = ex.extract(h);
-        int[] fAssociations = maxentTagger.fAssociations.get(szCommon+kf).get(val);
+        int[] fAssociations = getAssociations(h, szCommon + e.first(), e.second());
         if (fAssociations != null) {
           for (int j = 0; j < tags.length; j++) {
-            String tag = tags[j];
-            int tagIndex = maxentTagger.tags.getIndex(tag);
-            int fNum = fAssociations[tagIndex];
+            int fNum = fAssociations[tags[j]];
             if (fNum > -1) {
-              scores[j] += maxentTagger.getLambdaSolve().lambda[fNum];
+              scores[j] += lambda[fNum];
             }
           }
         }
@@ -520,6 +604,23 @@ public class TestSentence implements SequenceModel {
     return scores;
   }
 
+  // Finds the feature weight indices for the value of extractor kf at h.
+  // While the scorer is running, extractors of tags alone are looked up
+  // by the tag indices in tagIds, without building their String value,
+  // and extractors of words and tags build it once per sentence position
+  // and combination of the tags they look at.
+  private int[] getAssociations(History h, int kf, Extractor ex) {
+    if (tagIds != null) {
+      if (compiledFeatures[kf] != null) {
+        return compiledFeatures[kf].get(h, tagIds);
+      }
+      if (wordTagFeatures[kf] != null) {
+        return wordTagFeatures[kf].get(h, tagIds);
+      }
+    }
+    return maxentTagger.fAssociations.get(kf).get(ex.extract(h));
+  }
+
 
   /**
    * This method should be called after the sentence has been tagged.
@@ -653,6 +754,22 @@ public class TestSentence implements SequenceModel {
     }
   }
 
+  /** The number of words this TestSentence has tagged. */
+  public long tokensTagged() {
+    return tokensTagged;
+  }
+
+  /**
+   * The average number of bytes allocated per word tagged by this
+   * TestSentence, or -1 if this JVM cannot measure allocation.
+   */
+  public double allocatedBytesPerToken() {
+    if (MemoryMonitor.threadAllocatedBytes() < 0) {
+      return -1;
+    }
+    return tokensTagged == 0 ? 0.0 : (double) allocatedBytes / tokensTagged;
+  }
+
   /*
    * Implementation of the TagScorer interface follows
    */
@@ -673,14 +790,21 @@ public class TestSentence implements SequenceModel {
   }
 
 
+  /**
+   * Returns the indices of the possible tags at pos.  These are
+   * computed once per sentence, so the array returned must not be changed.
+   */
   @Override
   public int[] getPossibleValues(int pos) {
-    String[] arr1 = stringTagsAt(pos);
-    int[] arr = new int[arr1.length];
-    for (int i = 0; i < arr.length; i++) {
-      arr[i] = maxentTagger.tags.getIndex(arr1[i]);
+    int[] arr = possibleTagIds[pos];
+    if (arr == null) {
+      String[] arr1 = stringTagsAt(pos);
+      arr = new int[arr1.length];
+      for (int i = 0; i < arr.length; i++) {
+        arr[i] = maxentTagger.tags.getIndex(arr1[i]);
+      }
+      possibleTagIds[pos] = arr;
     }
-
     return arr;
   }
 
@@ -713,7 +837,7 @@ public class TestSentence implements SequenceModel {
     return getScores(history);
   }
 
-  // todo [cdm 2013]: Tagging could be sped up quite a bit here if we cached int arrays of tags by index, not Strings
+  // getPossibleValues() caches these as int arrays of tags by index
   protected String[] stringTagsAt(int pos) {
     if ((pos < leftWindow()) || (pos >= size + leftWindow())) {
       return naTagArr;
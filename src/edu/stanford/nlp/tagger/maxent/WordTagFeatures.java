@@ -0,0 +1,126 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import edu.stanford.nlp.util.IntIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The feature values of one dynamic {@link Extractor} which looks at words
+ * as well as tags (see {@link Extractor#wordTagPositions()}), such as
+ * ExtractorWordTag or ExtractorMidSentenceCap, looked up by tag index
+ * while one sentence is tagged.
+ * <br>
+ * The words of a sentence don't change while it is tagged, so at a given
+ * position the value depends only on the tags at the extractor's
+ * positions.  The Viterbi search evaluates the extractor once per tag
+ * window, and many windows agree on those tags: ExtractorWordTag(0, -1)
+ * sees the same value for every tag two words back.  So the position and
+ * the tag indices are packed into an int, as in {@link CompiledTagFeatures},
+ * and the weight index array for the String value is looked up only the
+ * first time that key is seen in the sentence.  Since the String path
+ * fills in every entry, the features are the same as on that path.
+ * <br>
+ * Instances are reused from sentence to sentence but are not thread safe;
+ * each {@link TestSentence} has its own.
+ */
+class WordTagFeatures {
+
+  /** The slot of a key whose value has no features */
+  private static final int NONE = -2;
+
+  private final Extractor extractor;
+  private final Map<String, int[]> fAssociations;
+  /** The distinct tag positions the extractor looks at */
+  private final int[] positions;
+  /** The number of tag indices, plus one for "NA" */
+  private final int radix;
+  /** The number of combinations of tag indices at the positions */
+  private final int combinations;
+
+  private IntIntHashMap index;
+  private final List<int[]> associations = new ArrayList<int[]>();
+
+  private WordTagFeatures(Extractor extractor, Map<String, int[]> fAssociations,
+                          int[] positions, int radix, int combinations) {
+    this.extractor = extractor;
+    this.fAssociations = fAssociations;
+    this.positions = positions;
+    this.radix = radix;
+    this.combinations = combinations;
+  }
+
+  /**
+   * Returns a cache for the values of {@code extractor}, or null if its
+   * value does not depend on just the words and the tags at some
+   * positions, or it looks at too many tags.
+   *
+   * @param extractor The extractor
+   * @param fAssociations Its map from feature values to weight indices by tag
+   * @param numTags The number of tags
+   */
+  static WordTagFeatures create(Extractor extractor, Map<String, int[]> fAssociations, int numTags) {
+    int[] positions = extractor.wordTagPositions();
+    if (positions == null || positions.length == 0) {
+      return null;
+    }
+    positions = CompiledTagFeatures.distinct(positions);
+    int radix = numTags + 1;
+    long combinations = 1;
+    for (int i = 0; i < positions.length; i++) {
+      combinations *= radix;
+      if (combinations > CompiledTagFeatures.MAX_COMBINATIONS) {
+        return null;
+      }
+    }
+    return new WordTagFeatures(extractor, fAssociations, positions, radix, (int) combinations);
+  }
+
+  /**
+   * Forgets the values of the last sentence.
+   *
+   * @param size The length of the next sentence
+   */
+  void reset(int size) {
+    associations.clear();
+    // keys for very long sentences would not fit in an int, and those
+    // are just looked up by String
+    index = ((long) size * combinations > Integer.MAX_VALUE) ? null : new IntIntHashMap(4 * size, -1);
+  }
+
+  /**
+   * Returns the weight indices by tag for the value of the extractor at
+   * {@code h}, or null if that value has no features.
+   *
+   * @param h The history, which must be in the sentence last passed to
+   *          {@link #reset}
+   * @param tagIds The index of the tag at each position of the sentence,
+   *               counted from {@code h.start}
+   */
+  int[] get(History h, int[] tagIds) {
+    if (index == null) {
+      return fAssociations.get(extractor.extract(h));
+    }
+    int key = 0;
+    for (int i = positions.length - 1; i >= 0; i--) {
+      int p = h.current + positions[i];
+      int id = (p < h.start || p > h.end) ? radix - 1 : tagIds[p - h.start];
+      key = key * radix + id;
+    }
+    key += (h.current - h.start) * combinations;
+    int slot = index.get(key);
+    if (slot == -1) {
+      int[] association = fAssociations.get(extractor.extract(h));
+      if (association == null) {
+        slot = NONE;
+      } else {
+        slot = associations.size();
+        associations.add(association);
+      }
+      index.put(key, slot);
+    }
+    return slot == NONE ? null : associations.get(slot);
+  }
+
+}
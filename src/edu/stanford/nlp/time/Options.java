@@ -30,6 +30,10 @@ public class Options {
   boolean includeRange = false;
   // Look for document date in the document text (if not provided)
   boolean searchForDocDate = false;
+  // Only apply token rules to sentences with the words they need (see TokenTriggerIndex)
+  boolean useRuleTriggers = true;
+  // Apply all rules anyway, and warn about rules that matched without being triggered
+  boolean verifyRuleTriggers = false;
   // TODO: Add default country for holidays and default time format
   // would want a per document default as well
   String grammarFilename = null;
@@ -63,6 +67,8 @@ public class Options {
     grammarFilename = props.getProperty(name + ".rules", DEFAULT_GRAMMAR_FILES);
 
     searchForDocDate = PropertiesUtils.getBool(props, name + ".searchForDocDate", searchForDocDate);
+    useRuleTriggers = PropertiesUtils.getBool(props, name + ".useRuleTriggers", useRuleTriggers);
+    verifyRuleTriggers = PropertiesUtils.getBool(props, name + ".verifyRuleTriggers", verifyRuleTriggers);
 
     String binderProperty = props.getProperty(name + ".binders");
     int nBinders;
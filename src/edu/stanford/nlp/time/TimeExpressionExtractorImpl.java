@@ -63,6 +63,8 @@ public class TimeExpressionExtractorImpl implements TimeExpressionExtractor {
     timexPatterns = new GenericTimeExpressionPatterns(options);
     this.expressionExtractor = timexPatterns.createExtractor();
     this.expressionExtractor.setLogger(logger);
+    this.expressionExtractor.setUseRuleTriggers(options.useRuleTriggers);
+    this.expressionExtractor.setVerifyRuleTriggers(options.verifyRuleTriggers);
   }
 
   @Override
@@ -0,0 +1,215 @@
+package edu.stanford.nlp.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A map from primitive {@code int} keys to primitive {@code int} values,
+ * stored in a single open-addressing (linear probing) table.
+ * <br>
+ * This exists for hot inner loops where a {@code Map<Integer, Integer>}
+ * spends most of its time boxing, hashing and chasing pointers.  It
+ * supports only insertion and lookup: there is no removal, which keeps
+ * probing trivial.  Lookups of absent keys return the
+ * {@link #missingValue()} given at construction time.
+ * <br>
+ * Concurrent reads are safe once the map is no longer being written to.
+ */
+public class IntIntHashMap implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Marks an empty slot in {@link #keys}; a real key equal to it is kept in {@link #hasEmptyKey} */
+  private static final int EMPTY = Integer.MIN_VALUE;
+
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private int[] keys;
+  private int[] values;
+  private int mask;
+  private int size;
+
+  private boolean hasEmptyKey = false;
+  private int emptyKeyValue;
+
+  private final int missingValue;
+
+  public IntIntHashMap() {
+    this(16, -1);
+  }
+
+  /**
+   * @param expectedSize Number of entries the map should hold without resizing
+   * @param missingValue Value returned by {@link #get(int)} for keys not in the map
+   */
+  public IntIntHashMap(int expectedSize, int missingValue) {
+    this.missingValue = missingValue;
+    allocate(tableSizeFor(expectedSize));
+  }
+
+  private static int tableSizeFor(int expectedSize) {
+    int needed = (int) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR);
+    int capacity = Integer.highestOneBit(Math.max(needed, 2) - 1) << 1;
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Map too large: " + expectedSize);
+    }
+    return capacity;
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    Arrays.fill(keys, EMPTY);
+    values = new int[capacity];
+    mask = capacity - 1;
+  }
+
+  /** Spreads the bits of the key so that sequential ids do not cluster. */
+  private static int slot(int key, int mask) {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  public int missingValue() {
+    return missingValue;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns the value for {@code key}, or {@link #missingValue()} if
+   * there is no such key.
+   */
+  public int get(int key) {
+    if (key == EMPTY) {
+      return hasEmptyKey ? emptyKeyValue : missingValue;
+    }
+    final int[] keys = this.keys;
+    final int mask = this.mask;
+    int i = slot(key, mask);
+    while (true) {
+      int k = keys[i];
+      if (k == key) {
+        return values[i];
+      }
+      if (k == EMPTY) {
+        return missingValue;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  public boolean containsKey(int key) {
+    if (key == EMPTY) {
+      return hasEmptyKey;
+    }
+    int i = slot(key, mask);
+    while (true) {
+      int k = keys[i];
+      if (k == key) {
+        return true;
+      }
+      if (k == EMPTY) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * Associates {@code value} with {@code key}.
+   *
+   * @return The previous value for the key, or {@link #missingValue()} if there was none
+   */
+  public int put(int key, int value) {
+    if (key == EMPTY) {
+      int old = hasEmptyKey ? emptyKeyValue : missingValue;
+      if (!hasEmptyKey) {
+        ++size;
+      }
+      hasEmptyKey = true;
+      emptyKeyValue = value;
+      return old;
+    }
+    int i = slot(key, mask);
+    while (true) {
+      int k = keys[i];
+      if (k == key) {
+        int old = values[i];
+        values[i] = value;
+        return old;
+      }
+      if (k == EMPTY) {
+        keys[i] = key;
+        values[i] = value;
+        ++size;
+        if (size > keys.length * LOAD_FACTOR) {
+          rehash(keys.length << 1);
+        }
+        return missingValue;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  private void rehash(int capacity) {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(capacity);
+    for (int j = 0; j < oldKeys.length; ++j) {
+      int key = oldKeys[j];
+      if (key != EMPTY) {
+        int i = slot(key, mask);
+        while (keys[i] != EMPTY) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = oldValues[j];
+      }
+    }
+  }
+
+  /**
+   * Returns the keys of this map in no particular order.
+   */
+  public int[] keys() {
+    int[] result = new int[size];
+    int n = 0;
+    if (hasEmptyKey) {
+      result[n++] = EMPTY;
+    }
+    for (int key : keys) {
+      if (key != EMPTY) {
+        result[n++] = key;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Rough number of bytes used by the table arrays, for memory reports.
+   */
+  public long sizeInBytes() {
+    return 8L * keys.length;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    boolean first = true;
+    for (int key : keys()) {
+      if (!first) {
+        sb.append(", ");
+      }
+      first = false;
+      sb.append(key).append('=').append(get(key));
+    }
+    return sb.append('}').toString();
+  }
+
+}
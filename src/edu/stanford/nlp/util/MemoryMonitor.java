@@ -4,6 +4,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 
 /**
@@ -14,6 +16,9 @@ public class MemoryMonitor {
 
   public static final int MAX_SWAPS = 50;
 
+  private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+  private static final boolean MEASURE_ALLOCATION = isAllocationMeasurable();
+
   protected long lastPoll;
   protected long pollEvery;
   protected int freeMem;
@@ -40,6 +45,25 @@ public class MemoryMonitor {
     pollEvery = millis;
   }
 
+  private static boolean isAllocationMeasurable() {
+    try {
+      return THREAD_BEAN instanceof com.sun.management.ThreadMXBean &&
+          ((com.sun.management.ThreadMXBean) THREAD_BEAN).isThreadAllocatedMemoryEnabled();
+    } catch (LinkageError | UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the number of bytes allocated so far by the current thread,
+   * or -1 if this JVM cannot measure it.  The difference between two
+   * calls is what the code in between allocated.
+   */
+  public static long threadAllocatedBytes() {
+    return MEASURE_ALLOCATION ?
+        ((com.sun.management.ThreadMXBean) THREAD_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+  }
+
   public int getMaxMemory() {
     return (int) (r.maxMemory() / 1024);
   }
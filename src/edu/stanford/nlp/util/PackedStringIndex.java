@@ -0,0 +1,494 @@
+package edu.stanford.nlp.util;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable {@code Index<String>} for the large, frozen feature
+ * indices of trained classifiers.
+ * <br>
+ * A {@link HashIndex} holding millions of features keeps a String
+ * object, a boxed Integer and a HashMap entry per feature.  This index
+ * instead keeps all of its keys as UTF-8 bytes in one contiguous buffer,
+ * together with int arrays of key offsets and hash codes and an
+ * open-addressing table from hash to index, all stored in that same
+ * buffer.  The buffer is allocated outside the Java heap, or is a
+ * read-only memory mapping of a file written by {@link #save(String)},
+ * in which case several JVMs loading the same model share its pages.
+ * <br>
+ * Keys are encoded one UTF-16 char at a time (as in Java's modified
+ * UTF-8), so that every String round-trips, including ones with
+ * unpaired surrogates.  For ordinary text this is plain UTF-8.
+ * <br>
+ * {@link #indexOf(String)} hashes the query with {@code String.hashCode()}
+ * and compares candidates byte by byte, without allocating.
+ * {@link #get(int)} decodes and returns a new String on every call.
+ * <br>
+ * The index is always locked: adding a new key leaves it unchanged and
+ * returns -1 or {@code false}, as for a locked {@link HashIndex}, and
+ * {@link #unlock()} and {@link #clear()} throw
+ * {@link UnsupportedOperationException}.  Since nothing is ever written
+ * after construction, reads need no locking and are safe from any number
+ * of threads.  Java serialization writes an equivalent locked
+ * {@link HashIndex}, so serialized models keep their usual format.
+ */
+public class PackedStringIndex extends AbstractCollection<String> implements Index<String>, RandomAccess {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final byte[] MAGIC = "STRINDEX".getBytes(StandardCharsets.US_ASCII);
+  private static final int VERSION = 1;
+  /** Magic, version, size, table capacity and number of key bytes */
+  private static final int HEADER_SIZE = MAGIC.length + 4 * 4;
+
+  /** The whole index, in the format written by {@link #save(String)} */
+  private final transient ByteBuffer buffer;
+
+  private final transient int size;
+  /** Start of each key in {@link #keys}; the last entry is the end of the last key */
+  private final transient IntBuffer offsets;
+  /** String.hashCode() of each key */
+  private final transient IntBuffer hashes;
+  /** Open-addressing table of key index + 1; 0 marks an empty slot */
+  private final transient IntBuffer slots;
+  private final transient int mask;
+  private final transient ByteBuffer keys;
+
+  /**
+   * Builds a packed copy of the given index, which should be locked or
+   * otherwise no longer changing.  The keys keep their indices.
+   *
+   * @throws IllegalArgumentException If the index has a null or
+   *     duplicate key, or its keys do not fit in 2GB
+   */
+  public PackedStringIndex(Index<String> index) {
+    int size = index.size();
+    long numBytes = 0;
+    for (int i = 0; i < size; ++i) {
+      String key = index.get(i);
+      if (key == null) {
+        throw new IllegalArgumentException("Cannot pack a null key at index " + i);
+      }
+      numBytes += encodedLength(key);
+    }
+    int capacity = tableSizeFor(size);
+    long total = HEADER_SIZE + 4L * (2L * size + 1 + capacity) + numBytes;
+    if (total > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Index too large to pack: " + total + " bytes");
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect((int) total).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(size);
+    buffer.putInt(capacity);
+    buffer.putInt((int) numBytes);
+    int keyStart = (int) (total - numBytes);
+    int hashStart = HEADER_SIZE + 4 * (size + 1);
+    int slotStart = hashStart + 4 * size;
+    int mask = capacity - 1;
+    int offset = 0;
+    for (int i = 0; i < size; ++i) {
+      String key = index.get(i);
+      int hash = key.hashCode();
+      buffer.putInt(HEADER_SIZE + 4 * i, offset);
+      buffer.putInt(hashStart + 4 * i, hash);
+      int slot = slot(hash, mask);
+      while (true) {
+        int entry = buffer.getInt(slotStart + 4 * slot);
+        if (entry == 0) {
+          break;
+        }
+        if (entry > 0 && key.equals(index.get(entry - 1))) {
+          throw new IllegalArgumentException("Duplicate key at indices " + (entry - 1) + " and " + i + ": " + key);
+        }
+        slot = (slot + 1) & mask;
+      }
+      buffer.putInt(slotStart + 4 * slot, i + 1);
+      offset = encode(key, buffer, keyStart + offset) - keyStart;
+    }
+    buffer.putInt(HEADER_SIZE + 4 * size, offset);
+    buffer.clear();
+
+    this.buffer = buffer;
+    this.size = size;
+    this.mask = mask;
+    this.offsets = intView(buffer, HEADER_SIZE, size + 1);
+    this.hashes = intView(buffer, hashStart, size);
+    this.slots = intView(buffer, slotStart, capacity);
+    this.keys = byteView(buffer, keyStart, (int) numBytes);
+  }
+
+  /** Wraps a buffer in the format written by {@link #save(String)}. */
+  private PackedStringIndex(ByteBuffer buffer) {
+    buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.limit() < HEADER_SIZE) {
+      throw new IllegalArgumentException("Not a packed string index");
+    }
+    byte[] magic = new byte[MAGIC.length];
+    ((ByteBuffer) buffer.duplicate().clear()).get(magic);
+    if ( ! Arrays.equals(magic, MAGIC)) {
+      throw new IllegalArgumentException("Not a packed string index");
+    }
+    int version = buffer.getInt(MAGIC.length);
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unsupported packed string index version " + version);
+    }
+    int size = buffer.getInt(MAGIC.length + 4);
+    int capacity = buffer.getInt(MAGIC.length + 8);
+    int numBytes = buffer.getInt(MAGIC.length + 12);
+    long total = HEADER_SIZE + 4L * (2L * size + 1 + capacity) + numBytes;
+    if (size < 0 || capacity <= size || Integer.bitCount(capacity) != 1 || numBytes < 0 || total != buffer.limit()) {
+      throw new IllegalArgumentException("Corrupt packed string index");
+    }
+    int hashStart = HEADER_SIZE + 4 * (size + 1);
+    int slotStart = hashStart + 4 * size;
+
+    this.buffer = buffer;
+    this.size = size;
+    this.mask = capacity - 1;
+    this.offsets = intView(buffer, HEADER_SIZE, size + 1);
+    this.hashes = intView(buffer, hashStart, size);
+    this.slots = intView(buffer, slotStart, capacity);
+    this.keys = byteView(buffer, slotStart + 4 * capacity, numBytes);
+  }
+
+  private static int tableSizeFor(int size) {
+    // at most half full, and always at least one empty slot
+    return Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+  }
+
+  /** Same spreading of hash bits as {@link IntIntHashMap} */
+  private static int slot(int hash, int mask) {
+    int h = hash * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private static IntBuffer intView(ByteBuffer buffer, int start, int count) {
+    return byteView(buffer, start, 4 * count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+  }
+
+  private static ByteBuffer byteView(ByteBuffer buffer, int start, int length) {
+    ByteBuffer view = buffer.duplicate();
+    view.position(start);
+    view.limit(start + length);
+    return view.slice();
+  }
+
+  private static int encodedLength(String s) {
+    int length = 0;
+    for (int i = 0, n = s.length(); i < n; ++i) {
+      char c = s.charAt(i);
+      length += c < 0x80 ? 1 : (c < 0x800 ? 2 : 3);
+    }
+    return length;
+  }
+
+  /** Writes the encoding of s at the given position and returns the position after it. */
+  private static int encode(String s, ByteBuffer out, int pos) {
+    for (int i = 0, n = s.length(); i < n; ++i) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        out.put(pos++, (byte) c);
+      } else if (c < 0x800) {
+        out.put(pos++, (byte) (0xC0 | (c >> 6)));
+        out.put(pos++, (byte) (0x80 | (c & 0x3F)));
+      } else {
+        out.put(pos++, (byte) (0xE0 | (c >> 12)));
+        out.put(pos++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+        out.put(pos++, (byte) (0x80 | (c & 0x3F)));
+      }
+    }
+    return pos;
+  }
+
+  /**
+   * Whether the key with the given index is equal to the given chars,
+   * decoding the stored bytes as it goes.
+   */
+  public boolean keyEquals(int i, CharSequence s) {
+    checkIndex(i);
+    int pos = offsets.get(i);
+    int end = offsets.get(i + 1);
+    int n = s.length();
+    // each char takes at least one and at most three bytes
+    if (n > end - pos || 3 * n < end - pos) {
+      return false;
+    }
+    final ByteBuffer keys = this.keys;
+    for (int j = 0; j < n; ++j) {
+      if (pos >= end) {
+        return false;
+      }
+      int b = keys.get(pos) & 0xFF;
+      char c;
+      if (b < 0x80) {
+        c = (char) b;
+        pos += 1;
+      } else if (b < 0xE0) {
+        c = (char) (((b & 0x1F) << 6) | (keys.get(pos + 1) & 0x3F));
+        pos += 2;
+      } else {
+        c = (char) (((b & 0x0F) << 12) | ((keys.get(pos + 1) & 0x3F) << 6) | (keys.get(pos + 2) & 0x3F));
+        pos += 3;
+      }
+      if (c != s.charAt(j)) {
+        return false;
+      }
+    }
+    return pos == end;
+  }
+
+  private void checkIndex(int i) {
+    if (i < 0 || i >= size) {
+      throw new ArrayIndexOutOfBoundsException("Index " + i + " outside the bounds [0," + size + ")");
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the key with the given index, decoded into a new String.
+   */
+  @Override
+  public String get(int i) {
+    checkIndex(i);
+    int pos = offsets.get(i);
+    int end = offsets.get(i + 1);
+    char[] chars = new char[end - pos];
+    int n = 0;
+    final ByteBuffer keys = this.keys;
+    while (pos < end) {
+      int b = keys.get(pos) & 0xFF;
+      if (b < 0x80) {
+        chars[n++] = (char) b;
+        pos += 1;
+      } else if (b < 0xE0) {
+        chars[n++] = (char) (((b & 0x1F) << 6) | (keys.get(pos + 1) & 0x3F));
+        pos += 2;
+      } else {
+        chars[n++] = (char) (((b & 0x0F) << 12) | ((keys.get(pos + 1) & 0x3F) << 6) | (keys.get(pos + 2) & 0x3F));
+        pos += 3;
+      }
+    }
+    return new String(chars, 0, n);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int indexOf(String o) {
+    if (o == null) {
+      return -1;
+    }
+    int hash = o.hashCode();
+    int slot = slot(hash, mask);
+    while (true) {
+      int entry = slots.get(slot);
+      if (entry == 0) {
+        return -1;
+      }
+      int i = entry - 1;
+      if (hashes.get(i) == hash && keyEquals(i, o)) {
+        return i;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /** Returns the index of the key, or -1 since new keys cannot be added. */
+  @Override
+  public int addToIndex(String o) {
+    return indexOf(o);
+  }
+
+  @Override
+  @Deprecated
+  public int indexOf(String o, boolean add) {
+    return indexOf(o);
+  }
+
+  /** Returns an unmodifiable list view of the keys; its elements are decoded on access. */
+  @Override
+  public List<String> objectsList() {
+    return new KeyList();
+  }
+
+  @Override
+  public Collection<String> objects(final int[] indices) {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return PackedStringIndex.this.get(indices[index]);
+      }
+
+      @Override
+      public int size() {
+        return indices.length;
+      }
+    };
+  }
+
+  /** Always true: a packed index cannot be changed. */
+  @Override
+  public boolean isLocked() {
+    return true;
+  }
+
+  /** Does nothing, as the index is always locked. */
+  @Override
+  public void lock() {
+  }
+
+  @Override
+  public void unlock() {
+    throw new UnsupportedOperationException("A PackedStringIndex cannot be unlocked");
+  }
+
+  /** Writes the keys in the same text format as {@link HashIndex#saveToWriter(Writer)}. */
+  @Override
+  public void saveToWriter(Writer out) throws IOException {
+    for (int i = 0; i < size; i++) {
+      out.write(i + "=" + get(i) + '\n');
+    }
+  }
+
+  /** Writes the keys in the same text format as {@link HashIndex#saveToFilename(String)}. */
+  @Override
+  public void saveToFilename(String file) {
+    try (PrintWriter pw = IOUtils.getPrintWriter(file)) {
+      saveToWriter(pw);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof String && indexOf((String) o) >= 0;
+  }
+
+  /** Returns false unless the key is already present; nothing is added either way. */
+  @Override
+  public boolean add(String s) {
+    return false;
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends String> c) {
+    return false;
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("A PackedStringIndex cannot be cleared");
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return new KeyList().iterator();
+  }
+
+  /**
+   * Number of bytes used by the packed index.  This memory is outside
+   * the Java heap, or is shared with the page cache if it was loaded
+   * from a file.
+   */
+  public long sizeInBytes() {
+    return buffer.capacity();
+  }
+
+  /**
+   * Writes this index in its binary format, which {@link #load(String)}
+   * can memory-map.  The file is gzipped if the name ends in ".gz".
+   */
+  public void save(String path) throws IOException {
+    ByteBuffer data = buffer.duplicate();
+    data.clear();
+    byte[] chunk = new byte[1 << 16];
+    try (OutputStream os = IOUtils.getDataOutputStream(path)) {
+      while (data.hasRemaining()) {
+        int n = Math.min(chunk.length, data.remaining());
+        data.get(chunk, 0, n);
+        os.write(chunk, 0, n);
+      }
+    }
+  }
+
+  /**
+   * Loads an index written by {@link #save(String)}.  A plain file on
+   * disk is memory-mapped read-only; a gzipped file, classpath resource
+   * or URL is read into memory.
+   */
+  public static PackedStringIndex load(String path) throws IOException {
+    File file = new File(path);
+    ByteBuffer buffer;
+    if (file.isFile() && ! path.endsWith(".gz")) {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+           FileChannel channel = raf.getChannel()) {
+        // The mapping stays valid after the channel is closed
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+    } else {
+      try (InputStream is = IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(path)) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        IOUtils.writeStreamToStream(is, bytes);
+        buffer = ByteBuffer.wrap(bytes.toByteArray());
+      }
+    }
+    return new PackedStringIndex(buffer);
+  }
+
+  /** Serialize as a locked HashIndex, which has the same keys and indices. */
+  private Object writeReplace() throws ObjectStreamException {
+    HashIndex<String> index = new HashIndex<>(size);
+    for (int i = 0; i < size; i++) {
+      index.add(get(i));
+    }
+    index.lock();
+    return index;
+  }
+
+  @Override
+  public String toString() {
+    return objectsList().toString();
+  }
+
+
+  private class KeyList extends AbstractList<String> implements RandomAccess {
+    @Override
+    public String get(int index) {
+      return PackedStringIndex.this.get(index);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+}
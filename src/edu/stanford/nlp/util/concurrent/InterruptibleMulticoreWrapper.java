@@ -26,7 +26,7 @@ public class InterruptibleMulticoreWrapper<I,O> extends MulticoreWrapper<I,O> {
   @Override
   protected Integer getProcessor() {
     try {
-      return (timeout < 0) ? idleProcessors.take() : idleProcessors.poll(timeout, TimeUnit.MILLISECONDS);
+      return (timeout <= 0) ? idleProcessors.take() : idleProcessors.poll(timeout, TimeUnit.MILLISECONDS);
     } catch (InterruptedException e) {
       return null;
     }
@@ -35,7 +35,7 @@ public class InterruptibleMulticoreWrapper<I,O> extends MulticoreWrapper<I,O> {
   /**
    * Shuts down the thread pool, returns when finished.
    * <br>
-   * If <code>timeout</code> was set, then <code>join</code> waits at
+   * If <code>timeout</code> was set to a positive value, then <code>join</code> waits at
    * most <code>timeout</code> milliseconds for threads to finish.  If
    * any fail to finish in that time, the threadpool is shutdownNow.
    * After that, <code>join</code> continues to wait for the
@@ -48,7 +48,7 @@ public class InterruptibleMulticoreWrapper<I,O> extends MulticoreWrapper<I,O> {
    * happen.
    */
   public List<I> joinWithTimeout() {
-    if (timeout < 0) {
+    if (timeout <= 0) {
       join();
       return null;
     }
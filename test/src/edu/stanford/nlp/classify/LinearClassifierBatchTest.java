@@ -0,0 +1,118 @@
+package edu.stanford.nlp.classify;
+
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.Pair;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that the batch scoring methods give the scores and
+ * probabilities of the per example methods.
+ */
+public class LinearClassifierBatchTest extends TestCase {
+
+  private static final int NUM_FEATURES = 20;
+  private static final String[] LABELS = { "A", "B", "C" };
+
+  private LinearClassifier<String, String> classifier;
+  private int[][] features;
+  private double[][] values;
+
+  @Override
+  public void setUp() {
+    Random random = new Random(42);
+    Counter<Pair<String, String>> weights = new ClassicCounter<>();
+    for (int f = 0; f < NUM_FEATURES; f++) {
+      for (String label : LABELS) {
+        weights.setCount(new Pair<>("f" + f, label), random.nextGaussian());
+      }
+    }
+    Counter<String> thresholds = new ClassicCounter<>();
+    thresholds.setCount("B", 0.5);
+    thresholds.setCount("C", -1.5);
+    classifier = new LinearClassifier<>(weights, thresholds);
+
+    features = new int[][] {
+      classifier.indexFeatures(Arrays.asList("f0", "f3", "unknown", "f19")),
+      classifier.indexFeatures(Arrays.asList("f7")),
+      classifier.indexFeatures(Arrays.<String>asList()),
+      { classifier.featureIndex().indexOf("f4"), -1, classifier.featureIndex().indexOf("f11") },
+    };
+    values = new double[][] { { 1.0, 2.0, 0.5 }, { -1.0 }, { }, { 3.0, 100.0, 0.25 } };
+  }
+
+  public void testIndexFeatures() {
+    assertEquals(3, features[0].length);
+    assertEquals("f3", classifier.featureIndex().get(features[0][1]));
+    assertEquals(0, features[2].length);
+  }
+
+  public void testBatchScores() {
+    int numLabels = LABELS.length;
+    for (boolean labelMajor : new boolean[] { false, true }) {
+      double[] scores = new double[features.length * numLabels];
+      float[] floatScores = new float[features.length * numLabels];
+      double[] probabilities = new double[features.length * numLabels];
+      classifier.scoresOf(features, null, scores, labelMajor);
+      classifier.scoresOf(features, null, floatScores, labelMajor);
+      classifier.probabilitiesOf(features, null, probabilities, labelMajor);
+      for (int i = 0; i < features.length; i++) {
+        int[] known = features[i];
+        if (i == 3) {
+          known = new int[] { features[i][0], features[i][2] };
+        }
+        Counter<String> expected = classifier.scoresOf(known);
+        Counter<String> expectedProbabilities = classifier.probabilityOf(known);
+        for (String label : LABELS) {
+          int j = classifier.labelIndex().indexOf(label);
+          assertEquals(expected.getCount(label), scores[i * numLabels + j], 0.0);
+          assertEquals((float) expected.getCount(label), floatScores[i * numLabels + j], 0.0f);
+          assertEquals(expectedProbabilities.getCount(label), probabilities[i * numLabels + j], 1e-12);
+        }
+      }
+    }
+  }
+
+  public void testBatchScoresWithValues() {
+    int numLabels = LABELS.length;
+    double[] featureMajor = new double[features.length * numLabels];
+    double[] labelMajor = new double[features.length * numLabels];
+    classifier.scoresOf(features, values, featureMajor, false);
+    classifier.scoresOf(features, values, labelMajor, true);
+    for (int i = 0; i < features.length; i++) {
+      for (String label : LABELS) {
+        int j = classifier.labelIndex().indexOf(label);
+        double expected = (label.equals("B") ? 0.5 : label.equals("C") ? -1.5 : 0.0);
+        for (int k = 0; k < features[i].length; k++) {
+          if (features[i][k] >= 0) {
+            expected += classifier.weight(classifier.featureIndex().get(features[i][k]), label) * values[i][k];
+          }
+        }
+        assertEquals(expected, featureMajor[i * numLabels + j], 1e-12);
+        assertEquals(expected, labelMajor[i * numLabels + j], 1e-12);
+      }
+    }
+  }
+
+  public void testSetWeightsResetsLabelMajorWeights() {
+    double[] before = new double[features.length * LABELS.length];
+    classifier.scoresOf(features, null, before, true);
+    double[][] doubled = new double[NUM_FEATURES][LABELS.length];
+    for (int f = 0; f < NUM_FEATURES; f++) {
+      for (int j = 0; j < LABELS.length; j++) {
+        doubled[f][j] = 2 * classifier.weights()[f][j];
+      }
+    }
+    classifier.setWeights(doubled);
+    double[] after = new double[features.length * LABELS.length];
+    classifier.scoresOf(features, null, after, true);
+    double[] featureMajor = new double[features.length * LABELS.length];
+    classifier.scoresOf(features, null, featureMajor, false);
+    assertTrue(Arrays.equals(featureMajor, after));
+    assertFalse(Arrays.equals(before, after));
+  }
+
+}
@@ -0,0 +1,168 @@
+package edu.stanford.nlp.ie.crf;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.sequences.ColumnDocumentReaderAndWriter;
+import edu.stanford.nlp.util.PackedStringIndex;
+import edu.stanford.nlp.util.Triple;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Checks that looking up feature ids from base features and suffixes
+ * gives exactly the data of the String feature path.
+ */
+public class CRFClassifierFeatureIdTest extends TestCase {
+
+  private static List<CoreLabel> document(String... wordsAndAnswers) {
+    List<CoreLabel> doc = new ArrayList<>();
+    for (String wordAndAnswer : wordsAndAnswers) {
+      String[] parts = wordAndAnswer.split("/");
+      CoreLabel label = new CoreLabel();
+      label.setWord(parts[0]);
+      label.set(CoreAnnotations.TextAnnotation.class, parts[0]);
+      label.set(CoreAnnotations.AnswerAnnotation.class, parts[1]);
+      label.set(CoreAnnotations.GoldAnswerAnnotation.class, parts[1]);
+      doc.add(label);
+    }
+    return doc;
+  }
+
+  private static CRFClassifier<CoreLabel> train() {
+    Properties props = new Properties();
+    props.setProperty("maxLeft", "2");
+    props.setProperty("useClassFeature", "true");
+    props.setProperty("useWord", "true");
+    props.setProperty("useNGrams", "true");
+    props.setProperty("maxNGramLeng", "4");
+    props.setProperty("usePrev", "true");
+    props.setProperty("useNext", "true");
+    props.setProperty("useSequences", "true");
+    props.setProperty("usePrevSequences", "true");
+    props.setProperty("useTypeSeqs", "true");
+    props.setProperty("useTypeSeqs2", "true");
+    props.setProperty("useWordPairs", "true");
+    props.setProperty("wordShape", "chris2useLC");
+    props.setProperty("maxIterations", "3");
+    props.setProperty("suppressTestDebug", "true");
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<>(props);
+
+    List<List<CoreLabel>> train = Arrays.asList(
+        document("John/PERSON", "Smith/PERSON", "lives/O", "in/O", "Paris/LOCATION", "./O"),
+        document("Mary/PERSON", "visited/O", "Stanford/ORGANIZATION", "University/ORGANIZATION", "./O"),
+        document("The/O", "Paris/LOCATION", "office/O", "of/O", "Google/ORGANIZATION", "opened/O"));
+    crf.train(train, new ColumnDocumentReaderAndWriter());
+    return crf;
+  }
+
+  private static List<CoreLabel> testDocument() {
+    return document("Smith/O", "visited/O", "an/O", "unseen/O", "Paris/O", "office/O", "./O");
+  }
+
+  public void testFeatureIdsMatchStrings() {
+    CRFClassifier<CoreLabel> crf = train();
+    List<CoreLabel> test = testDocument();
+    crf.flags.featureIdInference = false;
+    Triple<int[][][], int[], double[][][]> strings = crf.documentToDataAndLabels(test);
+    crf.flags.featureIdInference = true;
+    Triple<int[][][], int[], double[][][]> ids = crf.documentToDataAndLabels(test);
+    assertTrue(Arrays.deepEquals(strings.first(), ids.first()));
+    assertTrue(Arrays.equals(strings.second(), ids.second()));
+
+    crf.flags.featureIdInference = false;
+    List<String> stringAnswers = answers(crf.classify(test));
+    crf.flags.featureIdInference = true;
+    List<String> idAnswers = answers(crf.classify(test));
+    assertEquals(stringAnswers, idAnswers);
+
+    crf.featureIndex = new PackedStringIndex(crf.featureIndex);
+    Triple<int[][][], int[], double[][][]> packedIds = crf.documentToDataAndLabels(test);
+    assertTrue(Arrays.deepEquals(strings.first(), packedIds.first()));
+    crf.flags.featureIdInference = false;
+    Triple<int[][][], int[], double[][][]> packedStrings = crf.documentToDataAndLabels(test);
+    assertTrue(Arrays.deepEquals(strings.first(), packedStrings.first()));
+    assertEquals(stringAnswers, answers(crf.classify(test)));
+  }
+
+  public void testLoadPacked() throws Exception {
+    CRFClassifier<CoreLabel> crf = train();
+    List<String> expected = answers(crf.classify(testDocument()));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+      crf.serializeClassifier(oos);
+    }
+
+    Properties props = new Properties();
+    props.setProperty("packedFeatureIndex", "true");
+    CRFClassifier<CoreLabel> loaded = new CRFClassifier<>(new Properties());
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      loaded.loadClassifier(ois, props);
+    }
+    assertTrue(loaded.featureIndex instanceof PackedStringIndex);
+    assertEquals(crf.featureIndex.size(), loaded.featureIndex.size());
+    assertEquals(expected, answers(loaded.classify(testDocument())));
+  }
+
+  public void testBiasAfterCompaction() throws Exception {
+    CRFClassifier<CoreLabel> crf = train();
+    List<String> expected = answers(crf.classify(testDocument()));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+      crf.serializeClassifier(oos);
+    }
+
+    Properties props = new Properties();
+    props.setProperty("weightPrecision", "float");
+    CRFBiasedClassifier<CoreLabel> loaded = new CRFBiasedClassifier<>(new Properties());
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      loaded.loadClassifier(ois, props);
+    }
+    assertEquals(expected, answers(loaded.classify(testDocument())));
+    try {
+      loaded.setBiasWeight("LOCATION", 1.0);
+      fail("Expected an IllegalStateException");
+    } catch (IllegalStateException e) {
+      // the double weights are gone
+    }
+  }
+
+  public void testBiasOnPackedIndex() throws Exception {
+    CRFClassifier<CoreLabel> crf = train();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+      crf.serializeClassifier(oos);
+    }
+
+    Properties props = new Properties();
+    props.setProperty("packedFeatureIndex", "true");
+    CRFBiasedClassifier<CoreLabel> loaded = new CRFBiasedClassifier<>(new Properties());
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      loaded.loadClassifier(ois, props);
+    }
+    int numWeights = loaded.weights.length;
+    try {
+      loaded.setBiasWeight("LOCATION", 1.0);
+      fail("Expected an IllegalStateException");
+    } catch (IllegalStateException e) {
+      // the bias feature can't be added to a packed index
+    }
+    assertEquals(numWeights, loaded.weights.length);
+  }
+
+  private static List<String> answers(List<CoreLabel> doc) {
+    List<String> answers = new ArrayList<>();
+    for (CoreLabel label : doc) {
+      answers.add(label.get(CoreAnnotations.AnswerAnnotation.class));
+    }
+    return answers;
+  }
+
+}
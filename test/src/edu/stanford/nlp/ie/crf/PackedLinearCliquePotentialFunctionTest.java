@@ -0,0 +1,57 @@
+package edu.stanford.nlp.ie.crf;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that packed weights give the potentials of the double weights,
+ * up to their precision.
+ */
+public class PackedLinearCliquePotentialFunctionTest extends TestCase {
+
+  private static final double[][] WEIGHTS = {
+    { 0.5, -1.25, 3.0 },
+    { 0.0, 0.0, 0.0 },
+    { 1e-3, -2e-3, 0.25, 7.5, -0.125, 1.0, 2.0, -3.0, 0.0 },
+    { -100.0, 42.0, 1.0 / 3.0 },
+  };
+
+  public void testPackedWeights() {
+    LinearCliquePotentialFunction linear = new LinearCliquePotentialFunction(WEIGHTS);
+    PackedLinearCliquePotentialFunction floats = PackedLinearCliquePotentialFunction.pack(WEIGHTS, "float");
+    PackedLinearCliquePotentialFunction bytes = PackedLinearCliquePotentialFunction.pack(WEIGHTS, "byte");
+    assertEquals(18, floats.numWeights());
+    assertEquals(18, bytes.numWeights());
+    assertTrue(bytes.sizeInBytes() < floats.sizeInBytes());
+
+    for (int i = 0; i < WEIGHTS.length; i++) {
+      double max = 0.0;
+      for (double w : WEIGHTS[i]) {
+        max = Math.max(max, Math.abs(w));
+      }
+      for (int j = 0; j < WEIGHTS[i].length; j++) {
+        assertEquals((float) WEIGHTS[i][j], floats.weight(i, j), 0.0);
+        assertEquals(WEIGHTS[i][j], bytes.weight(i, j), max / 254.0 + 1e-9);
+      }
+    }
+
+    int[] features = { 0, 3, 1 };
+    double[] values = { 1.0, 0.5, 2.0 };
+    for (int label = 0; label < 3; label++) {
+      double expected = linear.computeCliquePotential(1, label, features, null, 0);
+      assertEquals(expected, floats.computeCliquePotential(1, label, features, null, 0), 1e-5);
+      assertEquals(expected, bytes.computeCliquePotential(1, label, features, null, 0), 0.5);
+      expected = linear.computeCliquePotential(1, label, features, values, 0);
+      assertEquals(expected, floats.computeCliquePotential(1, label, features, values, 0), 1e-5);
+    }
+  }
+
+  public void testUnknownPrecision() {
+    try {
+      PackedLinearCliquePotentialFunction.pack(WEIGHTS, "half");
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
@@ -190,6 +190,20 @@ public class RegexNERSequenceClassifierTest extends TestCase {
     }
   }
 
+  /** Entries starting with a literal token, a regex with a literal prefix, and a regex without one */
+  public void testMixedEntries() {
+    String patterns = "avo.*\tBIRD\n[a-z]+s\tPLURAL\ncurlews \\(\tBIRDPAREN\nSHORELINE park\tPARK\n";
+    String[] expectedCased = "- - - - - - - - BIRD - - BIRDPAREN BIRDPAREN PLURAL - -".split(" ");
+    String[] expectedUncased = "- - - PARK PARK - - - BIRD - - BIRDPAREN BIRDPAREN PLURAL - -".split(" ");
+    for (boolean ignoreCase : new boolean[] { false, true }) {
+      RegexNERSequenceClassifier classifier =
+        new RegexNERSequenceClassifier(new BufferedReader(new StringReader(patterns)), ignoreCase, false, null);
+      List<CoreLabel> sentence = deepCopy(sentences.get(1));
+      classifier.classify(sentence);
+      compareAnswers(ignoreCase ? expectedUncased : expectedCased, sentence);
+    }
+  }
+
   public void testNEROverlaps() {
     assertEquals(nerPatterns.length, expectedNER.length);
     for (int k = 0; k < nerPatterns.length; k++) {
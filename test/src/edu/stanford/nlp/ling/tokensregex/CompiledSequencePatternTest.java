@@ -0,0 +1,87 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that finding matches with the compiled NFA gives the matches of the
+ * backtracking matcher.
+ */
+public class CompiledSequencePatternTest extends TestCase {
+
+  private static final String[] PATTERNS = {
+    "/a/ /b/",
+    "[ {tag:NN} ]+ /c/?",
+    "( /a/ | /b/ /b/ ) [ {tag:VB} ]",
+    "(?$x [ {tag:/N.*/} ]* ) /b/ ( /c/ )",
+    "/a/ ( /b/ | /c/ ){2,3} /a/",
+    "/b/+? /c/",
+    "[ !{word:a} ]{1,7}",
+    "( /a/ ) []* \\1",
+    "( /a/ & [ {tag:NN} ] )",
+  };
+
+  private static List<CoreLabel> tokens(String text) {
+    List<CoreLabel> tokens = new ArrayList<>();
+    for (String wordTag : text.split(" ")) {
+      String[] split = wordTag.split("/");
+      CoreLabel token = new CoreLabel();
+      token.setWord(split[0]);
+      token.setTag(split[1]);
+      tokens.add(token);
+    }
+    return tokens;
+  }
+
+  private static List<String> findAll(TokenSequencePattern pattern, List<CoreLabel> tokens, boolean compiled) {
+    List<String> matches = new ArrayList<>();
+    TokenSequenceMatcher m = pattern.getMatcher(tokens);
+    m.setUseCompiledPattern(compiled);
+    while (m.find()) {
+      StringBuilder sb = new StringBuilder();
+      for (int g = 0; g <= m.groupCount(); g++) {
+        sb.append(m.start(g)).append('-').append(m.end(g)).append(' ');
+      }
+      matches.add(sb.toString());
+    }
+    return matches;
+  }
+
+  public void testSameMatches() {
+    List<CoreLabel> tokens = tokens("a/NN b/NN c/VB a/DT b/NN b/VB c/NN c/NN a/NN b/JJ a/NN");
+    for (String p : PATTERNS) {
+      TokenSequencePattern pattern = TokenSequencePattern.compile(p);
+      List<String> expected = findAll(pattern, tokens, false);
+      assertEquals(p, expected, findAll(pattern, tokens, true));
+      List<CoreLabel> middle = tokens.subList(3, 9);
+      assertEquals(p, findAll(pattern, middle, false), findAll(pattern, middle, true));
+    }
+  }
+
+  public void testSequenceStartAndEnd() {
+    SequencePattern.PatternExpr any = new SequencePattern.NodePatternExpr(NodePattern.ANY_NODE);
+    TokenSequencePattern[] patterns = {
+      TokenSequencePattern.compile(new SequencePattern.SequencePatternExpr(
+          SequencePattern.SEQ_BEGIN_PATTERN_EXPR, new SequencePattern.RepeatPatternExpr(any, 1, 2))),
+      TokenSequencePattern.compile(new SequencePattern.SequencePatternExpr(
+          new SequencePattern.RepeatPatternExpr(any, 1, 2), SequencePattern.SEQ_END_PATTERN_EXPR)),
+    };
+    List<CoreLabel> tokens = tokens("a/NN b/NN c/VB a/DT");
+    for (TokenSequencePattern pattern : patterns) {
+      assertNotNull(pattern.compiledPattern);
+      List<String> expected = findAll(pattern, tokens, false);
+      assertEquals(1, expected.size());
+      assertEquals(expected, findAll(pattern, tokens, true));
+    }
+  }
+
+  public void testCompiled() {
+    assertTrue(TokenSequencePattern.compile("/a/ [ {tag:NN} ]* /b/?").compiledPattern.exact);
+    assertFalse(TokenSequencePattern.compile("/a/ /b/{1,7}").compiledPattern.exact);
+    assertNull(TokenSequencePattern.compile("( /a/ ) \\1").compiledPattern);
+  }
+
+}
@@ -0,0 +1,82 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that sharing node pattern matches between the patterns of a
+ * MultiPatternMatcher gives the same matches with fewer evaluations.
+ */
+public class SharedNodePatternsTest extends TestCase {
+
+  private static final String[] PATTERNS = {
+    "[ {tag:/NN.*/} ] /b/",
+    "/a/ [ {tag:/NN.*/} ]+",
+    "( /a/ | /c/ ) [ {tag:VB} ]",
+    "[ {tag:/NN.*/} & !{word:a} ] [ {tag:VB} ]",
+    "[ {tag:/NN.*/} & !{word:a} ]{2,3}",
+  };
+
+  private static List<CoreLabel> tokens(String text) {
+    List<CoreLabel> tokens = new ArrayList<>();
+    for (String wordTag : text.split(" ")) {
+      String[] split = wordTag.split("/");
+      CoreLabel token = new CoreLabel();
+      token.setWord(split[0]);
+      token.setTag(split[1]);
+      tokens.add(token);
+    }
+    return tokens;
+  }
+
+  private static List<TokenSequencePattern> patterns() {
+    List<TokenSequencePattern> patterns = new ArrayList<>();
+    for (String p : PATTERNS) {
+      patterns.add(TokenSequencePattern.compile(p));
+    }
+    return patterns;
+  }
+
+  private static List<String> toStrings(List<SequenceMatchResult<CoreMap>> matches) {
+    List<String> strings = new ArrayList<>();
+    for (SequenceMatchResult<CoreMap> m : matches) {
+      strings.add(m.pattern() + " " + m.start() + '-' + m.end());
+    }
+    return strings;
+  }
+
+  public void testSameMatches() {
+    List<CoreLabel> tokens = tokens("a/NN b/NN c/VB a/DT b/NN b/VB c/NN c/NN a/NN b/JJ a/NN d/NNS e/NN");
+    List<TokenSequencePattern> patterns = patterns();
+    MultiPatternMatcher<CoreMap> shared = new MultiPatternMatcher<CoreMap>(new ArrayList<SequencePattern<CoreMap>>(patterns));
+    MultiPatternMatcher<CoreMap> unshared = new MultiPatternMatcher<CoreMap>(new ArrayList<SequencePattern<CoreMap>>(patterns));
+    unshared.setShareNodePatterns(false);
+    assertEquals(toStrings(unshared.findNonOverlapping(tokens)), toStrings(shared.findNonOverlapping(tokens)));
+    assertEquals(toStrings(unshared.findNonOverlappingMaxScore(tokens)), toStrings(shared.findNonOverlappingMaxScore(tokens)));
+  }
+
+  public void testDistinctNodePatterns() {
+    List<TokenSequencePattern> patterns = patterns();
+    SharedNodePatterns<CoreMap> shared = new SharedNodePatterns<CoreMap>(patterns);
+    // tag:/NN.*/, b, a, c, tag:VB, and the conjunction
+    assertEquals(6, shared.getNumDistinct());
+    assertTrue(shared.getNumNodePatterns() > shared.getNumDistinct());
+
+    List<CoreLabel> tokens = tokens("a/NN b/NN c/VB d/NN");
+    SharedNodePatterns.Matches<CoreMap> matches = shared.matches(tokens);
+    for (TokenSequencePattern p : patterns) {
+      SequenceMatcher<CoreMap> m = p.getMatcher(tokens);
+      m.nodePatternMatches = matches;
+      while (m.find()) { }
+    }
+    shared.record(matches);
+    assertTrue(shared.getEvaluations() > 0);
+    assertTrue(shared.getEvaluations() < shared.getLookups());
+    assertTrue(shared.getEvaluations() <= shared.getNumDistinct() * tokens.size());
+  }
+
+}
@@ -0,0 +1,124 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.Pair;
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the words worked out for rule triggers, and that extracting with
+ * triggers gives the expressions of applying every rule.
+ */
+public class TokenTriggerIndexTest extends TestCase {
+
+  private static final String RULES =
+      "{ ruleType: \"tokens\", pattern: ( /the/? /next|last/ /weeks?|months?/ ), result: \"REL\" }\n" +
+      "{ ruleType: \"tokens\", pattern: ( [ { tag:CD } ] /dollars?|cents?/ ), result: \"MONEY\" }\n" +
+      "{ ruleType: \"tokens\", pattern: ( /jan\\.?/ | /feb\\.?/ ), result: \"MONTH\" }\n" +
+      "{ ruleType: \"tokens\", pattern: ( [ !{ tag:/V.*/ } & !{ tag:/P.*/ } ]{3,} ), result: \"NOUNS\" }\n";
+
+  private static Set<String> prefixes(String regex, int flags) {
+    return TokenTriggerIndex.regexPrefixes(Pattern.compile(regex, flags));
+  }
+
+  public void testRegexPrefixes() {
+    assertEquals(new HashSet<>(Arrays.asList("year", "yr")), prefixes("years?|yrs?", 0));
+    assertEquals(Collections.singleton("jan"), prefixes("jan\\.?", 0));
+    assertEquals(Collections.singleton("mid"), prefixes("mid-?", 0));
+    assertEquals(Collections.singleton("a.m."), prefixes("a\\.m\\.", 0));
+    assertEquals(Collections.singleton("aa"), prefixes("aa+b", 0));
+    assertEquals(Collections.singleton("monday"), prefixes("Monday", Pattern.CASE_INSENSITIVE));
+    assertEquals(Collections.singleton("a|b"), prefixes("a|b", Pattern.LITERAL));
+    assertNull(prefixes("[012]\\d\\d\\d", 0));
+    assertNull(prefixes("\\w+teen|twenty", 0));
+    assertNull(prefixes("(a|b)c", 0));
+    assertNull(prefixes("a?", 0));
+    assertNull(prefixes(".*(daily|weekly)", 0));
+  }
+
+  public void testTurkishLocale() {
+    Locale locale = Locale.getDefault();
+    try {
+      // lower casing I there gives a dotless i
+      Locale.setDefault(new Locale("tr", "TR"));
+      assertEquals(Collections.singleton("time"), prefixes("TIME", 0));
+      assertEquals(Collections.singleton(Pair.makePair(CoreAnnotations.TextAnnotation.class, "in")),
+          TokenSequencePattern.compile("/IN/").getPatternExpr().requiredPrefixes());
+    } finally {
+      Locale.setDefault(locale);
+    }
+  }
+
+  public void testRequiredPrefixes() {
+    Set<Pair<Class,String>> prefixes = TokenSequencePattern.compile("/the/? /next|last/ [ { tag:NN } ]").getPatternExpr().requiredPrefixes();
+    Set<Pair<Class,String>> expected = new HashSet<>();
+    expected.add(Pair.makePair(CoreAnnotations.TextAnnotation.class, "next"));
+    expected.add(Pair.makePair(CoreAnnotations.TextAnnotation.class, "last"));
+    assertEquals(expected, prefixes);
+    // Tags are annotation values like any other
+    assertEquals(Collections.singleton(Pair.makePair(CoreAnnotations.PartOfSpeechAnnotation.class, "nn")),
+        TokenSequencePattern.compile("/the/? [ { tag:NN } ]+").getPatternExpr().requiredPrefixes());
+    assertNull(TokenSequencePattern.compile("/the/? []+").getPatternExpr().requiredPrefixes());
+    assertNull(TokenSequencePattern.compile("/a/ | [ !{ tag:NN } ]").getPatternExpr().requiredPrefixes());
+  }
+
+  private static CoreMap sentence(String text) {
+    List<CoreLabel> tokens = new ArrayList<>();
+    StringBuilder words = new StringBuilder();
+    for (String wordTag : text.split(" ")) {
+      String[] split = wordTag.split("/");
+      if (words.length() > 0) words.append(' ');
+      CoreLabel token = new CoreLabel();
+      token.setWord(split[0]);
+      token.setValue(split[0]);
+      token.setTag(split[1]);
+      token.setBeginPosition(words.length());
+      words.append(split[0]);
+      token.setEndPosition(words.length());
+      tokens.add(token);
+    }
+    CoreMap sentence = new Annotation(words.toString());
+    sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    return sentence;
+  }
+
+  private static List<String> extract(CoreMapExpressionExtractor<MatchedExpression> extractor, CoreMap sentence) {
+    List<String> found = new ArrayList<>();
+    for (MatchedExpression e : extractor.extractExpressions(sentence)) {
+      found.add(e.getTokenOffsets() + " " + e.getValue());
+    }
+    return found;
+  }
+
+  @SuppressWarnings("unchecked")
+  public void testExtract() throws Exception {
+    CoreMapExpressionExtractor<MatchedExpression> all =
+        CoreMapExpressionExtractor.createExtractorFromString(TokenSequencePattern.getNewEnv(), RULES);
+    all.setUseRuleTriggers(false);
+    CoreMapExpressionExtractor<MatchedExpression> triggered =
+        CoreMapExpressionExtractor.createExtractorFromString(TokenSequencePattern.getNewEnv(), RULES);
+    triggered.setVerifyRuleTriggers(true);
+    String[] sentences = {
+      "We/PRP left/VBD the/DT last/JJ week/NN of/IN jan./NNP",
+      "The/DT Last/JJ Week/NN",
+      "It/PRP cost/VBD 5/CD dollars/NNS",
+      "stock/NN market/NN prices/NNS fell/VBD",
+      "nothing/NN here/RB",
+    };
+    for (String s : sentences) {
+      List<String> expected = extract(all, sentence(s));
+      assertEquals(s, expected, extract(triggered, sentence(s)));
+    }
+    for (int i : new int[] { 0, 2, 3 }) {
+      assertFalse(extract(all, sentence(sentences[i])).isEmpty());
+    }
+    assertTrue(triggered.getRuleTriggerStats().contains("4 rules (3 with triggers)"));
+    assertTrue(triggered.getRuleTriggerStats().contains("0 skipped rules matched"));
+  }
+
+}
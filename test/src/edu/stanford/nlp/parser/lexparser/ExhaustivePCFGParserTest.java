@@ -0,0 +1,135 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.Sentence;
+import edu.stanford.nlp.parser.common.ParserConstraint;
+import edu.stanford.nlp.trees.MemoryTreebank;
+import edu.stanford.nlp.trees.Tree;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that the faster ways of filling in the PCFG chart give the
+ * same parses, on a grammar read off a few trees.
+ */
+public class ExhaustivePCFGParserTest extends TestCase {
+
+  private static final String[] TREES = {
+    "(ROOT (S (NP (DT the) (NN dog)) (VP (VBD saw) (NP (DT a) (NN cat))) (. .)))",
+    "(ROOT (S (NP (DT the) (NN cat)) (VP (VBD saw) (NP (NP (DT the) (NN man)) (PP (IN with) (NP (DT a) (NN telescope))))) (. .)))",
+    "(ROOT (S (NP (NNP John)) (VP (VBD ate) (NP (NN pizza)) (PP (IN with) (NP (DT a) (NN fork)))) (. .)))",
+    "(ROOT (S (NP (DT a) (JJ big) (NN dog)) (VP (VBZ runs) (ADVP (RB quickly))) (. .)))",
+    "(ROOT (S (NP (PRP he)) (VP (VBD said) (SBAR (IN that) (S (NP (DT the) (NN man)) (VP (VBD left))))) (. .)))",
+    "(ROOT (S (NP (NP (DT the) (NN man)) (PP (IN in) (NP (DT the) (NN park)))) (VP (VBD saw) (NP (PRP her))) (. .)))",
+    "(ROOT (S (NP (PRP she)) (VP (VBD gave) (NP (DT the) (NN dog)) (NP (DT a) (NN bone))) (. .)))",
+    "(ROOT (S (NP (DT the) (JJ old) (NNS men)) (VP (VBP like) (NP (NP (NNS books)) (PP (IN about) (NP (NNS cats))))) (. .)))",
+    "(ROOT (S (NP (NNP Mary)) (VP (VBD walked) (PP (IN to) (NP (DT the) (NN park))) (PP (IN on) (NP (NNP Sunday)))) (. .)))",
+    "(ROOT (S (NP (DT the) (NN woman)) (VP (VBD thought) (SBAR (S (NP (PRP he)) (VP (MD would) (VP (VB win)))))) (. .)))",
+    "(ROOT (S (NP (NP (DT a) (NN friend)) (PP (IN of) (NP (DT the) (NN cat)))) (VP (VBD ran) (ADVP (RB away))) (. .)))",
+    "(ROOT (S (NP (PRP they)) (VP (VBD saw) (NP (DT the) (JJ big) (NN house)) (PP (IN near) (NP (DT the) (NN river)))) (. .)))",
+  };
+
+  private static final String[] SENTENCES = {
+    "the man saw the dog with a telescope in the park .",
+    "she said that the old cat in the house near the river ate a big pizza with a fork on Sunday .",
+    "John ran .",
+    "a friend of the woman thought they would win .",
+    "the dog in the park near the river saw a man with a telescope .",
+    "Mary gave the cat a book about dogs .",
+  };
+
+  private static LexicalizedParser train(Options op) {
+    MemoryTreebank treebank = new MemoryTreebank();
+    for (String tree : TREES) {
+      treebank.add(Tree.valueOf(tree));
+    }
+    op.doDep = false;
+    op.doPCFG = true;
+    return LexicalizedParser.trainFromTreebank(treebank, op);
+  }
+
+  private static List<? extends HasWord> words(String sentence) {
+    return Sentence.toWordList(sentence.split(" "));
+  }
+
+  /** Parses each sentence, returning the best parse and its score. */
+  private static List<String> parse(LexicalizedParser parser, boolean withConstraint) {
+    List<String> parses = new ArrayList<String>();
+    for (String sentence : SENTENCES) {
+      List<? extends HasWord> words = words(sentence);
+      LexicalizedParserQuery pq = parser.lexicalizedParserQuery();
+      if (withConstraint) {
+        // matches every state, so changes nothing but the code path
+        pq.setConstraints(Collections.singletonList(new ParserConstraint(0, words.size(), ".*")));
+      }
+      assertTrue(sentence, pq.parse(words));
+      parses.add(pq.getBestParse() + String.format(" %.3f", pq.getPCFGScore()));
+      pq.release();
+    }
+    return parses;
+  }
+
+  public void testPackedRules() {
+    LexicalizedParser parser = train(new Options());
+    BinaryGrammar bg = parser.bg;
+    for (int state = 0; state < parser.stateIndex.size(); state++) {
+      BinaryRule[] rules = bg.splitRulesWithLC(state);
+      BinaryGrammar.PackedRules packed = bg.packedRulesWithLC(state);
+      assertEquals(rules.length, packed.size());
+      for (int r = 0; r < rules.length; r++) {
+        assertEquals(rules[r].parent, packed.parent[r]);
+        assertEquals(rules[r].rightChild, packed.child[r]);
+        assertEquals(rules[r].score, packed.score[r]);
+      }
+      rules = bg.splitRulesWithRC(state);
+      packed = bg.packedRulesWithRC(state);
+      assertEquals(rules.length, packed.size());
+      for (int r = 0; r < rules.length; r++) {
+        assertEquals(rules[r].parent, packed.parent[r]);
+        assertEquals(rules[r].leftChild, packed.child[r]);
+        assertEquals(rules[r].score, packed.score[r]);
+      }
+    }
+  }
+
+  public void testMatchingConstraint() {
+    LexicalizedParser parser = train(new Options());
+    // a constraint that every state matches changes nothing
+    List<String> expected = parse(parser, false);
+    assertEquals(expected, parse(parser, true));
+  }
+
+  public void testCoarseToFine() {
+    LexicalizedParser parser = train(new Options());
+    List<String> expected = parse(parser, false);
+    parser.getOp().testOptions.coarseToFine = true;
+    // loose enough that the best parse is never pruned
+    parser.getOp().testOptions.coarseToFineThreshold = -100.0;
+    assertEquals(expected, parse(parser, false));
+    assertNotNull(parser.coarseGrammar());
+    assertSame(parser.coarseGrammar(), parser.coarseGrammar());
+
+    LexicalizedParserQuery pq = parser.lexicalizedParserQuery();
+    assertTrue(pq.parse(words(SENTENCES[0])));
+    CoarseToFinePruner.Stats stats = ((ExhaustivePCFGParser) pq.getPCFGParser()).pruningStats();
+    assertTrue(stats.cells > 0);
+    assertEquals(0, stats.fallbacks);
+  }
+
+  public void testChartPool() {
+    LexicalizedParser parser = train(new Options());
+    parser.getOp().testOptions.chartPoolMegabytes = 0;
+    List<String> expected = parse(parser, false);
+    parser.getOp().testOptions.chartPoolMegabytes = 64;
+    // the sentences are of different lengths, so a chart is often reused
+    // for a shorter sentence than the one it was last used for
+    for (int i = 0; i < 2; i++) {
+      assertEquals(expected, parse(parser, false));
+    }
+    assertTrue(parser.chartPool().hitRate() > 0.5);
+  }
+
+}
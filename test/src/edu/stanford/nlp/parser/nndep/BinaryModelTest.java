@@ -0,0 +1,111 @@
+package edu.stanford.nlp.parser.nndep;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+public class BinaryModelTest extends TestCase {
+
+  public void testRoundTrip() throws Exception {
+    List<String> words = Arrays.asList(Config.UNKNOWN, Config.NULL, Config.ROOT, "the", "café");
+    List<String> pos = Arrays.asList(Config.UNKNOWN, Config.NULL, Config.ROOT, "DT");
+    List<String> labels = Arrays.asList(Config.NULL, "det");
+
+    int eSize = 3, hSize = 4, nTokens = 2;
+    double[][] E = new double[words.size() + pos.size() + labels.size()][eSize];
+    for (int i = 0; i < E.length; ++i)
+      for (int j = 0; j < eSize; ++j)
+        E[i][j] = i - j * 0.25;
+    double[][] W1 = new double[hSize][eSize * nTokens];
+    for (int i = 0; i < hSize; ++i)
+      for (int j = 0; j < W1[i].length; ++j)
+        W1[i][j] = 0.5 * i + j;
+    double[] b1 = { 0.5, -1.0, 2.0, 0.0 };
+    double[][] W2 = new double[labels.size() * 2 - 1][hSize];
+    W2[2][3] = -7.0;
+    List<Integer> preComputed = Arrays.asList(5, 3, 11);
+
+    File file = File.createTempFile("nndep", ".bin");
+    file.deleteOnExit();
+    new BinaryModel(words, pos, labels, E, W1, b1, W2, preComputed).write(file.getPath());
+
+    assertTrue(BinaryModel.isBinaryModel(file.getPath()));
+    BinaryModel model = BinaryModel.read(file.getPath());
+    assertEquals(words, model.knownWords);
+    assertEquals(pos, model.knownPos);
+    assertEquals(labels, model.knownLabels);
+    assertEquals(preComputed, model.preComputed);
+    assertNull(model.E);
+    assertEquals(eSize, model.embeddingSize);
+    assertEquals(E.length * eSize, model.embeddings.limit());
+    for (int i = 0; i < E.length; ++i)
+      for (int j = 0; j < eSize; ++j)
+        assertEquals(E[i][j], model.embeddings.get(i * eSize + j), 0.0);
+    assertTrue(Arrays.deepEquals(W1, model.W1));
+    assertTrue(Arrays.equals(b1, model.b1));
+    assertTrue(Arrays.deepEquals(W2, model.W2));
+  }
+
+  /**
+   * A classifier reading its embeddings out of the mapped file scores
+   * exactly as one given the same weights on the heap.
+   */
+  public void testMappedEmbeddings() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("hiddenSize", "7");
+    props.setProperty("embeddingSize", "5");
+    props.setProperty("numPreComputed", "40");
+    Config config = new Config(props);
+
+    List<String> words = Arrays.asList(Config.UNKNOWN, Config.NULL, Config.ROOT, "a", "b", "c", "d", "e");
+    List<String> pos = Arrays.asList(Config.UNKNOWN, Config.NULL, Config.ROOT, "DT", "NN");
+    List<String> labels = Arrays.asList(Config.NULL, "det", "nsubj");
+    int numEmbeddings = words.size() + pos.size() + labels.size();
+
+    // float values, so that writing them loses nothing
+    Random random = new Random(42);
+    double[][] E = randomMatrix(random, numEmbeddings, config.embeddingSize);
+    double[][] W1 = randomMatrix(random, config.hiddenSize, config.embeddingSize * Config.numTokens);
+    double[] b1 = randomMatrix(random, 1, config.hiddenSize)[0];
+    double[][] W2 = randomMatrix(random, labels.size() * 2 - 1, config.hiddenSize);
+    List<Integer> preComputed = new ArrayList<>();
+    for (int i = 0; i < numEmbeddings * Config.numTokens; i += 7)
+      preComputed.add(i);
+
+    File file = File.createTempFile("nndep", ".bin");
+    file.deleteOnExit();
+    new BinaryModel(words, pos, labels, E, W1, b1, W2, preComputed).write(file.getPath());
+    BinaryModel model = BinaryModel.read(file.getPath());
+
+    Classifier heap = new Classifier(config, E, W1, b1, W2, preComputed);
+    Classifier mapped = new Classifier(config, model.embeddings, model.W1, model.b1, model.W2, model.preComputed);
+    heap.preCompute();
+    mapped.preCompute();
+    assertTrue(Arrays.deepEquals(E, mapped.getE()));
+
+    int[][] features = new int[9][Config.numTokens];
+    for (int[] feature : features)
+      for (int j = 0; j < feature.length; ++j)
+        feature[j] = random.nextInt(numEmbeddings);
+    double[][] batched = mapped.computeScores(features);
+    double[][] expected = heap.computeScores(features);
+    for (int b = 0; b < features.length; ++b) {
+      assertTrue(Arrays.equals(expected[b], batched[b]));
+      assertTrue(Arrays.equals(expected[b], mapped.computeScores(features[b])));
+    }
+  }
+
+  private static double[][] randomMatrix(Random random, int rows, int cols) {
+    double[][] m = new double[rows][cols];
+    for (double[] row : m)
+      for (int j = 0; j < cols; ++j)
+        row[j] = (float) (random.nextDouble() * 0.2 - 0.1);
+    return m;
+  }
+
+}
@@ -0,0 +1,66 @@
+package edu.stanford.nlp.parser.nndep;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Checks that the batched feed-forward pass gives exactly the same
+ * scores as scoring one configuration at a time.
+ */
+public class ClassifierTest extends TestCase {
+
+  public void testBatchedScoresMatchSingle() {
+    Properties props = new Properties();
+    props.setProperty("hiddenSize", "7");
+    props.setProperty("embeddingSize", "5");
+    props.setProperty("numPreComputed", "40");
+    Config config = new Config(props);
+
+    Random random = new Random(42);
+    int numEmbeddings = 20;
+    int numLabels = 6;
+    double[][] E = randomMatrix(random, numEmbeddings, config.embeddingSize);
+    double[][] W1 = randomMatrix(random, config.hiddenSize, config.embeddingSize * Config.numTokens);
+    double[] b1 = randomMatrix(random, 1, config.hiddenSize)[0];
+    double[][] W2 = randomMatrix(random, numLabels, config.hiddenSize);
+
+    List<Integer> preComputed = new ArrayList<>();
+    for (int i = 0; i < numEmbeddings * Config.numTokens; i += 7)
+      preComputed.add(i);
+
+    Classifier classifier = new Classifier(config, E, W1, b1, W2, preComputed);
+    classifier.preCompute();
+
+    int[][] features = new int[9][Config.numTokens];
+    for (int[] feature : features)
+      for (int j = 0; j < feature.length; ++j)
+        feature[j] = random.nextInt(numEmbeddings);
+
+    double[][] batched = classifier.computeScores(features);
+    assertEquals(features.length, batched.length);
+    for (int b = 0; b < features.length; ++b) {
+      double[] single = classifier.computeScores(features[b]);
+      assertEquals(numLabels, single.length);
+      for (int i = 0; i < numLabels; ++i)
+        assertEquals(single[i], batched[b][i], 0.0);
+    }
+
+    // a smaller batch after a larger one reuses the scratch buffers
+    double[][] again = classifier.computeScores(new int[][] { features[3] });
+    for (int i = 0; i < numLabels; ++i)
+      assertEquals(batched[3][i], again[0][i], 0.0);
+  }
+
+  private static double[][] randomMatrix(Random random, int rows, int cols) {
+    double[][] m = new double[rows][cols];
+    for (double[] row : m)
+      for (int j = 0; j < cols; ++j)
+        row[j] = random.nextDouble() * 0.2 - 0.1;
+    return m;
+  }
+
+}
@@ -0,0 +1,112 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.parser.lexparser.BinaryHeadFinder;
+import edu.stanford.nlp.parser.lexparser.Options;
+import edu.stanford.nlp.trees.HeadFinder;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Trees;
+import edu.stanford.nlp.util.Generics;
+
+public class HashedFeaturesTest extends TestCase {
+  String treeString = "(ROOT (S (NP (DT The) (@NP (JJ quick) (NN fox))) (@S (VP (VBD jumped) (PP (IN over) (NP (DT the) (NN dog)))) (. .))))";
+
+  /** Every state along the gold transitions for the tree */
+  List<State> goldStates() {
+    Options op = new Options();
+    HeadFinder binaryHeadFinder = new BinaryHeadFinder(op.tlpParams.headFinder());
+    Tree tree = Tree.valueOf(treeString);
+    Trees.convertToCoreLabels(tree);
+    tree.percolateHeadAnnotations(binaryHeadFinder);
+
+    List<Transition> transitions = CreateTransitionSequence.createTransitionSequence(tree, true, Collections.singleton("ROOT"), Collections.singleton("ROOT"));
+    List<State> states = Generics.newArrayList();
+    State state = ShiftReduceParser.initialStateFromGoldTagTree(tree);
+    for (Transition transition : transitions) {
+      states.add(state);
+      state = transition.apply(state);
+    }
+    states.add(state);
+    return states;
+  }
+
+  public void testPiecesHashLikeStrings() {
+    HashedFeatures features = new HashedFeatures();
+    features.add("S0C-", "NP");
+    features.add("S0WT-", "fox", "-", "NN");
+    features.add("S0", "n", "S1", "n");
+    features.add("Q0WT-", null);
+    assertEquals(4, features.size());
+    assertEquals(HashedFeatures.hash("S0C-NP"), features.get(0));
+    assertEquals(HashedFeatures.hash("S0WT-fox-NN"), features.get(1));
+    assertEquals(HashedFeatures.hash("S0nS1n"), features.get(2));
+    assertEquals(HashedFeatures.hash("Q0WT-null"), features.get(3));
+    assertFalse(features.get(0) == features.get(1));
+
+    features.clear();
+    assertEquals(0, features.size());
+  }
+
+  public void testFeaturizeHashesStringFeatures() {
+    BasicFeatureFactory factory = new BasicFeatureFactory();
+    HashedFeatures hashed = new HashedFeatures();
+    for (State state : goldStates()) {
+      List<String> features = factory.featurize(state);
+      hashed.clear();
+      factory.featurize(state, hashed);
+      assertEquals(features.size(), hashed.size());
+      for (int i = 0; i < features.size(); ++i) {
+        assertEquals(features.get(i), HashedFeatures.hash(features.get(i)), hashed.get(i));
+      }
+    }
+  }
+
+  public void testHashedWeightsScoreLikeWeights() {
+    BasicFeatureFactory factory = new BasicFeatureFactory();
+    List<State> states = goldStates();
+    int numTransitions = 5;
+
+    // give every other feature a few made up weights
+    Map<String, Weight> featureWeights = Generics.newHashMap();
+    int count = 0;
+    for (State state : states) {
+      for (String feature : factory.featurize(state)) {
+        if (featureWeights.containsKey(feature) || (count++ % 2) == 0) {
+          continue;
+        }
+        Weight weight = new Weight();
+        weight.updateWeight(count % numTransitions, 0.5f * count);
+        weight.updateWeight((count * 3) % numTransitions, -0.25f);
+        featureWeights.put(feature, weight);
+      }
+    }
+    featureWeights.put("unused", new Weight());
+
+    HashedFeatureWeights hashedWeights = new HashedFeatureWeights(featureWeights);
+    assertEquals(featureWeights.size() - 1, hashedWeights.numFeatures());
+    assertEquals(0, hashedWeights.collisions());
+
+    HashedFeatures hashed = new HashedFeatures();
+    for (State state : states) {
+      float[] expected = new float[numTransitions];
+      for (String feature : factory.featurize(state)) {
+        Weight weight = featureWeights.get(feature);
+        if (weight != null) {
+          weight.score(expected);
+        }
+      }
+
+      hashed.clear();
+      factory.featurize(state, hashed);
+      float[] scores = new float[numTransitions];
+      hashedWeights.score(hashed, scores);
+      assertTrue(Arrays.toString(expected) + " vs " + Arrays.toString(scores), Arrays.equals(expected, scores));
+    }
+  }
+}
@@ -5,15 +5,22 @@ import junit.framework.TestCase;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import edu.stanford.nlp.ling.Sentence;
 import edu.stanford.nlp.ling.TaggedWord;
 import edu.stanford.nlp.parser.lexparser.BinaryHeadFinder;
+import edu.stanford.nlp.parser.common.ParserQuery;
 import edu.stanford.nlp.parser.lexparser.Options;
 import edu.stanford.nlp.trees.HeadFinder;
+import edu.stanford.nlp.trees.MemoryTreebank;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.Trees;
 import edu.stanford.nlp.util.CollectionUtils;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
 import java.util.function.Function;
 
 public class ShiftReduceParserTest extends TestCase {
@@ -97,6 +104,67 @@ public class ShiftReduceParserTest extends TestCase {
     }
   }
 
+  /**
+   * Scoring the beam on several threads must give the same parses and
+   * scores as scoring it on one.
+   */
+  public void testBeamThreads() {
+    String[] trainTrees = {
+      "(ROOT (S (NP (DT the) (NN dog)) (VP (VBD saw) (NP (DT a) (NN cat))) (. .)))",
+      "(ROOT (S (NP (DT the) (NN cat)) (VP (VBD saw) (NP (NP (DT the) (NN man)) (PP (IN with) (NP (DT a) (NN telescope))))) (. .)))",
+      "(ROOT (S (NP (NNP John)) (VP (VBD ate) (NP (NN pizza)) (PP (IN with) (NP (DT a) (NN fork)))) (. .)))",
+      "(ROOT (S (NP (DT a) (JJ big) (NN dog)) (VP (VBZ runs) (ADVP (RB quickly))) (. .)))",
+      "(ROOT (S (NP (PRP he)) (VP (VBD said) (SBAR (IN that) (S (NP (DT the) (NN man)) (VP (VBD left))))) (. .)))",
+      "(ROOT (S (NP (NP (DT the) (NN man)) (PP (IN in) (NP (DT the) (NN park)))) (VP (VBD saw) (NP (PRP her))) (. .)))",
+      "(ROOT (S (NP (PRP she)) (VP (VBD gave) (NP (DT the) (NN dog)) (NP (DT a) (NN bone))) (. .)))",
+      "(ROOT (FRAG (NP (DT a) (NN cat)) (. .)))",
+    };
+    String[][] testSentences = {
+      { "the/DT", "man/NN", "saw/VBD", "the/DT", "dog/NN", "with/IN", "a/DT", "telescope/NN", "in/IN", "the/DT", "park/NN", "./." },
+      { "she/PRP", "said/VBD", "that/IN", "a/DT", "big/JJ", "cat/NN", "ate/VBD", "the/DT", "pizza/NN", "./." },
+      { "John/NNP", "runs/VBZ", "./." },
+      { "he/PRP", "gave/VBD", "the/DT", "man/NN", "in/IN", "the/DT", "park/NN", "a/DT", "fork/NN", "./." },
+    };
+
+    ShiftReduceOptions op = ShiftReduceParser.buildTrainingOptions(null, new String[] {
+        "-trainingMethod", "BEAM", "-beamSize", "8", "-trainingIterations", "5",
+        "-randomSeed", "1", "-trainingThreads", "1", "-averagedModels", "0" });
+    MemoryTreebank treebank = op.tlpParams.memoryTreebank();
+    for (String tree : trainTrees) {
+      treebank.add(Tree.valueOf(tree));
+    }
+    List<Tree> binarized = ShiftReduceParser.binarizeTreebank(treebank, op);
+    Set<String> rootStates = Collections.singleton("ROOT");
+    List<List<Transition>> transitionLists = CreateTransitionSequence.createTransitionSequences(binarized, op.compoundUnaries, rootStates, rootStates);
+    Index<Transition> transitionIndex = new HashIndex<Transition>();
+    for (List<Transition> transitions : transitionLists) {
+      transitionIndex.addAll(transitions);
+    }
+    PerceptronModel model = new PerceptronModel(op, transitionIndex, ShiftReduceParser.findKnownStates(binarized), rootStates, rootStates);
+    model.trainModel(null, null, new Random(1), binarized, transitionLists, null, 1);
+
+    List<String> expected = parse(new ShiftReduceParser(op, model), testSentences);
+    op.testOptions().beamThreads = 3;
+    ShiftReduceParser parser = new ShiftReduceParser(op, model);
+    assertNotNull(parser.beamPool());
+    assertEquals(expected, parse(parser, testSentences));
+  }
+
+  private static List<String> parse(ShiftReduceParser parser, String[][] sentences) {
+    List<String> parses = Generics.newArrayList();
+    for (String[] sentence : sentences) {
+      List<TaggedWord> words = Generics.newArrayList();
+      for (String word : sentence) {
+        String[] pieces = word.split("/");
+        words.add(new TaggedWord(pieces[0], pieces[1]));
+      }
+      ParserQuery pq = parser.parserQuery();
+      assertTrue(pq.parse(words));
+      parses.add(pq.getBestParse() + " " + pq.getPCFGScore());
+    }
+    return parses;
+  }
+
   public void binarize() {
     // TreeBinarizer binarizer = new TreeBinarizer(new PennTreebankLanguagePack().headFinder(), new PennTreebankLanguagePack(),
     //                                             false, false, 0, false, false, 0.0, false, true, true);
@@ -0,0 +1,127 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class AnnotatorStatisticsTest extends TestCase {
+
+  private static Annotation document(int numSentences, int sentenceLength) {
+    Annotation annotation = new Annotation("");
+    List<CoreLabel> tokens = new ArrayList<>();
+    List<CoreMap> sentences = new ArrayList<>();
+    for (int s = 0; s < numSentences; ++s) {
+      List<CoreLabel> sentenceTokens = new ArrayList<>();
+      for (int i = 0; i < sentenceLength; ++i) {
+        sentenceTokens.add(new CoreLabel());
+      }
+      tokens.addAll(sentenceTokens);
+      CoreMap sentence = new ArrayCoreMap();
+      sentence.set(CoreAnnotations.TokensAnnotation.class, sentenceTokens);
+      sentences.add(sentence);
+    }
+    annotation.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    annotation.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+    return annotation;
+  }
+
+  public void testPercentiles() {
+    AnnotatorStatistics stats = new AnnotatorStatistics("test");
+    assertEquals(0, stats.getPercentileNanos(50));
+    for (int i = 1; i <= 1000; ++i) {
+      stats.record(new Annotation(""), i * 1000L, -1);
+    }
+    assertEquals(1000, stats.getCount());
+    assertEquals(1000000L, stats.getMaxNanos());
+    assertEquals(500500000L, stats.getTotalNanos());
+    // buckets are at most 12.5% wide, and percentiles report their upper bound
+    long p50 = stats.getPercentileNanos(50);
+    assertTrue(p50 >= 500000 && p50 <= 500000 * 1.125);
+    long p99 = stats.getPercentileNanos(99);
+    assertTrue(p99 >= 990000 && p99 <= 1000000);
+    assertEquals(1000000L, stats.getPercentileNanos(100));
+    assertEquals(0, stats.getAllocatedBytes());
+
+    stats.reset();
+    assertEquals(0, stats.getCount());
+    assertEquals(0, stats.getPercentileNanos(99));
+  }
+
+  public void testSmallValues() {
+    AnnotatorStatistics stats = new AnnotatorStatistics("test");
+    for (int i = 0; i < 20; ++i) {
+      stats.record(new Annotation(""), i, 10);
+    }
+    assertEquals(9, stats.getPercentileNanos(50));
+    assertEquals(19, stats.getPercentileNanos(100));
+    assertEquals(200, stats.getAllocatedBytes());
+  }
+
+  public void testTokensAndSentenceBuckets() {
+    AnnotatorStatistics stats = new AnnotatorStatistics("test");
+    stats.record(document(4, 5), 4000000L, -1);
+    stats.record(document(2, 50), 10000000L, -1);
+    assertEquals(120, stats.getTokens());
+    assertEquals(120 / 0.014, stats.getTokensPerSecond(), 1e-6);
+    assertEquals(4, stats.getSentences(0));
+    assertEquals(1000000.0, stats.getNanosPerSentence(0));
+    assertEquals(0, stats.getSentences(1));
+    assertEquals(2, stats.getSentences(3));
+    assertEquals(5000000.0, stats.getNanosPerSentence(3));
+  }
+
+  public void testPipelineStatisticsAndListener() throws Exception {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new Annotator() {
+      @Override
+      public void annotate(Annotation annotation) { }
+
+      @Override
+      public Set<Requirement> requirementsSatisfied() {
+        return Collections.emptySet();
+      }
+
+      @Override
+      public Set<Requirement> requires() {
+        return Collections.emptySet();
+      }
+    });
+    AtomicInteger calls = new AtomicInteger();
+    pipeline.addListener((index, annotator, annotation, elapsedNanos, allocatedBytes) -> {
+      assertEquals(0, index);
+      assertTrue(elapsedNanos >= 0);
+      calls.incrementAndGet();
+    });
+    for (int i = 0; i < 3; ++i) {
+      pipeline.annotate(document(1, 3));
+    }
+    assertEquals(3, calls.get());
+    assertEquals(1, pipeline.getStatistics().size());
+    assertEquals(3, pipeline.getStatistics().get(0).getCount());
+    assertEquals(9, pipeline.getStatistics().get(0).getTokens());
+    assertTrue(pipeline.statisticsInformation().contains("n=3"));
+
+    ObjectName name = pipeline.registerMBean("AnnotatorStatisticsTest");
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      assertEquals(3L, ((long[]) server.getAttribute(name, "DocumentCounts"))[0]);
+      server.invoke(name, "resetStatistics", new Object[0], new String[0]);
+      assertEquals(0, pipeline.getStatistics().get(0).getCount());
+    } finally {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+  }
+
+}
@@ -0,0 +1,153 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations;
+import edu.stanford.nlp.util.CoreMap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+public class ProtobufCorpusReaderTest extends TestCase {
+
+  private static final int NUM_DOCS = 25;
+
+  private File corpus;
+
+  @Override
+  public void setUp() throws IOException {
+    Properties props = new Properties();
+    props.setProperty("annotators", "tokenize,ssplit");
+    StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
+
+    corpus = File.createTempFile("corpus", ".pb");
+    corpus.deleteOnExit();
+    new File(corpus.getPath() + ".idx").deleteOnExit();
+    try (ProtobufCorpusWriter writer = new ProtobufCorpusWriter(corpus.getPath())) {
+      for (int i = 0; i < NUM_DOCS; ++i) {
+        Annotation doc = pipeline.process("Document number " + i + " is here. It has two sentences.");
+        for (CoreMap sentence : doc.get(CoreAnnotations.SentencesAnnotation.class)) {
+          StringBuilder tree = new StringBuilder("(ROOT");
+          for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+            tree.append(" (X ").append(token.word()).append(')');
+          }
+          sentence.set(TreeCoreAnnotations.TreeAnnotation.class, Tree.valueOf(tree.append(')').toString()));
+          // only its presence is serialized; the reader recomputes it
+          sentence.set(CoreAnnotations.NumerizedTokensAnnotation.class, new ArrayList<>());
+        }
+        writer.write(doc);
+      }
+      assertEquals(NUM_DOCS, writer.size());
+    }
+  }
+
+  private static void checkDocument(Annotation doc, int i, boolean hasTrees) {
+    assertEquals("Document number " + i + " is here. It has two sentences.", doc.get(CoreAnnotations.TextAnnotation.class));
+    List<CoreMap> sentences = doc.get(CoreAnnotations.SentencesAnnotation.class);
+    assertEquals(2, sentences.size());
+    assertEquals(6, sentences.get(0).get(CoreAnnotations.TokensAnnotation.class).size());
+    assertEquals(hasTrees, sentences.get(1).get(TreeCoreAnnotations.TreeAnnotation.class) != null);
+  }
+
+  public void testRandomAccess() throws IOException {
+    try (ProtobufCorpusReader reader = new ProtobufCorpusReader(corpus.getPath())) {
+      assertEquals(NUM_DOCS, reader.size());
+      for (int i : new int[] { 17, 0, NUM_DOCS - 1, 3 }) {
+        checkDocument(reader.get(i), i, true);
+      }
+      try {
+        reader.get(NUM_DOCS);
+        fail("Expected IndexOutOfBoundsException");
+      } catch (IndexOutOfBoundsException e) {
+        // expected
+      }
+    }
+  }
+
+  public void testLayers() throws IOException {
+    try (ProtobufCorpusReader reader = new ProtobufCorpusReader(corpus.getPath())) {
+      reader.setLayers(EnumSet.of(ProtobufCorpusReader.Layer.DEPENDENCIES));
+      checkDocument(reader.get(5), 5, false);
+      CoreMap sentence = reader.get(5).get(CoreAnnotations.SentencesAnnotation.class).get(0);
+      assertNull(sentence.get(CoreAnnotations.NumerizedTokensAnnotation.class));
+
+      reader.setLayers(EnumSet.of(ProtobufCorpusReader.Layer.PARSE, ProtobufCorpusReader.Layer.NUMBERS));
+      checkDocument(reader.get(5), 5, true);
+      sentence = reader.get(5).get(CoreAnnotations.SentencesAnnotation.class).get(0);
+      assertNotNull(sentence.get(CoreAnnotations.NumerizedTokensAnnotation.class));
+    }
+  }
+
+  public void testIterators() throws IOException {
+    try (ProtobufCorpusReader reader = new ProtobufCorpusReader(corpus.getPath())) {
+      int i = 0;
+      for (Annotation doc : reader) {
+        checkDocument(doc, i++, true);
+      }
+      assertEquals(NUM_DOCS, i);
+
+      reader.setLayers(EnumSet.noneOf(ProtobufCorpusReader.Layer.class));
+      Iterator<Annotation> it = reader.iterator(3, 20, 4);
+      for (i = 3; i < 20; ++i) {
+        assertTrue(it.hasNext());
+        checkDocument(it.next(), i, false);
+      }
+      assertFalse(it.hasNext());
+    }
+  }
+
+  public void testStoppingEarly() throws Exception {
+    try (ProtobufCorpusReader reader = new ProtobufCorpusReader(corpus.getPath())) {
+      Iterator<Annotation> it = reader.iterator(0, NUM_DOCS, 3);
+      checkDocument(it.next(), 0, true);
+      // the rest of the documents are never asked for, but the threads
+      // decoding them must still go away
+      for (int wait = 0; readerThreads() > 0; ++wait) {
+        assertTrue("The reader's threads are still running", wait < 100);
+        Thread.sleep(100);
+      }
+    }
+  }
+
+  private static int readerThreads() {
+    int n = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals(ProtobufCorpusReader.THREAD_NAME)) {
+        ++n;
+      }
+    }
+    return n;
+  }
+
+  public void testWithoutIndex() throws Exception {
+    assertTrue(new File(corpus.getPath() + ".idx").delete());
+    try (ProtobufCorpusReader reader = new ProtobufCorpusReader(corpus.getPath())) {
+      assertEquals(NUM_DOCS, reader.size());
+      checkDocument(reader.get(11), 11, true);
+    }
+    ProtobufCorpusReader.writeIndex(corpus.getPath());
+    assertTrue(new File(corpus.getPath() + ".idx").isFile());
+
+    // the corpus is still a plain stream of delimited documents
+    List<Annotation> docs = new ArrayList<>();
+    try (InputStream is = new FileInputStream(corpus)) {
+      ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer(false);
+      for (int i = 0; i < NUM_DOCS; ++i) {
+        docs.add(serializer.read(is).first);
+      }
+      assertEquals(-1, is.read());
+    }
+    checkDocument(docs.get(NUM_DOCS - 1), NUM_DOCS - 1, true);
+  }
+
+}
@@ -0,0 +1,134 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the staged mode of {@link AnnotationPipeline} runs every
+ * annotator on every document, delivers documents in input order, and
+ * keeps the number of documents in flight bounded.
+ */
+public class StagedAnnotationRunnerTest extends TestCase {
+
+  /** Appends its name to the document text, after a small random delay */
+  private static class AppendingAnnotator implements Annotator {
+    private final String name;
+    private final AtomicInteger started;
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    AppendingAnnotator(String name, AtomicInteger started) {
+      this.name = name;
+      this.started = started;
+    }
+
+    @Override
+    public void annotate(Annotation annotation) {
+      if (started != null) {
+        started.incrementAndGet();
+      }
+      int now = active.incrementAndGet();
+      maxActive.accumulateAndGet(now, Math::max);
+      try {
+        Thread.sleep((annotation.get(CoreAnnotations.TextAnnotation.class).hashCode() & 3));
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      String text = annotation.get(CoreAnnotations.TextAnnotation.class);
+      annotation.set(CoreAnnotations.TextAnnotation.class, text + ' ' + name);
+      active.decrementAndGet();
+    }
+
+    @Override
+    public Set<Requirement> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Requirement> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  private static List<Annotation> documents(int n) {
+    List<Annotation> docs = new ArrayList<>();
+    for (int i = 0; i < n; ++i) {
+      docs.add(new Annotation("doc" + i));
+    }
+    return docs;
+  }
+
+  public void testOrderAndCompleteness() {
+    AtomicInteger started = new AtomicInteger();
+    AppendingAnnotator a = new AppendingAnnotator("a", started);
+    AppendingAnnotator b = new AppendingAnnotator("b", null);
+    AppendingAnnotator c = new AppendingAnnotator("c", null);
+    AnnotationPipeline pipeline = new AnnotationPipeline(new ArrayList<>(Arrays.asList(a, b, c)));
+
+    List<String> output = new ArrayList<>();
+    pipeline.annotatePipelined(documents(100), new int[] { 1, 4, 2 }, 8, ann -> {
+      output.add(ann.get(CoreAnnotations.TextAnnotation.class));
+      // the input side can never be more than maxInFlight documents ahead
+      assertTrue(started.get() <= output.size() + 8);
+      return null;
+    });
+
+    assertEquals(100, output.size());
+    for (int i = 0; i < 100; ++i) {
+      assertEquals("doc" + i + " a b c", output.get(i));
+    }
+    assertEquals(1, a.maxActive.get());
+    assertTrue(b.maxActive.get() <= 4);
+  }
+
+  public void testDefaultStages() {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new AppendingAnnotator("x", null));
+    pipeline.addAnnotator(new AppendingAnnotator("y", null));
+    List<String> output = new ArrayList<>();
+    pipeline.annotatePipelined(documents(10), ann -> output.add(ann.get(CoreAnnotations.TextAnnotation.class)));
+    assertEquals(10, output.size());
+    assertEquals("doc9 x y", output.get(9));
+  }
+
+  public void testFailure() {
+    Annotator failing = new AppendingAnnotator("f", null) {
+      @Override
+      public void annotate(Annotation annotation) {
+        if (annotation.get(CoreAnnotations.TextAnnotation.class).equals("doc5")) {
+          throw new IllegalStateException("bad document");
+        }
+        super.annotate(annotation);
+      }
+    };
+    AnnotationPipeline pipeline = new AnnotationPipeline(new ArrayList<>(Arrays.asList(failing)));
+    List<String> output = new ArrayList<>();
+    try {
+      pipeline.annotatePipelined(documents(20), new int[] { 2 }, 4, ann -> output.add(ann.get(CoreAnnotations.TextAnnotation.class)));
+      fail("Expected the annotator's exception");
+    } catch (IllegalStateException e) {
+      assertEquals("bad document", e.getMessage());
+    }
+    assertTrue(output.size() <= 5);
+  }
+
+  public void testWrongStageCount() {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new AppendingAnnotator("x", null));
+    try {
+      pipeline.annotatePipelined(documents(1), new int[] { 1, 1 }, 4, ann -> null);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
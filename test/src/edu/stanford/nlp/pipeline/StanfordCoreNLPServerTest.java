@@ -0,0 +1,222 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Runs the server on an ephemeral port with annotators that need no models.
+ */
+public class StanfordCoreNLPServerTest extends TestCase {
+
+  private StanfordCoreNLPServer server;
+
+  @Override
+  public void setUp() throws IOException {
+    Properties props = new Properties();
+    props.setProperty("port", "0");
+    props.setProperty("threads", "2");
+    props.setProperty("annotators", "tokenize,ssplit");
+    server = new StanfordCoreNLPServer(props);
+    server.start();
+  }
+
+  @Override
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  /**
+   * Takes a second over each document, and like most annotators doesn't
+   * stop when interrupted.
+   */
+  public static class SlowAnnotator implements Annotator {
+    public SlowAnnotator(String name, Properties props) { }
+
+    @Override
+    public void annotate(Annotation annotation) {
+      long end = System.currentTimeMillis() + 1000;
+      for (long now; (now = System.currentTimeMillis()) < end; ) {
+        try {
+          Thread.sleep(end - now);
+        } catch (InterruptedException e) {
+          // keep going
+        }
+      }
+    }
+
+    @Override
+    public Set<Requirement> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Requirement> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  private static StanfordCoreNLPServer startServer(int threads, int queue, int pipelines) throws IOException {
+    Properties props = new Properties();
+    props.setProperty("port", "0");
+    props.setProperty("threads", Integer.toString(threads));
+    props.setProperty("queue", Integer.toString(queue));
+    props.setProperty("pipelines", Integer.toString(pipelines));
+    props.setProperty("annotators", "tokenize,ssplit");
+    props.setProperty("customAnnotatorClass.slow", SlowAnnotator.class.getName());
+    StanfordCoreNLPServer started = new StanfordCoreNLPServer(props);
+    started.start();
+    return started;
+  }
+
+  private HttpURLConnection post(String query, byte[] body) throws IOException {
+    return post(server, "/?" + query, body);
+  }
+
+  private static HttpURLConnection post(StanfordCoreNLPServer server, String pathAndQuery, byte[] body) throws IOException {
+    URL url = new URL("http://localhost:" + server.getPort() + pathAndQuery);
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    try (OutputStream os = connection.getOutputStream()) {
+      os.write(body);
+    }
+    return connection;
+  }
+
+  private static byte[] read(InputStream is) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream in = is) {
+      IOUtils.writeStreamToStream(in, bytes);
+    }
+    return bytes.toByteArray();
+  }
+
+  public void testPing() throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + "/ping").openConnection();
+    assertEquals(200, connection.getResponseCode());
+    assertEquals("pong\n", new String(read(connection.getInputStream()), StandardCharsets.UTF_8));
+  }
+
+  public void testJson() throws IOException {
+    HttpURLConnection connection = post("outputFormat=json", "Hello world. Bye now.".getBytes(StandardCharsets.UTF_8));
+    assertEquals(200, connection.getResponseCode());
+    String json = new String(read(connection.getInputStream()), StandardCharsets.UTF_8);
+    assertTrue(json, json.contains("\"word\": \"Hello\""));
+    assertTrue(json, json.contains("\"word\": \"Bye\""));
+  }
+
+  public void testSerializedRoundTrip() throws Exception {
+    HttpURLConnection connection = post("annotators=tokenize&outputFormat=serialized",
+                                        "One two three.".getBytes(StandardCharsets.UTF_8));
+    assertEquals(200, connection.getResponseCode());
+    byte[] tokenized = read(connection.getInputStream());
+
+    // send the tokenized document back for sentence splitting only
+    connection = post("annotators=ssplit&inputFormat=serialized&outputFormat=serialized", tokenized);
+    assertEquals(200, connection.getResponseCode());
+    Annotation doc = new ProtobufAnnotationSerializer(false).read(new ByteArrayInputStream(read(connection.getInputStream()))).first;
+    assertEquals(4, doc.get(CoreAnnotations.TokensAnnotation.class).size());
+    assertEquals(1, doc.get(CoreAnnotations.SentencesAnnotation.class).size());
+  }
+
+  public void testBadRequests() throws IOException {
+    assertEquals(400, post("outputFormat=yaml", new byte[0]).getResponseCode());
+    assertEquals(400, post("timeout=soon", new byte[0]).getResponseCode());
+    HttpURLConnection get = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + "/").openConnection();
+    assertEquals(405, get.getResponseCode());
+  }
+
+  public void testOtherPaths() throws IOException {
+    assertEquals(404, post(server, "/favicon.ico", new byte[0]).getResponseCode());
+    assertEquals(404, post(server, "/annotate?annotators=tokenize", "Hi.".getBytes(StandardCharsets.UTF_8)).getResponseCode());
+    HttpURLConnection get = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + "/favicon.ico").openConnection();
+    assertEquals(404, get.getResponseCode());
+  }
+
+  public void testMaxRequestBytes() throws IOException {
+    Properties props = new Properties();
+    props.setProperty("port", "0");
+    props.setProperty("threads", "1");
+    props.setProperty("annotators", "tokenize");
+    props.setProperty("queue", "0");
+    props.setProperty("maxRequestBytes", "100");
+    StanfordCoreNLPServer small = new StanfordCoreNLPServer(props);
+    small.start();
+    try {
+      byte[] text = "Hello world. ".getBytes(StandardCharsets.UTF_8);
+      byte[] large = new byte[1000];
+      for (int i = 0; i < large.length; i++) {
+        large[i] = text[i % text.length];
+      }
+      assertEquals(200, post(small, "/", text).getResponseCode());
+      assertEquals(413, post(small, "/", large).getResponseCode());
+
+      // without a Content-Length, the body is checked as it is read
+      HttpURLConnection chunked = (HttpURLConnection) new URL("http://localhost:" + small.getPort() + "/").openConnection();
+      chunked.setRequestMethod("POST");
+      chunked.setDoOutput(true);
+      chunked.setChunkedStreamingMode(64);
+      try (OutputStream os = chunked.getOutputStream()) {
+        os.write(large);
+      } catch (IOException e) {
+        // the server may answer before the whole body is sent
+      }
+      assertEquals(413, chunked.getResponseCode());
+
+      // the rejected requests don't hold on to their permits
+      assertEquals(200, post(small, "/", text).getResponseCode());
+    } finally {
+      small.stop(0);
+    }
+  }
+
+  public void testPipelinesKept() throws IOException {
+    StanfordCoreNLPServer small = startServer(1, 1, 2);
+    try {
+      byte[] text = "Hello world.".getBytes(StandardCharsets.UTF_8);
+      for (String annotators : new String[] { "tokenize", "tokenize,ssplit", "tokenize,cleanxml", "tokenize" }) {
+        assertEquals(200, post(small, "/?annotators=" + annotators, text).getResponseCode());
+        assertTrue(small.numPipelines() <= 2);
+      }
+      // a pipeline which can't be built is not kept
+      assertEquals(400, post(small, "/?annotators=nosuchannotator", text).getResponseCode());
+      assertTrue(small.numPipelines() <= 2);
+    } finally {
+      small.stop(0);
+    }
+  }
+
+  public void testTimedOutRequestsStillCount() throws Exception {
+    // room for only one request at a time
+    StanfordCoreNLPServer small = startServer(1, 0, 2);
+    try {
+      byte[] text = "Hello world.".getBytes(StandardCharsets.UTF_8);
+      assertEquals(504, post(small, "/?annotators=tokenize,slow&timeout=100", text).getResponseCode());
+      // the slow annotator is still running, as it ignores the interrupt
+      assertEquals(503, post(small, "/?annotators=tokenize", text).getResponseCode());
+      int status = 503;
+      for (int tries = 0; tries < 50 && status == 503; tries++) {
+        Thread.sleep(100);
+        status = post(small, "/?annotators=tokenize", text).getResponseCode();
+      }
+      assertEquals(200, status);
+    } finally {
+      small.stop(0);
+    }
+  }
+
+}
@@ -0,0 +1,97 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.StringUtils;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Checks how phrase entries and regex entries of a TokensRegexNERAnnotator
+ * mapping work together, on hand made tokens.
+ */
+public class TokensRegexNERAnnotatorTest extends TestCase {
+
+  private static final String NAME = "tokensregexner";
+
+  private static TokensRegexNERAnnotator annotator(String[][] entries, Properties props) throws IOException {
+    File mapping = File.createTempFile("tokensregexnertest", ".txt");
+    mapping.deleteOnExit();
+    PrintWriter pw = IOUtils.getPrintWriter(mapping.getAbsolutePath());
+    for (String[] entry : entries) {
+      pw.println(StringUtils.join(entry, "\t"));
+    }
+    pw.close();
+    props.setProperty(NAME + ".mapping", mapping.getAbsolutePath());
+    return new TokensRegexNERAnnotator(NAME, props);
+  }
+
+  /** Tokens given as word/POS */
+  private static List<CoreLabel> tokens(String text) {
+    List<CoreLabel> tokens = new ArrayList<>();
+    for (String wordTag : text.split(" ")) {
+      String[] split = wordTag.split("/");
+      CoreLabel token = new CoreLabel();
+      token.setWord(split[0]);
+      token.setTag(split[1]);
+      token.setNER("O");
+      tokens.add(token);
+    }
+    return tokens;
+  }
+
+  private static void checkTags(Annotator annotator, List<CoreLabel> tokens, String... tags) {
+    Annotation annotation = new Annotation("");
+    annotation.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    annotator.annotate(annotation);
+    assertEquals(tags.length, tokens.size());
+    for (int i = 0; i < tags.length; i++) {
+      assertEquals("Mismatch for token " + i + ' ' + tokens.get(i), tags[i], tokens.get(i).ner());
+    }
+  }
+
+  public void testPhrasesAndRegexes() throws IOException {
+    String[][] entries = {
+      { "New York", "CITY" },
+      { "New York University", "SCHOOL" },
+      { "York", "PERSON" },
+      { "AT&T", "COMPANY" },
+      { "[0-9]+ Street", "ADDRESS" },
+      { "Street", "ROAD", "", "1" },
+    };
+    TokensRegexNERAnnotator cased = annotator(entries, new Properties());
+    checkTags(cased, tokens("New/NNP York/NNP University/NNP hired/VBD AT&T/NNP at/IN 10/CD Street/NNP ./."),
+        "SCHOOL", "SCHOOL", "SCHOOL", "O", "COMPANY", "O", "O", "ROAD", "O");
+    checkTags(cased, tokens("new/JJ york/NN and/CC York/NNP"),
+        "O", "O", "O", "PERSON");
+
+    Properties props = new Properties();
+    props.setProperty(NAME + ".ignorecase", "true");
+    TokensRegexNERAnnotator caseless = annotator(entries, props);
+    checkTags(caseless, tokens("NEW/NNP york/NNP at/IN at&t/NN"),
+        "CITY", "CITY", "O", "COMPANY");
+  }
+
+  public void testRepeatedPhrase() throws IOException {
+    TokensRegexNERAnnotator annotator = annotator(new String[][] { { "ha ha", "LAUGH" } }, new Properties());
+    checkTags(annotator, tokens("ha/UH ha/UH ha/UH ha/UH ha/UH"),
+        "LAUGH", "LAUGH", "LAUGH", "LAUGH", "O");
+  }
+
+  public void testAllTokensPos() throws IOException {
+    Properties props = new Properties();
+    props.setProperty(NAME + ".validpospattern", "NN.*");
+    props.setProperty(NAME + ".posmatchtype", "MATCH_ALL_TOKENS");
+    TokensRegexNERAnnotator annotator = annotator(new String[][] { { "Golden Gate", "BRIDGE" } }, props);
+    checkTags(annotator, tokens("Golden/JJ Gate/NNP and/CC Golden/NNP Gate/NNP"),
+        "O", "O", "O", "BRIDGE", "BRIDGE");
+  }
+
+}
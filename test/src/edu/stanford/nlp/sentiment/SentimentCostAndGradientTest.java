@@ -0,0 +1,81 @@
+package edu.stanford.nlp.sentiment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * Checks that computing the gradient on several threads gives the same
+ * answer as on one, and the same answer every time.
+ */
+public class SentimentCostAndGradientTest extends TestCase {
+
+  private static final String[] TREES = {
+    "(3 (2 it) (4 (4 (2 is) (4 great)) (2 .)))",
+    "(1 (2 (2 the) (2 movie)) (1 (2 was) (0 (0 awful) (2 .))))",
+    "(2 (2 Bob) (3 (2 liked) (3 (3 (2 the) (3 ending)) (2 (2 and) (2 (2 the) (2 music))))))",
+    "(4 (2 the) (4 (4 music) (2 .)))",
+    "(0 (2 it) (0 (2 was) (0 awful)))",
+  };
+
+  private static List<Tree> trees() {
+    List<Tree> trees = new ArrayList<>();
+    CollapseUnaryTransformer transformer = new CollapseUnaryTransformer();
+    for (String tree : TREES) {
+      Tree transformed = transformer.transformTree(Tree.valueOf(tree));
+      SentimentUtils.attachLabels(transformed, RNNCoreAnnotations.GoldClass.class);
+      trees.add(transformed);
+    }
+    return trees;
+  }
+
+  private static void checkThreads(RNNOptions op) {
+    op.randomSeed = 1234;
+    op.numHid = 5;
+    List<Tree> trees = trees();
+    SentimentModel model = new SentimentModel(op, trees);
+    double[] theta = model.paramsToVector();
+
+    op.trainOptions.trainThreads = 1;
+    SentimentCostAndGradient serial = new SentimentCostAndGradient(model, trees);
+    double serialValue = serial.valueAt(theta);
+    double[] serialGradient = serial.derivativeAt(theta).clone();
+
+    op.trainOptions.trainThreads = 3;
+    SentimentCostAndGradient threaded = new SentimentCostAndGradient(model, trees);
+    double threadedValue = threaded.valueAt(theta);
+    double[] threadedGradient = threaded.derivativeAt(theta).clone();
+
+    assertEquals(serialValue, threadedValue, 1e-12);
+    assertEquals(serialGradient.length, threadedGradient.length);
+    for (int i = 0; i < serialGradient.length; ++i) {
+      assertEquals(serialGradient[i], threadedGradient[i], 1e-12);
+    }
+
+    // the shards are always added up in the same order
+    for (int run = 0; run < 3; ++run) {
+      SentimentCostAndGradient again = new SentimentCostAndGradient(model, trees);
+      assertEquals(threadedValue, again.valueAt(theta), 0.0);
+      double[] gradient = again.derivativeAt(theta);
+      for (int i = 0; i < gradient.length; ++i) {
+        assertEquals(threadedGradient[i], gradient[i], 0.0);
+      }
+    }
+  }
+
+  public void testMatrixModel() {
+    RNNOptions op = new RNNOptions();
+    op.useTensors = false;
+    op.combineClassification = false;
+    checkThreads(op);
+  }
+
+  public void testTensorModel() {
+    checkThreads(new RNNOptions());
+  }
+
+}
@@ -0,0 +1,98 @@
+package edu.stanford.nlp.sentiment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.ejml.simple.SimpleMatrix;
+
+import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * Checks that batched inference assigns the same vectors and
+ * predictions as forward propagating the trees one at a time.
+ */
+public class SentimentInferenceTest extends TestCase {
+
+  private static final String[] TREES = {
+    "(3 (2 it) (4 (4 (2 is) (4 great)) (2 .)))",
+    "(1 (2 (2 the) (2 movie)) (1 (2 was) (0 (0 awful) (2 .))))",
+    "(2 unknown)",
+    "(2 (2 Bob) (3 (2 liked) (3 (3 (2 the) (3 ending)) (2 (2 and) (2 (2 the) (2 music))))))",
+  };
+
+  private static List<Tree> trees() {
+    List<Tree> trees = new ArrayList<>();
+    CollapseUnaryTransformer transformer = new CollapseUnaryTransformer();
+    for (String tree : TREES) {
+      trees.add(transformer.transformTree(Tree.valueOf(tree)));
+    }
+    return trees;
+  }
+
+  private static void checkModel(RNNOptions op) {
+    op.randomSeed = 1234;
+    op.numHid = 6;
+    List<Tree> training = trees();
+    training.remove(2);
+    SentimentModel model = new SentimentModel(op, training);
+
+    List<Tree> expected = trees();
+    SentimentCostAndGradient scorer = new SentimentCostAndGradient(model, null);
+    for (Tree tree : expected) {
+      scorer.forwardPropagateTree(tree);
+    }
+    List<Tree> batched = trees();
+    SentimentInference inference = new SentimentInference(model);
+    inference.forwardPropagateTrees(batched);
+    for (int i = 0; i < expected.size(); ++i) {
+      compare(expected.get(i), batched.get(i));
+    }
+
+    // buffers are reused between calls, and single trees give the same answers
+    Tree single = trees().get(3);
+    inference.forwardPropagateTree(single);
+    compare(expected.get(3), single);
+  }
+
+  private static void compare(Tree expected, Tree actual) {
+    assertEquals(expected.isLeaf(), actual.isLeaf());
+    if (expected.isLeaf()) {
+      return;
+    }
+    assertEquals(RNNCoreAnnotations.getPredictedClass(expected), RNNCoreAnnotations.getPredictedClass(actual));
+    compare(RNNCoreAnnotations.getPredictions(expected), RNNCoreAnnotations.getPredictions(actual));
+    compare(RNNCoreAnnotations.getNodeVector(expected), RNNCoreAnnotations.getNodeVector(actual));
+    for (int i = 0; i < expected.children().length; ++i) {
+      compare(expected.children()[i], actual.children()[i]);
+    }
+  }
+
+  private static void compare(SimpleMatrix expected, SimpleMatrix actual) {
+    assertEquals(expected.numRows(), actual.numRows());
+    assertEquals(expected.numCols(), actual.numCols());
+    for (int i = 0; i < expected.getNumElements(); ++i) {
+      assertEquals(expected.get(i), actual.get(i), 0.0);
+    }
+  }
+
+  public void testTensorModel() {
+    checkModel(new RNNOptions());
+  }
+
+  public void testMatrixModel() {
+    RNNOptions op = new RNNOptions();
+    op.useTensors = false;
+    op.combineClassification = false;
+    checkModel(op);
+  }
+
+  public void testLowercaseWords() {
+    RNNOptions op = new RNNOptions();
+    op.lowercaseWordVectors = true;
+    checkModel(op);
+  }
+
+}
@@ -0,0 +1,98 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+
+import edu.stanford.nlp.util.Generics;
+
+public class CompiledTagFeaturesTest extends TestCase {
+
+  private static final String[] TAG_NAMES = { "DT", "NN", "VBZ", "JJ", "." };
+
+  private TTags tags;
+
+  @Override
+  protected void setUp() {
+    tags = new TTags();
+    for (String tag : TAG_NAMES) {
+      tags.add(tag);
+    }
+  }
+
+  /** Gives every value the extractor can produce a feature, except a few. */
+  private Map<String, int[]> associations(Extractor extractor) {
+    Map<String, int[]> fAssociations = Generics.newHashMap();
+    PairsHolder pairs = new PairsHolder();
+    pairs.setSize(9);
+    History h = new History(2, 6, 4, pairs, null);
+    Random random = new Random(1);
+    for (int trial = 0; trial < 500; trial++) {
+      for (int i = 0; i < 9; i++) {
+        pairs.setTag(i, TAG_NAMES[random.nextInt(TAG_NAMES.length)]);
+      }
+      h.init(2, 6, 2 + random.nextInt(5));
+      String value = extractor.extract(h);
+      if (value.hashCode() % 7 != 0 && ! fAssociations.containsKey(value)) {
+        fAssociations.put(value, new int[] { fAssociations.size() });
+      }
+    }
+    return fAssociations;
+  }
+
+  private void checkSameAsStrings(Extractor extractor) {
+    Map<String, int[]> fAssociations = associations(extractor);
+    CompiledTagFeatures compiled = CompiledTagFeatures.compile(extractor, fAssociations, tags, TAG_NAMES.length);
+    assertNotNull(compiled);
+
+    // a sentence of 6 words starting at position 3 of the pairs
+    int start = 3, end = 8;
+    PairsHolder pairs = new PairsHolder();
+    pairs.setSize(end + 3);
+    int[] tagIds = new int[end - start + 1];
+    History h = new History(pairs, null);
+    Random random = new Random(2);
+    for (int trial = 0; trial < 200; trial++) {
+      for (int i = 0; i < pairs.getSize(); i++) {
+        // tags outside the sentence must not matter
+        pairs.setTag(i, TAG_NAMES[random.nextInt(TAG_NAMES.length)]);
+      }
+      for (int i = start; i <= end; i++) {
+        tagIds[i - start] = random.nextInt(TAG_NAMES.length);
+        pairs.setTag(i, TAG_NAMES[tagIds[i - start]]);
+      }
+      for (int current = start; current <= end; current++) {
+        h.init(start, end, current);
+        assertSame(extractor.toString(), fAssociations.get(extractor.extract(h)), compiled.get(h, tagIds));
+      }
+    }
+  }
+
+  public void testTag() {
+    checkSameAsStrings(new Extractor(-1, true));
+    checkSameAsStrings(new Extractor(1, true));
+  }
+
+  public void testTwoTags() {
+    checkSameAsStrings(new ExtractorFrames.ExtractorTwoTags(-1, 1));
+  }
+
+  public void testThreeTags() {
+    checkSameAsStrings(new ExtractorFrames.ExtractorThreeTags(-2, -1, 1));
+    checkSameAsStrings(new ExtractorFrames.ExtractorThreeTags(1, -1, 1));
+  }
+
+  public void testContinuousTagConjunction() {
+    checkSameAsStrings(new ExtractorFrames.ExtractorContinuousTagConjunction(-2));
+    checkSameAsStrings(new ExtractorFrames.ExtractorContinuousTagConjunction(3));
+  }
+
+  public void testWordsNotCompiled() {
+    Extractor wordTag = new ExtractorFrames.ExtractorWordTag(0, -1);
+    assertNull(CompiledTagFeatures.compile(wordTag, Generics.<String, int[]>newHashMap(), tags, TAG_NAMES.length));
+    Extractor word = new Extractor(-1, false);
+    assertNull(CompiledTagFeatures.compile(word, Generics.<String, int[]>newHashMap(), tags, TAG_NAMES.length));
+  }
+
+}
@@ -0,0 +1,89 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+
+import edu.stanford.nlp.util.Generics;
+
+public class WordTagFeaturesTest extends TestCase {
+
+  private static final String[] TAG_NAMES = { "DT", "NN", "VBZ", "JJ", "." };
+  private static final String[] WORDS = { "the", "Dog", "barks", "big", ".", "London" };
+
+  /** Gives every value the extractor can produce a feature, except a few. */
+  private static Map<String, int[]> associations(Extractor extractor, PairsHolder pairs, int start, int end) {
+    Map<String, int[]> fAssociations = Generics.newHashMap();
+    History h = new History(pairs, null);
+    Random random = new Random(1);
+    for (int trial = 0; trial < 500; trial++) {
+      for (int i = start; i <= end; i++) {
+        pairs.setTag(i, TAG_NAMES[random.nextInt(TAG_NAMES.length)]);
+      }
+      h.init(start, end, start + random.nextInt(end - start + 1));
+      String value = extractor.extract(h);
+      if (value.hashCode() % 7 != 0 && ! fAssociations.containsKey(value)) {
+        fAssociations.put(value, new int[] { fAssociations.size() });
+      }
+    }
+    return fAssociations;
+  }
+
+  private static void checkSameAsStrings(Extractor extractor) {
+    // a sentence of 6 words starting at position 3 of the pairs
+    int start = 3, end = 8;
+    PairsHolder pairs = new PairsHolder();
+    pairs.setSize(end + 3);
+    for (int i = 0; i < pairs.getSize(); i++) {
+      pairs.setWord(i, WORDS[i % WORDS.length]);
+    }
+    Map<String, int[]> fAssociations = associations(extractor, pairs, start, end);
+    WordTagFeatures features = WordTagFeatures.create(extractor, fAssociations, TAG_NAMES.length);
+    assertNotNull(extractor.toString(), features);
+    features.reset(end - start + 1);
+
+    int[] tagIds = new int[end - start + 1];
+    History h = new History(pairs, null);
+    Random random = new Random(2);
+    for (int trial = 0; trial < 200; trial++) {
+      for (int i = 0; i < pairs.getSize(); i++) {
+        // tags outside the sentence must not matter
+        pairs.setTag(i, TAG_NAMES[random.nextInt(TAG_NAMES.length)]);
+      }
+      for (int i = start; i <= end; i++) {
+        tagIds[i - start] = random.nextInt(TAG_NAMES.length);
+        pairs.setTag(i, TAG_NAMES[tagIds[i - start]]);
+      }
+      for (int current = start; current <= end; current++) {
+        h.init(start, end, current);
+        assertSame(extractor.toString(), fAssociations.get(extractor.extract(h)), features.get(h, tagIds));
+      }
+    }
+  }
+
+  public void testWordTag() {
+    checkSameAsStrings(new ExtractorFrames.ExtractorWordTag(0, -1));
+    checkSameAsStrings(new ExtractorFrames.ExtractorWordTag(-1, 1));
+  }
+
+  public void testTwoWordsTag() {
+    checkSameAsStrings(new ExtractorFrames.ExtractorTwoWordsTag(-1, 1, -1));
+  }
+
+  public void testWordTwoTags() {
+    checkSameAsStrings(new ExtractorFrames.ExtractorWordTwoTags(0, -2, -1));
+  }
+
+  public void testRare() {
+    checkSameAsStrings(new ExtractorMidSentenceCap());
+    checkSameAsStrings(new ExtractorsConjunction(new ExtractorMidSentenceCap(), new ExtractorFrames.ExtractorWordTag(0, 1)));
+  }
+
+  public void testNotCreated() {
+    Map<String, int[]> none = Generics.newHashMap();
+    assertNull(WordTagFeatures.create(new Extractor(0, false), none, TAG_NAMES.length));
+    assertNull(WordTagFeatures.create(new ExtractorCapC(), none, TAG_NAMES.length));
+  }
+
+}
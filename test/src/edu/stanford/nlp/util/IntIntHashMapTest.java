@@ -0,0 +1,56 @@
+package edu.stanford.nlp.util;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class IntIntHashMapTest extends TestCase {
+
+  public void testPutGet() {
+    IntIntHashMap map = new IntIntHashMap(4, -1);
+    assertTrue(map.isEmpty());
+    assertEquals(-1, map.put(3, 30));
+    assertEquals(-1, map.put(-7, 70));
+    assertEquals(30, map.put(3, 31));
+    assertEquals(2, map.size());
+    assertEquals(31, map.get(3));
+    assertEquals(70, map.get(-7));
+    assertEquals(-1, map.get(4));
+    assertTrue(map.containsKey(-7));
+    assertFalse(map.containsKey(4));
+  }
+
+  public void testMinValueKey() {
+    IntIntHashMap map = new IntIntHashMap(4, 0);
+    assertFalse(map.containsKey(Integer.MIN_VALUE));
+    map.put(Integer.MIN_VALUE, 5);
+    assertTrue(map.containsKey(Integer.MIN_VALUE));
+    assertEquals(5, map.get(Integer.MIN_VALUE));
+    assertEquals(1, map.size());
+    assertEquals(1, map.keys().length);
+  }
+
+  public void testAgainstHashMap() {
+    Random random = new Random(1234);
+    IntIntHashMap map = new IntIntHashMap(2, -1);
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 20000; ++i) {
+      int key = random.nextInt(50000) - 25000;
+      map.put(key, i);
+      expected.put(key, i);
+    }
+    assertEquals(expected.size(), map.size());
+    for (int key = -26000; key < 26000; ++key) {
+      Integer value = expected.get(key);
+      assertEquals(value == null ? -1 : value, map.get(key));
+    }
+    int[] keys = map.keys();
+    assertEquals(expected.size(), keys.length);
+    for (int key : keys) {
+      assertTrue(expected.containsKey(key));
+    }
+  }
+
+}
@@ -0,0 +1,88 @@
+package edu.stanford.nlp.util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+public class PackedStringIndexTest extends TestCase {
+
+  private static final List<String> KEYS = Arrays.asList(
+      "", "a", "W-Paris|C", "été", "中文", "😀", "bad\uD800surrogate", "nul\u0000char", "Aa", "BB");
+
+  private static PackedStringIndex packed() {
+    HashIndex<String> index = new HashIndex<>(KEYS);
+    index.lock();
+    return new PackedStringIndex(index);
+  }
+
+  public void testLookups() {
+    PackedStringIndex index = packed();
+    assertEquals(KEYS.size(), index.size());
+    for (int i = 0; i < KEYS.size(); i++) {
+      assertEquals(KEYS.get(i), index.get(i));
+      assertEquals(i, index.indexOf(KEYS.get(i)));
+      assertTrue(index.contains(KEYS.get(i)));
+      assertTrue(index.keyEquals(i, new StringBuilder(KEYS.get(i))));
+    }
+    // "Aa" and "BB" have the same hash code
+    assertEquals("Aa".hashCode(), "BB".hashCode());
+    assertEquals(-1, index.indexOf("C#"));
+    assertEquals(-1, index.indexOf("W-Paris|"));
+    assertEquals(-1, index.indexOf(null));
+    assertFalse(index.contains("b"));
+    assertFalse(index.keyEquals(1, "ab"));
+    assertEquals(KEYS, index.objectsList());
+    assertEquals(Arrays.asList("a", "BB"), index.objects(new int[] { 1, 9 }));
+  }
+
+  public void testLocked() {
+    PackedStringIndex index = packed();
+    assertTrue(index.isLocked());
+    assertEquals(-1, index.addToIndex("new"));
+    assertEquals(2, index.addToIndex("W-Paris|C"));
+    assertFalse(index.add("new"));
+    assertEquals(KEYS.size(), index.size());
+    try {
+      index.unlock();
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  public void testEmpty() {
+    PackedStringIndex index = new PackedStringIndex(new HashIndex<String>());
+    assertEquals(0, index.size());
+    assertEquals(-1, index.indexOf("a"));
+  }
+
+  public void testSaveAndLoad() throws Exception {
+    File file = File.createTempFile("packedIndex", ".bin");
+    file.deleteOnExit();
+    packed().save(file.getPath());
+    PackedStringIndex loaded = PackedStringIndex.load(file.getPath());
+    assertEquals(KEYS, loaded.objectsList());
+    for (int i = 0; i < KEYS.size(); i++) {
+      assertEquals(i, loaded.indexOf(KEYS.get(i)));
+    }
+  }
+
+  public void testSerializesAsHashIndex() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+      oos.writeObject(packed());
+    }
+    Object o = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    assertTrue(o instanceof HashIndex);
+    HashIndex<?> index = (HashIndex<?>) o;
+    assertTrue(index.isLocked());
+    assertEquals(KEYS, index.objectsList());
+  }
+
+}